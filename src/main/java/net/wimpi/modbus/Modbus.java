@@ -79,6 +79,87 @@ public interface Modbus {
      */
     public static final int WRITE_SINGLE_REGISTER = 6;
 
+    /**
+     * Defines a serial line function code
+     * for <tt>read exception status</tt>.
+     */
+    public static final int READ_EXCEPTION_STATUS = 7;
+
+    /**
+     * Defines a serial line function code
+     * for <tt>diagnostics</tt>.
+     */
+    public static final int DIAGNOSTICS = 8;
+
+    /**
+     * Defines a serial line function code
+     * for <tt>get comm event counter</tt>.
+     */
+    public static final int GET_COMM_EVENT_COUNTER = 11;
+
+    /**
+     * Defines a serial line function code
+     * for <tt>get comm event log</tt>.
+     */
+    public static final int GET_COMM_EVENT_LOG = 12;
+
+    /**
+     * Defines a serial line function code
+     * for <tt>report slave id</tt>.
+     */
+    public static final int REPORT_SLAVE_ID = 17;
+
+    /**
+     * Defines a standard function code
+     * for <tt>read file record</tt>.
+     */
+    public static final int READ_FILE_RECORD = 20;
+
+    /**
+     * Defines a standard function code
+     * for <tt>write file record</tt>.
+     */
+    public static final int WRITE_FILE_RECORD = 21;
+
+    /**
+     * Defines a standard function code
+     * for <tt>mask write register</tt>.
+     */
+    public static final int MASK_WRITE_REGISTER = 22;
+
+    /**
+     * Defines a standard function code
+     * for <tt>read/write multiple registers</tt>.
+     */
+    public static final int READ_WRITE_MULTIPLE_REGISTERS = 23;
+
+    /**
+     * Defines a standard function code
+     * for <tt>read FIFO queue</tt>.
+     */
+    public static final int READ_FIFO_QUEUE = 24;
+
+    /**
+     * Defines the diagnostics sub-function
+     * <tt>return query data</tt>, which echoes the request data.
+     */
+    public static final int DIAGNOSTICS_RETURN_QUERY_DATA = 0;
+
+    /**
+     * Defines the reference type of file record sub-requests.
+     */
+    public static final int FILE_RECORD_REFERENCE_TYPE = 6;
+
+    /**
+     * Defines the number of records of a file (<b>10000</b>).
+     */
+    public static final int MAX_FILE_RECORDS = 10000;
+
+    /**
+     * Defines the maximum number of registers in a FIFO queue (<b>31</b>).
+     */
+    public static final int MAX_FIFO_COUNT = 31;
+
     /**
      * Defines the byte representation of the coil state <b>on</b>.
      */
@@ -142,6 +223,13 @@ public interface Modbus {
      */
     public static final int ILLEGAL_VALUE_EXCEPTION = 3;
 
+    /**
+     * Defines the Modbus slave exception type <tt>slave device busy</tt>.
+     * This exception code is returned if the slave is busy processing
+     * other requests; the master should retry later.
+     */
+    public static final int SLAVE_DEVICE_BUSY_EXCEPTION = 6;
+
     /**
      * Defines the default port number of Modbus
      * (=<tt>502</tt>).
@@ -94,7 +94,7 @@ public class AutoSearchingModbusASCIITransportTest {
 
         public Collection<String> getClientTransportsInfo() {
             Collection<String> info = new ArrayList<>();
-            for(ModbusTransport transport : clientTransports) {
+            for(ModbusTransport transport : getTransports()) {
                 info.add("Transport units: " + ((AutoSearchingModbusASCIITransport)transport).getUnits());
             }
             return info;
@@ -0,0 +1,188 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.facade;
+
+import net.wimpi.modbus.msg.ReadCoilsResponse;
+import net.wimpi.modbus.msg.ReadInputDiscretesResponse;
+import net.wimpi.modbus.util.LongBitVector;
+
+/**
+ * Class implementing report-by-exception for a polled block
+ * of coils or input discretes.
+ * <p>
+ * Each update decodes the polled states into a reused
+ * {@link LongBitVector}, compares them word by word against the
+ * previous snapshot and notifies the {@link Listener} only about
+ * the bits that flipped. The first update after construction or
+ * {@link #reset()} reports every bit.
+ * <p>
+ * Instances are not thread safe; use one per polled block.
+ *
+ * @version @version@ (@date@)
+ * @see RegisterChangeDetector
+ */
+public final class BitChangeDetector {
+
+    /**
+     * Interface for receiving bit changes.
+     */
+    public interface Listener {
+
+        /**
+         * Called for each bit that changed.
+         *
+         * @param ref the reference of the coil or input discrete.
+         * @param state the polled state.
+         */
+        public void bitChanged(int ref, boolean state);
+
+    }// interface Listener
+
+    // instance attributes
+    private final int m_Reference;
+    private final LongBitVector m_Current;
+    private final LongBitVector m_Previous;
+    private final LongBitVector m_Changes;
+    private boolean m_Initialized;
+    private Listener m_Listener;
+
+    /**
+     * Constructs a new <tt>BitChangeDetector</tt> for the given
+     * block of coils or input discretes.
+     *
+     * @param ref the reference of the first bit of the block.
+     * @param count the number of bits in the block.
+     * @param listener the <tt>Listener</tt> to be notified about changes.
+     */
+    public BitChangeDetector(int ref, int count, Listener listener) {
+        m_Reference = ref;
+        m_Current = new LongBitVector(count);
+        m_Previous = new LongBitVector(count);
+        m_Changes = new LongBitVector(count);
+        m_Listener = listener;
+    }// constructor
+
+    /**
+     * Returns the reference of the first bit of the block.
+     *
+     * @return the reference as <tt>int</tt>.
+     */
+    public int getReference() {
+        return m_Reference;
+    }// getReference
+
+    /**
+     * Returns the number of bits in the block.
+     *
+     * @return the number of bits as <tt>int</tt>.
+     */
+    public int getCount() {
+        return m_Current.size();
+    }// getCount
+
+    /**
+     * Returns the states of the last update. The returned vector
+     * is owned by this detector and overwritten by each update.
+     *
+     * @return the polled states as <tt>LongBitVector</tt>.
+     */
+    public LongBitVector getStates() {
+        return m_Current;
+    }// getStates
+
+    /**
+     * Sets the <tt>Listener</tt> to be notified about changes.
+     *
+     * @param listener a <tt>Listener</tt> instance.
+     */
+    public void setListener(Listener listener) {
+        m_Listener = listener;
+    }// setListener
+
+    /**
+     * Forgets the previous snapshot, so that the next update
+     * reports every bit.
+     */
+    public void reset() {
+        m_Initialized = false;
+    }// reset
+
+    /**
+     * Compares the coil states of the given response against the
+     * previous snapshot.
+     *
+     * @param res a <tt>ReadCoilsResponse</tt> for this block.
+     * @return the number of changes reported.
+     * @throws IndexOutOfBoundsException if the response holds fewer
+     *             states than the block.
+     */
+    public int update(ReadCoilsResponse res) throws IndexOutOfBoundsException {
+        res.getCoils(m_Current);
+        return detect();
+    }// update
+
+    /**
+     * Compares the input discrete states of the given response against
+     * the previous snapshot.
+     *
+     * @param res a <tt>ReadInputDiscretesResponse</tt> for this block.
+     * @return the number of changes reported.
+     * @throws IndexOutOfBoundsException if the response holds fewer
+     *             states than the block.
+     */
+    public int update(ReadInputDiscretesResponse res) throws IndexOutOfBoundsException {
+        res.getDiscretes(m_Current);
+        return detect();
+    }// update
+
+    /**
+     * Compares the given states against the previous snapshot.
+     *
+     * @param bits a <tt>LongBitVector</tt> with the size of this block.
+     * @return the number of changes reported.
+     * @throws IllegalArgumentException if the sizes differ.
+     */
+    public int update(LongBitVector bits) throws IllegalArgumentException {
+        m_Current.copyFrom(bits);
+        return detect();
+    }// update
+
+    private int detect() {
+        int changes;
+        if (m_Initialized) {
+            changes = m_Current.diff(m_Previous, m_Changes);
+            if (changes > 0 && m_Listener != null) {
+                for (int i = m_Changes.nextSetBit(0); i >= 0; i = m_Changes.nextSetBit(i + 1)) {
+                    m_Listener.bitChanged(m_Reference + i, m_Current.getBit(i));
+                }
+            }
+        } else {
+            // first snapshot, report all bits
+            changes = m_Current.size();
+            if (m_Listener != null) {
+                for (int i = 0; i < changes; i++) {
+                    m_Listener.bitChanged(m_Reference + i, m_Current.getBit(i));
+                }
+            }
+            m_Initialized = true;
+        }
+        if (changes > 0) {
+            m_Previous.copyFrom(m_Current);
+        }
+        return changes;
+    }// detect
+
+}// class BitChangeDetector
@@ -0,0 +1,561 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.facade;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusException;
+import net.wimpi.modbus.ModbusIOException;
+import net.wimpi.modbus.ModbusSlaveException;
+import net.wimpi.modbus.io.BytesInputStream;
+import net.wimpi.modbus.io.BytesOutputStream;
+import net.wimpi.modbus.io.ModbusTCPTransaction;
+import net.wimpi.modbus.msg.ModbusRequest;
+import net.wimpi.modbus.msg.ModbusResponse;
+import net.wimpi.modbus.msg.ReadCoilsRequest;
+import net.wimpi.modbus.msg.ReadCoilsResponse;
+import net.wimpi.modbus.msg.ReadInputDiscretesRequest;
+import net.wimpi.modbus.msg.ReadInputDiscretesResponse;
+import net.wimpi.modbus.msg.ReadInputRegistersRequest;
+import net.wimpi.modbus.msg.ReadInputRegistersResponse;
+import net.wimpi.modbus.msg.ReadMultipleRegistersRequest;
+import net.wimpi.modbus.msg.ReadMultipleRegistersResponse;
+import net.wimpi.modbus.msg.WriteCoilRequest;
+import net.wimpi.modbus.msg.WriteCoilResponse;
+import net.wimpi.modbus.msg.WriteMultipleRegistersRequest;
+import net.wimpi.modbus.msg.WriteSingleRegisterRequest;
+import net.wimpi.modbus.net.TCPMasterConnection;
+import net.wimpi.modbus.procimg.InputRegister;
+import net.wimpi.modbus.procimg.Register;
+import net.wimpi.modbus.util.BitVector;
+
+/**
+ * Modbus/TCP Master facade for a device reachable through
+ * several redundant gateways.
+ * <p>
+ * Each gateway is an endpoint with its own connection. Requests go to the
+ * primary, i.e. the first endpoint in the given order that is neither
+ * failed recently nor busy. Reads are hedged: if the primary has not
+ * answered after the hedge percentile of its recent latencies (the 95th by
+ * default), the request is sent once more to the next endpoint, and the
+ * first answer wins. Since only the slowest few percent of the reads are
+ * duplicated, the tail latency drops at a small extra load.
+ * <p>
+ * All requests fail over to the next endpoint on I/O errors; the failed
+ * endpoint is avoided as primary for the failback delay. Writes are never
+ * hedged, but do fail over, which is safe for the standard write functions
+ * as they set absolute values. A slave exception is the answer of the
+ * device and is thrown without failing over.
+ *
+ * @version @version@ (@date@)
+ */
+public class ModbusRedundantTCPMaster {
+    private static final Logger logger = LoggerFactory.getLogger(ModbusRedundantTCPMaster.class);
+
+    /**
+     * Defines the default hedge delay before enough latencies
+     * were measured, in milliseconds (<b>200</b>).
+     */
+    public static final int DEFAULT_HEDGE_DELAY = 200;
+
+    /**
+     * Defines the default latency percentile after which reads are hedged (<b>95</b>).
+     */
+    public static final double DEFAULT_HEDGE_PERCENTILE = 95;
+
+    /**
+     * Defines the default time a failed endpoint is avoided as primary,
+     * in milliseconds (<b>10000</b>).
+     */
+    public static final int DEFAULT_FAILBACK_DELAY = 10000;
+
+    private static final int LATENCY_WINDOW = 128;
+    private static final int MIN_LATENCY_SAMPLES = 20;
+
+    // instance attributes
+    private final Endpoint[] m_Endpoints;
+    private final ExecutorService m_Executor;
+    private volatile int m_UnitID = Modbus.DEFAULT_UNIT_ID;
+    private volatile double m_HedgePercentile = DEFAULT_HEDGE_PERCENTILE;
+    private volatile int m_InitialHedgeDelay = DEFAULT_HEDGE_DELAY;
+    private volatile int m_FailbackDelay = DEFAULT_FAILBACK_DELAY;
+
+    /**
+     * Constructs a new master facade instance for communication
+     * with a slave through the given gateways.
+     *
+     * @param endpoints the addresses of the gateways, the preferred one first.
+     */
+    public ModbusRedundantTCPMaster(InetSocketAddress... endpoints) {
+        if (endpoints.length == 0) {
+            throw new IllegalArgumentException("No endpoints");
+        }
+        m_Endpoints = new Endpoint[endpoints.length];
+        for (int i = 0; i < endpoints.length; i++) {
+            m_Endpoints[i] = new Endpoint(endpoints[i]);
+        }
+        m_Executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "ModbusRedundantTCPMaster");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }// constructor
+
+    /**
+     * Connects to all gateways. Unreachable gateways are
+     * connected on their first use.
+     *
+     * @throws Exception if no gateway can be connected.
+     */
+    public void connect() throws Exception {
+        Exception last = null;
+        int connected = 0;
+        for (Endpoint endpoint : m_Endpoints) {
+            try {
+                endpoint.connect();
+                connected++;
+            } catch (Exception ex) {
+                logger.debug("Connecting {} failed: {}", endpoint, ex.getMessage());
+                endpoint.failed();
+                last = ex;
+            }
+        }
+        if (connected == 0) {
+            throw last;
+        }
+    }// connect
+
+    /**
+     * Disconnects from all gateways.
+     */
+    public void disconnect() {
+        for (Endpoint endpoint : m_Endpoints) {
+            endpoint.disconnect();
+        }
+    }// disconnect
+
+    /**
+     * Sets the unit id of the slave.
+     *
+     * @param unitid the unit id.
+     */
+    public void setUnitID(int unitid) {
+        m_UnitID = unitid;
+    }// setUnitID
+
+    /**
+     * Returns the unit id of the slave.
+     *
+     * @return the unit id.
+     */
+    public int getUnitID() {
+        return m_UnitID;
+    }// getUnitID
+
+    /**
+     * Sets the receive timeout of the connections.
+     *
+     * @param timeout the timeout in milliseconds.
+     */
+    public void setTimeout(int timeout) {
+        for (Endpoint endpoint : m_Endpoints) {
+            endpoint.m_Connection.setTimeout(timeout);
+        }
+    }// setTimeout
+
+    /**
+     * Sets the latency percentile of the primary after which reads are hedged.
+     *
+     * @param percentile the percentile, between <tt>0</tt> and <tt>100</tt>.
+     */
+    public void setHedgePercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Illegal percentile: " + percentile);
+        }
+        m_HedgePercentile = percentile;
+    }// setHedgePercentile
+
+    /**
+     * Returns the latency percentile of the primary after which reads are hedged.
+     *
+     * @return the percentile.
+     */
+    public double getHedgePercentile() {
+        return m_HedgePercentile;
+    }// getHedgePercentile
+
+    /**
+     * Sets the hedge delay used until enough latencies of the primary were measured.
+     *
+     * @param delay the delay in milliseconds.
+     */
+    public void setInitialHedgeDelay(int delay) {
+        m_InitialHedgeDelay = delay;
+    }// setInitialHedgeDelay
+
+    /**
+     * Returns the hedge delay used until enough latencies of the primary were measured.
+     *
+     * @return the delay in milliseconds.
+     */
+    public int getInitialHedgeDelay() {
+        return m_InitialHedgeDelay;
+    }// getInitialHedgeDelay
+
+    /**
+     * Sets the time a failed endpoint is avoided as primary.
+     *
+     * @param delay the delay in milliseconds.
+     */
+    public void setFailbackDelay(int delay) {
+        m_FailbackDelay = delay;
+    }// setFailbackDelay
+
+    /**
+     * Returns the time a failed endpoint is avoided as primary.
+     *
+     * @return the delay in milliseconds.
+     */
+    public int getFailbackDelay() {
+        return m_FailbackDelay;
+    }// getFailbackDelay
+
+    /**
+     * Returns the current hedge delay of an endpoint.
+     *
+     * @param index the index of the endpoint in the constructor arguments.
+     * @return the delay in milliseconds.
+     */
+    public long getHedgeDelay(int index) {
+        return m_Endpoints[index].getHedgeDelay();
+    }// getHedgeDelay
+
+    /**
+     * Executes a request through the gateways. The request itself is
+     * not sent; each endpoint sends a copy of it.
+     *
+     * @param request the <tt>ModbusRequest</tt>.
+     * @param hedge true to hedge the request, which must be idempotent, false otherwise.
+     * @return the first <tt>ModbusResponse</tt> received.
+     * @throws ModbusException if all endpoints failed, or the slave answered with an exception.
+     */
+    public ModbusResponse execute(ModbusRequest request, boolean hedge) throws ModbusException {
+        final byte[] message = serialize(request);
+        Endpoint[] order = order();
+        CompletionService<ModbusResponse> completion = new ExecutorCompletionService<>(m_Executor);
+        int next = 0;
+        int pending = 0;
+        boolean hedged = !hedge || order.length < 2;
+        long hedgeDelay = order[0].getHedgeDelay();
+        ModbusException last = null;
+        submit(completion, order[next++], message);
+        pending++;
+        try {
+            while (pending > 0) {
+                Future<ModbusResponse> done;
+                if (!hedged && next < order.length) {
+                    done = completion.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+                    if (done == null) {
+                        logger.trace("No response after {} ms, hedging to {}", hedgeDelay, order[next]);
+                        submit(completion, order[next++], message);
+                        pending++;
+                        hedged = true;
+                        continue;
+                    }
+                } else {
+                    done = completion.take();
+                }
+                pending--;
+                try {
+                    return done.get();
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof ModbusSlaveException) {
+                        throw (ModbusSlaveException) cause;
+                    }
+                    last = (cause instanceof ModbusException) ? (ModbusException) cause
+                            : new ModbusException(String.valueOf(cause));
+                    if (pending == 0 && next < order.length) {
+                        logger.debug("Failing over to {}: {}", order[next], last.getMessage());
+                        submit(completion, order[next++], message);
+                        pending++;
+                        // the hedge would duplicate the failover
+                        hedged = true;
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ModbusIOException("Interrupted while waiting for response.");
+        }
+        throw last;
+    }// execute
+
+    /**
+     * Reads a given number of coil states from the slave, hedged.
+     *
+     * @param ref the offset of the coil to start reading from.
+     * @param count the number of coil states to be read.
+     * @return a <tt>BitVector</tt> instance holding the received coil states.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public BitVector readCoils(int ref, int count) throws ModbusException {
+        BitVector bv = ((ReadCoilsResponse) execute(new ReadCoilsRequest(ref, count), true)).getCoils();
+        bv.forceSize(count);
+        return bv;
+    }// readCoils
+
+    /**
+     * Reads a given number of input discrete states from the slave, hedged.
+     *
+     * @param ref the offset of the input discrete to start reading from.
+     * @param count the number of input discrete states to be read.
+     * @return a <tt>BitVector</tt> instance holding the received input discrete states.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public BitVector readInputDiscretes(int ref, int count) throws ModbusException {
+        BitVector bv = ((ReadInputDiscretesResponse) execute(new ReadInputDiscretesRequest(ref, count), true))
+                .getDiscretes();
+        bv.forceSize(count);
+        return bv;
+    }// readInputDiscretes
+
+    /**
+     * Reads a given number of input registers from the slave, hedged.
+     *
+     * @param ref the offset of the input register to start reading from.
+     * @param count the number of input registers to be read.
+     * @return a <tt>InputRegister[]</tt> with the received input registers.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public InputRegister[] readInputRegisters(int ref, int count) throws ModbusException {
+        return ((ReadInputRegistersResponse) execute(new ReadInputRegistersRequest(ref, count), true))
+                .getRegisters();
+    }// readInputRegisters
+
+    /**
+     * Reads a given number of registers from the slave, hedged.
+     *
+     * @param ref the offset of the register to start reading from.
+     * @param count the number of registers to be read.
+     * @return a <tt>Register[]</tt> holding the received registers.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public Register[] readMultipleRegisters(int ref, int count) throws ModbusException {
+        return ((ReadMultipleRegistersResponse) execute(new ReadMultipleRegistersRequest(ref, count), true))
+                .getRegisters();
+    }// readMultipleRegisters
+
+    /**
+     * Writes a coil state to the slave.
+     *
+     * @param ref the offset of the coil to be written.
+     * @param state the coil state to be written.
+     * @return the state of the coil as returned from the slave.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public boolean writeCoil(int ref, boolean state) throws ModbusException {
+        return ((WriteCoilResponse) execute(new WriteCoilRequest(ref, state), false)).getCoil();
+    }// writeCoil
+
+    /**
+     * Writes a single register to the slave.
+     *
+     * @param ref the offset of the register to be written.
+     * @param register a <tt>Register</tt> holding the value of the register to be written.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public void writeSingleRegister(int ref, Register register) throws ModbusException {
+        execute(new WriteSingleRegisterRequest(ref, register), false);
+    }// writeSingleRegister
+
+    /**
+     * Writes a number of registers to the slave.
+     *
+     * @param ref the offset of the register to start writing to.
+     * @param registers a <tt>Register[]</tt> holding the values of the registers to be written.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public void writeMultipleRegisters(int ref, Register[] registers) throws ModbusException {
+        execute(new WriteMultipleRegistersRequest(ref, registers), false);
+    }// writeMultipleRegisters
+
+    private byte[] serialize(ModbusRequest request) throws ModbusException {
+        request.setUnitID(m_UnitID);
+        BytesOutputStream out = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH + 6);
+        try {
+            request.writeTo(out);
+        } catch (IOException ex) {
+            throw new ModbusException("Invalid request: " + ex.getMessage());
+        }
+        return out.toByteArray();
+    }// serialize
+
+    private void submit(CompletionService<ModbusResponse> completion, final Endpoint endpoint, final byte[] message) {
+        completion.submit(new Callable<ModbusResponse>() {
+            @Override
+            public ModbusResponse call() throws Exception {
+                // every endpoint sends its own copy, as transactions set the transaction id
+                BytesInputStream in = new BytesInputStream(message);
+                in.skip(7);
+                ModbusRequest request = ModbusRequest.createModbusRequest(in.readUnsignedByte());
+                in.reset(message);
+                request.readFrom(in);
+                return endpoint.execute(request);
+            }
+        });
+    }// submit
+
+    private Endpoint[] order() {
+        List<Endpoint> preferred = new ArrayList<>(m_Endpoints.length);
+        List<Endpoint> others = new ArrayList<>(m_Endpoints.length);
+        long now = System.currentTimeMillis();
+        for (Endpoint endpoint : m_Endpoints) {
+            if (endpoint.isAvailable(now)) {
+                preferred.add(endpoint);
+            } else {
+                others.add(endpoint);
+            }
+        }
+        preferred.addAll(others);
+        return preferred.toArray(new Endpoint[preferred.size()]);
+    }// order
+
+    /**
+     * Class holding the connection and latency statistics of a gateway.
+     */
+    private class Endpoint {
+
+        private final InetSocketAddress m_Address;
+        private final TCPMasterConnection m_Connection;
+        private final ModbusTCPTransaction m_Transaction;
+        private final long[] m_Latencies = new long[LATENCY_WINDOW];
+        private int m_LatencyIndex;
+        private int m_LatencyCount;
+        private final AtomicInteger m_Busy = new AtomicInteger();
+        private volatile long m_FailedUntil;
+
+        Endpoint(InetSocketAddress address) {
+            m_Address = address;
+            m_Connection = new TCPMasterConnection(address.getAddress());
+            m_Connection.setPort(address.getPort());
+            m_Transaction = new ModbusTCPTransaction(m_Connection);
+            // the other endpoints take the place of retries
+            m_Transaction.setRetries(1);
+        }// constructor
+
+        void connect() throws Exception {
+            synchronized (m_Transaction) {
+                if (!m_Connection.isConnected()) {
+                    m_Connection.connect();
+                    m_Transaction.setConnection(m_Connection);
+                }
+            }
+        }// connect
+
+        void disconnect() {
+            synchronized (m_Transaction) {
+                m_Connection.close();
+            }
+        }// disconnect
+
+        boolean isAvailable(long now) {
+            return m_Busy.get() == 0 && now >= m_FailedUntil;
+        }// isAvailable
+
+        void failed() {
+            m_FailedUntil = System.currentTimeMillis() + m_FailbackDelay;
+        }// failed
+
+        ModbusResponse execute(ModbusRequest request) throws ModbusException {
+            m_Busy.incrementAndGet();
+            try {
+                synchronized (m_Transaction) {
+                    long start = System.nanoTime();
+                    try {
+                        m_Transaction.setRequest(request);
+                        m_Transaction.execute();
+                    } catch (ModbusSlaveException ex) {
+                        // the device answered
+                        record(System.nanoTime() - start);
+                        throw ex;
+                    } catch (ModbusException ex) {
+                        failed();
+                        throw ex;
+                    }
+                    record(System.nanoTime() - start);
+                    return m_Transaction.getResponse();
+                }
+            } finally {
+                m_Busy.decrementAndGet();
+            }
+        }// execute
+
+        private synchronized void record(long nanos) {
+            m_Latencies[m_LatencyIndex] = TimeUnit.NANOSECONDS.toMillis(nanos);
+            m_LatencyIndex = (m_LatencyIndex + 1) % LATENCY_WINDOW;
+            if (m_LatencyCount < LATENCY_WINDOW) {
+                m_LatencyCount++;
+            }
+        }// record
+
+        synchronized long getHedgeDelay() {
+            int n = m_LatencyCount;
+            if (n < MIN_LATENCY_SAMPLES) {
+                return m_InitialHedgeDelay;
+            }
+            long[] sorted = Arrays.copyOf(m_Latencies, n);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(m_HedgePercentile / 100 * n) - 1;
+            return Math.max(1, sorted[Math.max(0, Math.min(index, n - 1))]);
+        }// getHedgeDelay
+
+        @Override
+        public String toString() {
+            return m_Address.toString();
+        }// toString
+
+    }// class Endpoint
+
+}// class ModbusRedundantTCPMaster
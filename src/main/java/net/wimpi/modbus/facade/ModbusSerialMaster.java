@@ -16,9 +16,14 @@
 
 package net.wimpi.modbus.facade;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.ModbusException;
 import net.wimpi.modbus.io.ModbusSerialTransaction;
+import net.wimpi.modbus.msg.MaskWriteRegisterRequest;
+import net.wimpi.modbus.msg.ModbusResponse;
 import net.wimpi.modbus.msg.ReadCoilsRequest;
 import net.wimpi.modbus.msg.ReadCoilsResponse;
 import net.wimpi.modbus.msg.ReadInputDiscretesRequest;
@@ -27,6 +32,8 @@ import net.wimpi.modbus.msg.ReadInputRegistersRequest;
 import net.wimpi.modbus.msg.ReadInputRegistersResponse;
 import net.wimpi.modbus.msg.ReadMultipleRegistersRequest;
 import net.wimpi.modbus.msg.ReadMultipleRegistersResponse;
+import net.wimpi.modbus.msg.ReadWriteMultipleRegistersRequest;
+import net.wimpi.modbus.msg.ReadWriteMultipleRegistersResponse;
 import net.wimpi.modbus.msg.WriteCoilRequest;
 import net.wimpi.modbus.msg.WriteCoilResponse;
 import net.wimpi.modbus.msg.WriteMultipleCoilsRequest;
@@ -36,7 +43,11 @@ import net.wimpi.modbus.net.SerialConnection;
 import net.wimpi.modbus.procimg.InputRegister;
 import net.wimpi.modbus.procimg.Register;
 import net.wimpi.modbus.util.BitVector;
+import net.wimpi.modbus.util.LatencyHistogram;
+import net.wimpi.modbus.util.LongBitVector;
 import net.wimpi.modbus.util.SerialParameters;
+import net.wimpi.modbus.util.WaitStrategy;
+import net.wimpi.modbus.util.WordOrder;
 
 /**
  * Modbus/Serial Master facade.
@@ -45,7 +56,32 @@ import net.wimpi.modbus.util.SerialParameters;
  * @author John Charlton
  * @version @version@ (@date@)
  */
-public class ModbusSerialMaster {
+public class ModbusSerialMaster implements WriteCoalescer.Writer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModbusSerialMaster.class);
+
+    /**
+     * Defines the default period before a cycle start or a transmission
+     * that the cyclic mode spins for, in nanoseconds (<b>200 &micro;s</b>).
+     */
+    public static final long DEFAULT_SPIN_NANOS = 200000;
+
+    /**
+     * Interface defining the work of one cycle of the cyclic mode,
+     * see {@link ModbusSerialMaster#startCycle(Cycle, long)}.
+     */
+    public interface Cycle {
+
+        /**
+         * Runs one cycle, typically polling and writing through
+         * the given master.
+         *
+         * @param master the <tt>ModbusSerialMaster</tt> running the cycle.
+         * @throws ModbusException if a transaction of the cycle fails.
+         */
+        public void run(ModbusSerialMaster master) throws ModbusException;
+
+    }// interface Cycle
 
     private SerialParameters m_CommParameters;
     private SerialConnection m_Connection;
@@ -58,6 +94,17 @@ public class ModbusSerialMaster {
     private ReadMultipleRegistersRequest m_ReadMultipleRegistersRequest;
     private WriteSingleRegisterRequest m_WriteSingleRegisterRequest;
     private WriteMultipleRegistersRequest m_WriteMultipleRegistersRequest;
+    private ReadWriteMultipleRegistersRequest m_ReadWriteMultipleRegistersRequest;
+    private MaskWriteRegisterRequest m_MaskWriteRegisterRequest;
+    private final LatencyHistogram m_StartJitter = new LatencyHistogram();
+    private final LatencyHistogram m_CycleTimes = new LatencyHistogram();
+    private final Object m_CycleLock = new Object();
+    private volatile Thread m_CycleThread;
+    private boolean m_CycleStopped;
+    private boolean m_InCycle;
+    private volatile long m_SpinNanos = DEFAULT_SPIN_NANOS;
+    private volatile long m_Overruns;
+    private volatile long m_CycleErrors;
 
     /**
      * Constructs a new master facade instance for communication
@@ -78,6 +125,8 @@ public class ModbusSerialMaster {
             m_ReadMultipleRegistersRequest = new ReadMultipleRegistersRequest();
             m_WriteSingleRegisterRequest = new WriteSingleRegisterRequest();
             m_WriteMultipleRegistersRequest = new WriteMultipleRegistersRequest();
+            m_ReadWriteMultipleRegistersRequest = new ReadWriteMultipleRegistersRequest();
+            m_MaskWriteRegisterRequest = new MaskWriteRegisterRequest();
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage());
         }
@@ -117,12 +166,192 @@ public class ModbusSerialMaster {
      * Disconnects this <tt>ModbusSerialMaster</tt> from the slave.
      */
     public void disconnect() {
+        stopCycle();
         if (m_Connection != null && m_Connection.isOpen()) {
             m_Connection.close();
             m_Transaction = null;
         }
     }// disconnect
 
+    /**
+     * Starts the cyclic mode, running the given cycle at a fixed period on a
+     * dedicated I/O thread of maximum priority.
+     * <p>
+     * Cycle starts are scheduled on absolute deadlines and waited for by
+     * parking and then spinning, see {@link #setSpinNanos(long)}; the transmit
+     * delay of the transaction is waited for the same way, measured from the
+     * end of the previous frame. A cycle that overruns its period causes the
+     * missed starts to be skipped and counted, rather than cycles to be run
+     * back to back. The start jitter and the duration of each cycle are
+     * recorded in histograms.
+     * <p>
+     * To keep the steady state free of allocations, cycles should use the
+     * methods reading into caller supplied buffers, such as
+     * {@link #readInts(int, int, int[], int, int, WordOrder)} or
+     * {@link #readCoils(int, int, LongBitVector)}. Calls from other threads
+     * are serialized with the cycle and delay it.
+     *
+     * @param cycle the <tt>Cycle</tt> to run.
+     * @param periodNanos the cycle period in nanoseconds.
+     * @throws IllegalStateException if the master is not connected or already cycling.
+     */
+    public synchronized void startCycle(final Cycle cycle, final long periodNanos) {
+        if (periodNanos <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + periodNanos);
+        }
+        if (m_Transaction == null) {
+            throw new IllegalStateException("Not connected");
+        }
+        if (m_CycleThread != null) {
+            throw new IllegalStateException("Already cycling");
+        }
+        m_Transaction.setDelaySpinNanos(m_SpinNanos);
+        synchronized (m_CycleLock) {
+            m_CycleStopped = false;
+        }
+        m_CycleThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runCycles(cycle, periodNanos);
+            }
+        }, "ModbusSerialMaster-cycle " + m_CommParameters.getPortName());
+        m_CycleThread.setPriority(Thread.MAX_PRIORITY);
+        m_CycleThread.setDaemon(true);
+        m_CycleThread.start();
+    }// startCycle
+
+    /**
+     * Stops the cyclic mode, waiting for a running cycle to complete.
+     */
+    public void stopCycle() {
+        Thread thread = m_CycleThread;
+        if (thread == null) {
+            return;
+        }
+        synchronized (m_CycleLock) {
+            m_CycleStopped = true;
+            // a running cycle completes, only the wait for the next one is cut short
+            if (!m_InCycle) {
+                thread.interrupt();
+            }
+        }
+        if (thread != Thread.currentThread()) {
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }// stopCycle
+
+    /**
+     * Tests if this <tt>ModbusSerialMaster</tt> runs in cyclic mode.
+     *
+     * @return true if cycling, false otherwise.
+     */
+    public boolean isCycling() {
+        return m_CycleThread != null;
+    }// isCycling
+
+    /**
+     * Sets the period before a cycle start or a transmission that the cyclic
+     * mode spins for instead of parking. Longer periods absorb more wake-up
+     * latency of the scheduler, at the cost of CPU time; the value takes
+     * effect with the next {@link #startCycle(Cycle, long)}.
+     *
+     * @param spinNanos the period in nanoseconds.
+     */
+    public void setSpinNanos(long spinNanos) {
+        m_SpinNanos = spinNanos;
+    }// setSpinNanos
+
+    /**
+     * Returns the histogram of the delays of cycle starts
+     * behind their schedule.
+     *
+     * @return the <tt>LatencyHistogram</tt>.
+     */
+    public LatencyHistogram getStartJitter() {
+        return m_StartJitter;
+    }// getStartJitter
+
+    /**
+     * Returns the histogram of the durations of cycles.
+     *
+     * @return the <tt>LatencyHistogram</tt>.
+     */
+    public LatencyHistogram getCycleTimes() {
+        return m_CycleTimes;
+    }// getCycleTimes
+
+    /**
+     * Returns the number of cycle starts skipped because
+     * a cycle overran its period.
+     *
+     * @return the number of skipped starts.
+     */
+    public long getOverrunCount() {
+        return m_Overruns;
+    }// getOverrunCount
+
+    /**
+     * Returns the number of cycles that failed with an exception.
+     *
+     * @return the number of failed cycles.
+     */
+    public long getCycleErrorCount() {
+        return m_CycleErrors;
+    }// getCycleErrorCount
+
+    private void runCycles(Cycle cycle, long periodNanos) {
+        long next = System.nanoTime() + periodNanos;
+        try {
+            for (;;) {
+                WaitStrategy.parkUntil(next, m_SpinNanos);
+                synchronized (m_CycleLock) {
+                    if (m_CycleStopped) {
+                        break;
+                    }
+                    m_InCycle = true;
+                }
+                long start = System.nanoTime();
+                m_StartJitter.record(start - next);
+                try {
+                    cycle.run(this);
+                } catch (ModbusException ex) {
+                    m_CycleErrors++;
+                    logger.debug("Cycle failed: {}", ex.getMessage());
+                } catch (RuntimeException ex) {
+                    m_CycleErrors++;
+                    logger.warn("Cycle failed", ex);
+                }
+                long end = System.nanoTime();
+                m_CycleTimes.record(end - start);
+                synchronized (m_CycleLock) {
+                    m_InCycle = false;
+                    if (m_CycleStopped) {
+                        break;
+                    }
+                }
+                next += periodNanos;
+                if (end - next > 0) {
+                    long missed = (end - next) / periodNanos + 1;
+                    m_Overruns += missed;
+                    next += missed * periodNanos;
+                }
+            }
+        } catch (InterruptedException ex) {
+            // stopped
+        } finally {
+            // not synchronized on the master, whose holder may be joining this thread
+            ModbusSerialTransaction transaction = m_Transaction;
+            if (transaction != null) {
+                transaction.setDelaySpinNanos(-1);
+            }
+            m_CycleThread = null;
+        }
+    }// runCycles
+
     /**
      * Reads a given number of coil states from the slave.
      * <p/>
@@ -148,6 +377,21 @@ public class ModbusSerialMaster {
         return bv;
     }// readCoils
 
+    /**
+     * Reads coil states from the slave into the given
+     * <tt>LongBitVector</tt>. The number of states read is
+     * the size of the vector, which can be reused between polls.
+     *
+     * @param unitid the slave unit id.
+     * @param ref the offset of the coil to start reading from.
+     * @param bits the <tt>LongBitVector</tt> receiving the states.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized void readCoils(int unitid, int ref, LongBitVector bits) throws ModbusException {
+        executeReadCoils(unitid, ref, bits.size()).getCoils(bits);
+    }// readCoils
+
     /**
      * Writes a coil state to the slave.
      *
@@ -212,6 +456,21 @@ public class ModbusSerialMaster {
         return bv;
     }// readInputDiscretes
 
+    /**
+     * Reads input discrete states from the slave into the given
+     * <tt>LongBitVector</tt>. The number of states read is
+     * the size of the vector, which can be reused between polls.
+     *
+     * @param unitid the slave unit id.
+     * @param ref the offset of the input discrete to start reading from.
+     * @param bits the <tt>LongBitVector</tt> receiving the states.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized void readInputDiscretes(int unitid, int ref, LongBitVector bits) throws ModbusException {
+        executeReadInputDiscretes(unitid, ref, bits.size()).getDiscretes(bits);
+    }// readInputDiscretes
+
     /**
      * Reads a given number of input registers from the slave.
      * <p/>
@@ -292,4 +551,337 @@ public class ModbusSerialMaster {
         m_Transaction.execute();
     }// writeMultipleRegisters
 
+    /**
+     * Writes a number of registers to the slave and reads a number of
+     * registers back, in one transaction. The slave performs the write
+     * before the read.
+     * <p/>
+     * Note that the number of registers returned (i.e. array length)
+     * will be according to the number received in the slave response.
+     *
+     * @param unitid the slave unit id.
+     * @param readRef the offset of the register to start reading from.
+     * @param readCount the number of registers to be read.
+     * @param writeRef the offset of the register to start writing to.
+     * @param registers a <tt>Register[]</tt> holding the values of
+     *            the registers to be written.
+     * @return a <tt>Register[]</tt> holding the received registers.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized Register[] readWriteMultipleRegisters(int unitid, int readRef, int readCount, int writeRef,
+            Register[] registers) throws ModbusException {
+        m_ReadWriteMultipleRegistersRequest.setUnitID(unitid);
+        m_ReadWriteMultipleRegistersRequest.setReadReference(readRef);
+        m_ReadWriteMultipleRegistersRequest.setReadWordCount(readCount);
+        m_ReadWriteMultipleRegistersRequest.setWriteReference(writeRef);
+        m_ReadWriteMultipleRegistersRequest.setRegisters(registers);
+        m_Transaction.setRequest(m_ReadWriteMultipleRegistersRequest);
+        m_Transaction.execute();
+        return ((ReadWriteMultipleRegistersResponse) m_Transaction.getResponse()).getRegisters();
+    }// readWriteMultipleRegisters
+
+    /**
+     * Modifies single bits of a register of the slave, in one transaction.
+     * The slave computes
+     * <tt>(current AND andMask) OR (orMask AND (NOT andMask))</tt>.
+     *
+     * @param unitid the slave unit id.
+     * @param ref the offset of the register to be modified.
+     * @param andMask the AND mask; bits set to 1 are kept.
+     * @param orMask the OR mask; bits to be set among the ones not kept.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized void maskWriteRegister(int unitid, int ref, int andMask, int orMask) throws ModbusException {
+        m_MaskWriteRegisterRequest.setUnitID(unitid);
+        m_MaskWriteRegisterRequest.setReference(ref);
+        m_MaskWriteRegisterRequest.setAndMask(andMask);
+        m_MaskWriteRegisterRequest.setOrMask(orMask);
+        m_Transaction.setRequest(m_MaskWriteRegisterRequest);
+        m_Transaction.execute();
+    }// maskWriteRegister
+
+    /**
+     * Reads consecutive 32-bit integers from registers of the slave, decoding
+     * them straight into the given array.
+     * <p/>
+     * Each value spans 2 registers, so <tt>count</tt> values
+     * occupy <tt>2 * count</tt> registers starting at <tt>ref</tt>.
+     *
+     * @param unitid the slave unit id.
+     * @param ref the offset of the first register to read.
+     * @param dest the array receiving the decoded values.
+     * @param destOff the index of the first value in <tt>dest</tt>.
+     * @param count the number of values to be read.
+     * @param order the <tt>WordOrder</tt> used by the slave.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized void readInts(int unitid, int ref, int[] dest, int destOff, int count, WordOrder order)
+            throws ModbusException {
+        executeReadMultipleRegisters(unitid, ref, count * 2).getInts(0, order, dest, destOff, count);
+    }// readInts
+
+    /**
+     * Reads consecutive 32-bit integers from input registers of the slave, decoding
+     * them straight into the given array.
+     * <p/>
+     * Each value spans 2 input registers, so <tt>count</tt> values
+     * occupy <tt>2 * count</tt> input registers starting at <tt>ref</tt>.
+     *
+     * @param unitid the slave unit id.
+     * @param ref the offset of the first input register to read.
+     * @param dest the array receiving the decoded values.
+     * @param destOff the index of the first value in <tt>dest</tt>.
+     * @param count the number of values to be read.
+     * @param order the <tt>WordOrder</tt> used by the slave.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized void readInputInts(int unitid, int ref, int[] dest, int destOff, int count, WordOrder order)
+            throws ModbusException {
+        executeReadInputRegisters(unitid, ref, count * 2).getInts(0, order, dest, destOff, count);
+    }// readInputInts
+
+    /**
+     * Reads consecutive 32-bit floats from registers of the slave, decoding
+     * them straight into the given array.
+     * <p/>
+     * Each value spans 2 registers, so <tt>count</tt> values
+     * occupy <tt>2 * count</tt> registers starting at <tt>ref</tt>.
+     *
+     * @param unitid the slave unit id.
+     * @param ref the offset of the first register to read.
+     * @param dest the array receiving the decoded values.
+     * @param destOff the index of the first value in <tt>dest</tt>.
+     * @param count the number of values to be read.
+     * @param order the <tt>WordOrder</tt> used by the slave.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized void readFloats(int unitid, int ref, float[] dest, int destOff, int count, WordOrder order)
+            throws ModbusException {
+        executeReadMultipleRegisters(unitid, ref, count * 2).getFloats(0, order, dest, destOff, count);
+    }// readFloats
+
+    /**
+     * Reads consecutive 32-bit floats from input registers of the slave, decoding
+     * them straight into the given array.
+     * <p/>
+     * Each value spans 2 input registers, so <tt>count</tt> values
+     * occupy <tt>2 * count</tt> input registers starting at <tt>ref</tt>.
+     *
+     * @param unitid the slave unit id.
+     * @param ref the offset of the first input register to read.
+     * @param dest the array receiving the decoded values.
+     * @param destOff the index of the first value in <tt>dest</tt>.
+     * @param count the number of values to be read.
+     * @param order the <tt>WordOrder</tt> used by the slave.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized void readInputFloats(int unitid, int ref, float[] dest, int destOff, int count, WordOrder order)
+            throws ModbusException {
+        executeReadInputRegisters(unitid, ref, count * 2).getFloats(0, order, dest, destOff, count);
+    }// readInputFloats
+
+    /**
+     * Reads consecutive 64-bit doubles from registers of the slave, decoding
+     * them straight into the given array.
+     * <p/>
+     * Each value spans 4 registers, so <tt>count</tt> values
+     * occupy <tt>4 * count</tt> registers starting at <tt>ref</tt>.
+     *
+     * @param unitid the slave unit id.
+     * @param ref the offset of the first register to read.
+     * @param dest the array receiving the decoded values.
+     * @param destOff the index of the first value in <tt>dest</tt>.
+     * @param count the number of values to be read.
+     * @param order the <tt>WordOrder</tt> used by the slave.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized void readDoubles(int unitid, int ref, double[] dest, int destOff, int count, WordOrder order)
+            throws ModbusException {
+        executeReadMultipleRegisters(unitid, ref, count * 4).getDoubles(0, order, dest, destOff, count);
+    }// readDoubles
+
+    /**
+     * Reads consecutive 64-bit doubles from input registers of the slave, decoding
+     * them straight into the given array.
+     * <p/>
+     * Each value spans 4 input registers, so <tt>count</tt> values
+     * occupy <tt>4 * count</tt> input registers starting at <tt>ref</tt>.
+     *
+     * @param unitid the slave unit id.
+     * @param ref the offset of the first input register to read.
+     * @param dest the array receiving the decoded values.
+     * @param destOff the index of the first value in <tt>dest</tt>.
+     * @param count the number of values to be read.
+     * @param order the <tt>WordOrder</tt> used by the slave.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized void readInputDoubles(int unitid, int ref, double[] dest, int destOff, int count,
+            WordOrder order) throws ModbusException {
+        executeReadInputRegisters(unitid, ref, count * 4).getDoubles(0, order, dest, destOff, count);
+    }// readInputDoubles
+
+    /**
+     * Reads a fixed length ASCII string from registers of the slave.
+     * Each register holds two characters, high byte first.
+     *
+     * @param unitid the slave unit id.
+     * @param ref the offset of the first register to read.
+     * @param count the number of registers holding the string.
+     * @return the string, cut at the first <tt>NUL</tt> character.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized String readString(int unitid, int ref, int count) throws ModbusException {
+        return executeReadMultipleRegisters(unitid, ref, count).getString(0, count);
+    }// readString
+
+    /**
+     * Reads a fixed length ASCII string from input registers of the slave.
+     * Each register holds two characters, high byte first.
+     *
+     * @param unitid the slave unit id.
+     * @param ref the offset of the first input register to read.
+     * @param count the number of input registers holding the string.
+     * @return the string, cut at the first <tt>NUL</tt> character.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized String readInputString(int unitid, int ref, int count) throws ModbusException {
+        return executeReadInputRegisters(unitid, ref, count).getString(0, count);
+    }// readInputString
+
+    /**
+     * Polls the coils of the given detector's block and reports
+     * the states that changed since the previous poll.
+     *
+     * @param unitid the slave unit id.
+     * @param detector the <tt>BitChangeDetector</tt> of the block.
+     * @return the number of changes reported.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized int readCoils(int unitid, BitChangeDetector detector) throws ModbusException {
+        return detector.update(executeReadCoils(unitid, detector.getReference(), detector.getCount()));
+    }// readCoils
+
+    /**
+     * Polls the input discretes of the given detector's block and
+     * reports the states that changed since the previous poll.
+     *
+     * @param unitid the slave unit id.
+     * @param detector the <tt>BitChangeDetector</tt> of the block.
+     * @return the number of changes reported.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized int readInputDiscretes(int unitid, BitChangeDetector detector) throws ModbusException {
+        return detector.update(executeReadInputDiscretes(unitid, detector.getReference(), detector.getCount()));
+    }// readInputDiscretes
+
+    /**
+     * Polls the registers of the given detector's block and reports
+     * the values that changed by more than their deadband.
+     *
+     * @param unitid the slave unit id.
+     * @param detector the <tt>RegisterChangeDetector</tt> of the block.
+     * @return the number of changes reported.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized int readMultipleRegisters(int unitid, RegisterChangeDetector detector) throws ModbusException {
+        return detector.update(executeReadMultipleRegisters(unitid, detector.getReference(), detector.getCount()));
+    }// readMultipleRegisters
+
+    /**
+     * Polls the input registers of the given detector's block and
+     * reports the values that changed by more than their deadband.
+     *
+     * @param unitid the slave unit id.
+     * @param detector the <tt>RegisterChangeDetector</tt> of the block.
+     * @return the number of changes reported.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized int readInputRegisters(int unitid, RegisterChangeDetector detector) throws ModbusException {
+        return detector.update(executeReadInputRegisters(unitid, detector.getReference(), detector.getCount()));
+    }// readInputRegisters
+
+    private ReadMultipleRegistersResponse executeReadMultipleRegisters(int unitid, int ref, int count)
+            throws ModbusException {
+        m_ReadMultipleRegistersRequest.setUnitID(unitid);
+        m_ReadMultipleRegistersRequest.setReference(ref);
+        m_ReadMultipleRegistersRequest.setWordCount(count);
+        m_Transaction.setRequest(m_ReadMultipleRegistersRequest);
+        m_Transaction.execute();
+        ModbusResponse response = m_Transaction.getResponse();
+        // a short response would fail decoding with an unchecked exception
+        int words = response instanceof ReadMultipleRegistersResponse
+                ? ((ReadMultipleRegistersResponse) response).getWordCount() : 0;
+        if (words < count) {
+            throw new ModbusException(
+                    "Malformed response: " + count + " registers requested, " + words + " received");
+        }
+        return (ReadMultipleRegistersResponse) response;
+    }// executeReadMultipleRegisters
+
+    private ReadInputRegistersResponse executeReadInputRegisters(int unitid, int ref, int count)
+            throws ModbusException {
+        m_ReadInputRegistersRequest.setUnitID(unitid);
+        m_ReadInputRegistersRequest.setReference(ref);
+        m_ReadInputRegistersRequest.setWordCount(count);
+        m_Transaction.setRequest(m_ReadInputRegistersRequest);
+        m_Transaction.execute();
+        ModbusResponse response = m_Transaction.getResponse();
+        // a short response would fail decoding with an unchecked exception
+        int words = response instanceof ReadInputRegistersResponse
+                ? ((ReadInputRegistersResponse) response).getWordCount() : 0;
+        if (words < count) {
+            throw new ModbusException(
+                    "Malformed response: " + count + " registers requested, " + words + " received");
+        }
+        return (ReadInputRegistersResponse) response;
+    }// executeReadInputRegisters
+
+    private ReadCoilsResponse executeReadCoils(int unitid, int ref, int count) throws ModbusException {
+        m_ReadCoilsRequest.setUnitID(unitid);
+        m_ReadCoilsRequest.setReference(ref);
+        m_ReadCoilsRequest.setBitCount(count);
+        m_Transaction.setRequest(m_ReadCoilsRequest);
+        m_Transaction.execute();
+        ModbusResponse response = m_Transaction.getResponse();
+        // a short response would fail decoding with an unchecked exception
+        int bits = response instanceof ReadCoilsResponse ? ((ReadCoilsResponse) response).getBitCount() : 0;
+        if (bits < count) {
+            throw new ModbusException(
+                    "Malformed response: " + count + " coils requested, " + bits + " received");
+        }
+        return (ReadCoilsResponse) response;
+    }// executeReadCoils
+
+    private ReadInputDiscretesResponse executeReadInputDiscretes(int unitid, int ref, int count)
+            throws ModbusException {
+        m_ReadInputDiscretesRequest.setUnitID(unitid);
+        m_ReadInputDiscretesRequest.setReference(ref);
+        m_ReadInputDiscretesRequest.setBitCount(count);
+        m_Transaction.setRequest(m_ReadInputDiscretesRequest);
+        m_Transaction.execute();
+        ModbusResponse response = m_Transaction.getResponse();
+        // a short response would fail decoding with an unchecked exception
+        int bits = response instanceof ReadInputDiscretesResponse
+                ? ((ReadInputDiscretesResponse) response).getBitCount() : 0;
+        if (bits < count) {
+            throw new ModbusException(
+                    "Malformed response: " + count + " input discretes requested, " + bits + " received");
+        }
+        return (ReadInputDiscretesResponse) response;
+    }// executeReadInputDiscretes
+
 }// class ModbusSerialMaster
@@ -17,10 +17,14 @@
 package net.wimpi.modbus.facade;
 
 import java.net.InetAddress;
+import java.net.Socket;
 import java.net.UnknownHostException;
 
+import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.ModbusException;
 import net.wimpi.modbus.io.ModbusTCPTransaction;
+import net.wimpi.modbus.msg.MaskWriteRegisterRequest;
+import net.wimpi.modbus.msg.ModbusResponse;
 import net.wimpi.modbus.msg.ReadCoilsRequest;
 import net.wimpi.modbus.msg.ReadCoilsResponse;
 import net.wimpi.modbus.msg.ReadInputDiscretesRequest;
@@ -29,6 +33,8 @@ import net.wimpi.modbus.msg.ReadInputRegistersRequest;
 import net.wimpi.modbus.msg.ReadInputRegistersResponse;
 import net.wimpi.modbus.msg.ReadMultipleRegistersRequest;
 import net.wimpi.modbus.msg.ReadMultipleRegistersResponse;
+import net.wimpi.modbus.msg.ReadWriteMultipleRegistersRequest;
+import net.wimpi.modbus.msg.ReadWriteMultipleRegistersResponse;
 import net.wimpi.modbus.msg.WriteCoilRequest;
 import net.wimpi.modbus.msg.WriteCoilResponse;
 import net.wimpi.modbus.msg.WriteMultipleCoilsRequest;
@@ -38,6 +44,8 @@ import net.wimpi.modbus.net.TCPMasterConnection;
 import net.wimpi.modbus.procimg.InputRegister;
 import net.wimpi.modbus.procimg.Register;
 import net.wimpi.modbus.util.BitVector;
+import net.wimpi.modbus.util.LongBitVector;
+import net.wimpi.modbus.util.WordOrder;
 
 /**
  * Modbus/TCP Master facade.
@@ -45,7 +53,7 @@ import net.wimpi.modbus.util.BitVector;
  * @author Dieter Wimberger
  * @version @version@ (@date@)
  */
-public class ModbusTCPMaster {
+public class ModbusTCPMaster implements WriteCoalescer.Writer {
 
     private TCPMasterConnection m_Connection;
     private InetAddress m_SlaveAddress;
@@ -58,6 +66,8 @@ public class ModbusTCPMaster {
     private ReadMultipleRegistersRequest m_ReadMultipleRegistersRequest;
     private WriteSingleRegisterRequest m_WriteSingleRegisterRequest;
     private WriteMultipleRegistersRequest m_WriteMultipleRegistersRequest;
+    private ReadWriteMultipleRegistersRequest m_ReadWriteMultipleRegistersRequest;
+    private MaskWriteRegisterRequest m_MaskWriteRegisterRequest;
     private boolean m_Reconnecting = false;
 
     /**
@@ -68,21 +78,30 @@ public class ModbusTCPMaster {
      *            specifying the slave to communicate with.
      */
     public ModbusTCPMaster(String addr) {
-        try {
-            m_SlaveAddress = InetAddress.getByName(addr);
-            m_Connection = new TCPMasterConnection(m_SlaveAddress);
-            m_ReadCoilsRequest = new ReadCoilsRequest();
-            m_ReadInputDiscretesRequest = new ReadInputDiscretesRequest();
-            m_WriteCoilRequest = new WriteCoilRequest();
-            m_WriteMultipleCoilsRequest = new WriteMultipleCoilsRequest();
-            m_ReadInputRegistersRequest = new ReadInputRegistersRequest();
-            m_ReadMultipleRegistersRequest = new ReadMultipleRegistersRequest();
-            m_WriteSingleRegisterRequest = new WriteSingleRegisterRequest();
-            m_WriteMultipleRegistersRequest = new WriteMultipleRegistersRequest();
+        this(getByName(addr), Modbus.DEFAULT_PORT);
+    }// constructor
 
-        } catch (UnknownHostException e) {
-            throw new RuntimeException(e.getMessage());
-        }
+    /**
+     * Constructs a new master facade instance for communication
+     * with a given, already resolved slave address.
+     *
+     * @param addr the <tt>InetAddress</tt> of the slave.
+     * @param port the port the slave is listening to.
+     */
+    public ModbusTCPMaster(InetAddress addr, int port) {
+        m_SlaveAddress = addr;
+        m_Connection = new TCPMasterConnection(m_SlaveAddress);
+        m_Connection.setPort(port);
+        m_ReadCoilsRequest = new ReadCoilsRequest();
+        m_ReadInputDiscretesRequest = new ReadInputDiscretesRequest();
+        m_WriteCoilRequest = new WriteCoilRequest();
+        m_WriteMultipleCoilsRequest = new WriteMultipleCoilsRequest();
+        m_ReadInputRegistersRequest = new ReadInputRegistersRequest();
+        m_ReadMultipleRegistersRequest = new ReadMultipleRegistersRequest();
+        m_WriteSingleRegisterRequest = new WriteSingleRegisterRequest();
+        m_WriteMultipleRegistersRequest = new WriteMultipleRegistersRequest();
+        m_ReadWriteMultipleRegistersRequest = new ReadWriteMultipleRegistersRequest();
+        m_MaskWriteRegisterRequest = new MaskWriteRegisterRequest();
     }// constructor
 
     /**
@@ -111,6 +130,33 @@ public class ModbusTCPMaster {
         }
     }// connect
 
+    /**
+     * Connects this <tt>ModbusTCPMaster</tt> with the slave over a socket
+     * already connected to it, e.g. by a {@link ModbusTCPMasterBootstrap}.
+     *
+     * @param socket the connected <tt>Socket</tt>.
+     * @throws IllegalStateException if this master is connected already;
+     *             the socket is left to the caller.
+     * @throws Exception if the connection cannot be set up.
+     */
+    public void connect(Socket socket) throws Exception {
+        if (m_Connection.isConnected()) {
+            throw new IllegalStateException("Already connected to " + m_Connection.getAddress());
+        }
+        m_Connection.connect(socket);
+        m_Transaction = new ModbusTCPTransaction(m_Connection);
+        m_Transaction.setReconnecting(m_Reconnecting);
+    }// connect
+
+    /**
+     * Tests if this <tt>ModbusTCPMaster</tt> is connected with the slave.
+     *
+     * @return true if connected, false otherwise.
+     */
+    public boolean isConnected() {
+        return m_Transaction != null && m_Connection.isConnected();
+    }// isConnected
+
     /**
      * Disconnects this <tt>ModbusTCPMaster</tt> from the slave.
      */
@@ -121,6 +167,15 @@ public class ModbusTCPMaster {
         }
     }// disconnect
 
+    /**
+     * Sets the receive timeout of the connection with the slave.
+     *
+     * @param timeout the timeout in milliseconds.
+     */
+    public void setTimeout(int timeout) {
+        m_Connection.setTimeout(timeout);
+    }// setTimeout
+
     /**
      * Sets the flag that specifies whether to maintain a
      * constant connection or reconnect for every transaction.
@@ -146,6 +201,14 @@ public class ModbusTCPMaster {
         return m_Reconnecting;
     }// isReconnecting
 
+    private static InetAddress getByName(String addr) {
+        try {
+            return InetAddress.getByName(addr);
+        } catch (UnknownHostException e) {
+            throw new RuntimeException(e.getMessage());
+        }
+    }// getByName
+
     /**
      * Reads a given number of coil states from the slave.
      * <p/>
@@ -169,6 +232,20 @@ public class ModbusTCPMaster {
         return bv;
     }// readCoils
 
+    /**
+     * Reads coil states from the slave into the given
+     * <tt>LongBitVector</tt>. The number of states read is
+     * the size of the vector, which can be reused between polls.
+     *
+     * @param ref the offset of the coil to start reading from.
+     * @param bits the <tt>LongBitVector</tt> receiving the states.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized void readCoils(int ref, LongBitVector bits) throws ModbusException {
+        executeReadCoils(ref, bits.size()).getCoils(bits);
+    }// readCoils
+
     /**
      * Writes a coil state to the slave.
      *
@@ -200,6 +277,23 @@ public class ModbusTCPMaster {
      *             a transaction error occurs.
      */
     public synchronized void writeMultipleCoils(int ref, BitVector coils) throws ModbusException {
+        writeMultipleCoils(Modbus.DEFAULT_UNIT_ID, ref, coils);
+    }// writeMultipleCoils
+
+    /**
+     * Writes a given number of coil states to the slave.
+     * <p/>
+     * Note that the number of coils to be written is given
+     * implicitly, through {@link BitVector#size()}.
+     *
+     * @param unitid the slave unit id.
+     * @param ref the offset of the coil to start writing to.
+     * @param coils a <tt>BitVector</tt> which holds the coil states to be written.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized void writeMultipleCoils(int unitid, int ref, BitVector coils) throws ModbusException {
+        m_WriteMultipleCoilsRequest.setUnitID(unitid);
         m_WriteMultipleCoilsRequest.setReference(ref);
         m_WriteMultipleCoilsRequest.setCoils(coils);
         m_Transaction.setRequest(m_WriteMultipleCoilsRequest);
@@ -229,6 +323,20 @@ public class ModbusTCPMaster {
         return bv;
     }// readInputDiscretes
 
+    /**
+     * Reads input discrete states from the slave into the given
+     * <tt>LongBitVector</tt>. The number of states read is
+     * the size of the vector, which can be reused between polls.
+     *
+     * @param ref the offset of the input discrete to start reading from.
+     * @param bits the <tt>LongBitVector</tt> receiving the states.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized void readInputDiscretes(int ref, LongBitVector bits) throws ModbusException {
+        executeReadInputDiscretes(ref, bits.size()).getDiscretes(bits);
+    }// readInputDiscretes
+
     /**
      * Reads a given number of input registers from the slave.
      * <p/>
@@ -295,10 +403,336 @@ public class ModbusTCPMaster {
      *             a transaction error occurs.
      */
     public synchronized void writeMultipleRegisters(int ref, Register[] registers) throws ModbusException {
+        writeMultipleRegisters(Modbus.DEFAULT_UNIT_ID, ref, registers);
+    }// writeMultipleRegisters
+
+    /**
+     * Writes a number of registers to the slave.
+     *
+     * @param unitid the slave unit id.
+     * @param ref the offset of the register to start writing to.
+     * @param registers a <tt>Register[]</tt> holding the values of
+     *            the registers to be written.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized void writeMultipleRegisters(int unitid, int ref, Register[] registers) throws ModbusException {
+        m_WriteMultipleRegistersRequest.setUnitID(unitid);
         m_WriteMultipleRegistersRequest.setReference(ref);
         m_WriteMultipleRegistersRequest.setRegisters(registers);
         m_Transaction.setRequest(m_WriteMultipleRegistersRequest);
         m_Transaction.execute();
     }// writeMultipleRegisters
 
+    /**
+     * Writes a number of registers to the slave and reads a number of
+     * registers back, in one transaction. The slave performs the write
+     * before the read.
+     * <p/>
+     * Note that the number of registers returned (i.e. array length)
+     * will be according to the number received in the slave response.
+     *
+     * @param readRef the offset of the register to start reading from.
+     * @param readCount the number of registers to be read.
+     * @param writeRef the offset of the register to start writing to.
+     * @param registers a <tt>Register[]</tt> holding the values of
+     *            the registers to be written.
+     * @return a <tt>Register[]</tt> holding the received registers.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized Register[] readWriteMultipleRegisters(int readRef, int readCount, int writeRef,
+            Register[] registers) throws ModbusException {
+        m_ReadWriteMultipleRegistersRequest.setReadReference(readRef);
+        m_ReadWriteMultipleRegistersRequest.setReadWordCount(readCount);
+        m_ReadWriteMultipleRegistersRequest.setWriteReference(writeRef);
+        m_ReadWriteMultipleRegistersRequest.setRegisters(registers);
+        m_Transaction.setRequest(m_ReadWriteMultipleRegistersRequest);
+        m_Transaction.execute();
+        return ((ReadWriteMultipleRegistersResponse) m_Transaction.getResponse()).getRegisters();
+    }// readWriteMultipleRegisters
+
+    /**
+     * Modifies single bits of a register of the slave, in one transaction.
+     * The slave computes
+     * <tt>(current AND andMask) OR (orMask AND (NOT andMask))</tt>.
+     *
+     * @param ref the offset of the register to be modified.
+     * @param andMask the AND mask; bits set to 1 are kept.
+     * @param orMask the OR mask; bits to be set among the ones not kept.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized void maskWriteRegister(int ref, int andMask, int orMask) throws ModbusException {
+        m_MaskWriteRegisterRequest.setReference(ref);
+        m_MaskWriteRegisterRequest.setAndMask(andMask);
+        m_MaskWriteRegisterRequest.setOrMask(orMask);
+        m_Transaction.setRequest(m_MaskWriteRegisterRequest);
+        m_Transaction.execute();
+    }// maskWriteRegister
+
+    /**
+     * Reads consecutive 32-bit integers from registers of the slave, decoding
+     * them straight into the given array.
+     * <p/>
+     * Each value spans 2 registers, so <tt>count</tt> values
+     * occupy <tt>2 * count</tt> registers starting at <tt>ref</tt>.
+     *
+     * @param ref the offset of the first register to read.
+     * @param dest the array receiving the decoded values.
+     * @param destOff the index of the first value in <tt>dest</tt>.
+     * @param count the number of values to be read.
+     * @param order the <tt>WordOrder</tt> used by the slave.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized void readInts(int ref, int[] dest, int destOff, int count, WordOrder order)
+            throws ModbusException {
+        executeReadMultipleRegisters(ref, count * 2).getInts(0, order, dest, destOff, count);
+    }// readInts
+
+    /**
+     * Reads consecutive 32-bit integers from input registers of the slave, decoding
+     * them straight into the given array.
+     * <p/>
+     * Each value spans 2 input registers, so <tt>count</tt> values
+     * occupy <tt>2 * count</tt> input registers starting at <tt>ref</tt>.
+     *
+     * @param ref the offset of the first input register to read.
+     * @param dest the array receiving the decoded values.
+     * @param destOff the index of the first value in <tt>dest</tt>.
+     * @param count the number of values to be read.
+     * @param order the <tt>WordOrder</tt> used by the slave.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized void readInputInts(int ref, int[] dest, int destOff, int count, WordOrder order)
+            throws ModbusException {
+        executeReadInputRegisters(ref, count * 2).getInts(0, order, dest, destOff, count);
+    }// readInputInts
+
+    /**
+     * Reads consecutive 32-bit floats from registers of the slave, decoding
+     * them straight into the given array.
+     * <p/>
+     * Each value spans 2 registers, so <tt>count</tt> values
+     * occupy <tt>2 * count</tt> registers starting at <tt>ref</tt>.
+     *
+     * @param ref the offset of the first register to read.
+     * @param dest the array receiving the decoded values.
+     * @param destOff the index of the first value in <tt>dest</tt>.
+     * @param count the number of values to be read.
+     * @param order the <tt>WordOrder</tt> used by the slave.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized void readFloats(int ref, float[] dest, int destOff, int count, WordOrder order)
+            throws ModbusException {
+        executeReadMultipleRegisters(ref, count * 2).getFloats(0, order, dest, destOff, count);
+    }// readFloats
+
+    /**
+     * Reads consecutive 32-bit floats from input registers of the slave, decoding
+     * them straight into the given array.
+     * <p/>
+     * Each value spans 2 input registers, so <tt>count</tt> values
+     * occupy <tt>2 * count</tt> input registers starting at <tt>ref</tt>.
+     *
+     * @param ref the offset of the first input register to read.
+     * @param dest the array receiving the decoded values.
+     * @param destOff the index of the first value in <tt>dest</tt>.
+     * @param count the number of values to be read.
+     * @param order the <tt>WordOrder</tt> used by the slave.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized void readInputFloats(int ref, float[] dest, int destOff, int count, WordOrder order)
+            throws ModbusException {
+        executeReadInputRegisters(ref, count * 2).getFloats(0, order, dest, destOff, count);
+    }// readInputFloats
+
+    /**
+     * Reads consecutive 64-bit doubles from registers of the slave, decoding
+     * them straight into the given array.
+     * <p/>
+     * Each value spans 4 registers, so <tt>count</tt> values
+     * occupy <tt>4 * count</tt> registers starting at <tt>ref</tt>.
+     *
+     * @param ref the offset of the first register to read.
+     * @param dest the array receiving the decoded values.
+     * @param destOff the index of the first value in <tt>dest</tt>.
+     * @param count the number of values to be read.
+     * @param order the <tt>WordOrder</tt> used by the slave.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized void readDoubles(int ref, double[] dest, int destOff, int count, WordOrder order)
+            throws ModbusException {
+        executeReadMultipleRegisters(ref, count * 4).getDoubles(0, order, dest, destOff, count);
+    }// readDoubles
+
+    /**
+     * Reads consecutive 64-bit doubles from input registers of the slave, decoding
+     * them straight into the given array.
+     * <p/>
+     * Each value spans 4 input registers, so <tt>count</tt> values
+     * occupy <tt>4 * count</tt> input registers starting at <tt>ref</tt>.
+     *
+     * @param ref the offset of the first input register to read.
+     * @param dest the array receiving the decoded values.
+     * @param destOff the index of the first value in <tt>dest</tt>.
+     * @param count the number of values to be read.
+     * @param order the <tt>WordOrder</tt> used by the slave.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized void readInputDoubles(int ref, double[] dest, int destOff, int count, WordOrder order)
+            throws ModbusException {
+        executeReadInputRegisters(ref, count * 4).getDoubles(0, order, dest, destOff, count);
+    }// readInputDoubles
+
+    /**
+     * Reads a fixed length ASCII string from registers of the slave.
+     * Each register holds two characters, high byte first.
+     *
+     * @param ref the offset of the first register to read.
+     * @param count the number of registers holding the string.
+     * @return the string, cut at the first <tt>NUL</tt> character.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized String readString(int ref, int count) throws ModbusException {
+        return executeReadMultipleRegisters(ref, count).getString(0, count);
+    }// readString
+
+    /**
+     * Reads a fixed length ASCII string from input registers of the slave.
+     * Each register holds two characters, high byte first.
+     *
+     * @param ref the offset of the first input register to read.
+     * @param count the number of input registers holding the string.
+     * @return the string, cut at the first <tt>NUL</tt> character.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized String readInputString(int ref, int count) throws ModbusException {
+        return executeReadInputRegisters(ref, count).getString(0, count);
+    }// readInputString
+
+    /**
+     * Polls the coils of the given detector's block and reports
+     * the states that changed since the previous poll.
+     *
+     * @param detector the <tt>BitChangeDetector</tt> of the block.
+     * @return the number of changes reported.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized int readCoils(BitChangeDetector detector) throws ModbusException {
+        return detector.update(executeReadCoils(detector.getReference(), detector.getCount()));
+    }// readCoils
+
+    /**
+     * Polls the input discretes of the given detector's block and
+     * reports the states that changed since the previous poll.
+     *
+     * @param detector the <tt>BitChangeDetector</tt> of the block.
+     * @return the number of changes reported.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized int readInputDiscretes(BitChangeDetector detector) throws ModbusException {
+        return detector.update(executeReadInputDiscretes(detector.getReference(), detector.getCount()));
+    }// readInputDiscretes
+
+    /**
+     * Polls the registers of the given detector's block and reports
+     * the values that changed by more than their deadband.
+     *
+     * @param detector the <tt>RegisterChangeDetector</tt> of the block.
+     * @return the number of changes reported.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized int readMultipleRegisters(RegisterChangeDetector detector) throws ModbusException {
+        return detector.update(executeReadMultipleRegisters(detector.getReference(), detector.getCount()));
+    }// readMultipleRegisters
+
+    /**
+     * Polls the input registers of the given detector's block and
+     * reports the values that changed by more than their deadband.
+     *
+     * @param detector the <tt>RegisterChangeDetector</tt> of the block.
+     * @return the number of changes reported.
+     * @throws ModbusException if an I/O error, a slave exception or
+     *             a transaction error occurs.
+     */
+    public synchronized int readInputRegisters(RegisterChangeDetector detector) throws ModbusException {
+        return detector.update(executeReadInputRegisters(detector.getReference(), detector.getCount()));
+    }// readInputRegisters
+
+    private ReadMultipleRegistersResponse executeReadMultipleRegisters(int ref, int count)
+            throws ModbusException {
+        m_ReadMultipleRegistersRequest.setReference(ref);
+        m_ReadMultipleRegistersRequest.setWordCount(count);
+        m_Transaction.setRequest(m_ReadMultipleRegistersRequest);
+        m_Transaction.execute();
+        ModbusResponse response = m_Transaction.getResponse();
+        // a short response would fail decoding with an unchecked exception
+        int words = response instanceof ReadMultipleRegistersResponse
+                ? ((ReadMultipleRegistersResponse) response).getWordCount() : 0;
+        if (words < count) {
+            throw new ModbusException(
+                    "Malformed response: " + count + " registers requested, " + words + " received");
+        }
+        return (ReadMultipleRegistersResponse) response;
+    }// executeReadMultipleRegisters
+
+    private ReadInputRegistersResponse executeReadInputRegisters(int ref, int count) throws ModbusException {
+        m_ReadInputRegistersRequest.setReference(ref);
+        m_ReadInputRegistersRequest.setWordCount(count);
+        m_Transaction.setRequest(m_ReadInputRegistersRequest);
+        m_Transaction.execute();
+        ModbusResponse response = m_Transaction.getResponse();
+        // a short response would fail decoding with an unchecked exception
+        int words = response instanceof ReadInputRegistersResponse
+                ? ((ReadInputRegistersResponse) response).getWordCount() : 0;
+        if (words < count) {
+            throw new ModbusException(
+                    "Malformed response: " + count + " registers requested, " + words + " received");
+        }
+        return (ReadInputRegistersResponse) response;
+    }// executeReadInputRegisters
+
+    private ReadCoilsResponse executeReadCoils(int ref, int count) throws ModbusException {
+        m_ReadCoilsRequest.setReference(ref);
+        m_ReadCoilsRequest.setBitCount(count);
+        m_Transaction.setRequest(m_ReadCoilsRequest);
+        m_Transaction.execute();
+        ModbusResponse response = m_Transaction.getResponse();
+        // a short response would fail decoding with an unchecked exception
+        int bits = response instanceof ReadCoilsResponse ? ((ReadCoilsResponse) response).getBitCount() : 0;
+        if (bits < count) {
+            throw new ModbusException(
+                    "Malformed response: " + count + " coils requested, " + bits + " received");
+        }
+        return (ReadCoilsResponse) response;
+    }// executeReadCoils
+
+    private ReadInputDiscretesResponse executeReadInputDiscretes(int ref, int count) throws ModbusException {
+        m_ReadInputDiscretesRequest.setReference(ref);
+        m_ReadInputDiscretesRequest.setBitCount(count);
+        m_Transaction.setRequest(m_ReadInputDiscretesRequest);
+        m_Transaction.execute();
+        ModbusResponse response = m_Transaction.getResponse();
+        // a short response would fail decoding with an unchecked exception
+        int bits = response instanceof ReadInputDiscretesResponse
+                ? ((ReadInputDiscretesResponse) response).getBitCount() : 0;
+        if (bits < count) {
+            throw new ModbusException(
+                    "Malformed response: " + count + " input discretes requested, " + bits + " received");
+        }
+        return (ReadInputDiscretesResponse) response;
+    }// executeReadInputDiscretes
+
 }// class ModbusTCPMaster
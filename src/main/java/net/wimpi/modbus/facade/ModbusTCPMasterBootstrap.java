@@ -0,0 +1,632 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.facade;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.wimpi.modbus.Modbus;
+
+/**
+ * Class implementing the concurrent start up of a fleet of
+ * {@link ModbusTCPMaster} instances.
+ * <p>
+ * Host names are resolved by a small pool of resolver threads, and the
+ * connections are opened with non-blocking connects multiplexed by a single
+ * thread, at most a given number at a time. A device that is ready is
+ * handed a connected master, so it can be polled while the rest of the fleet
+ * is still connecting. Unreachable devices are retried in the background
+ * with an exponentially growing, jittered interval, until they are ready or
+ * the bootstrap is closed.
+ * <p>
+ * Typical use:
+ *
+ * <pre>
+ * ModbusTCPMasterBootstrap bootstrap = new ModbusTCPMasterBootstrap();
+ * for (String host : hosts) {
+ *     devices.add(bootstrap.add(host, Modbus.DEFAULT_PORT));
+ * }
+ * bootstrap.start();
+ * bootstrap.awaitFirstAttempts(10000);
+ * // poll the devices that are ready
+ * </pre>
+ *
+ * @version @version@ (@date@)
+ */
+public class ModbusTCPMasterBootstrap implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ModbusTCPMasterBootstrap.class);
+
+    /**
+     * Defines the default number of concurrent connects (<b>64</b>).
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_CONNECTS = 64;
+
+    /**
+     * Defines the default number of resolver threads (<b>4</b>).
+     */
+    public static final int DEFAULT_RESOLVER_THREADS = 4;
+
+    /**
+     * Defines the default initial retry interval in milliseconds (<b>5000</b>).
+     */
+    public static final int DEFAULT_RETRY_INTERVAL = 5000;
+
+    /**
+     * Defines the default maximum retry interval in milliseconds (<b>300000</b>).
+     */
+    public static final int DEFAULT_MAX_RETRY_INTERVAL = 300000;
+
+    /**
+     * Defines the device state before its first attempt.
+     */
+    public static final int NEW = 0;
+
+    /**
+     * Defines the device state while its host name is resolved.
+     */
+    public static final int RESOLVING = 1;
+
+    /**
+     * Defines the device state while it is connected.
+     */
+    public static final int CONNECTING = 2;
+
+    /**
+     * Defines the device state once its master is connected.
+     */
+    public static final int READY = 3;
+
+    /**
+     * Defines the device state while waiting for the next retry.
+     */
+    public static final int OFFLINE = 4;
+
+    /**
+     * Interface for receiving the readiness of devices.
+     * Methods are called by the bootstrap thread and should return quickly.
+     */
+    public interface Listener {
+
+        /**
+         * Called when the master of a device has been connected.
+         *
+         * @param device the <tt>Device</tt>.
+         */
+        void deviceReady(Device device);
+
+        /**
+         * Called when an attempt to connect a device failed.
+         *
+         * @param device the <tt>Device</tt>, holding the cause as last error.
+         */
+        void deviceOffline(Device device);
+
+    }// interface Listener
+
+    // instance attributes
+    private final List<Device> m_Devices = new CopyOnWriteArrayList<>();
+    private final Queue<Device> m_Incoming = new ConcurrentLinkedQueue<>();
+    private final Queue<Device> m_Pending = new ArrayDeque<>();
+    private final PriorityQueue<Device> m_Scheduled = new PriorityQueue<>(16, new Comparator<Device>() {
+        @Override
+        public int compare(Device a, Device b) {
+            return Long.compare(a.m_NextAttempt, b.m_NextAttempt);
+        }
+    });
+    private final int m_MaxConcurrentConnects;
+    private int m_ConnectTimeout = Modbus.DEFAULT_TIMEOUT;
+    private int m_Timeout = Modbus.DEFAULT_TIMEOUT;
+    private int m_RetryInterval = DEFAULT_RETRY_INTERVAL;
+    private int m_MaxRetryInterval = DEFAULT_MAX_RETRY_INTERVAL;
+    private volatile Listener m_Listener;
+    private ExecutorService m_Resolver;
+    private Selector m_Selector;
+    private Thread m_Thread;
+    private volatile boolean m_Running;
+    private int m_Connecting;
+    private int m_Attempted;
+
+    /**
+     * Constructs a new <tt>ModbusTCPMasterBootstrap</tt> instance
+     * with the default number of concurrent connects.
+     */
+    public ModbusTCPMasterBootstrap() {
+        this(DEFAULT_MAX_CONCURRENT_CONNECTS);
+    }// constructor
+
+    /**
+     * Constructs a new <tt>ModbusTCPMasterBootstrap</tt> instance.
+     *
+     * @param maxConcurrentConnects the maximum number of connects in progress at a time.
+     */
+    public ModbusTCPMasterBootstrap(int maxConcurrentConnects) {
+        if (maxConcurrentConnects < 1) {
+            throw new IllegalArgumentException("Illegal number of connects: " + maxConcurrentConnects);
+        }
+        m_MaxConcurrentConnects = maxConcurrentConnects;
+    }// constructor
+
+    /**
+     * Sets the timeout of a connect attempt. Must be set before starting.
+     *
+     * @param timeout the timeout in milliseconds.
+     */
+    public void setConnectTimeout(int timeout) {
+        m_ConnectTimeout = timeout;
+    }// setConnectTimeout
+
+    /**
+     * Sets the receive timeout of the connected masters. Must be set before starting.
+     *
+     * @param timeout the timeout in milliseconds.
+     */
+    public void setTimeout(int timeout) {
+        m_Timeout = timeout;
+    }// setTimeout
+
+    /**
+     * Sets the initial and maximum interval of retries. Must be set before starting.
+     *
+     * @param interval the interval after the first failure in milliseconds.
+     * @param maxInterval the maximum interval in milliseconds.
+     */
+    public void setRetryInterval(int interval, int maxInterval) {
+        m_RetryInterval = interval;
+        m_MaxRetryInterval = maxInterval;
+    }// setRetryInterval
+
+    /**
+     * Sets the listener receiving the readiness of devices.
+     *
+     * @param listener the <tt>Listener</tt>, or <tt>null</tt> for none.
+     */
+    public void setListener(Listener listener) {
+        m_Listener = listener;
+    }// setListener
+
+    /**
+     * Adds a device to be connected. Devices may be added before
+     * and after starting.
+     *
+     * @param host the host name or IP number of the device.
+     * @param port the port of the device.
+     * @return the <tt>Device</tt> tracking the readiness.
+     */
+    public Device add(String host, int port) {
+        Device device = new Device(host, port);
+        m_Devices.add(device);
+        m_Incoming.add(device);
+        Selector selector = m_Selector;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        return device;
+    }// add
+
+    /**
+     * Returns all devices added so far.
+     *
+     * @return an unmodifiable list of the devices.
+     */
+    public List<Device> getDevices() {
+        return Collections.unmodifiableList(m_Devices);
+    }// getDevices
+
+    /**
+     * Returns the number of devices that are ready.
+     *
+     * @return the number of ready devices.
+     */
+    public int getReadyCount() {
+        int count = 0;
+        for (Device device : m_Devices) {
+            if (device.isReady()) {
+                count++;
+            }
+        }
+        return count;
+    }// getReadyCount
+
+    /**
+     * Starts connecting the devices.
+     *
+     * @throws IOException if the selector cannot be opened.
+     */
+    public synchronized void start() throws IOException {
+        if (m_Running) {
+            return;
+        }
+        m_Selector = Selector.open();
+        m_Resolver = Executors.newFixedThreadPool(DEFAULT_RESOLVER_THREADS, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "ModbusTCPMasterBootstrap-resolver");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        m_Running = true;
+        m_Thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runLoop();
+            }
+        }, "ModbusTCPMasterBootstrap");
+        m_Thread.setDaemon(true);
+        m_Thread.start();
+    }// start
+
+    /**
+     * Waits until every device added so far was attempted at least once,
+     * i.e. is ready or offline.
+     *
+     * @param timeoutMillis the maximum time to wait in milliseconds.
+     * @return true if all devices were attempted, false if the time elapsed.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public synchronized boolean awaitFirstAttempts(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (m_Attempted < m_Devices.size()) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                return false;
+            }
+            wait(left);
+        }
+        return true;
+    }// awaitFirstAttempts
+
+    /**
+     * Stops retrying and aborts the connects in progress. Devices
+     * that are ready keep their connected masters.
+     */
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            if (!m_Running) {
+                return;
+            }
+            m_Running = false;
+            thread = m_Thread;
+        }
+        m_Selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        m_Resolver.shutdownNow();
+    }// close
+
+    private void runLoop() {
+        try {
+            while (m_Running) {
+                long now = System.currentTimeMillis();
+                Device device;
+                while ((device = m_Incoming.poll()) != null) {
+                    dispatch(device);
+                }
+                while (!m_Scheduled.isEmpty() && m_Scheduled.peek().m_NextAttempt <= now) {
+                    dispatch(m_Scheduled.poll());
+                }
+                while (m_Connecting < m_MaxConcurrentConnects && !m_Pending.isEmpty()) {
+                    startConnect(m_Pending.poll());
+                }
+                long wait = 1000;
+                if (!m_Scheduled.isEmpty()) {
+                    wait = Math.min(wait, m_Scheduled.peek().m_NextAttempt - now);
+                }
+                if (m_Connecting > 0) {
+                    wait = Math.min(wait, m_ConnectTimeout);
+                }
+                m_Selector.select(Math.max(1, wait));
+                finishConnects();
+                expireConnects();
+            }
+        } catch (IOException ex) {
+            logger.error("Bootstrap stopped: {}", ex.getMessage());
+        } catch (RuntimeException ex) {
+            logger.error("Bootstrap stopped", ex);
+        } finally {
+            for (SelectionKey key : m_Selector.keys()) {
+                closeQuietly((SocketChannel) key.channel());
+            }
+            try {
+                m_Selector.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+            m_Resolver.shutdownNow();
+            synchronized (this) {
+                // also when stopped by a failure, so that close() does not wait
+                m_Running = false;
+                notifyAll();
+            }
+        }
+    }// runLoop
+
+    private void dispatch(final Device device) {
+        if (device.m_Address != null || device.m_State == RESOLVING) {
+            // resolved, or resolving failed and startConnect reports it
+            m_Pending.add(device);
+            return;
+        }
+        device.m_State = RESOLVING;
+        m_Resolver.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    device.m_Address = InetAddress.getByName(device.m_Host);
+                } catch (IOException ex) {
+                    device.m_LastError = ex;
+                }
+                m_Incoming.add(device);
+                m_Selector.wakeup();
+            }
+        });
+    }// dispatch
+
+    private void startConnect(Device device) {
+        if (device.m_Address == null) {
+            // resolving failed
+            failed(device, device.m_LastError);
+            return;
+        }
+        // counted before anything may fail, the failure handling below undoes it
+        device.m_State = CONNECTING;
+        m_Connecting++;
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            device.m_ConnectDeadline = System.currentTimeMillis() + m_ConnectTimeout;
+            if (channel.connect(new InetSocketAddress(device.m_Address, device.m_Port))) {
+                connected(device, channel);
+            } else {
+                channel.register(m_Selector, SelectionKey.OP_CONNECT, device);
+            }
+        } catch (IOException | RuntimeException ex) {
+            closeQuietly(channel);
+            if (device.m_State == CONNECTING) {
+                m_Connecting--;
+            }
+            failed(device, ex);
+        }
+    }// startConnect
+
+    private void finishConnects() {
+        List<SelectionKey> done = new ArrayList<>(m_Selector.selectedKeys());
+        m_Selector.selectedKeys().clear();
+        if (done.isEmpty()) {
+            return;
+        }
+        for (SelectionKey key : done) {
+            key.cancel();
+        }
+        try {
+            // flush the cancelled keys, so that the channels may be made blocking
+            m_Selector.selectNow();
+        } catch (IOException ex) {
+            // ignore
+        }
+        for (SelectionKey key : done) {
+            Device device = (Device) key.attachment();
+            SocketChannel channel = (SocketChannel) key.channel();
+            try {
+                channel.finishConnect();
+                connected(device, channel);
+            } catch (IOException | RuntimeException ex) {
+                m_Connecting--;
+                closeQuietly(channel);
+                failed(device, ex);
+            }
+        }
+    }// finishConnects
+
+    private void expireConnects() {
+        long now = System.currentTimeMillis();
+        for (Iterator<SelectionKey> iter = m_Selector.keys().iterator(); iter.hasNext();) {
+            SelectionKey key = iter.next();
+            Device device = (Device) key.attachment();
+            if (key.isValid() && now >= device.m_ConnectDeadline) {
+                key.cancel();
+                m_Connecting--;
+                closeQuietly((SocketChannel) key.channel());
+                failed(device, new SocketTimeoutException("Connect timed out"));
+            }
+        }
+    }// expireConnects
+
+    private void connected(Device device, SocketChannel channel) throws IOException {
+        channel.configureBlocking(true);
+        ModbusTCPMaster master = new ModbusTCPMaster(device.m_Address, device.m_Port);
+        master.setTimeout(m_Timeout);
+        try {
+            master.connect(channel.socket());
+        } catch (IOException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException(ex.getMessage());
+        }
+        m_Connecting--;
+        device.m_Master = master;
+        device.m_LastError = null;
+        device.m_State = READY;
+        logger.debug("Device {} ready", device);
+        attempted(device);
+        notifyListener(device);
+    }// connected
+
+    private void failed(Device device, Exception cause) {
+        device.m_LastError = cause;
+        device.m_State = OFFLINE;
+        device.m_Failures++;
+        long interval = Math.min((long) m_MaxRetryInterval,
+                (long) m_RetryInterval << Math.min(device.m_Failures - 1, 20));
+        // spread the retries of devices that failed together
+        interval += ThreadLocalRandom.current().nextLong(interval / 4 + 1);
+        device.m_NextAttempt = System.currentTimeMillis() + interval;
+        m_Scheduled.add(device);
+        logger.debug("Device {} offline ({}), retrying in {} ms", device, cause, interval);
+        attempted(device);
+        notifyListener(device);
+    }// failed
+
+    private void notifyListener(Device device) {
+        Listener listener = m_Listener;
+        if (listener == null) {
+            return;
+        }
+        try {
+            if (device.m_State == READY) {
+                listener.deviceReady(device);
+            } else {
+                listener.deviceOffline(device);
+            }
+        } catch (RuntimeException ex) {
+            // a failing callback must not stop connecting the other devices
+            logger.warn("Listener failed for device {}", device, ex);
+        }
+    }// notifyListener
+
+    private void attempted(Device device) {
+        if (!device.m_Attempted) {
+            device.m_Attempted = true;
+            synchronized (this) {
+                m_Attempted++;
+                notifyAll();
+            }
+        }
+    }// attempted
+
+    private static void closeQuietly(SocketChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+        }
+    }// closeQuietly
+
+    /**
+     * Class tracking the readiness of a device.
+     */
+    public static class Device {
+
+        private final String m_Host;
+        private final int m_Port;
+        private volatile InetAddress m_Address;
+        private volatile ModbusTCPMaster m_Master;
+        private volatile int m_State = NEW;
+        private volatile Exception m_LastError;
+        private int m_Failures;
+        private long m_NextAttempt;
+        private long m_ConnectDeadline;
+        private boolean m_Attempted;
+
+        private Device(String host, int port) {
+            m_Host = host;
+            m_Port = port;
+        }// constructor
+
+        /**
+         * Returns the host name or IP number of this device.
+         *
+         * @return the host.
+         */
+        public String getHost() {
+            return m_Host;
+        }// getHost
+
+        /**
+         * Returns the port of this device.
+         *
+         * @return the port.
+         */
+        public int getPort() {
+            return m_Port;
+        }// getPort
+
+        /**
+         * Returns the state of this device.
+         *
+         * @return one of {@link ModbusTCPMasterBootstrap#NEW}, <tt>RESOLVING</tt>,
+         *         <tt>CONNECTING</tt>, <tt>READY</tt> or <tt>OFFLINE</tt>.
+         */
+        public int getState() {
+            return m_State;
+        }// getState
+
+        /**
+         * Tests if the master of this device is connected.
+         *
+         * @return true if ready, false otherwise.
+         */
+        public boolean isReady() {
+            return m_State == READY;
+        }// isReady
+
+        /**
+         * Returns the connected master of this device.
+         *
+         * @return the <tt>ModbusTCPMaster</tt>, or <tt>null</tt> if not ready yet.
+         */
+        public ModbusTCPMaster getMaster() {
+            return m_Master;
+        }// getMaster
+
+        /**
+         * Returns the cause of the last failed attempt.
+         *
+         * @return the <tt>Exception</tt>, or <tt>null</tt> if none.
+         */
+        public Exception getLastError() {
+            return m_LastError;
+        }// getLastError
+
+        @Override
+        public String toString() {
+            return m_Host + ":" + m_Port;
+        }// toString
+
+    }// class Device
+
+}// class ModbusTCPMasterBootstrap
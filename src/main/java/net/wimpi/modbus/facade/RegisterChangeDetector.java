@@ -0,0 +1,417 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.facade;
+
+import java.util.Arrays;
+
+import net.wimpi.modbus.msg.ReadInputRegistersResponse;
+import net.wimpi.modbus.msg.ReadMultipleRegistersResponse;
+import net.wimpi.modbus.util.ModbusUtil;
+import net.wimpi.modbus.util.WordOrder;
+
+/**
+ * Class implementing report-by-exception for a polled block
+ * of registers.
+ * <p>
+ * Each update compares the polled words against the last
+ * <em>reported</em> values and notifies the {@link Listener} only
+ * about registers that changed by more than their deadband.
+ * Comparing against the last reported value (instead of the last
+ * polled one) makes slow drifts get reported once they add up.
+ * The first update after construction or {@link #reset()} reports
+ * every register.
+ * <p>
+ * Values spread over several registers, such as 32-bit integers or
+ * floats, are defined as points with {@link #definePoint(int, PointType, WordOrder, double)}.
+ * A point is decoded as a whole, its deadband applies to the decoded
+ * value in engineering units, and its changes are reported to the
+ * {@link PointListener} instead of per register.
+ * <p>
+ * Instances are not thread safe; use one per polled block.
+ *
+ * @version @version@ (@date@)
+ * @see BitChangeDetector
+ */
+public final class RegisterChangeDetector {
+
+    /**
+     * Interface for receiving register changes.
+     */
+    public interface Listener {
+
+        /**
+         * Called for each register that changed.
+         *
+         * @param ref the reference of the register.
+         * @param oldValue the last reported value, or the new value on
+         *            the first update.
+         * @param newValue the polled value.
+         */
+        public void registerChanged(int ref, int oldValue, int newValue);
+
+    }// interface Listener
+
+    /**
+     * Interface for receiving changes of points.
+     */
+    public interface PointListener {
+
+        /**
+         * Called for each point that changed.
+         *
+         * @param ref the reference of the first register of the point.
+         * @param oldValue the last reported value, or the new value on
+         *            the first update.
+         * @param newValue the polled value.
+         */
+        public void pointChanged(int ref, double oldValue, double newValue);
+
+    }// interface PointListener
+
+    /**
+     * Enumeration of the types of points spread over several registers.
+     */
+    public enum PointType {
+
+        /**
+         * Signed 32-bit integer in 2 registers.
+         */
+        INT32(2),
+
+        /**
+         * Unsigned 32-bit integer in 2 registers.
+         */
+        UINT32(2),
+
+        /**
+         * IEEE 754 single precision float in 2 registers.
+         */
+        FLOAT32(2),
+
+        /**
+         * Signed 64-bit integer in 4 registers, reported with
+         * the precision of a <tt>double</tt>.
+         */
+        INT64(4),
+
+        /**
+         * IEEE 754 double precision float in 4 registers.
+         */
+        FLOAT64(4);
+
+        private final int m_Width;
+
+        private PointType(int width) {
+            m_Width = width;
+        }// constructor
+
+        /**
+         * Returns the number of registers of a point of this type.
+         *
+         * @return the number of registers.
+         */
+        public int getWidth() {
+            return m_Width;
+        }// getWidth
+
+    }// enum PointType
+
+    /**
+     * Class holding the definition and state of a point.
+     */
+    private static final class Point {
+        private final int m_Index;
+        private final PointType m_Type;
+        private final WordOrder m_Order;
+        private final double m_Deadband;
+        private double m_Reported;
+
+        private Point(int index, PointType type, WordOrder order, double deadband) {
+            m_Index = index;
+            m_Type = type;
+            m_Order = order;
+            m_Deadband = deadband;
+        }// constructor
+    }// class Point
+
+    // instance attributes
+    private final int m_Reference;
+    private final int m_Count;
+    private final int[] m_Reported;
+    private int[] m_Deadbands;
+    private boolean m_Signed;
+    private boolean m_Initialized;
+    private Listener m_Listener;
+    private PointListener m_PointListener;
+    private Point[] m_Points; // the point covering each register, if any
+    private final byte[] m_Words; // the polled words
+
+    /**
+     * Constructs a new <tt>RegisterChangeDetector</tt> for the given
+     * block of registers.
+     *
+     * @param ref the reference of the first register of the block.
+     * @param count the number of registers in the block.
+     * @param listener the <tt>Listener</tt> to be notified about changes.
+     */
+    public RegisterChangeDetector(int ref, int count, Listener listener) {
+        m_Reference = ref;
+        m_Count = count;
+        m_Reported = new int[count];
+        m_Words = new byte[count * 2];
+        m_Listener = listener;
+    }// constructor
+
+    /**
+     * Returns the reference of the first register of the block.
+     *
+     * @return the reference as <tt>int</tt>.
+     */
+    public int getReference() {
+        return m_Reference;
+    }// getReference
+
+    /**
+     * Returns the number of registers in the block.
+     *
+     * @return the number of registers as <tt>int</tt>.
+     */
+    public int getCount() {
+        return m_Count;
+    }// getCount
+
+    /**
+     * Sets the <tt>Listener</tt> to be notified about changes.
+     *
+     * @param listener a <tt>Listener</tt> instance.
+     */
+    public void setListener(Listener listener) {
+        m_Listener = listener;
+    }// setListener
+
+    /**
+     * Sets the <tt>PointListener</tt> to be notified about changes of points.
+     *
+     * @param listener a <tt>PointListener</tt> instance.
+     */
+    public void setPointListener(PointListener listener) {
+        m_PointListener = listener;
+    }// setPointListener
+
+    /**
+     * Defines a point spread over several registers of the block. The
+     * registers of the point are no longer reported on their own; the
+     * point is decoded as a whole and reported when its value changed by
+     * more than the deadband.
+     *
+     * @param ref the reference of the first register of the point.
+     * @param type the <tt>PointType</tt> of the point.
+     * @param order the <tt>WordOrder</tt> used by the device.
+     * @param deadband the deadband in the units of the decoded value.
+     * @throws IllegalArgumentException if the point does not lie within the
+     *             block or overlaps another point.
+     */
+    public void definePoint(int ref, PointType type, WordOrder order, double deadband)
+            throws IllegalArgumentException {
+        int index = ref - m_Reference;
+        if (index < 0 || index + type.getWidth() > m_Count) {
+            throw new IllegalArgumentException("Point at " + ref + " does not lie within the block");
+        }
+        if (m_Points == null) {
+            m_Points = new Point[m_Count];
+        }
+        for (int i = index; i < index + type.getWidth(); i++) {
+            if (m_Points[i] != null) {
+                throw new IllegalArgumentException("Point at " + ref + " overlaps another point");
+            }
+        }
+        Point point = new Point(index, type, order, deadband);
+        for (int i = index; i < index + type.getWidth(); i++) {
+            m_Points[i] = point;
+        }
+        m_Initialized = false;
+    }// definePoint
+
+    /**
+     * Sets whether register values are interpreted as signed
+     * 16-bit values (<tt>short</tt>) when reported and when
+     * applying deadbands. The default is unsigned.
+     *
+     * @param b true if signed, false otherwise.
+     */
+    public void setSigned(boolean b) {
+        m_Signed = b;
+    }// setSigned
+
+    /**
+     * Sets the deadband of a register. Changes with an absolute
+     * difference not exceeding the deadband are not reported.
+     * A deadband of 0 (the default) reports every change.
+     *
+     * @param ref the reference of the register.
+     * @param deadband the deadband in raw register units.
+     * @throws IndexOutOfBoundsException if the register is not in the block.
+     */
+    public void setDeadband(int ref, int deadband) throws IndexOutOfBoundsException {
+        int index = ref - m_Reference;
+        if (index < 0 || index >= m_Count) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (m_Deadbands == null) {
+            m_Deadbands = new int[m_Count];
+        }
+        m_Deadbands[index] = deadband;
+    }// setDeadband
+
+    /**
+     * Sets the same deadband for all registers of the block.
+     *
+     * @param deadband the deadband in raw register units.
+     */
+    public void setDeadband(int deadband) {
+        if (m_Deadbands == null) {
+            m_Deadbands = new int[m_Count];
+        }
+        Arrays.fill(m_Deadbands, deadband);
+    }// setDeadband
+
+    /**
+     * Forgets the reported values, so that the next update
+     * reports every register.
+     */
+    public void reset() {
+        m_Initialized = false;
+    }// reset
+
+    /**
+     * Compares the registers of the given response against the
+     * last reported values.
+     *
+     * @param res a <tt>ReadMultipleRegistersResponse</tt> for this block.
+     * @return the number of changes reported.
+     * @throws IndexOutOfBoundsException if the response holds fewer
+     *             registers than the block.
+     */
+    public int update(ReadMultipleRegistersResponse res) throws IndexOutOfBoundsException {
+        for (int i = 0; i < m_Count; i++) {
+            store(i, res.getRegisterValue(i));
+        }
+        return compare();
+    }// update
+
+    /**
+     * Compares the input registers of the given response against the
+     * last reported values.
+     *
+     * @param res a <tt>ReadInputRegistersResponse</tt> for this block.
+     * @return the number of changes reported.
+     * @throws IndexOutOfBoundsException if the response holds fewer
+     *             registers than the block.
+     */
+    public int update(ReadInputRegistersResponse res) throws IndexOutOfBoundsException {
+        for (int i = 0; i < m_Count; i++) {
+            store(i, res.getRegisterValue(i));
+        }
+        return compare();
+    }// update
+
+    /**
+     * Compares the given unsigned register values against the
+     * last reported values.
+     *
+     * @param values the polled values as unsigned shorts.
+     * @param off the index of the first register in <tt>values</tt>.
+     * @return the number of changes reported.
+     */
+    public int update(int[] values, int off) {
+        for (int i = 0; i < m_Count; i++) {
+            store(i, values[off + i] & 0xffff);
+        }
+        return compare();
+    }// update
+
+    private void store(int index, int raw) {
+        m_Words[index * 2] = (byte) (raw >> 8);
+        m_Words[index * 2 + 1] = (byte) raw;
+    }// store
+
+    private int compare() {
+        int changes = 0;
+        for (int i = 0; i < m_Count; i++) {
+            Point point = m_Points == null ? null : m_Points[i];
+            if (point == null) {
+                changes += process(i, (m_Words[i * 2] & 0xff) << 8 | (m_Words[i * 2 + 1] & 0xff));
+            } else if (point.m_Index == i) {
+                changes += process(point);
+            }
+        }
+        m_Initialized = true;
+        return changes;
+    }// compare
+
+    private int process(int index, int raw) {
+        int value = m_Signed ? (short) raw : raw;
+        int old = m_Reported[index];
+        if (m_Initialized) {
+            int deadband = m_Deadbands == null ? 0 : m_Deadbands[index];
+            if (Math.abs(value - old) <= deadband) {
+                return 0;
+            }
+        } else {
+            old = value;
+        }
+        m_Reported[index] = value;
+        if (m_Listener != null) {
+            m_Listener.registerChanged(m_Reference + index, old, value);
+        }
+        return 1;
+    }// process
+
+    private int process(Point point) {
+        double value = decode(point);
+        double old = point.m_Reported;
+        if (m_Initialized) {
+            // compare() also treats NaN as equal to NaN
+            if (Double.compare(value, old) == 0 || Math.abs(value - old) <= point.m_Deadband) {
+                return 0;
+            }
+        } else {
+            old = value;
+        }
+        point.m_Reported = value;
+        if (m_PointListener != null) {
+            m_PointListener.pointChanged(m_Reference + point.m_Index, old, value);
+        }
+        return 1;
+    }// process
+
+    private double decode(Point point) {
+        int off = point.m_Index * 2;
+        switch (point.m_Type) {
+            case INT32:
+                return ModbusUtil.registersToInt(m_Words, off, point.m_Order);
+            case UINT32:
+                return ModbusUtil.registersToUnsignedInt(m_Words, off, point.m_Order);
+            case FLOAT32:
+                return ModbusUtil.registersToFloat(m_Words, off, point.m_Order);
+            case INT64:
+                return ModbusUtil.registersToLong(m_Words, off, point.m_Order);
+            default:
+                return ModbusUtil.registersToDouble(m_Words, off, point.m_Order);
+        }
+    }// decode
+
+}// class RegisterChangeDetector
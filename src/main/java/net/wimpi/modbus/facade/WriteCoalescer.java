@@ -0,0 +1,370 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.facade;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.wimpi.modbus.ModbusException;
+import net.wimpi.modbus.procimg.Register;
+import net.wimpi.modbus.procimg.SimpleRegister;
+import net.wimpi.modbus.util.BitVector;
+
+/**
+ * Class implementing a write-behind buffer for bursts of single
+ * register and coil writes, e.g. a setpoint download.
+ * <p>
+ * Writes are collected for a short window, starting with the first
+ * write into an empty buffer. The window is then flushed: the pending
+ * writes of each unit are merged into runs of adjacent addresses, and each
+ * run is sent as one <tt>write multiple registers</tt> or
+ * <tt>write multiple coils</tt> request, in ascending order of unit,
+ * table (registers before coils) and reference.
+ * <p>
+ * Writes reach the slave in the order they were issued. To keep it, a
+ * batch only takes writes in ascending order; a write to a lower address,
+ * to another unit or table ordered before, or to an address pending in the
+ * batch other than the last one, closes the batch and starts a new one.
+ * The batches are written one after the other when the window elapses.
+ * Repeated writes to the last address of a batch are merged, the last one
+ * wins; the returned futures of all of them complete with the request that
+ * carried the value.
+ * <p>
+ * The master facades implement {@link Writer}:
+ *
+ * <pre>
+ * WriteCoalescer setpoints = new WriteCoalescer(master, 10);
+ * for (int i = 0; i &lt; values.length; i++) {
+ *     setpoints.writeRegister(unit, ref + i, values[i]);
+ * }
+ * setpoints.flush();
+ * </pre>
+ *
+ * @version @version@ (@date@)
+ */
+public class WriteCoalescer implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(WriteCoalescer.class);
+
+    /**
+     * Defines the default window in milliseconds (<b>10</b>).
+     */
+    public static final int DEFAULT_WINDOW = 10;
+
+    /**
+     * Defines the maximum number of registers per request (<b>123</b>).
+     */
+    public static final int MAX_REGISTERS = 123;
+
+    /**
+     * Defines the maximum number of coils per request (<b>1968</b>).
+     */
+    public static final int MAX_COILS = 1968;
+
+    private static final int REGISTERS = 0;
+    private static final int COILS = 1;
+
+    /**
+     * Interface for the master writing the merged runs.
+     */
+    public interface Writer {
+
+        /**
+         * Writes a number of registers to a slave.
+         *
+         * @param unitid the slave unit id.
+         * @param ref the offset of the register to start writing to.
+         * @param registers the values of the registers to be written.
+         * @throws ModbusException if the write failed.
+         */
+        void writeMultipleRegisters(int unitid, int ref, Register[] registers) throws ModbusException;
+
+        /**
+         * Writes a number of coils to a slave.
+         *
+         * @param unitid the slave unit id.
+         * @param ref the offset of the coil to start writing to.
+         * @param coils the states of the coils to be written.
+         * @throws ModbusException if the write failed.
+         */
+        void writeMultipleCoils(int unitid, int ref, BitVector coils) throws ModbusException;
+
+    }// interface Writer
+
+    // instance attributes
+    private final Writer m_Writer;
+    private final int m_Window;
+    private final ScheduledExecutorService m_Flusher;
+    private final Runnable m_FlushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+    private final Object m_FlushLock = new Object();
+    // keyed by unit, table and reference, so that runs are adjacent
+    private TreeMap<Long, Slot> m_Pending = new TreeMap<>();
+    // closed batches of the current window, in issue order
+    private ArrayDeque<TreeMap<Long, Slot>> m_Batches = new ArrayDeque<>();
+    private boolean m_Scheduled;
+    private boolean m_Closed;
+
+    /**
+     * Constructs a new <tt>WriteCoalescer</tt> instance
+     * with the default window.
+     *
+     * @param writer the <tt>Writer</tt> of the merged runs.
+     */
+    public WriteCoalescer(Writer writer) {
+        this(writer, DEFAULT_WINDOW);
+    }// constructor
+
+    /**
+     * Constructs a new <tt>WriteCoalescer</tt> instance.
+     *
+     * @param writer the <tt>Writer</tt> of the merged runs.
+     * @param windowMillis the time writes are collected before flushing, in milliseconds.
+     */
+    public WriteCoalescer(Writer writer, int windowMillis) {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("Illegal window: " + windowMillis);
+        }
+        m_Writer = writer;
+        m_Window = windowMillis;
+        m_Flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "WriteCoalescer");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }// constructor
+
+    /**
+     * Returns the window of this <tt>WriteCoalescer</tt>.
+     *
+     * @return the window in milliseconds.
+     */
+    public int getWindow() {
+        return m_Window;
+    }// getWindow
+
+    /**
+     * Queues the write of a register.
+     *
+     * @param unitid the slave unit id.
+     * @param ref the offset of the register.
+     * @param value the value to be written, the lower 16 bits are used.
+     * @return a <tt>Future</tt> completing when the value was written,
+     *         failing with the <tt>ModbusException</tt> of the request.
+     */
+    public Future<Void> writeRegister(int unitid, int ref, int value) {
+        return enqueue(unitid, REGISTERS, ref, value & 0xFFFF);
+    }// writeRegister
+
+    /**
+     * Queues the write of a register.
+     *
+     * @param unitid the slave unit id.
+     * @param ref the offset of the register.
+     * @param register the <tt>Register</tt> holding the value to be written.
+     * @return a <tt>Future</tt> completing when the value was written.
+     */
+    public Future<Void> writeRegister(int unitid, int ref, Register register) {
+        return writeRegister(unitid, ref, register.getValue());
+    }// writeRegister
+
+    /**
+     * Queues the write of a coil.
+     *
+     * @param unitid the slave unit id.
+     * @param ref the offset of the coil.
+     * @param state the state to be written.
+     * @return a <tt>Future</tt> completing when the state was written.
+     */
+    public Future<Void> writeCoil(int unitid, int ref, boolean state) {
+        return enqueue(unitid, COILS, ref, state ? 1 : 0);
+    }// writeCoil
+
+    /**
+     * Returns the number of addresses waiting to be written.
+     *
+     * @return the number of pending addresses.
+     */
+    public synchronized int getPendingCount() {
+        int count = m_Pending.size();
+        for (TreeMap<Long, Slot> batch : m_Batches) {
+            count += batch.size();
+        }
+        return count;
+    }// getPendingCount
+
+    /**
+     * Writes all pending values now, waiting for a flush in progress
+     * to finish first. Failures are reported through the futures.
+     */
+    public void flush() {
+        synchronized (m_FlushLock) {
+            ArrayDeque<TreeMap<Long, Slot>> batches;
+            synchronized (this) {
+                batches = m_Batches;
+                batches.add(m_Pending);
+                m_Batches = new ArrayDeque<>();
+                m_Pending = new TreeMap<>();
+                m_Scheduled = false;
+            }
+            for (TreeMap<Long, Slot> pending : batches) {
+                while (!pending.isEmpty()) {
+                    writeRun(pending);
+                }
+            }
+        }
+    }// flush
+
+    /**
+     * Flushes the pending writes and stops this <tt>WriteCoalescer</tt>.
+     * Later writes are rejected.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            m_Closed = true;
+        }
+        flush();
+        m_Flusher.shutdown();
+    }// close
+
+    private synchronized Future<Void> enqueue(int unitid, int table, int ref, int value) {
+        if (m_Closed) {
+            throw new IllegalStateException("WriteCoalescer closed");
+        }
+        if (ref < 0 || ref > 0xFFFF) {
+            throw new IllegalArgumentException("Illegal reference: " + ref);
+        }
+        Long key = key(unitid, table, ref);
+        if (!m_Pending.isEmpty() && key < m_Pending.lastKey()) {
+            // written in key order, the batch would reorder this write
+            m_Batches.add(m_Pending);
+            m_Pending = new TreeMap<>();
+        }
+        Slot slot = m_Pending.get(key);
+        if (slot == null) {
+            slot = new Slot();
+            m_Pending.put(key, slot);
+        }
+        // last write wins
+        slot.m_Value = value;
+        Completion completion = new Completion();
+        slot.m_Completions.add(completion);
+        if (!m_Scheduled) {
+            m_Scheduled = true;
+            m_Flusher.schedule(m_FlushTask, m_Window, TimeUnit.MILLISECONDS);
+        }
+        return completion;
+    }// enqueue
+
+    /**
+     * Removes the first run of adjacent addresses from the pending
+     * writes and writes it.
+     */
+    private void writeRun(TreeMap<Long, Slot> pending) {
+        long first = pending.firstKey();
+        int table = (int) (first >> 16) & 1;
+        int unitid = (int) (first >> 17);
+        int ref = (int) first & 0xFFFF;
+        int max = table == REGISTERS ? MAX_REGISTERS : MAX_COILS;
+
+        List<Slot> run = new ArrayList<>();
+        long next = first;
+        Map.Entry<Long, Slot> entry;
+        while (run.size() < max && (entry = pending.firstEntry()) != null && entry.getKey() == next
+                && (next >> 16) == (first >> 16)) {
+            run.add(entry.getValue());
+            pending.pollFirstEntry();
+            next++;
+        }
+
+        Exception failure = null;
+        try {
+            if (table == REGISTERS) {
+                Register[] registers = new Register[run.size()];
+                for (int i = 0; i < registers.length; i++) {
+                    registers[i] = new SimpleRegister(run.get(i).m_Value);
+                }
+                m_Writer.writeMultipleRegisters(unitid, ref, registers);
+            } else {
+                BitVector coils = new BitVector(run.size());
+                for (int i = 0; i < run.size(); i++) {
+                    coils.setBit(i, run.get(i).m_Value != 0);
+                }
+                m_Writer.writeMultipleCoils(unitid, ref, coils);
+            }
+        } catch (Exception ex) {
+            logger.debug("Writing {} {} of unit {} at {} failed: {}", run.size(),
+                    table == REGISTERS ? "registers" : "coils", unitid, ref, ex.getMessage());
+            failure = ex;
+        }
+        for (Slot slot : run) {
+            for (Completion completion : slot.m_Completions) {
+                completion.complete(failure);
+            }
+        }
+    }// writeRun
+
+    private static long key(int unitid, int table, int ref) {
+        return ((long) unitid << 17) | ((long) table << 16) | ref;
+    }// key
+
+    private static class Slot {
+        private int m_Value;
+        private final List<Completion> m_Completions = new ArrayList<>(1);
+    }// class Slot
+
+    private static class Completion extends FutureTask<Void> {
+        private static final Runnable NOTHING = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+
+        private Completion() {
+            super(NOTHING, null);
+        }// constructor
+
+        private void complete(Exception failure) {
+            if (failure == null) {
+                set(null);
+            } else {
+                setException(failure);
+            }
+        }// complete
+
+    }// class Completion
+
+}// class WriteCoalescer
@@ -0,0 +1,452 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.io;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.wimpi.modbus.Modbus;
+
+/**
+ * Class implementing an adaptive retry policy for transactions.
+ * <p>
+ * The policy keeps an {@link Endpoint} per device, i.e. per connection
+ * and unit id, which estimates the round trip time like TCP does
+ * (smoothed RTT and RTT variance, RFC 6298) and derives the receive timeout
+ * from it. The timeout doubles on each failure until a new round trip
+ * is measured; only responses to first attempts are measured.
+ * <p>
+ * Retries wait for an exponentially growing, randomly jittered delay, so that
+ * masters retrying against the same device do not synchronize.
+ * <p>
+ * After a number of consecutive failures the circuit of the endpoint opens:
+ * transactions fail at once without touching the bus, except for a single
+ * probe let through after the probe interval. A successful probe closes the
+ * circuit again, a failed one doubles the probe interval up to a maximum.
+ *
+ * @version @version@ (@date@)
+ * @see ModbusTCPTransaction#setRetryPolicy(AdaptiveRetryPolicy)
+ * @see ModbusSerialTransaction#setRetryPolicy(AdaptiveRetryPolicy)
+ */
+public class AdaptiveRetryPolicy {
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveRetryPolicy.class);
+
+    /**
+     * Defines the circuit state passing all requests.
+     */
+    public static final int CLOSED = 0;
+
+    /**
+     * Defines the circuit state failing all requests.
+     */
+    public static final int OPEN = 1;
+
+    /**
+     * Defines the circuit state passing a single probe request.
+     */
+    public static final int HALF_OPEN = 2;
+
+    /**
+     * Defines the default minimum timeout in milliseconds (<b>50</b>).
+     */
+    public static final int DEFAULT_MIN_TIMEOUT = 50;
+
+    /**
+     * Defines the default maximum timeout in milliseconds (<b>10000</b>).
+     */
+    public static final int DEFAULT_MAX_TIMEOUT = 10000;
+
+    /**
+     * Defines the default base delay of the retry backoff in milliseconds (<b>50</b>).
+     */
+    public static final int DEFAULT_BACKOFF_BASE = 50;
+
+    /**
+     * Defines the default maximum delay of the retry backoff in milliseconds (<b>2000</b>).
+     */
+    public static final int DEFAULT_MAX_BACKOFF = 2000;
+
+    /**
+     * Defines the default number of consecutive failures opening the circuit (<b>5</b>).
+     */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    /**
+     * Defines the default initial probe interval of an open circuit in milliseconds (<b>5000</b>).
+     */
+    public static final int DEFAULT_PROBE_INTERVAL = 5000;
+
+    /**
+     * Defines the default maximum probe interval of an open circuit in milliseconds (<b>60000</b>).
+     */
+    public static final int DEFAULT_MAX_PROBE_INTERVAL = 60000;
+
+    // instance attributes
+    private volatile int m_InitialTimeout = Modbus.DEFAULT_TIMEOUT;
+    private volatile int m_MinTimeout = DEFAULT_MIN_TIMEOUT;
+    private volatile int m_MaxTimeout = DEFAULT_MAX_TIMEOUT;
+    private volatile int m_BackoffBase = DEFAULT_BACKOFF_BASE;
+    private volatile int m_MaxBackoff = DEFAULT_MAX_BACKOFF;
+    private volatile int m_FailureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private volatile int m_ProbeInterval = DEFAULT_PROBE_INTERVAL;
+    private volatile int m_MaxProbeInterval = DEFAULT_MAX_PROBE_INTERVAL;
+    private final ConcurrentMap<String, Endpoint> m_Endpoints = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the endpoint of a device, creating it on first use.
+     *
+     * @param key the key of the device, e.g. its address and unit id.
+     * @return the <tt>Endpoint</tt>.
+     */
+    public Endpoint getEndpoint(String key) {
+        Endpoint endpoint = m_Endpoints.get(key);
+        if (endpoint == null) {
+            Endpoint created = new Endpoint(key);
+            endpoint = m_Endpoints.putIfAbsent(key, created);
+            if (endpoint == null) {
+                endpoint = created;
+            }
+        }
+        return endpoint;
+    }// getEndpoint
+
+    /**
+     * Removes the state of a device, e.g. after it has been replaced.
+     *
+     * @param key the key of the device.
+     */
+    public void reset(String key) {
+        m_Endpoints.remove(key);
+    }// reset
+
+    /**
+     * Returns the delay before a retry: a random time up to the base delay
+     * doubled for each failed try, bounded by the maximum backoff.
+     *
+     * @param tries the number of failed tries so far, at least <tt>1</tt>.
+     * @return the delay in milliseconds.
+     */
+    public long getBackoffDelay(int tries) {
+        long cap = Math.min((long) m_MaxBackoff, (long) m_BackoffBase << Math.min(Math.max(tries - 1, 0), 20));
+        return cap > 0 ? ThreadLocalRandom.current().nextLong(cap + 1) : 0;
+    }// getBackoffDelay
+
+    /**
+     * Returns the timeout used before the first round trip of a device is measured.
+     *
+     * @return the timeout in milliseconds.
+     */
+    public int getInitialTimeout() {
+        return m_InitialTimeout;
+    }// getInitialTimeout
+
+    /**
+     * Sets the timeout used before the first round trip of a device is measured.
+     *
+     * @param timeout the timeout in milliseconds.
+     */
+    public void setInitialTimeout(int timeout) {
+        m_InitialTimeout = timeout;
+    }// setInitialTimeout
+
+    /**
+     * Returns the lower bound of the adaptive timeout.
+     *
+     * @return the timeout in milliseconds.
+     */
+    public int getMinTimeout() {
+        return m_MinTimeout;
+    }// getMinTimeout
+
+    /**
+     * Sets the lower bound of the adaptive timeout. It should cover the
+     * occasional slow response of the devices, e.g. during flash writes.
+     *
+     * @param timeout the timeout in milliseconds.
+     */
+    public void setMinTimeout(int timeout) {
+        m_MinTimeout = timeout;
+    }// setMinTimeout
+
+    /**
+     * Returns the upper bound of the adaptive timeout.
+     *
+     * @return the timeout in milliseconds.
+     */
+    public int getMaxTimeout() {
+        return m_MaxTimeout;
+    }// getMaxTimeout
+
+    /**
+     * Sets the upper bound of the adaptive timeout.
+     *
+     * @param timeout the timeout in milliseconds.
+     */
+    public void setMaxTimeout(int timeout) {
+        m_MaxTimeout = timeout;
+    }// setMaxTimeout
+
+    /**
+     * Returns the base delay of the retry backoff.
+     *
+     * @return the delay in milliseconds.
+     */
+    public int getBackoffBase() {
+        return m_BackoffBase;
+    }// getBackoffBase
+
+    /**
+     * Sets the base delay of the retry backoff.
+     *
+     * @param delay the delay in milliseconds.
+     */
+    public void setBackoffBase(int delay) {
+        m_BackoffBase = delay;
+    }// setBackoffBase
+
+    /**
+     * Returns the maximum delay of the retry backoff.
+     *
+     * @return the delay in milliseconds.
+     */
+    public int getMaxBackoff() {
+        return m_MaxBackoff;
+    }// getMaxBackoff
+
+    /**
+     * Sets the maximum delay of the retry backoff.
+     *
+     * @param delay the delay in milliseconds.
+     */
+    public void setMaxBackoff(int delay) {
+        m_MaxBackoff = delay;
+    }// setMaxBackoff
+
+    /**
+     * Returns the number of consecutive failures opening the circuit.
+     *
+     * @return the number of failures.
+     */
+    public int getFailureThreshold() {
+        return m_FailureThreshold;
+    }// getFailureThreshold
+
+    /**
+     * Sets the number of consecutive failures opening the circuit.
+     *
+     * @param threshold the number of failures, <tt>0</tt> to never open it.
+     */
+    public void setFailureThreshold(int threshold) {
+        m_FailureThreshold = threshold;
+    }// setFailureThreshold
+
+    /**
+     * Returns the initial probe interval of an open circuit.
+     *
+     * @return the interval in milliseconds.
+     */
+    public int getProbeInterval() {
+        return m_ProbeInterval;
+    }// getProbeInterval
+
+    /**
+     * Sets the initial probe interval of an open circuit.
+     *
+     * @param interval the interval in milliseconds.
+     */
+    public void setProbeInterval(int interval) {
+        m_ProbeInterval = interval;
+    }// setProbeInterval
+
+    /**
+     * Returns the maximum probe interval of an open circuit.
+     *
+     * @return the interval in milliseconds.
+     */
+    public int getMaxProbeInterval() {
+        return m_MaxProbeInterval;
+    }// getMaxProbeInterval
+
+    /**
+     * Sets the maximum probe interval of an open circuit.
+     *
+     * @param interval the interval in milliseconds.
+     */
+    public void setMaxProbeInterval(int interval) {
+        m_MaxProbeInterval = interval;
+    }// setMaxProbeInterval
+
+    /**
+     * Class holding the round trip estimate and circuit state of a device.
+     */
+    public class Endpoint {
+
+        private final String m_Key;
+        private double m_SmoothedRtt = -1;
+        private double m_RttVariance;
+        private int m_Timeout = m_InitialTimeout;
+        private int m_Failures;
+        private int m_State = CLOSED;
+        private long m_ProbeAt;
+        private int m_CurrentProbeInterval = m_ProbeInterval;
+
+        private Endpoint(String key) {
+            m_Key = key;
+        }// constructor
+
+        /**
+         * Returns the key of this endpoint.
+         *
+         * @return the key.
+         */
+        public String getKey() {
+            return m_Key;
+        }// getKey
+
+        /**
+         * Returns the receive timeout for the next attempt.
+         *
+         * @return the timeout in milliseconds.
+         */
+        public synchronized int getTimeout() {
+            return m_Timeout;
+        }// getTimeout
+
+        /**
+         * Returns the smoothed round trip time.
+         *
+         * @return the time in milliseconds, or <tt>-1</tt> if not measured yet.
+         */
+        public synchronized double getSmoothedRtt() {
+            return m_SmoothedRtt;
+        }// getSmoothedRtt
+
+        /**
+         * Returns the round trip time variance.
+         *
+         * @return the mean deviation in milliseconds.
+         */
+        public synchronized double getRttVariance() {
+            return m_RttVariance;
+        }// getRttVariance
+
+        /**
+         * Returns the number of consecutive failures.
+         *
+         * @return the number of failures.
+         */
+        public synchronized int getFailureCount() {
+            return m_Failures;
+        }// getFailureCount
+
+        /**
+         * Returns the circuit state.
+         *
+         * @return {@link #CLOSED}, {@link #OPEN} or {@link #HALF_OPEN}.
+         */
+        public synchronized int getState() {
+            return m_State;
+        }// getState
+
+        /**
+         * Tests if a request may be sent. Once the probe interval of an open
+         * circuit elapsed, a single caller is let through as probe.
+         *
+         * @return true if the request may be sent, false if it should fail at once.
+         */
+        public synchronized boolean allowRequest() {
+            if (m_State == CLOSED) {
+                return true;
+            }
+            long now = System.currentTimeMillis();
+            if (now < m_ProbeAt) {
+                return false;
+            }
+            // a probe that never reported back does not block the circuit forever
+            m_State = HALF_OPEN;
+            m_ProbeAt = now + m_MaxTimeout;
+            return true;
+        }// allowRequest
+
+        /**
+         * Records a response.
+         *
+         * @param rtt the round trip time in milliseconds.
+         * @param measured true if the time is a valid sample, i.e. the response
+         *            answered a first attempt, false otherwise.
+         */
+        public synchronized void onSuccess(double rtt, boolean measured) {
+            if (measured) {
+                if (m_SmoothedRtt < 0) {
+                    m_SmoothedRtt = rtt;
+                    m_RttVariance = rtt / 2;
+                } else {
+                    m_RttVariance = 0.75 * m_RttVariance + 0.25 * Math.abs(m_SmoothedRtt - rtt);
+                    m_SmoothedRtt = 0.875 * m_SmoothedRtt + 0.125 * rtt;
+                }
+                m_Timeout = clamp(Math.ceil(m_SmoothedRtt + Math.max(1, 4 * m_RttVariance)));
+            }
+            if (m_State != CLOSED) {
+                logger.debug("Endpoint {} responded, closing circuit", m_Key);
+            }
+            m_Failures = 0;
+            m_State = CLOSED;
+            m_CurrentProbeInterval = m_ProbeInterval;
+        }// onSuccess
+
+        /**
+         * Records a failed attempt, backing off the timeout and
+         * opening the circuit when the failure threshold is reached.
+         */
+        public synchronized void onFailure() {
+            m_Failures++;
+            if (m_State == CLOSED) {
+                // probes of an open circuit keep the timeout it opened with
+                m_Timeout = clamp(2.0 * m_Timeout);
+            }
+            int threshold = m_FailureThreshold;
+            if (m_State == HALF_OPEN) {
+                m_CurrentProbeInterval = (int) Math.min((long) m_CurrentProbeInterval * 2, m_MaxProbeInterval);
+                open();
+            } else if (m_State == CLOSED && threshold > 0 && m_Failures >= threshold) {
+                open();
+            }
+        }// onFailure
+
+        private void open() {
+            m_State = OPEN;
+            m_ProbeAt = System.currentTimeMillis() + m_CurrentProbeInterval;
+            logger.debug("Endpoint {} unresponsive after {} failures, next probe in {} ms", m_Key, m_Failures,
+                    m_CurrentProbeInterval);
+        }// open
+
+        private int clamp(double timeout) {
+            return (int) Math.max(m_MinTimeout, Math.min(m_MaxTimeout, timeout));
+        }// clamp
+
+        @Override
+        public synchronized String toString() {
+            return String.format("Endpoint[%s, srtt=%.1f, rttvar=%.1f, timeout=%d, failures=%d, state=%d]", m_Key,
+                    m_SmoothedRtt, m_RttVariance, m_Timeout, m_Failures, m_State);
+        }// toString
+
+    }// class Endpoint
+
+}// class AdaptiveRetryPolicy
@@ -45,6 +45,8 @@ public class AutoSearchingModbusASCIITransport extends AutoSearchingModbusTransp
         String searchRegister = System.getProperty(SEARCH_REGISTER_PROP_NAME);
         String searchTimeout = System.getProperty(SEARCH_TIMEOUT_PROP_NAME);
 
+        // loaded at most once, shared by both settings
+        Properties props = null;
         Integer reg;
         if (searchRegister != null) {
             try {
@@ -54,8 +56,7 @@ public class AutoSearchingModbusASCIITransport extends AutoSearchingModbusTransp
                 reg = DEFAULT_SEARCH_REGISTER_VALUE;
             }
         } else {
-            Properties props =
-                    loadProperties("conf.properties", "../conf.properties", "classpath:/conf.properties");
+            props = loadProperties("conf.properties", "../conf.properties", "classpath:/conf.properties");
             String prop = props.getProperty(SEARCH_REGISTER_PROP_NAME);
             if (prop != null) reg = Integer.parseInt(prop);
             else reg = DEFAULT_SEARCH_REGISTER_VALUE;
@@ -73,8 +74,9 @@ public class AutoSearchingModbusASCIITransport extends AutoSearchingModbusTransp
             }
         }
         else {
-            Properties props =
-                    loadProperties("conf.properties", "../conf.properties", "classpath:/conf.properties");
+            if (props == null) {
+                props = loadProperties("conf.properties", "../conf.properties", "classpath:/conf.properties");
+            }
             String prop = props.getProperty(SEARCH_TIMEOUT_PROP_NAME);
             if (prop != null) timeout = Integer.parseInt(prop);
             else timeout = DEFAULT_SEARCH_TIMEOUT_VALUE;
@@ -119,12 +121,7 @@ public class AutoSearchingModbusASCIITransport extends AutoSearchingModbusTransp
      * @param searchUnitIds the <tt>Collection<Integer></tt> used to find unit ids.
      */
     public AutoSearchingModbusASCIITransport(StreamTransport streamTransport, Collection<Integer> searchUnitIds) {
-        super(streamTransport, searchUnitIds);
-        this.name = streamTransport.toString();
-        this.overrideSearchRegister = -1;
-        this.overrideSearchTimeout = -1;
-        searchingAllowed = true;
-        units = searchUnits();
+        this(streamTransport, -1, -1, searchUnitIds, true);
     }
 
     /**
@@ -138,12 +135,7 @@ public class AutoSearchingModbusASCIITransport extends AutoSearchingModbusTransp
      */
     public AutoSearchingModbusASCIITransport(StreamTransport streamTransport, int modbusSearchRegister,
                                              Collection<Integer> searchUnitIds) {
-        super(streamTransport, searchUnitIds);
-        this.name = streamTransport.toString();
-        this.overrideSearchRegister = modbusSearchRegister;
-        this.overrideSearchTimeout = -1;
-        searchingAllowed = true;
-        units = searchUnits();
+        this(streamTransport, modbusSearchRegister, -1, searchUnitIds, true);
     }
 
     /**
@@ -158,12 +150,50 @@ public class AutoSearchingModbusASCIITransport extends AutoSearchingModbusTransp
      */
     public AutoSearchingModbusASCIITransport(StreamTransport streamTransport, int modbusSearchRegister,
                                              int modbusSearchTimeout, Collection<Integer> searchUnitIds) {
+        this(streamTransport, modbusSearchRegister, modbusSearchTimeout, searchUnitIds, true);
+    }
+
+    /**
+     * Constructs a new <tt>AutoSearchingModbusASCIITransport</tt> instance.
+     * If <tt>search</tt> is false, no units are searched on construction;
+     * they can be discovered later using an {@link UnitDiscovery}.
+     *
+     * @param streamTransport the <tt>StreamTransport</tt> used to access streams.
+     * @param modbusSearchRegister a modbus register address to find units.
+     *                             Overrides the default value and the system loaded value.
+     *                             Ignored if the value is <tt>-1</tt>.
+     * @param modbusSearchTimeout timeout in milliseconds to find units.
+     *                            Ignored if the value is <tt>-1</tt>.
+     * @param searchUnitIds the <tt>Collection<Integer></tt> used to find unit ids.
+     * @param search true to search units on construction, false otherwise.
+     */
+    public AutoSearchingModbusASCIITransport(StreamTransport streamTransport, int modbusSearchRegister,
+                                             int modbusSearchTimeout, Collection<Integer> searchUnitIds,
+                                             boolean search) {
         super(streamTransport, searchUnitIds);
         this.name = streamTransport.toString();
         this.overrideSearchRegister = modbusSearchRegister;
         this.overrideSearchTimeout = modbusSearchTimeout;
         searchingAllowed = true;
-        units = searchUnits();
+        units = search ? searchUnits() : new HashSet<Integer>();
+    }
+
+    /**
+     * Returns the modbus register address used to find units.
+     *
+     * @return the register address.
+     */
+    public int getSearchRegister() {
+        return overrideSearchRegister > -1 ? overrideSearchRegister : searchDeviceRegister;
+    }
+
+    /**
+     * Returns the timeout in milliseconds used to find units.
+     *
+     * @return the timeout in milliseconds.
+     */
+    public int getSearchTimeout() {
+        return overrideSearchTimeout > -1 ? overrideSearchTimeout : searchTimeoutMs;
     }
 
     @Override
@@ -199,10 +229,10 @@ public class AutoSearchingModbusASCIITransport extends AutoSearchingModbusTransp
                 ReadInputRegistersRequest request = new ReadInputRegistersRequest();
                 request.setHeadless();
                 request.setUnitID(devAddr);
-                request.setReference(overrideSearchRegister > -1 ? overrideSearchRegister : searchDeviceRegister);
+                request.setReference(getSearchRegister());
                 request.setWordCount(1);
                 try {
-                    getStreamTransport().setTimeout(overrideSearchTimeout > -1 ? overrideSearchTimeout: searchTimeoutMs);
+                    getStreamTransport().setTimeout(getSearchTimeout());
                     log.debug(String.format("[%s]: %s", new Date(), "Writing request " + "[" + request.getHexMessage() + "]"));
                     getTransport().writeMessage(request);
                     ModbusResponse response = getTransport().readResponse();
@@ -229,19 +259,4 @@ public class AutoSearchingModbusASCIITransport extends AutoSearchingModbusTransp
     public boolean isOpen() {
         return getStreamTransport().isOpen();
     }
-
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-
-        AutoSearchingModbusASCIITransport that = (AutoSearchingModbusASCIITransport) o;
-
-        return units.equals(that.units);
-    }
-
-    @Override
-    public int hashCode() {
-        return units.hashCode();
-    }
 }
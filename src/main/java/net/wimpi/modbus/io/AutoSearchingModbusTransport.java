@@ -29,6 +29,11 @@ import java.util.Collection;
 /**
  * Abstract base class for <tt>ModbusTransport</tt>
  * and <tt>ModbusCommands</tt> implementations.
+ * <p>
+ * The commands synchronize on the transport, so that a request and its
+ * response are never interleaved with other users of the same line.
+ * The diagnostic and file commands are executed by a
+ * {@link ModbusCommandExecutor} over this transport.
  *
  * @author vssavin
  * @version @version@ (@date@)
@@ -36,10 +41,11 @@ import java.util.Collection;
 public abstract class AutoSearchingModbusTransport implements ModbusTransport, ModbusCommands {
     private static final Logger log = LoggerFactory.getLogger(AutoSearchingModbusTransport.class);
     protected String name = this.getClass().getSimpleName();
-    protected Collection<Integer> units;
+    protected volatile Collection<Integer> units;
     private final Collection<Integer> searchUnitIds;
     private final StreamTransport streamTransport;
     private final ModbusTransport transport;
+    private final ModbusCommandExecutor executor = new ModbusCommandExecutor(this);
 
     /**
      * Constructs a new <tt>SocketStreamTransport</tt> instance,
@@ -119,6 +125,15 @@ public abstract class AutoSearchingModbusTransport implements ModbusTransport, M
         return units;
     }
 
+    /**
+     * Sets the found unit ids.
+     *
+     * @param units a <tt>Collection<Integer></tt> with found unit ids.
+     */
+    protected void setUnits(Collection<Integer> units) {
+        this.units = units;
+    }
+
     /**
      * Returns the name of the object.
      *
@@ -129,7 +144,7 @@ public abstract class AutoSearchingModbusTransport implements ModbusTransport, M
     }
 
     @Override
-    public BitVector readCoils(int unitId, int ref, int count) {
+    public synchronized BitVector readCoils(int unitId, int ref, int count) {
         ReadCoilsRequest request = new ReadCoilsRequest();
         request.setUnitID(unitId);
         request.setReference(ref);
@@ -147,7 +162,7 @@ public abstract class AutoSearchingModbusTransport implements ModbusTransport, M
     }
 
     @Override
-    public BitVector readDiscreteInputs(int unitId, int ref, int count) {
+    public synchronized BitVector readDiscreteInputs(int unitId, int ref, int count) {
         ReadInputDiscretesRequest request = new ReadInputDiscretesRequest();
         request.setUnitID(unitId);
         request.setReference(ref);
@@ -165,7 +180,7 @@ public abstract class AutoSearchingModbusTransport implements ModbusTransport, M
     }
 
     @Override
-    public Register[] readHoldingRegisters(int unitId, int ref, int count) {
+    public synchronized Register[] readHoldingRegisters(int unitId, int ref, int count) {
         ReadMultipleRegistersRequest request = new ReadMultipleRegistersRequest();
         request.setUnitID(unitId);
         request.setReference(ref);
@@ -183,7 +198,7 @@ public abstract class AutoSearchingModbusTransport implements ModbusTransport, M
     }
 
     @Override
-    public InputRegister[] readInputRegisters(int unitId, int ref, int count) {
+    public synchronized InputRegister[] readInputRegisters(int unitId, int ref, int count) {
         ReadInputRegistersRequest request = new ReadInputRegistersRequest();
         request.setUnitID(unitId);
         request.setReference(ref);
@@ -201,7 +216,7 @@ public abstract class AutoSearchingModbusTransport implements ModbusTransport, M
     }
 
     @Override
-    public boolean writeSingleCoil(int unitId, int ref, boolean state) {
+    public synchronized boolean writeSingleCoil(int unitId, int ref, boolean state) {
         WriteCoilRequest request = new WriteCoilRequest();
         request.setUnitID(unitId);
         request.setReference(ref);
@@ -218,7 +233,7 @@ public abstract class AutoSearchingModbusTransport implements ModbusTransport, M
     }
 
     @Override
-    public void writeSingleRegister(int unitId, int ref, Register register) {
+    public synchronized void writeSingleRegister(int unitId, int ref, Register register) {
         WriteSingleRegisterRequest request = new WriteSingleRegisterRequest();
         request.setUnitID(unitId);
         request.setReference(ref);
@@ -233,27 +248,27 @@ public abstract class AutoSearchingModbusTransport implements ModbusTransport, M
     }
 
     @Override
-    public int readExceptionStatus(int unitId) {
-        throw new UnsupportedOperationException("Not implemented yet!");
+    public synchronized int readExceptionStatus(int unitId) {
+        return executor.readExceptionStatus(unitId);
     }
 
     @Override
-    public Register[] diagnostics(int unitId, int subFunction, Register[] data) {
-        throw new UnsupportedOperationException("Not implemented yet!");
+    public synchronized Register[] diagnostics(int unitId, int subFunction, Register[] data) {
+        return executor.diagnostics(unitId, subFunction, data);
     }
 
     @Override
-    public Register[] getCommEventCounter(int unitId) {
-        throw new UnsupportedOperationException("Not implemented yet!");
+    public synchronized Register[] getCommEventCounter(int unitId) {
+        return executor.getCommEventCounter(unitId);
     }
 
     @Override
-    public Register[] getCommEventLog(int unitId) {
-        throw new UnsupportedOperationException("Not implemented yet!");
+    public synchronized Register[] getCommEventLog(int unitId) {
+        return executor.getCommEventLog(unitId);
     }
 
     @Override
-    public void writeMultipleCoils(int unitId, int ref, BitVector coils) {
+    public synchronized void writeMultipleCoils(int unitId, int ref, BitVector coils) {
         WriteMultipleCoilsRequest request = new WriteMultipleCoilsRequest();
         request.setUnitID(unitId);
         request.setReference(ref);
@@ -269,7 +284,7 @@ public abstract class AutoSearchingModbusTransport implements ModbusTransport, M
     }
 
     @Override
-    public void writeMultipleRegisters(int unitId, int ref, Register[] registers) {
+    public synchronized void writeMultipleRegisters(int unitId, int ref, Register[] registers) {
         WriteMultipleRegistersRequest request = new WriteMultipleRegistersRequest();
         request.setUnitID(unitId);
         request.setReference(ref);
@@ -284,13 +299,13 @@ public abstract class AutoSearchingModbusTransport implements ModbusTransport, M
     }
 
     @Override
-    public Register[] reportSlaveId(int unitId) {
-        throw new UnsupportedOperationException("Not implemented yet!");
+    public synchronized Register[] reportSlaveId(int unitId) {
+        return executor.reportSlaveId(unitId);
     }
 
     @Override
-    public ModbusFile readFileRecord(int unitId, int recordId) {
-        throw new UnsupportedOperationException("Not implemented yet!");
+    public synchronized ModbusFile readFileRecord(int unitId, int recordId) {
+        return executor.readFileRecord(unitId, recordId);
     }
 
     @Override
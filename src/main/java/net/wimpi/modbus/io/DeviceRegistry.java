@@ -0,0 +1,306 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Class implementing a persistent registry of discovered devices,
+ * usable as {@link UnitDiscovery.Cache}.
+ * <p>
+ * Each device is recorded with its unit ids, the time it was last seen
+ * and its average probe latency. The registry is kept in memory and
+ * persisted in an append-only file: every update appends one record,
+ * and the latest record of a device wins on loading. The file is
+ * compacted when superseded records outnumber the live ones. A record
+ * torn by a crash is cut off on loading.
+ * <p>
+ * File layout (big endian): the <tt>int</tt> {@link #MAGIC}, followed by
+ * records of the device key (<tt>writeUTF</tt>), the last seen time
+ * (<tt>long</tt>, milliseconds since the epoch), the latency
+ * (<tt>int</tt>, milliseconds, <tt>-1</tt> if unknown), the number of units
+ * (unsigned <tt>byte</tt>, at most {@link #MAX_UNITS}) and the unit ids
+ * (one unsigned <tt>byte</tt> each).
+ *
+ * @version @version@ (@date@)
+ */
+public class DeviceRegistry implements UnitDiscovery.Cache, Closeable {
+    private static final Logger log = LoggerFactory.getLogger(DeviceRegistry.class);
+
+    /**
+     * Defines the magic number at the start of a registry file.
+     */
+    public static final int MAGIC = 0x4A4D4452;
+
+    /**
+     * Defines the maximum number of units of a device.
+     */
+    public static final int MAX_UNITS = 255;
+
+    private static final int COMPACTION_SLACK = 64;
+
+    /**
+     * Class holding the record of a device.
+     */
+    public static final class Entry {
+        private final Set<Integer> units;
+        private final long lastSeen;
+        private final int latency;
+
+        private Entry(Set<Integer> units, long lastSeen, int latency) {
+            this.units = Collections.unmodifiableSet(units);
+            this.lastSeen = lastSeen;
+            this.latency = latency;
+        }
+
+        /**
+         * Returns the unit ids of the device.
+         *
+         * @return the unit ids.
+         */
+        public Set<Integer> getUnits() {
+            return units;
+        }
+
+        /**
+         * Returns the time the device was last seen.
+         *
+         * @return the time in milliseconds since the epoch.
+         */
+        public long getLastSeen() {
+            return lastSeen;
+        }
+
+        /**
+         * Returns the average probe latency of the device.
+         *
+         * @return the latency in milliseconds, or <tt>-1</tt> if unknown.
+         */
+        public int getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Entry[units=%s, lastSeen=%d, latency=%d]", units, lastSeen, latency);
+        }
+    }
+
+    private final File file;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private DataOutputStream out;
+    private int records;
+
+    /**
+     * Constructs a new <tt>DeviceRegistry</tt> instance, loading
+     * the given file if it exists.
+     *
+     * @param file the registry file.
+     * @throws IOException if the file cannot be read or opened for appending.
+     */
+    public DeviceRegistry(File file) throws IOException {
+        this.file = file;
+        long valid = load();
+        if (valid < 0) {
+            // new or unreadable file
+            rewrite();
+        } else {
+            if (valid < file.length()) {
+                log.warn(String.format("Cutting off torn record of registry %s at %d", file, valid));
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.setLength(valid);
+                }
+            }
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        }
+    }
+
+    /**
+     * Returns the record of a device.
+     *
+     * @param key the device key.
+     * @return the <tt>Entry</tt>, or <tt>null</tt> if the device is unknown.
+     */
+    public Entry getEntry(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Returns the number of registered devices.
+     *
+     * @return the number of devices.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public Collection<Integer> get(String key) {
+        Entry entry = entries.get(key);
+        return entry != null ? entry.getUnits() : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException if there are more than {@link #MAX_UNITS}
+     *             units, or a unit id is not in the range 0-255.
+     */
+    @Override
+    public synchronized void put(String key, Collection<Integer> units, int latencyMs) {
+        if (units.size() > MAX_UNITS) {
+            throw new IllegalArgumentException("Too many units: " + units.size());
+        }
+        for (Integer unit : units) {
+            if (unit < 0 || unit > 255) {
+                throw new IllegalArgumentException("Invalid unit id: " + unit);
+            }
+        }
+        Entry entry = new Entry(new TreeSet<>(units), System.currentTimeMillis(), latencyMs);
+        entries.put(key, entry);
+        try {
+            if (out == null) throw new IOException("Registry closed");
+            writeRecord(out, key, entry);
+            out.flush();
+            records++;
+            if (records > 2 * entries.size() + COMPACTION_SLACK) {
+                compact();
+            }
+        } catch (IOException e) {
+            log.error(String.format("Writing registry %s failed: ", file), e);
+        }
+    }
+
+    /**
+     * Removes a device from the registry.
+     *
+     * @param key the device key.
+     */
+    public synchronized void remove(String key) {
+        if (entries.remove(key) != null && out != null) {
+            try {
+                compact();
+            } catch (IOException e) {
+                log.error(String.format("Writing registry %s failed: ", file), e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    private long load() throws IOException {
+        if (!file.exists()) return -1;
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                log.error(String.format("Registry %s has no valid header, starting empty", file));
+                return -1;
+            }
+            valid = 4;
+            for (;;) {
+                try {
+                    int keyLength = in.readUnsignedShort();
+                    byte[] utf = new byte[keyLength + 2];
+                    utf[0] = (byte) (keyLength >> 8);
+                    utf[1] = (byte) keyLength;
+                    in.readFully(utf, 2, keyLength);
+                    String key = new DataInputStream(new ByteArrayInputStream(utf)).readUTF();
+                    long lastSeen = in.readLong();
+                    int latency = in.readInt();
+                    int count = in.readUnsignedByte();
+                    Set<Integer> units = new TreeSet<>();
+                    for (int i = 0; i < count; i++) {
+                        units.add(in.readUnsignedByte());
+                    }
+                    entries.put(key, new Entry(units, lastSeen, latency));
+                    records++;
+                    valid += utf.length + 13 + count;
+                } catch (IOException e) {
+                    // end of file or torn record, e.g. a partial key failing UTF decoding
+                    return valid;
+                }
+            }
+        } catch (EOFException e) {
+            // file shorter than the header
+            return -1;
+        }
+    }
+
+    private void compact() throws IOException {
+        out.close();
+        out = null;
+        try {
+            rewrite();
+        } finally {
+            if (out == null) {
+                // the rewrite failed, keep appending to the previous file
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+            }
+        }
+    }
+
+    private void rewrite() throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream tmpOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            tmpOut.writeInt(MAGIC);
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                writeRecord(tmpOut, e.getKey(), e.getValue());
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        records = entries.size();
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+    }
+
+    private static void writeRecord(DataOutputStream out, String key, Entry entry) throws IOException {
+        out.writeUTF(key);
+        out.writeLong(entry.getLastSeen());
+        out.writeInt(entry.getLatency());
+        out.writeByte(entry.getUnits().size());
+        for (Integer unit : entry.getUnits()) {
+            out.writeByte(unit);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import net.wimpi.modbus.ModbusIOException;
+import net.wimpi.modbus.msg.ModbusMessage;
+import net.wimpi.modbus.msg.ModbusRequest;
+import net.wimpi.modbus.msg.ModbusResponse;
+
+/**
+ * Class implementing a master side serial transport on top of the
+ * event driven {@link SerialIOEngine}, for any serial encoding.
+ * <p>
+ * The transport can replace the blocking transports in a
+ * {@link net.wimpi.modbus.net.SerialConnection}, which forwards the
+ * <tt>DATA_AVAILABLE</tt> events of the port to {@link #dataAvailable()}.
+ * {@link #writeMessage(ModbusMessage)} and {@link #readResponse()} keep the
+ * blocking contract of <tt>ModbusTransport</tt>; callers that do not want to
+ * wait use {@link #submit(ModbusRequest)} instead.
+ *
+ * @version @version@ (@date@)
+ */
+public class ModbusAsyncSerialTransport extends ModbusSerialTransport {
+
+    // instance attributes
+    private final String m_Encoding;
+    private volatile SerialIOEngine m_Engine;
+    private volatile int m_Timeout = 500;
+    private Future<ModbusResponse> m_Pending;
+
+    /**
+     * Constructs a new <tt>ModbusAsyncSerialTransport</tt> instance.
+     *
+     * @param encoding the serial encoding.
+     * @see net.wimpi.modbus.Modbus#SERIAL_ENCODING_RTU
+     */
+    public ModbusAsyncSerialTransport(String encoding) {
+        // fail early on unknown encodings
+        SerialFrameCodec.forEncoding(encoding);
+        m_Encoding = encoding;
+    }// constructor
+
+    @Override
+    public void prepareStreams(InputStream in, OutputStream out) throws IOException {
+        SerialIOEngine engine = new SerialIOEngine(in, out, SerialFrameCodec.forEncoding(m_Encoding));
+        engine.setEcho(m_Echo);
+        m_Engine = engine;
+    }// prepareStreams
+
+    @Override
+    public void setEcho(boolean b) {
+        super.setEcho(b);
+        SerialIOEngine engine = m_Engine;
+        if (engine != null) {
+            engine.setEcho(b);
+        }
+    }// setEcho
+
+    /**
+     * Sets the time {@link #readResponse()} waits for a response.
+     *
+     * @param ms the timeout in milliseconds.
+     */
+    @Override
+    public void setReceiveTimeout(int ms) {
+        m_Timeout = ms;
+    }// setReceiveTimeout
+
+    /**
+     * Returns the engine driving the port.
+     *
+     * @return the <tt>SerialIOEngine</tt>, or <tt>null</tt> if no streams were prepared.
+     */
+    public SerialIOEngine getEngine() {
+        return m_Engine;
+    }// getEngine
+
+    /**
+     * Hands the bytes received by the port to the engine.
+     */
+    public void dataAvailable() {
+        SerialIOEngine engine = m_Engine;
+        if (engine != null) {
+            engine.dataAvailable();
+        }
+    }// dataAvailable
+
+    /**
+     * Submits a request without waiting for the response.
+     *
+     * @param request the <tt>ModbusRequest</tt> to be sent.
+     * @return the <tt>Future</tt> of the response.
+     * @see SerialIOEngine#submit(ModbusRequest)
+     */
+    public Future<ModbusResponse> submit(ModbusRequest request) {
+        SerialIOEngine engine = m_Engine;
+        if (engine == null) {
+            throw new IllegalStateException("Streams not prepared");
+        }
+        return engine.submit(request);
+    }// submit
+
+    @Override
+    public synchronized void writeMessage(ModbusMessage msg) throws ModbusIOException {
+        if (!(msg instanceof ModbusRequest)) {
+            throw new ModbusIOException("Only requests can be sent by a master transport");
+        }
+        if (m_Pending != null) {
+            // the previous response was never read
+            m_Pending.cancel(false);
+        }
+        m_Pending = submit((ModbusRequest) msg);
+    }// writeMessage
+
+    @Override
+    public synchronized ModbusResponse readResponse() throws ModbusIOException {
+        Future<ModbusResponse> pending = m_Pending;
+        m_Pending = null;
+        if (pending == null) {
+            throw new ModbusIOException("No request pending");
+        }
+        try {
+            return pending.get(m_Timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            pending.cancel(false);
+            throw new ModbusIOException("I/O exception - Serial port timeout.");
+        } catch (ExecutionException ex) {
+            throw new ModbusIOException(String.format("I/O exception: %s %s",
+                    ex.getCause().getClass().getSimpleName(), ex.getCause().getMessage()));
+        } catch (InterruptedException ex) {
+            pending.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new ModbusIOException("Interrupted while waiting for the response");
+        }
+    }// readResponse
+
+    // This is required for the slave that is not supported
+    @Override
+    public ModbusRequest readRequest() throws ModbusIOException {
+        throw new RuntimeException("Operation not supported.");
+    }// readRequest
+
+    @Override
+    public void close() throws IOException {
+        SerialIOEngine engine = m_Engine;
+        if (engine != null) {
+            engine.close();
+        }
+        super.close();
+    }// close
+
+}// class ModbusAsyncSerialTransport
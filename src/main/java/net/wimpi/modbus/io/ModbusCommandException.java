@@ -0,0 +1,47 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.io;
+
+/**
+ * Unchecked exception thrown when a Modbus command fails,
+ * either because of an I/O error or because the slave
+ * answered with an exception response.
+ *
+ * @version @version@ (@date@)
+ */
+public class ModbusCommandException extends RuntimeException {
+    private final int exceptionCode;
+
+    public ModbusCommandException(String message, Throwable cause) {
+        super(message, cause);
+        this.exceptionCode = -1;
+    }
+
+    public ModbusCommandException(String message, int exceptionCode) {
+        super(message);
+        this.exceptionCode = exceptionCode;
+    }
+
+    /**
+     * Returns the Modbus exception code returned by the slave.
+     *
+     * @return the exception code, or <tt>-1</tt> if the command failed
+     * without an exception response.
+     */
+    public int getExceptionCode() {
+        return exceptionCode;
+    }
+}
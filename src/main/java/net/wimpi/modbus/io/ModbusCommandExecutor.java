@@ -0,0 +1,1211 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.io;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusIOException;
+import net.wimpi.modbus.msg.*;
+import net.wimpi.modbus.procimg.InputRegister;
+import net.wimpi.modbus.procimg.Register;
+import net.wimpi.modbus.procimg.SimpleRegister;
+import net.wimpi.modbus.util.AtomicCounter;
+import net.wimpi.modbus.util.BitVector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Class implementing <tt>ModbusCommands</tt> over any <tt>ModbusTransport</tt>.
+ * <p>
+ * Besides the commands addressing a single unit, the executor offers bulk
+ * variants taking a collection of unit ids, which query all units in one pass
+ * and return {@link Results} per unit. Framings carrying a transaction id
+ * (Modbus/TCP and UDP) are pipelined: up to {@link #getPipelineDepth()} requests
+ * are in flight at a time and responses are matched by their transaction id.
+ * Serial transports and the RTU or ASCII encapsulations over TCP cannot tell
+ * responses apart, so their requests are scheduled back-to-back, each one
+ * being sent as soon as the previous response has arrived.
+ * <p>
+ * All commands synchronize on the transport, so that a request and its
+ * response are never interleaved with other users of the same transport
+ * synchronizing likewise.
+ * <p>
+ * Failures are thrown as {@link ModbusCommandException} by the single unit
+ * commands, and collected per unit by the bulk variants.
+ *
+ * @version @version@ (@date@)
+ */
+public class ModbusCommandExecutor implements ModbusCommands {
+    private static final Logger log = LoggerFactory.getLogger(ModbusCommandExecutor.class);
+
+    /**
+     * Defines the default number of pipelined requests in flight.
+     */
+    public static final int DEFAULT_PIPELINE_DEPTH = 8;
+
+    /**
+     * Defines the maximum number of registers per file transfer request (<b>120</b>),
+     * so that a read group split at a file boundary still fits one response.
+     */
+    public static final int MAX_FILE_TRANSFER_LENGTH = 120;
+
+    // byte count limit of file record requests and responses
+    private static final int MAX_FILE_RECORD_BYTES = 245;
+    // registers per write group split at a file boundary
+    private static final int MAX_FILE_WRITE_LENGTH =
+            (MAX_FILE_RECORD_BYTES - 2 * WriteFileRecordRequest.SUB_REQUEST_HEADER_LENGTH) / 2;
+
+    private final ModbusTransport transport;
+    private final boolean transactional;
+    private final AtomicCounter transactionId = new AtomicCounter(Modbus.DEFAULT_TRANSACTION_ID);
+    private volatile int pipelineDepth = DEFAULT_PIPELINE_DEPTH;
+    private volatile int fileRecordLength = 1;
+    private volatile int fileTransferLength = MAX_FILE_TRANSFER_LENGTH;
+
+    /**
+     * Class holding the results of a bulk command, per unit id.
+     *
+     * @param <T> the type of the command result.
+     */
+    public static final class Results<T> {
+        private final SortedMap<Integer, T> values = new TreeMap<>();
+        private final SortedMap<Integer, ModbusCommandException> failures = new TreeMap<>();
+
+        private Results() {
+        }
+
+        /**
+         * Returns the results of the units that answered.
+         *
+         * @return a <tt>Map</tt> of unit ids to results, ordered by unit id.
+         */
+        public SortedMap<Integer, T> getValues() {
+            return Collections.unmodifiableSortedMap(values);
+        }
+
+        /**
+         * Returns the failures of the units that did not answer
+         * or answered with an exception.
+         *
+         * @return a <tt>Map</tt> of unit ids to failures, ordered by unit id.
+         */
+        public SortedMap<Integer, ModbusCommandException> getFailures() {
+            return Collections.unmodifiableSortedMap(failures);
+        }
+
+        /**
+         * Returns the result of a unit.
+         *
+         * @param unitId the unit identifier.
+         * @return the result of the unit.
+         * @throws ModbusCommandException if the command failed for the unit.
+         * @throws IllegalArgumentException if the unit was not queried.
+         */
+        public T get(int unitId) {
+            ModbusCommandException failure = failures.get(unitId);
+            if (failure != null) throw failure;
+            if (!values.containsKey(unitId)) {
+                throw new IllegalArgumentException(String.format("Unit [%d] was not queried!", unitId));
+            }
+            return values.get(unitId);
+        }
+
+        /**
+         * Tests if the command succeeded for all units.
+         *
+         * @return true if there are no failures, false otherwise.
+         */
+        public boolean isComplete() {
+            return failures.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Results[values=%s, failures=%s]", values.keySet(), failures.keySet());
+        }
+    }
+
+    /**
+     * Constructs a new <tt>ModbusCommandExecutor</tt> instance
+     * for a given <tt>ModbusTransport</tt>.
+     *
+     * @param transport the <tt>ModbusTransport</tt> used to execute the commands.
+     */
+    public ModbusCommandExecutor(ModbusTransport transport) {
+        if (transport == null) throw new IllegalArgumentException("Transport can't be null!");
+        this.transport = transport;
+        this.transactional = (transport instanceof ModbusTCPTransport || transport instanceof ModbusUDPTransport)
+                && !(transport instanceof ModbusTCPRTUTransport) && !(transport instanceof ModbusTCPASCIITransport);
+    }
+
+    /**
+     * Returns the <tt>ModbusTransport</tt>.
+     *
+     * @return a <tt>ModbusTransport</tt> value.
+     */
+    public ModbusTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Tests if bulk commands are pipelined on the transport.
+     *
+     * @return true if requests are pipelined, false if they are sent back-to-back.
+     */
+    public boolean isPipelining() {
+        return transactional && pipelineDepth > 1;
+    }
+
+    /**
+     * Returns the maximum number of pipelined requests in flight.
+     *
+     * @return the pipeline depth.
+     */
+    public int getPipelineDepth() {
+        return pipelineDepth;
+    }
+
+    /**
+     * Sets the maximum number of pipelined requests in flight. Many gateways
+     * queue only a few requests per connection; a depth of <tt>1</tt> disables
+     * pipelining. The depth has no effect on transports without transaction ids.
+     *
+     * @param depth the pipeline depth.
+     */
+    public void setPipelineDepth(int depth) {
+        if (depth < 1) throw new IllegalArgumentException("Pipeline depth must be positive: " + depth);
+        this.pipelineDepth = depth;
+    }
+
+    /**
+     * Returns the number of registers per record read by {@link #readFileRecord(int, int)}.
+     *
+     * @return the record length in registers.
+     */
+    public int getFileRecordLength() {
+        return fileRecordLength;
+    }
+
+    /**
+     * Sets the number of registers per record read by {@link #readFileRecord(int, int)}.
+     *
+     * @param length the record length in registers.
+     */
+    public void setFileRecordLength(int length) {
+        if (length < 1 || 2 + length * 2 > MAX_FILE_RECORD_BYTES) {
+            throw new IllegalArgumentException("Illegal record length: " + length);
+        }
+        this.fileRecordLength = length;
+    }
+
+    /**
+     * Returns the number of registers transferred per request by
+     * {@link #readFile(int, int, int, byte[], int, int)} and
+     * {@link #writeFile(int, int, int, byte[], int, int)}.
+     *
+     * @return the transfer length in registers.
+     */
+    public int getFileTransferLength() {
+        return fileTransferLength;
+    }
+
+    /**
+     * Sets the number of registers transferred per request by file reads and writes.
+     * Devices with small buffers may need less than {@link #MAX_FILE_TRANSFER_LENGTH};
+     * writes are further limited to fit the request.
+     *
+     * @param length the transfer length in registers.
+     */
+    public void setFileTransferLength(int length) {
+        if (length < 1 || length > MAX_FILE_TRANSFER_LENGTH) {
+            throw new IllegalArgumentException("Illegal transfer length: " + length);
+        }
+        this.fileTransferLength = length;
+    }
+
+    @Override
+    public BitVector readCoils(int unitId, int ref, int count) {
+        return execute(unitId, readCoilsCommand(ref, count));
+    }
+
+    /**
+     * Reads coils from several units.
+     *
+     * @param unitIds the unit identifiers.
+     * @param ref the reference of the first coil.
+     * @param count the count of the coils.
+     * @return the <tt>Results</tt> per unit.
+     * @see #readCoils(int, int, int)
+     */
+    public Results<BitVector> readCoils(Collection<Integer> unitIds, int ref, int count) {
+        return executeAll(unitIds, readCoilsCommand(ref, count));
+    }
+
+    @Override
+    public BitVector readDiscreteInputs(int unitId, int ref, int count) {
+        return execute(unitId, readDiscreteInputsCommand(ref, count));
+    }
+
+    /**
+     * Reads discrete inputs from several units.
+     *
+     * @param unitIds the unit identifiers.
+     * @param ref the reference of the first discrete input.
+     * @param count the count of the discrete inputs.
+     * @return the <tt>Results</tt> per unit.
+     * @see #readDiscreteInputs(int, int, int)
+     */
+    public Results<BitVector> readDiscreteInputs(Collection<Integer> unitIds, int ref, int count) {
+        return executeAll(unitIds, readDiscreteInputsCommand(ref, count));
+    }
+
+    @Override
+    public Register[] readHoldingRegisters(int unitId, int ref, int count) {
+        return execute(unitId, readHoldingRegistersCommand(ref, count));
+    }
+
+    /**
+     * Reads holding registers from several units.
+     *
+     * @param unitIds the unit identifiers.
+     * @param ref the reference of the first holding register.
+     * @param count the count of the holding registers.
+     * @return the <tt>Results</tt> per unit.
+     * @see #readHoldingRegisters(int, int, int)
+     */
+    public Results<Register[]> readHoldingRegisters(Collection<Integer> unitIds, int ref, int count) {
+        return executeAll(unitIds, readHoldingRegistersCommand(ref, count));
+    }
+
+    @Override
+    public InputRegister[] readInputRegisters(int unitId, int ref, int count) {
+        return execute(unitId, readInputRegistersCommand(ref, count));
+    }
+
+    /**
+     * Reads input registers from several units.
+     *
+     * @param unitIds the unit identifiers.
+     * @param ref the reference of the first input register.
+     * @param count the count of the input registers.
+     * @return the <tt>Results</tt> per unit.
+     * @see #readInputRegisters(int, int, int)
+     */
+    public Results<InputRegister[]> readInputRegisters(Collection<Integer> unitIds, int ref, int count) {
+        return executeAll(unitIds, readInputRegistersCommand(ref, count));
+    }
+
+    @Override
+    public boolean writeSingleCoil(int unitId, int ref, boolean state) {
+        return execute(unitId, writeSingleCoilCommand(ref, state));
+    }
+
+    /**
+     * Writes a single coil of several units.
+     *
+     * @param unitIds the unit identifiers.
+     * @param ref the reference of the coil.
+     * @param state the state of the coil.
+     * @return the <tt>Results</tt> per unit, holding the returned states.
+     * @see #writeSingleCoil(int, int, boolean)
+     */
+    public Results<Boolean> writeSingleCoil(Collection<Integer> unitIds, int ref, boolean state) {
+        return executeAll(unitIds, writeSingleCoilCommand(ref, state));
+    }
+
+    @Override
+    public void writeSingleRegister(int unitId, int ref, Register register) {
+        execute(unitId, writeSingleRegisterCommand(ref, register));
+    }
+
+    /**
+     * Writes a single holding register of several units.
+     *
+     * @param unitIds the unit identifiers.
+     * @param ref the reference of the register.
+     * @param register Register to be written.
+     * @return the <tt>Results</tt> per unit, holding <tt>null</tt> values.
+     * @see #writeSingleRegister(int, int, Register)
+     */
+    public Results<Void> writeSingleRegister(Collection<Integer> unitIds, int ref, Register register) {
+        return executeAll(unitIds, writeSingleRegisterCommand(ref, register));
+    }
+
+    @Override
+    public int readExceptionStatus(int unitId) {
+        return execute(unitId, readExceptionStatusCommand());
+    }
+
+    /**
+     * Reads the exception status of several units.
+     *
+     * @param unitIds the unit identifiers.
+     * @return the <tt>Results</tt> per unit.
+     * @see #readExceptionStatus(int)
+     */
+    public Results<Integer> readExceptionStatus(Collection<Integer> unitIds) {
+        return executeAll(unitIds, readExceptionStatusCommand());
+    }
+
+    @Override
+    public Register[] diagnostics(int unitId, int subFunction, Register[] data) {
+        return execute(unitId, diagnosticsCommand(subFunction, data));
+    }
+
+    /**
+     * Runs a diagnostics sub-function on several units.
+     *
+     * @param unitIds the unit identifiers.
+     * @param subFunction diagnostic sub function
+     * @param data data to be written.
+     * @return the <tt>Results</tt> per unit.
+     * @see #diagnostics(int, int, Register[])
+     */
+    public Results<Register[]> diagnostics(Collection<Integer> unitIds, int subFunction, Register[] data) {
+        return executeAll(unitIds, diagnosticsCommand(subFunction, data));
+    }
+
+    @Override
+    public Register[] getCommEventCounter(int unitId) {
+        return execute(unitId, getCommEventCounterCommand());
+    }
+
+    /**
+     * Reads the communication event counter of several units.
+     *
+     * @param unitIds the unit identifiers.
+     * @return the <tt>Results</tt> per unit.
+     * @see #getCommEventCounter(int)
+     */
+    public Results<Register[]> getCommEventCounter(Collection<Integer> unitIds) {
+        return executeAll(unitIds, getCommEventCounterCommand());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The returned array holds the status word, the event count and the message
+     * count, followed by one register per event byte.
+     */
+    @Override
+    public Register[] getCommEventLog(int unitId) {
+        return execute(unitId, getCommEventLogCommand());
+    }
+
+    /**
+     * Reads the communication event log of several units.
+     *
+     * @param unitIds the unit identifiers.
+     * @return the <tt>Results</tt> per unit.
+     * @see #getCommEventLog(int)
+     */
+    public Results<Register[]> getCommEventLog(Collection<Integer> unitIds) {
+        return executeAll(unitIds, getCommEventLogCommand());
+    }
+
+    @Override
+    public void writeMultipleCoils(int unitId, int ref, BitVector coils) {
+        execute(unitId, writeMultipleCoilsCommand(ref, coils));
+    }
+
+    /**
+     * Writes a sequence of coils of several units.
+     *
+     * @param unitIds the unit identifiers.
+     * @param ref the reference of the first coil.
+     * @param coils the <tt>BitVector</tt> that stores
+     * the collection of bits that will be written.
+     * @return the <tt>Results</tt> per unit, holding <tt>null</tt> values.
+     * @see #writeMultipleCoils(int, int, BitVector)
+     */
+    public Results<Void> writeMultipleCoils(Collection<Integer> unitIds, int ref, BitVector coils) {
+        return executeAll(unitIds, writeMultipleCoilsCommand(ref, coils));
+    }
+
+    @Override
+    public void writeMultipleRegisters(int unitId, int ref, Register[] registers) {
+        execute(unitId, writeMultipleRegistersCommand(ref, registers));
+    }
+
+    /**
+     * Writes a block of contiguous registers of several units.
+     *
+     * @param unitIds the unit identifiers.
+     * @param ref the reference of the first register.
+     * @param registers the <tt>Register[]</tt> that stores register array that will be written.
+     * @return the <tt>Results</tt> per unit, holding <tt>null</tt> values.
+     * @see #writeMultipleRegisters(int, int, Register[])
+     */
+    public Results<Void> writeMultipleRegisters(Collection<Integer> unitIds, int ref, Register[] registers) {
+        return executeAll(unitIds, writeMultipleRegistersCommand(ref, registers));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The returned array holds one register per byte of the device specific data.
+     */
+    @Override
+    public Register[] reportSlaveId(int unitId) {
+        return execute(unitId, reportSlaveIdCommand());
+    }
+
+    /**
+     * Reads the slave id of several units.
+     *
+     * @param unitIds the unit identifiers.
+     * @return the <tt>Results</tt> per unit.
+     * @see #reportSlaveId(int)
+     */
+    public Results<Register[]> reportSlaveId(Collection<Integer> unitIds) {
+        return executeAll(unitIds, reportSlaveIdCommand());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * As a <tt>ModbusFile</tt> holds a whole file, the identifier is taken as the
+     * file number. The records of {@link #getFileRecordLength()} registers are read
+     * from record <tt>0</tt> on, several per request, until the device answers with
+     * an <tt>illegal data address</tt> exception or the last record is read.
+     *
+     * @throws ModbusCommandException if not even the first record can be read.
+     */
+    @Override
+    public ModbusFile readFileRecord(int unitId, int recordId) {
+        int length = fileRecordLength;
+        int batch = Math.min(MAX_FILE_RECORD_BYTES / ReadFileRecordRequest.SUB_REQUEST_LENGTH,
+                MAX_FILE_RECORD_BYTES / (2 + length * 2));
+        ModbusFile file = new ModbusFile(unitId, recordId);
+        int record = 0;
+        while (record < Modbus.MAX_FILE_RECORDS) {
+            int count = Math.min(batch, Modbus.MAX_FILE_RECORDS - record);
+            try {
+                Register[][] records = execute(unitId, readFileRecordCommand(recordId, record, count, length));
+                for (Register[] data : records) {
+                    file.addRecord(data);
+                }
+                record += count;
+            } catch (ModbusCommandException e) {
+                if (e.getExceptionCode() != Modbus.ILLEGAL_ADDRESS_EXCEPTION) throw e;
+                if (count > 1) {
+                    // the end of the file lies within the batch
+                    batch = 1;
+                    continue;
+                }
+                if (record == 0) throw e;
+                break;
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Reads the FIFO queue at the given pointer address.
+     *
+     * @param unitId the unit identifier.
+     * @param ref the FIFO pointer address.
+     * @return the queued values.
+     */
+    public Register[] readFifoQueue(int unitId, int ref) {
+        return execute(unitId, readFifoQueueCommand(ref));
+    }
+
+    /**
+     * Reads the FIFO queue of several units.
+     *
+     * @param unitIds the unit identifiers.
+     * @param ref the FIFO pointer address.
+     * @return the <tt>Results</tt> per unit.
+     * @see #readFifoQueue(int, int)
+     */
+    public Results<Register[]> readFifoQueue(Collection<Integer> unitIds, int ref) {
+        return executeAll(unitIds, readFifoQueueCommand(ref));
+    }
+
+    /**
+     * Reads a contiguous range of file registers into a caller buffer.
+     * <p>
+     * The range starts at the given record of the given file and continues into
+     * the next files past record <tt>9999</tt>, so that it may span several files.
+     * It is read in requests of {@link #getFileTransferLength()} registers, which are
+     * pipelined where the transport allows. The device marks the end of its data
+     * with an <tt>illegal data address</tt> exception; the requests around it are
+     * narrowed down until the last readable register is found.
+     *
+     * @param unitId the unit identifier.
+     * @param file the file number of the first register.
+     * @param record the record number of the first register.
+     * @param dest the array receiving the registers, two bytes each in big endian order.
+     * @param off the offset in <tt>dest</tt>.
+     * @param words the number of registers to be read.
+     * @return the number of registers read, less than <tt>words</tt> at the end of the data.
+     * @throws ModbusCommandException if a request fails for another reason.
+     */
+    public int readFile(int unitId, int file, int record, byte[] dest, int off, int words) {
+        checkRange(dest, off, words);
+        int length = fileTransferLength;
+        int chunk = length;
+        int done = 0;
+        while (done < words) {
+            int span = chunk == length ? words - done : Math.min(words - done, chunk * 2);
+            int n = readRange(unitId, file, record + done, dest, off + done * 2, span, chunk);
+            done += n;
+            if (n == span) {
+                chunk = length;
+            } else if (chunk == 1) {
+                // the end of the data
+                break;
+            } else {
+                // the end of the data lies within the failed request
+                chunk = chunk / 2;
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Writes a contiguous range of file registers from a caller buffer.
+     * The range is addressed like in {@link #readFile(int, int, int, byte[], int, int)},
+     * and written in pipelined requests where the transport allows.
+     *
+     * @param unitId the unit identifier.
+     * @param file the file number of the first register.
+     * @param record the record number of the first register.
+     * @param src the array holding the registers, two bytes each in big endian order.
+     * @param off the offset in <tt>src</tt>.
+     * @param words the number of registers to be written.
+     * @throws ModbusCommandException if a request fails; registers before the
+     *             failed request may have been written.
+     */
+    public void writeFile(int unitId, final int file, final int record, final byte[] src, final int off,
+            final int words) {
+        checkRange(src, off, words);
+        final int chunk = Math.min(fileTransferLength, MAX_FILE_WRITE_LENGTH);
+        final ModbusCommandException[] failure = new ModbusCommandException[1];
+        final int[] failedAt = { words };
+        final Map<ModbusRequest, Integer> offsets = new IdentityHashMap<>();
+        Iterator<ModbusRequest> requests = new FileRequests(unitId, words, chunk, failure) {
+            @Override
+            ModbusRequest createRequest(int pos, int count) {
+                WriteFileRecordRequest request = new WriteFileRecordRequest();
+                for (int[] group : groups(file, record + pos, count)) {
+                    request.addRequest(new WriteFileRecordRequest.RecordData(group[0], group[1], src,
+                            off + (pos + group[2]) * 2, group[3]));
+                }
+                offsets.put(request, pos);
+                return request;
+            }
+        };
+        synchronized (transport) {
+            run(requests, "write file record", new Sink() {
+                @Override
+                public void completed(ModbusRequest request, ModbusResponse response) {
+                }
+
+                @Override
+                public void failed(ModbusRequest request, ModbusCommandException e) {
+                    int pos = offsets.get(request);
+                    if (pos < failedAt[0]) {
+                        failedAt[0] = pos;
+                        failure[0] = e;
+                    }
+                }
+            });
+        }
+        if (failure[0] != null) throw failure[0];
+    }
+
+    private <T> T execute(int unitId, Command<T> command) {
+        ModbusRequest request = command.createRequest();
+        request.setUnitID(unitId);
+        ModbusResponse response;
+        synchronized (transport) {
+            try {
+                response = transact(request);
+            } catch (ModbusIOException e) {
+                throw failure(request, e);
+            }
+        }
+        return complete(request, response, command);
+    }
+
+    private <T> Results<T> executeAll(Collection<Integer> unitIds, final Command<T> command) {
+        final Results<T> results = new Results<>();
+        final Iterator<Integer> units = unitIds.iterator();
+        Iterator<ModbusRequest> requests = new Iterator<ModbusRequest>() {
+            @Override
+            public boolean hasNext() {
+                return units.hasNext();
+            }
+
+            @Override
+            public ModbusRequest next() {
+                ModbusRequest request = command.createRequest();
+                request.setUnitID(units.next());
+                return request;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        synchronized (transport) {
+            run(requests, command.name, new Sink() {
+                @Override
+                public void completed(ModbusRequest request, ModbusResponse response) {
+                    try {
+                        results.values.put(request.getUnitID(), command.getResult(response));
+                    } catch (RuntimeException e) {
+                        failed(request, new ModbusCommandException(String.format("Unit [%d] answered %s "
+                                + "with a malformed response", request.getUnitID(), command.name), e));
+                    }
+                }
+
+                @Override
+                public void failed(ModbusRequest request, ModbusCommandException e) {
+                    results.failures.put(request.getUnitID(), e);
+                }
+            });
+        }
+        return results;
+    }
+
+    private int readRange(int unitId, final int file, final int record, final byte[] dest, final int off,
+            int words, int chunk) {
+        final ModbusCommandException[] failure = new ModbusCommandException[1];
+        final int[] failedAt = { words };
+        final Map<ModbusRequest, Integer> offsets = new IdentityHashMap<>();
+        Iterator<ModbusRequest> requests = new FileRequests(unitId, words, chunk, failure) {
+            @Override
+            ModbusRequest createRequest(int pos, int count) {
+                ReadFileRecordRequest request = new ReadFileRecordRequest();
+                for (int[] group : groups(file, record + pos, count)) {
+                    request.addRequest(new ReadFileRecordRequest.RecordRequest(group[0], group[1], group[3]));
+                }
+                offsets.put(request, pos);
+                return request;
+            }
+        };
+        synchronized (transport) {
+            run(requests, "read file record", new Sink() {
+                @Override
+                public void completed(ModbusRequest request, ModbusResponse response) {
+                    ReadFileRecordRequest req = (ReadFileRecordRequest) request;
+                    ReadFileRecordResponse res = (ReadFileRecordResponse) response;
+                    int pos = off + offsets.get(request) * 2;
+                    if (res.getRecordCount() != req.getRequestCount()) {
+                        failed(request, malformed(request));
+                        return;
+                    }
+                    for (int i = 0; i < req.getRequestCount(); i++) {
+                        if (res.getRecordWordCount(i) != req.getRequest(i).getWordCount()) {
+                            failed(request, malformed(request));
+                            return;
+                        }
+                    }
+                    for (int i = 0; i < req.getRequestCount(); i++) {
+                        pos += res.getRecordData(i, dest, pos);
+                    }
+                }
+
+                @Override
+                public void failed(ModbusRequest request, ModbusCommandException e) {
+                    int pos = offsets.get(request);
+                    if (pos < failedAt[0]) {
+                        failedAt[0] = pos;
+                        failure[0] = e;
+                    }
+                }
+            });
+        }
+        if (failure[0] != null && failure[0].getExceptionCode() != Modbus.ILLEGAL_ADDRESS_EXCEPTION) {
+            throw failure[0];
+        }
+        // all requests before the first failed one have completed
+        return failedAt[0];
+    }
+
+    /**
+     * Sends the requests and hands each answer to the sink: pipelined if the
+     * transport carries transaction ids, back-to-back otherwise. The iterator is
+     * consulted only when another request can be sent, so it may stop early.
+     * Must be called holding the transport lock.
+     */
+    private void run(Iterator<ModbusRequest> requests, String name, Sink sink) {
+        if (!isPipelining()) {
+            while (requests.hasNext()) {
+                ModbusRequest request = requests.next();
+                try {
+                    ModbusResponse response = transact(request);
+                    check(request, response, name);
+                    sink.completed(request, response);
+                } catch (ModbusIOException e) {
+                    sink.failed(request, failure(request, e));
+                } catch (ModbusCommandException e) {
+                    sink.failed(request, e);
+                }
+            }
+            return;
+        }
+        Map<Integer, ModbusRequest> inFlight = new LinkedHashMap<>();
+        List<ModbusRequest> batch = new ArrayList<>(pipelineDepth);
+        while (!inFlight.isEmpty() || requests.hasNext()) {
+            batch.clear();
+            while (inFlight.size() + batch.size() < pipelineDepth && requests.hasNext()) {
+                ModbusRequest request = requests.next();
+                request.setTransactionID(transactionId.increment());
+                batch.add(request);
+            }
+            send(batch, inFlight, sink);
+            if (inFlight.isEmpty()) continue;
+
+            ModbusResponse response;
+            try {
+                response = transport.readResponse();
+            } catch (ModbusIOException e) {
+                // nothing arrived in time, the requests in flight are lost
+                for (ModbusRequest request : inFlight.values()) {
+                    sink.failed(request, failure(request, e));
+                }
+                inFlight.clear();
+                continue;
+            }
+            ModbusRequest request = inFlight.remove(response.getTransactionID());
+            if (request == null) {
+                log.debug("Discarding response with unknown transaction id {}", response.getTransactionID());
+                continue;
+            }
+            try {
+                check(request, response, name);
+                sink.completed(request, response);
+            } catch (ModbusCommandException e) {
+                sink.failed(request, e);
+            }
+        }
+    }
+
+    /**
+     * Writes the requests and records them as in flight. TCP transports
+     * get the whole batch in a single socket write.
+     */
+    private void send(List<ModbusRequest> batch, Map<Integer, ModbusRequest> inFlight, Sink sink) {
+        if (batch.size() > 1 && transport instanceof ModbusTCPTransport) {
+            try {
+                ((ModbusTCPTransport) transport).writeMessages(batch);
+                for (ModbusRequest request : batch) {
+                    inFlight.put(request.getTransactionID(), request);
+                }
+            } catch (ModbusIOException e) {
+                for (ModbusRequest request : batch) {
+                    sink.failed(request, failure(request, e));
+                }
+            }
+            return;
+        }
+        for (ModbusRequest request : batch) {
+            try {
+                transport.writeMessage(request);
+                inFlight.put(request.getTransactionID(), request);
+            } catch (ModbusIOException e) {
+                sink.failed(request, failure(request, e));
+            }
+        }
+    }
+
+    private ModbusResponse transact(ModbusRequest request) throws ModbusIOException {
+        if (!transactional) {
+            transport.writeMessage(request);
+            return transport.readResponse();
+        }
+        request.setTransactionID(transactionId.increment());
+        transport.writeMessage(request);
+        for (;;) {
+            ModbusResponse response = transport.readResponse();
+            if (response.getTransactionID() == request.getTransactionID()) return response;
+            // late answer to a request that timed out before
+            log.debug("Discarding response with unknown transaction id {}", response.getTransactionID());
+        }
+    }
+
+    private static <T> T complete(ModbusRequest request, ModbusResponse response, Command<T> command) {
+        check(request, response, command.name);
+        return command.getResult(response);
+    }
+
+    private static void check(ModbusRequest request, ModbusResponse response, String name) {
+        if (response instanceof ExceptionResponse) {
+            int code = ((ExceptionResponse) response).getExceptionCode();
+            throw new ModbusCommandException(String.format("Unit [%d] answered %s with exception code %d",
+                    request.getUnitID(), name, code), code);
+        }
+        if (response.getFunctionCode() != request.getFunctionCode()) {
+            throw new ModbusCommandException(String.format("Unit [%d] answered %s with function code %d",
+                    request.getUnitID(), name, response.getFunctionCode()), -1);
+        }
+    }
+
+    private static ModbusCommandException malformed(ModbusRequest request) {
+        return new ModbusCommandException(String.format("Unit [%d] answered with record lengths not matching "
+                + "the request [request: %s]", request.getUnitID(), request.getHexMessage()), -1);
+    }
+
+    private static void checkRange(byte[] buf, int off, int words) {
+        if (off < 0 || words < 0 || off + words * 2 > buf.length) {
+            throw new IndexOutOfBoundsException(String.format("Illegal range: offset %d, %d words, buffer of %d",
+                    off, words, buf.length));
+        }
+    }
+
+    /**
+     * Splits a register range at file boundaries.
+     *
+     * @return groups of file number, record number, offset in the range and register count.
+     */
+    private static List<int[]> groups(int file, int record, int count) {
+        List<int[]> groups = new ArrayList<>(2);
+        file += record / Modbus.MAX_FILE_RECORDS;
+        record %= Modbus.MAX_FILE_RECORDS;
+        int pos = 0;
+        while (pos < count) {
+            int n = Math.min(count - pos, Modbus.MAX_FILE_RECORDS - record);
+            groups.add(new int[] { file, record, pos, n });
+            pos += n;
+            file++;
+            record = 0;
+        }
+        return groups;
+    }
+
+    private static ModbusCommandException failure(ModbusRequest request, ModbusIOException e) {
+        String errorMessage = String.format("Modbus processing error [request: %s]: %s",
+                request.getHexMessage(), e.getMessage());
+        log.debug(errorMessage);
+        return new ModbusCommandException(errorMessage, e);
+    }
+
+    private static Register[] toRegisters(byte[] data) {
+        Register[] registers = new Register[data.length];
+        for (int i = 0; i < data.length; i++) {
+            registers[i] = new SimpleRegister(data[i] & 0xff);
+        }
+        return registers;
+    }
+
+    private static Command<BitVector> readCoilsCommand(final int ref, final int count) {
+        return new Command<BitVector>("read coils") {
+            @Override
+            ModbusRequest createRequest() {
+                return new ReadCoilsRequest(ref, count);
+            }
+
+            @Override
+            BitVector getResult(ModbusResponse response) {
+                return ((ReadCoilsResponse) response).getCoils();
+            }
+        };
+    }
+
+    private static Command<BitVector> readDiscreteInputsCommand(final int ref, final int count) {
+        return new Command<BitVector>("read discrete inputs") {
+            @Override
+            ModbusRequest createRequest() {
+                return new ReadInputDiscretesRequest(ref, count);
+            }
+
+            @Override
+            BitVector getResult(ModbusResponse response) {
+                return ((ReadInputDiscretesResponse) response).getDiscretes();
+            }
+        };
+    }
+
+    private static Command<Register[]> readHoldingRegistersCommand(final int ref, final int count) {
+        return new Command<Register[]>("read holding registers") {
+            @Override
+            ModbusRequest createRequest() {
+                return new ReadMultipleRegistersRequest(ref, count);
+            }
+
+            @Override
+            Register[] getResult(ModbusResponse response) {
+                return ((ReadMultipleRegistersResponse) response).getRegisters();
+            }
+        };
+    }
+
+    private static Command<InputRegister[]> readInputRegistersCommand(final int ref, final int count) {
+        return new Command<InputRegister[]>("read input registers") {
+            @Override
+            ModbusRequest createRequest() {
+                return new ReadInputRegistersRequest(ref, count);
+            }
+
+            @Override
+            InputRegister[] getResult(ModbusResponse response) {
+                return ((ReadInputRegistersResponse) response).getRegisters();
+            }
+        };
+    }
+
+    private static Command<Boolean> writeSingleCoilCommand(final int ref, final boolean state) {
+        return new Command<Boolean>("write single coil") {
+            @Override
+            ModbusRequest createRequest() {
+                return new WriteCoilRequest(ref, state);
+            }
+
+            @Override
+            Boolean getResult(ModbusResponse response) {
+                return ((WriteCoilResponse) response).getCoil();
+            }
+        };
+    }
+
+    private static Command<Void> writeSingleRegisterCommand(final int ref, final Register register) {
+        return new Command<Void>("write single register") {
+            @Override
+            ModbusRequest createRequest() {
+                return new WriteSingleRegisterRequest(ref, register);
+            }
+
+            @Override
+            Void getResult(ModbusResponse response) {
+                return null;
+            }
+        };
+    }
+
+    private static Command<Integer> readExceptionStatusCommand() {
+        return new Command<Integer>("read exception status") {
+            @Override
+            ModbusRequest createRequest() {
+                return new ReadExceptionStatusRequest();
+            }
+
+            @Override
+            Integer getResult(ModbusResponse response) {
+                return ((ReadExceptionStatusResponse) response).getStatus();
+            }
+        };
+    }
+
+    private static Command<Register[]> diagnosticsCommand(final int subFunction, final Register[] data) {
+        return new Command<Register[]>("diagnostics") {
+            @Override
+            ModbusRequest createRequest() {
+                return new DiagnosticsRequest(subFunction, data);
+            }
+
+            @Override
+            Register[] getResult(ModbusResponse response) {
+                return ((DiagnosticsResponse) response).getData();
+            }
+        };
+    }
+
+    private static Command<Register[]> getCommEventCounterCommand() {
+        return new Command<Register[]>("get comm event counter") {
+            @Override
+            ModbusRequest createRequest() {
+                return new GetCommEventCounterRequest();
+            }
+
+            @Override
+            Register[] getResult(ModbusResponse response) {
+                GetCommEventCounterResponse res = (GetCommEventCounterResponse) response;
+                return new Register[] { new SimpleRegister(res.getStatus()), new SimpleRegister(res.getEventCount()) };
+            }
+        };
+    }
+
+    private static Command<Register[]> getCommEventLogCommand() {
+        return new Command<Register[]>("get comm event log") {
+            @Override
+            ModbusRequest createRequest() {
+                return new GetCommEventLogRequest();
+            }
+
+            @Override
+            Register[] getResult(ModbusResponse response) {
+                GetCommEventLogResponse res = (GetCommEventLogResponse) response;
+                Register[] events = toRegisters(res.getEvents());
+                Register[] registers = new Register[3 + events.length];
+                registers[0] = new SimpleRegister(res.getStatus());
+                registers[1] = new SimpleRegister(res.getEventCount());
+                registers[2] = new SimpleRegister(res.getMessageCount());
+                System.arraycopy(events, 0, registers, 3, events.length);
+                return registers;
+            }
+        };
+    }
+
+    private static Command<Void> writeMultipleCoilsCommand(final int ref, final BitVector coils) {
+        return new Command<Void>("write multiple coils") {
+            @Override
+            ModbusRequest createRequest() {
+                return new WriteMultipleCoilsRequest(ref, coils);
+            }
+
+            @Override
+            Void getResult(ModbusResponse response) {
+                return null;
+            }
+        };
+    }
+
+    private static Command<Void> writeMultipleRegistersCommand(final int ref, final Register[] registers) {
+        return new Command<Void>("write multiple registers") {
+            @Override
+            ModbusRequest createRequest() {
+                return new WriteMultipleRegistersRequest(ref, registers);
+            }
+
+            @Override
+            Void getResult(ModbusResponse response) {
+                return null;
+            }
+        };
+    }
+
+    private static Command<Register[]> reportSlaveIdCommand() {
+        return new Command<Register[]>("report slave id") {
+            @Override
+            ModbusRequest createRequest() {
+                return new ReportSlaveIdRequest();
+            }
+
+            @Override
+            Register[] getResult(ModbusResponse response) {
+                return toRegisters(((ReportSlaveIdResponse) response).getData());
+            }
+        };
+    }
+
+    private static Command<Register[][]> readFileRecordCommand(final int file, final int record, final int count,
+            final int length) {
+        return new Command<Register[][]>("read file record") {
+            @Override
+            ModbusRequest createRequest() {
+                ReadFileRecordRequest request = new ReadFileRecordRequest();
+                for (int i = 0; i < count; i++) {
+                    request.addRequest(new ReadFileRecordRequest.RecordRequest(file, record + i, length));
+                }
+                return request;
+            }
+
+            @Override
+            Register[][] getResult(ModbusResponse response) {
+                ReadFileRecordResponse res = (ReadFileRecordResponse) response;
+                Register[][] records = new Register[res.getRecordCount()][];
+                for (int i = 0; i < records.length; i++) {
+                    records[i] = res.getRecord(i);
+                }
+                return records;
+            }
+        };
+    }
+
+    private static Command<Register[]> readFifoQueueCommand(final int ref) {
+        return new Command<Register[]>("read FIFO queue") {
+            @Override
+            ModbusRequest createRequest() {
+                return new ReadFifoQueueRequest(ref);
+            }
+
+            @Override
+            Register[] getResult(ModbusResponse response) {
+                return ((ReadFifoQueueResponse) response).getRegisters();
+            }
+        };
+    }
+
+    /**
+     * Receiver of the answers to the requests of a run.
+     */
+    private interface Sink {
+        void completed(ModbusRequest request, ModbusResponse response);
+
+        void failed(ModbusRequest request, ModbusCommandException e);
+    }
+
+    /**
+     * Iterator over the requests transferring a register range, which stops
+     * as soon as a request has failed.
+     */
+    private abstract static class FileRequests implements Iterator<ModbusRequest> {
+        private final int unitId;
+        private final int words;
+        private final int chunk;
+        private final ModbusCommandException[] failure;
+        private int pos;
+
+        FileRequests(int unitId, int words, int chunk, ModbusCommandException[] failure) {
+            this.unitId = unitId;
+            this.words = words;
+            this.chunk = chunk;
+            this.failure = failure;
+        }
+
+        abstract ModbusRequest createRequest(int pos, int count);
+
+        @Override
+        public boolean hasNext() {
+            return pos < words && failure[0] == null;
+        }
+
+        @Override
+        public ModbusRequest next() {
+            int count = Math.min(chunk, words - pos);
+            ModbusRequest request = createRequest(pos, count);
+            request.setUnitID(unitId);
+            pos += count;
+            return request;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Class describing a command: how to build its request
+     * and how to extract its result from the response.
+     */
+    private abstract static class Command<T> {
+        private final String name;
+
+        Command(String name) {
+            this.name = name;
+        }
+
+        abstract ModbusRequest createRequest();
+
+        abstract T getResult(ModbusResponse response);
+    }
+}
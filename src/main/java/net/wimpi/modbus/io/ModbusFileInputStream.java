@@ -0,0 +1,160 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Class implementing an <tt>InputStream</tt> over the file records of a device.
+ * <p>
+ * The stream returns the file registers from a given record on, two bytes per
+ * register in big endian order, continuing into the following files. It reads
+ * ahead in blocks of registers with {@link ModbusCommandExecutor#readFile(int, int, int, byte[], int, int)},
+ * so that the requests of a block are pipelined where the transport allows.
+ * Reads of at least one block go directly into the caller's buffer. The stream
+ * ends where the device answers with an <tt>illegal data address</tt> exception.
+ * <p>
+ * Instances are not thread safe.
+ *
+ * @version @version@ (@date@)
+ */
+public class ModbusFileInputStream extends InputStream {
+
+    /**
+     * Defines the default number of registers read ahead (<b>4096</b>).
+     */
+    public static final int DEFAULT_BLOCK_LENGTH = 4096;
+
+    private final ModbusCommandExecutor executor;
+    private final int unitId;
+    private final int file;
+    private final int record;
+    private final byte[] buf;
+    private int position;
+    private int pos;
+    private int count;
+    private boolean eof;
+
+    /**
+     * Constructs a new <tt>ModbusFileInputStream</tt> instance
+     * with the default block length.
+     *
+     * @param executor the <tt>ModbusCommandExecutor</tt> used to read.
+     * @param unitId the unit identifier.
+     * @param file the file number of the first register.
+     * @param record the record number of the first register.
+     */
+    public ModbusFileInputStream(ModbusCommandExecutor executor, int unitId, int file, int record) {
+        this(executor, unitId, file, record, DEFAULT_BLOCK_LENGTH);
+    }
+
+    /**
+     * Constructs a new <tt>ModbusFileInputStream</tt> instance.
+     *
+     * @param executor the <tt>ModbusCommandExecutor</tt> used to read.
+     * @param unitId the unit identifier.
+     * @param file the file number of the first register.
+     * @param record the record number of the first register.
+     * @param blockLength the number of registers read ahead.
+     */
+    public ModbusFileInputStream(ModbusCommandExecutor executor, int unitId, int file, int record,
+            int blockLength) {
+        if (executor == null) throw new IllegalArgumentException("Executor can't be null!");
+        if (blockLength < 1) throw new IllegalArgumentException("Block length must be positive: " + blockLength);
+        this.executor = executor;
+        this.unitId = unitId;
+        this.file = file;
+        this.record = record;
+        this.buf = new byte[blockLength * 2];
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (pos == count && !fill()) return -1;
+        return buf[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+        if (len == 0) return 0;
+        if (pos < count) {
+            int n = Math.min(len, count - pos);
+            System.arraycopy(buf, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+        if (len >= buf.length && !eof) {
+            // large reads bypass the block buffer
+            int words = len / 2;
+            int n = readFile(b, off, words);
+            if (n < words) eof = true;
+            return n > 0 ? n * 2 : -1;
+        }
+        if (!fill()) return -1;
+        return read(b, off, len);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) return 0;
+        long skipped = Math.min(n, count - pos);
+        pos += (int) skipped;
+        if (skipped < n && !eof) {
+            // skip whole registers without reading them, keeping the byte parity
+            int words = (int) Math.min((n - skipped) / 2, Integer.MAX_VALUE - position);
+            position += words;
+            skipped += words * 2L;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return count - pos;
+    }
+
+    /**
+     * Returns the number of registers fetched from the device so far.
+     *
+     * @return the number of registers.
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    private boolean fill() throws IOException {
+        pos = 0;
+        count = 0;
+        if (eof) return false;
+        int words = buf.length / 2;
+        int n = readFile(buf, 0, words);
+        if (n < words) eof = true;
+        count = n * 2;
+        return n > 0;
+    }
+
+    private int readFile(byte[] b, int off, int words) throws IOException {
+        try {
+            int n = executor.readFile(unitId, file, record + position, b, off, words);
+            position += n;
+            return n;
+        } catch (ModbusCommandException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Class implementing an <tt>OutputStream</tt> over the file records of a device.
+ * <p>
+ * The stream writes the file registers from a given record on, two bytes per
+ * register in big endian order, continuing into the following files. Bytes are
+ * collected in blocks of registers and written with
+ * {@link ModbusCommandExecutor#writeFile(int, int, int, byte[], int, int)}, so that
+ * the requests of a block are pipelined where the transport allows. Writes of at
+ * least one block go directly from the caller's buffer. Only whole registers are
+ * written before {@link #close()}, which pads a trailing odd byte with zero.
+ * <p>
+ * Instances are not thread safe.
+ *
+ * @version @version@ (@date@)
+ */
+public class ModbusFileOutputStream extends OutputStream {
+
+    /**
+     * Defines the default number of registers written per block (<b>4096</b>).
+     */
+    public static final int DEFAULT_BLOCK_LENGTH = 4096;
+
+    private final ModbusCommandExecutor executor;
+    private final int unitId;
+    private final int file;
+    private final int record;
+    private final byte[] buf;
+    private int position;
+    private int count;
+    private boolean closed;
+
+    /**
+     * Constructs a new <tt>ModbusFileOutputStream</tt> instance
+     * with the default block length.
+     *
+     * @param executor the <tt>ModbusCommandExecutor</tt> used to write.
+     * @param unitId the unit identifier.
+     * @param file the file number of the first register.
+     * @param record the record number of the first register.
+     */
+    public ModbusFileOutputStream(ModbusCommandExecutor executor, int unitId, int file, int record) {
+        this(executor, unitId, file, record, DEFAULT_BLOCK_LENGTH);
+    }
+
+    /**
+     * Constructs a new <tt>ModbusFileOutputStream</tt> instance.
+     *
+     * @param executor the <tt>ModbusCommandExecutor</tt> used to write.
+     * @param unitId the unit identifier.
+     * @param file the file number of the first register.
+     * @param record the record number of the first register.
+     * @param blockLength the number of registers written per block.
+     */
+    public ModbusFileOutputStream(ModbusCommandExecutor executor, int unitId, int file, int record,
+            int blockLength) {
+        if (executor == null) throw new IllegalArgumentException("Executor can't be null!");
+        if (blockLength < 1) throw new IllegalArgumentException("Block length must be positive: " + blockLength);
+        this.executor = executor;
+        this.unitId = unitId;
+        this.file = file;
+        this.record = record;
+        this.buf = new byte[blockLength * 2];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (count == buf.length) flushWords();
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+        if (count == 0 && len >= buf.length) {
+            // large writes bypass the block buffer
+            int words = len / 2;
+            writeFile(b, off, words);
+            off += words * 2;
+            len -= words * 2;
+        }
+        while (len > 0) {
+            if (count == buf.length) flushWords();
+            int n = Math.min(len, buf.length - count);
+            System.arraycopy(b, off, buf, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Writes the buffered whole registers. A trailing odd byte stays
+     * buffered until it is completed or the stream is closed.
+     *
+     * @throws IOException if the device failed to write.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        flushWords();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        try {
+            if (count % 2 != 0) buf[count++] = 0;
+            flushWords();
+        } finally {
+            closed = true;
+        }
+    }
+
+    /**
+     * Returns the number of registers written to the device so far.
+     *
+     * @return the number of registers.
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    private void flushWords() throws IOException {
+        int words = count / 2;
+        if (words == 0) return;
+        writeFile(buf, 0, words);
+        count -= words * 2;
+        if (count > 0) buf[0] = buf[words * 2];
+    }
+
+    private void writeFile(byte[] b, int off, int words) throws IOException {
+        try {
+            executor.writeFile(unitId, file, record + position, b, off, words);
+            position += words;
+        } catch (ModbusCommandException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) throw new IOException("Stream closed");
+    }
+}
@@ -49,7 +49,9 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
     private BytesInputStream m_ByteIn; // to read message from
     private BytesOutputStream m_ByteInOut; // to buffer message to
     private BytesOutputStream m_ByteOut; // write frames
+    private byte[] m_ReceiveBuffer; // to read function specific bytes
     private byte[] lastRequest = null;
+    private int m_LastRequestLength;
 
     @Override
     public void writeMessage(ModbusMessage msg) throws ModbusIOException {
@@ -72,14 +74,20 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
                 byte buf[] = m_ByteOut.getBuffer();
                 m_OutputStream.write(buf, 0, len); // PDU + CRC
                 m_OutputStream.flush();
-                logger.debug("Sent: {}", ModbusUtil.toHex(buf, 0, len));
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Sent: {}", ModbusUtil.toHex(buf, 0, len));
+                }
                 // clears out the echoed message
                 // for RS485
                 if (m_Echo) {
                     readEcho(len);
                 }
-                lastRequest = new byte[len];
+                // kept for logging read failures, without allocating per frame
+                if (lastRequest == null || lastRequest.length < len) {
+                    lastRequest = new byte[buf.length];
+                }
                 System.arraycopy(buf, 0, lastRequest, 0, len);
+                m_LastRequestLength = len;
             }
 
         } catch (Exception ex) {
@@ -100,11 +108,15 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
      * @throws IOException
      */
     public void clearInput() throws IOException {
-        if (m_InputStream.available() > 0) {
-            int len = m_InputStream.available();
-            byte buf[] = new byte[len];
-            m_InputStream.read(buf, 0, len);
-            logger.debug("Clear input: {}", ModbusUtil.toHex(buf, 0, len));
+        int len;
+        while ((len = Math.min(m_InputStream.available(), m_ReceiveBuffer.length)) > 0) {
+            len = m_InputStream.read(m_ReceiveBuffer, 0, len);
+            if (len <= 0) {
+                break;
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Clear input: {}", ModbusUtil.toHex(m_ReceiveBuffer, 0, len));
+            }
         }
     }// cleanInput
 
@@ -152,7 +164,7 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
                             throw new IOException("CRC Error in received frame. " + dlength + " bytes of payload ("
                                     + ModbusUtil.toHex(m_ByteInOut.getBuffer(), 0, dlength) + ") with invalid CRC of "
                                     + ModbusUtil.toHex(m_InBuffer, dlength, 2));
-                        } else {
+                        } else if (logger.isDebugEnabled()) {
                             logger.debug("Response (CRC OK): {}",
                                     ModbusUtil.toHex(m_ByteInOut.getBuffer(), 0, dlength + 2));
                         }
@@ -171,7 +183,9 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
             return response;
         } catch (Exception ex) {
             final String errMsg = "failed to read";
-            logger.debug("Last request: {}", ModbusUtil.toHex(lastRequest));
+            if (logger.isDebugEnabled() && lastRequest != null) {
+                logger.debug("Last request: {}", ModbusUtil.toHex(lastRequest, 0, m_LastRequestLength));
+            }
             logger.debug("{}: {}", errMsg, ex.getMessage());
             throw new ModbusIOException(
                     String.format("I/O exception: %s %s", ex.getClass().getSimpleName(), ex.getMessage()));
@@ -197,6 +211,7 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
         m_InBuffer = new byte[Modbus.MAX_MESSAGE_LENGTH];
         m_ByteIn = new BytesInputStream(m_InBuffer);
         m_ByteInOut = new BytesOutputStream(m_InBuffer);
+        m_ReceiveBuffer = new byte[Modbus.MAX_MESSAGE_LENGTH];
     } // prepareStreams
 
     @Override
@@ -220,7 +235,7 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
         int bc = -1, bc2 = -1, bcw = -1;
         int inpBytes = 0;
         int awaitChars;
-        byte inpBuf[] = new byte[256];
+        byte inpBuf[] = m_ReceiveBuffer;
 
         try {
             switch (fn) {
@@ -250,6 +265,7 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
                     break;
                 case 0x05:
                 case 0x06:
+                case 0x08:
                 case 0x0B:
                 case 0x0F:
                 case 0x10:
@@ -265,8 +281,7 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
                     }
                     break;
                 case 0x07:
-                case 0x08:
-                    // read status: only the CRC remains after address and function code
+                    // read the status byte and the 2 CRC bytes
                     awaitChars = 3;
                     setReceiveThreshold(awaitChars);
                     inpBytes = m_InputStream.read(inpBuf, 0, awaitChars);
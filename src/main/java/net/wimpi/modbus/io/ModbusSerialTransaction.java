@@ -29,6 +29,7 @@ import net.wimpi.modbus.msg.ModbusResponse;
 import net.wimpi.modbus.net.SerialConnection;
 import net.wimpi.modbus.util.AtomicCounter;
 import net.wimpi.modbus.util.Mutex;
+import net.wimpi.modbus.util.WaitStrategy;
 
 /**
  * Class implementing the <tt>ModbusTransaction</tt>
@@ -50,7 +51,10 @@ public class ModbusSerialTransaction implements ModbusTransaction {
     private boolean m_ValidityCheck = Modbus.DEFAULT_VALIDITYCHECK;
     private int m_Retries = Modbus.DEFAULT_RETRIES;
     private long m_RetryDelayMillis;
+    private AdaptiveRetryPolicy m_RetryPolicy;
     private int m_TransDelayMS = Modbus.DEFAULT_TRANSMIT_DELAY;
+    private long m_DelaySpinNanos = -1;
+    private long m_FrameEnd = System.nanoTime();
     private SerialConnection m_SerialCon;
 
     private Mutex m_TransactionLock = new Mutex();
@@ -130,6 +134,28 @@ public class ModbusSerialTransaction implements ModbusTransaction {
         return m_ValidityCheck;
     }// isCheckingValidity
 
+    /**
+     * Returns the adaptive retry policy of this transaction.
+     *
+     * @return the <tt>AdaptiveRetryPolicy</tt>, or <tt>null</tt> if none.
+     */
+    public AdaptiveRetryPolicy getRetryPolicy() {
+        return m_RetryPolicy;
+    }// getRetryPolicy
+
+    /**
+     * Sets an adaptive retry policy for this transaction. With a policy the
+     * receive timeout of the connection is set from the round trip estimate
+     * of the addressed unit, retries are delayed by a jittered exponential
+     * backoff instead of the fixed retry delay, and requests to units whose
+     * circuit is open fail at once.
+     *
+     * @param policy the <tt>AdaptiveRetryPolicy</tt>, or <tt>null</tt> for fixed timeouts and delays.
+     */
+    public void setRetryPolicy(AdaptiveRetryPolicy policy) {
+        m_RetryPolicy = policy;
+    }// setRetryPolicy
+
     @Override
     public int getRetries() {
         return m_Retries;
@@ -158,6 +184,28 @@ public class ModbusSerialTransaction implements ModbusTransaction {
         this.m_TransDelayMS = newTransDelayMS;
     }
 
+    /**
+     * Returns the spin period of the precise transmit delay.
+     *
+     * @return the period in nanoseconds, or <tt>-1</tt> if the delay is slept.
+     */
+    public long getDelaySpinNanos() {
+        return m_DelaySpinNanos;
+    }// getDelaySpinNanos
+
+    /**
+     * Sets the spin period of the precise transmit delay. With a period set,
+     * the transmit delay is measured from the end of the previous frame and
+     * waited for by parking and then spinning for the given period, see
+     * {@link WaitStrategy#parkUntil(long, long)}; otherwise the full delay is
+     * slept before each frame.
+     *
+     * @param spinNanos the period in nanoseconds, or <tt>-1</tt> to sleep.
+     */
+    public void setDelaySpinNanos(long spinNanos) {
+        m_DelaySpinNanos = spinNanos;
+    }// setDelaySpinNanos
+
     @Override
     public void execute() throws ModbusIOException, ModbusSlaveException, ModbusException {
         // 1. assert executeability
@@ -172,49 +220,84 @@ public class ModbusSerialTransaction implements ModbusTransaction {
              */
             m_TransactionLock.acquire();
 
+            AdaptiveRetryPolicy.Endpoint endpoint = null;
+            if (m_RetryPolicy != null) {
+                endpoint = m_RetryPolicy
+                        .getEndpoint(m_SerialCon.getParameters().getPortName() + "/" + m_Request.getUnitID());
+                if (!endpoint.allowRequest()) {
+                    throw new ModbusIOException("Circuit open for " + endpoint.getKey());
+                }
+            }
+
             // 3. write request, and read response,
             // while holding the lock on the IO object
             synchronized (m_IO) {
-                int tries = 0;
+                try {
+                    int tries = 0;
+
+                    do {
+                        m_Request.setTransactionID(c_TransactionID.increment());
+                        try {
+                            if (m_TransDelayMS > 0 && m_DelaySpinNanos >= 0) {
+                                WaitStrategy.parkUntil(m_FrameEnd + m_TransDelayMS * 1000000L, m_DelaySpinNanos);
+                            } else if (m_TransDelayMS > 0) {
+                                try {
+                                    Thread.sleep(m_TransDelayMS);
+                                } catch (InterruptedException ex) {
+                                    logger.debug("InterruptedException: {}", ex.getMessage());
+                                    throw ex;
+                                }
+                            }
 
-                do {
-                    m_Request.setTransactionID(c_TransactionID.increment());
-                    try {
-                        if (m_TransDelayMS > 0) {
+                            if (endpoint != null && m_IO instanceof ModbusSerialTransport) {
+                                ((ModbusSerialTransport) m_IO).setReceiveTimeout(endpoint.getTimeout());
+                            }
+                            long start = System.nanoTime();
                             try {
-                                Thread.sleep(m_TransDelayMS);
-                            } catch (InterruptedException ex) {
-                                logger.debug("InterruptedException: {}", ex.getMessage());
-                                throw ex;
+                                // write request message
+                                m_IO.writeMessage(m_Request);
+                                // read response message
+                                m_Response = m_IO.readResponse();
+                            } finally {
+                                m_FrameEnd = System.nanoTime();
+                            }
+                            if (endpoint != null) {
+                                // only first attempts give unambiguous round trip times
+                                endpoint.onSuccess((System.nanoTime() - start) / 1e6, tries == 0);
+                            }
+                            break;
+                        } catch (ModbusIOException e) {
+                            tries++;
+                            if (endpoint != null) {
+                                endpoint.onFailure();
                             }
-                        }
-
-                        // write request message
-                        m_IO.writeMessage(m_Request);
-                        // read response message
-                        m_Response = m_IO.readResponse();
-                        break;
-                    } catch (ModbusIOException e) {
-                        tries++;
-                        logger.debug(
-                                "execute try {}/{} error: {}. Request: {} (unit id {} & transaction {}). Serial parameters: {}",
-                                tries, m_Retries + 1, e.getMessage(), m_Request, m_Request.getUnitID(),
-                                m_Request.getTransactionID(), m_SerialCon.getParameters());
-                        if (tries >= m_Retries) {
                             logger.debug(
-                                    "execute reached max tries {}, throwing last error: {}. Request: {} (unit id {} & transaction {}). Serial parameters: {}",
-                                    m_Retries + 1, e.getMessage(), m_Request, m_Request.getUnitID(),
+                                    "execute try {}/{} error: {}. Request: {} (unit id {} & transaction {}). Serial parameters: {}",
+                                    tries, m_Retries + 1, e.getMessage(), m_Request, m_Request.getUnitID(),
                                     m_Request.getTransactionID(), m_SerialCon.getParameters());
-                            throw e;
+                            if (tries >= m_Retries
+                                    || (endpoint != null && endpoint.getState() == AdaptiveRetryPolicy.OPEN)) {
+                                logger.debug(
+                                        "execute reached max tries {}, throwing last error: {}. Request: {} (unit id {} & transaction {}). Serial parameters: {}",
+                                        m_Retries + 1, e.getMessage(), m_Request, m_Request.getUnitID(),
+                                        m_Request.getTransactionID(), m_SerialCon.getParameters());
+                                throw e;
+                            }
+                            Thread.sleep(endpoint != null ? m_RetryPolicy.getBackoffDelay(tries) : m_RetryDelayMillis);
                         }
-                        Thread.sleep(m_RetryDelayMillis);
+                    } while (true);
+                    if (tries > 0) {
+                        logger.debug(
+                                "execute eventually succeeded with {} re-tries. Request: {} (unit id {} & transaction id {}). Serial parameters: {}",
+                                tries, m_Request, m_Request.getUnitID(), m_Request.getTransactionID(),
+                                m_SerialCon.getParameters());
+                    }
+                } finally {
+                    if (endpoint != null && m_IO instanceof ModbusSerialTransport) {
+                        // the adaptive timeout must not outlive this transaction
+                        ((ModbusSerialTransport) m_IO).setReceiveTimeout(
+                                m_SerialCon.getParameters().getReceiveTimeoutMillis());
                     }
-                } while (true);
-                if (tries > 0) {
-                    logger.debug(
-                            "execute eventually succeeded with {} re-tries. Request: {} (unit id {} & transaction id {}). Serial parameters: {}",
-                            tries, m_Request, m_Request.getUnitID(), m_Request.getTransactionID(),
-                            m_SerialCon.getParameters());
                 }
             }
 
@@ -44,6 +44,7 @@ abstract public class ModbusSerialTransport implements ModbusTransport {
     private static final Logger logger = LoggerFactory.getLogger(ModbusSerialTransport.class);
     protected CommPort m_CommPort;
     protected boolean m_Echo = false; // require RS-485 echo processing
+    private byte[] m_EchoBuffer = new byte[0];
 
     /**
      * <code>prepareStreams</code> prepares the input and output streams of this
@@ -169,11 +170,16 @@ abstract public class ModbusSerialTransport implements ModbusTransport {
      */
     public void readEcho(int len) throws IOException {
 
-        byte echoBuf[] = new byte[len];
+        if (m_EchoBuffer.length < len) {
+            m_EchoBuffer = new byte[len];
+        }
+        byte echoBuf[] = m_EchoBuffer;
         setReceiveThreshold(len);
         int echoLen = m_CommPort.getInputStream().read(echoBuf, 0, len);
 
-        logger.debug("Echo: {}", ModbusUtil.toHex(echoBuf, 0, echoLen));
+        if (logger.isDebugEnabled()) {
+            logger.debug("Echo: {}", ModbusUtil.toHex(echoBuf, 0, echoLen));
+        }
         m_CommPort.disableReceiveThreshold();
         if (echoLen != len) {
             final String errMsg = "Echo not received";
@@ -1,12 +1,15 @@
 package net.wimpi.modbus.io;
 
+import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.ModbusIOException;
 import net.wimpi.modbus.msg.ModbusMessage;
 import net.wimpi.modbus.msg.ModbusRequest;
 import net.wimpi.modbus.msg.ModbusResponse;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.net.Socket;
+import java.util.List;
 
 /**
  * @author vssavin on 16.01.2023
@@ -30,6 +33,13 @@ public class ModbusTCPASCIITransport extends ModbusTCPTransport{
         modbusASCIITransport.writeMessage(msg);
     }
 
+    @Override
+    public void writeMessages(List<? extends ModbusMessage> msgs) throws ModbusIOException {
+        for (ModbusMessage msg : msgs) {
+            modbusASCIITransport.writeMessage(msg);
+        }
+    }
+
     @Override
     public ModbusRequest readRequest() throws ModbusIOException {
         return modbusASCIITransport.readRequest();
@@ -43,6 +53,9 @@ public class ModbusTCPASCIITransport extends ModbusTCPTransport{
     @Override
     protected void prepareStreams(Socket socket) throws IOException {
         if (modbusASCIITransport == null) modbusASCIITransport = new ModbusASCIITransport();
-        modbusASCIITransport.prepareStreams(socket.getInputStream(), socket.getOutputStream());
+        socket.setTcpNoDelay(true);
+        // the ASCII stream writes character by character, buffer a whole frame until the flush
+        modbusASCIITransport.prepareStreams(socket.getInputStream(),
+                new BufferedOutputStream(socket.getOutputStream(), 2 * Modbus.MAX_MESSAGE_LENGTH + 8));
     }
 }
@@ -17,11 +17,11 @@
 package net.wimpi.modbus.io;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,7 +45,6 @@ public class ModbusTCPRTUTransport extends ModbusTCPTransport {
     private static final Logger logger = LoggerFactory.getLogger(ModbusTCPRTUTransport.class);
 
     private byte[] m_InBuffer;
-    private BytesOutputStream m_ByteOut;
     private BytesOutputStream m_ByteInOut;
     private byte[] lastRequest = null;
 
@@ -63,31 +62,49 @@ public class ModbusTCPRTUTransport extends ModbusTCPTransport {
     @Override
     public void writeMessage(ModbusMessage msg) throws ModbusIOException {
         try {
-            int len;
-            synchronized (m_ByteOut) {
-                // write message to byte out
-                m_ByteOut.reset();
-                msg.setHeadless();
-                msg.writeTo(m_ByteOut);
-                len = m_ByteOut.size();
-                int[] crc = ModbusUtil.calculateCRC(m_ByteOut.getBuffer(), 0, len);
-                m_ByteOut.writeByte(crc[0]);
-                m_ByteOut.writeByte(crc[1]);
-                // write message
-                len = m_ByteOut.size();
-                byte buf[] = m_ByteOut.getBuffer();
-                m_Output.write(buf, 0, len); // PDU + CRC
-                m_Output.flush();
-                logger.debug("Sent: {}", ModbusUtil.toHex(buf, 0, len));
-                lastRequest = new byte[len];
-                System.arraycopy(buf, 0, lastRequest, 0, len);
+            synchronized (m_FrameOut) {
+                m_FrameOut.reset();
+                appendFrame(msg);
+                writeFrames();
             }
-
         } catch (Exception ex) {
             throw new ModbusIOException("I/O failed to write");
         }
     }// writeMessage
 
+    @Override
+    public void writeMessages(List<? extends ModbusMessage> msgs) throws ModbusIOException {
+        try {
+            synchronized (m_FrameOut) {
+                m_FrameOut.reset();
+                for (ModbusMessage msg : msgs) {
+                    appendFrame(msg);
+                }
+                writeFrames();
+            }
+        } catch (Exception ex) {
+            throw new ModbusIOException("I/O failed to write");
+        }
+    }// writeMessages
+
+    private void appendFrame(ModbusMessage msg) throws IOException {
+        int start = m_FrameOut.size();
+        msg.setHeadless();
+        msg.writeTo(m_FrameOut);
+        int[] crc = ModbusUtil.calculateCRC(m_FrameOut.getBuffer(), start, m_FrameOut.size() - start);
+        m_FrameOut.writeByte(crc[0]);
+        m_FrameOut.writeByte(crc[1]);
+    }// appendFrame
+
+    private void writeFrames() throws IOException {
+        int len = m_FrameOut.size();
+        byte buf[] = m_FrameOut.getBuffer();
+        m_Output.write(buf, 0, len); // PDU + CRC in a single write
+        logger.debug("Sent: {}", ModbusUtil.toHex(buf, 0, len));
+        lastRequest = new byte[len];
+        System.arraycopy(buf, 0, lastRequest, 0, len);
+    }// writeFrames
+
     // This is required for the slave that is not supported
     @Override
     public ModbusRequest readRequest() throws ModbusIOException {
@@ -148,9 +165,10 @@ public class ModbusTCPRTUTransport extends ModbusTCPTransport {
 
     @Override
     protected void prepareStreams(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
         m_Input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
-        m_Output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
-        m_ByteOut = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH);
+        m_Output = new DataOutputStream(socket.getOutputStream());
+        m_FrameOut = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH + 6);
         m_InBuffer = new byte[Modbus.MAX_MESSAGE_LENGTH];
         m_ByteIn = new BytesInputStream(m_InBuffer);
         m_ByteInOut = new BytesOutputStream(m_InBuffer);
@@ -179,6 +197,7 @@ public class ModbusTCPRTUTransport extends ModbusTCPTransport {
                 break;
             case 0x05:
             case 0x06:
+            case 0x08:
             case 0x0B:
             case 0x0F:
             case 0x10:
@@ -187,8 +206,7 @@ public class ModbusTCPRTUTransport extends ModbusTCPTransport {
                 out.write(inpBuf, 0, 6);
                 break;
             case 0x07:
-            case 0x08:
-                // read status: only the CRC remains after address and function code
+                // read the status byte and the 2 CRC bytes
                 m_Input.readFully(inpBuf, 0, 3);
                 out.write(inpBuf, 0, 3);
                 break;
@@ -56,6 +56,7 @@ public class ModbusTCPTransaction implements ModbusTransaction {
     private Mutex m_TransactionLock = new Mutex();
 
     private long m_RetryDelayMillis;
+    private AdaptiveRetryPolicy m_RetryPolicy;
 
     /**
      * Constructs a new <tt>ModbusTCPTransaction</tt>
@@ -156,6 +157,28 @@ public class ModbusTCPTransaction implements ModbusTransaction {
         return m_Reconnecting;
     }// isReconnecting
 
+    /**
+     * Returns the adaptive retry policy of this transaction.
+     *
+     * @return the <tt>AdaptiveRetryPolicy</tt>, or <tt>null</tt> if none.
+     */
+    public AdaptiveRetryPolicy getRetryPolicy() {
+        return m_RetryPolicy;
+    }// getRetryPolicy
+
+    /**
+     * Sets an adaptive retry policy for this transaction. With a policy the
+     * receive timeout of the connection is set from the round trip estimate
+     * of the addressed unit, retries are delayed by a jittered exponential
+     * backoff instead of the fixed retry delay, and requests to units whose
+     * circuit is open fail at once.
+     *
+     * @param policy the <tt>AdaptiveRetryPolicy</tt>, or <tt>null</tt> for fixed timeouts and delays.
+     */
+    public void setRetryPolicy(AdaptiveRetryPolicy policy) {
+        m_RetryPolicy = policy;
+    }// setRetryPolicy
+
     @Override
     public int getRetries() {
         return m_Retries;
@@ -172,6 +195,8 @@ public class ModbusTCPTransaction implements ModbusTransaction {
         // 1. check that the transaction can be executed
         assertExecutable();
 
+        // the configured timeout of the connection while an adaptive one is set
+        int configuredTimeout = -1;
         try {
             // 2. Lock transaction
             /**
@@ -181,12 +206,25 @@ public class ModbusTCPTransaction implements ModbusTransaction {
              */
             m_TransactionLock.acquire();
 
+            AdaptiveRetryPolicy.Endpoint endpoint = null;
+            if (m_RetryPolicy != null) {
+                endpoint = m_RetryPolicy.getEndpoint(m_Connection.getAddress().getHostAddress() + ":"
+                        + m_Connection.getPort() + "/" + m_Request.getUnitID());
+                if (!endpoint.allowRequest()) {
+                    throw new ModbusIOException("Circuit open for " + endpoint.getKey());
+                }
+                configuredTimeout = m_Connection.getTimeout();
+            }
+
             // 3. open the connection if not connected
             if (!m_Connection.isConnected()) {
                 try {
                     m_Connection.connect();
                     m_IO = m_Connection.getModbusTransport();
                 } catch (Exception ex) {
+                    if (endpoint != null) {
+                        endpoint.onFailure();
+                    }
                     throw new ModbusIOException("Connecting failed.");
                 }
             }
@@ -199,20 +237,31 @@ public class ModbusTCPTransaction implements ModbusTransaction {
                 try {
                     // toggle and set the id
                     m_Request.setTransactionID(c_TransactionID.increment());
+                    if (endpoint != null) {
+                        m_Connection.setTimeout(endpoint.getTimeout());
+                    }
+                    long start = System.nanoTime();
                     // 3. write request, and read response
                     logger.trace("Sending request with transaction ID {}: {}", m_Request.getTransactionID(), m_Request);
                     m_IO.writeMessage(m_Request);
                     // read response message
                     m_Response = m_IO.readResponse();
                     logger.trace("Received response with transaction ID {}", m_Response.getTransactionID());
+                    if (endpoint != null) {
+                        // only first attempts give unambiguous round trip times
+                        endpoint.onSuccess((System.nanoTime() - start) / 1e6, tries == 0);
+                    }
                     break;
                 } catch (ModbusIOException ex) {
                     tries++;
+                    if (endpoint != null) {
+                        endpoint.onFailure();
+                    }
                     logger.debug(
                             "execute try {}/{} error: {}. Request: {} (unit id {} & transaction {}). Address: {}:{}",
                             tries, m_Retries + 1, ex.getMessage(), m_Request, m_Request.getUnitID(),
                             m_Request.getTransactionID(), m_Connection.getAddress(), m_Connection.getPort());
-                    if (tries >= m_Retries) {
+                    if (tries >= m_Retries || (endpoint != null && endpoint.getState() == AdaptiveRetryPolicy.OPEN)) {
                         logger.debug(
                                 "execute reached max tries {}, throwing last error: {}. Request: {} (unit id {} & transaction {}). Address: {}:{}",
                                 m_Retries + 1, ex.getMessage(), m_Request, m_Request.getUnitID(),
@@ -220,7 +269,7 @@ public class ModbusTCPTransaction implements ModbusTransaction {
                         throw ex;
 
                     }
-                    Thread.sleep(m_RetryDelayMillis);
+                    Thread.sleep(endpoint != null ? m_RetryPolicy.getBackoffDelay(tries) : m_RetryDelayMillis);
                 }
             } while (true);
 
@@ -244,6 +293,9 @@ public class ModbusTCPTransaction implements ModbusTransaction {
         } catch (InterruptedException ex) {
             throw new ModbusIOException("Thread acquiring lock was interrupted.");
         } finally {
+            if (configuredTimeout >= 0) {
+                m_Connection.setTimeout(configuredTimeout);
+            }
             // Finally: close connection if reconnecting
             if (isReconnecting() && m_Connection != null) {
                 m_Connection.close();
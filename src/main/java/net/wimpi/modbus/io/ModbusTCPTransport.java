@@ -17,13 +17,13 @@
 package net.wimpi.modbus.io;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.net.Socket;
 import java.net.SocketException;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,6 +38,11 @@ import net.wimpi.modbus.util.ModbusUtil;
 /**
  * Class that implements the Modbus transport
  * flavor.
+ * <p>
+ * Each frame is assembled in a reusable buffer and handed to the socket
+ * in a single write, with <tt>TCP_NODELAY</tt> set, so that a frame is
+ * neither split over several segments nor held back by Nagle's algorithm.
+ * Pipelined frames may be sent together with {@link #writeMessages(List)}.
  *
  * @author Dieter Wimberger
  * @author Andrew Fiddian-Green - Added 'rtuEncoded' support
@@ -53,6 +58,7 @@ public class ModbusTCPTransport implements ModbusTransport {
     protected DataInputStream m_Input; // input stream
     protected DataOutputStream m_Output; // output stream
     protected BytesInputStream m_ByteIn;
+    protected BytesOutputStream m_FrameOut; // frames being assembled
 
     /**
      * Constructs a new <tt>ModbusTransport</tt> instance,
@@ -112,14 +118,38 @@ public class ModbusTCPTransport implements ModbusTransport {
     @Override
     public void writeMessage(ModbusMessage msg) throws ModbusIOException {
         try {
-            msg.writeTo(m_Output);
-            m_Output.flush();
-            // write more sophisticated exception handling
+            synchronized (m_FrameOut) {
+                m_FrameOut.reset();
+                msg.writeTo(m_FrameOut);
+                m_Output.write(m_FrameOut.getBuffer(), 0, m_FrameOut.size());
+            }
         } catch (Exception ex) {
             throw new ModbusIOException(String.format("I/O exception - failed to write: %s", ex.getMessage()));
         }
     }// write
 
+    /**
+     * Writes a batch of messages, e.g. pipelined requests, with a
+     * single write to the socket.
+     *
+     * @param msgs the messages to be written.
+     * @throws ModbusIOException if an I/O related error occurs; it is
+     *             unknown which of the messages were sent.
+     */
+    public void writeMessages(List<? extends ModbusMessage> msgs) throws ModbusIOException {
+        try {
+            synchronized (m_FrameOut) {
+                m_FrameOut.reset();
+                for (ModbusMessage msg : msgs) {
+                    msg.writeTo(m_FrameOut);
+                }
+                m_Output.write(m_FrameOut.getBuffer(), 0, m_FrameOut.size());
+            }
+        } catch (Exception ex) {
+            throw new ModbusIOException(String.format("I/O exception - failed to write: %s", ex.getMessage()));
+        }
+    }// writeMessages
+
     @Override
     public ModbusRequest readRequest() throws ModbusIOException {
 
@@ -249,9 +279,13 @@ public class ModbusTCPTransport implements ModbusTransport {
      */
     protected void prepareStreams(Socket socket) throws IOException {
 
+        socket.setTcpNoDelay(true);
         m_Input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
-        m_Output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
-        m_ByteIn = new BytesInputStream(Modbus.MAX_MESSAGE_LENGTH);
+        // unbuffered, frames are written as a whole from m_FrameOut
+        m_Output = new DataOutputStream(socket.getOutputStream());
+        // MBAP header and the largest PDU
+        m_ByteIn = new BytesInputStream(Modbus.MAX_MESSAGE_LENGTH + 6);
+        m_FrameOut = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH + 6);
     }// prepareStreams
 
 }// class ModbusTCPTransport
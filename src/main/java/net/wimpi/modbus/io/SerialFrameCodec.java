@@ -0,0 +1,334 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.io;
+
+import java.io.IOException;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.msg.ModbusMessage;
+import net.wimpi.modbus.util.ByteRingBuffer;
+import net.wimpi.modbus.util.ModbusUtil;
+
+/**
+ * Abstract base class of the serial frame codecs used by the {@link SerialIOEngine}.
+ * <p>
+ * A codec encodes a message into a complete frame of its serial encoding, and
+ * decodes response frames incrementally: {@link #decode(ByteRingBuffer, byte[])}
+ * may be called whenever bytes have arrived, and returns a frame as soon as it
+ * is complete. Bytes that cannot start a valid frame, and frames failing their
+ * checksum, are skipped, so that the decoder resynchronizes on the next frame.
+ * <p>
+ * Instances are not thread safe.
+ *
+ * @version @version@ (@date@)
+ */
+public abstract class SerialFrameCodec {
+
+    /**
+     * Returned by {@link #decode(ByteRingBuffer, byte[])} if the frame is not complete yet.
+     */
+    public static final int INCOMPLETE = -1;
+
+    // holds the headless message while it is framed
+    protected final BytesOutputStream m_Pdu = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH);
+
+    /**
+     * Returns a new codec for the given serial encoding.
+     *
+     * @param encoding the serial encoding.
+     * @return a <tt>SerialFrameCodec</tt>.
+     * @throws IllegalArgumentException if the encoding is unknown.
+     * @see Modbus#SERIAL_ENCODING_ASCII
+     * @see Modbus#SERIAL_ENCODING_RTU
+     * @see Modbus#SERIAL_ENCODING_BIN
+     */
+    public static SerialFrameCodec forEncoding(String encoding) {
+        if (Modbus.SERIAL_ENCODING_RTU.equals(encoding)) {
+            return new RTU();
+        } else if (Modbus.SERIAL_ENCODING_ASCII.equals(encoding)) {
+            return new ASCII();
+        } else if (Modbus.SERIAL_ENCODING_BIN.equals(encoding)) {
+            return new BIN();
+        }
+        throw new IllegalArgumentException("Unknown serial encoding: " + encoding);
+    }// forEncoding
+
+    /**
+     * Encodes a message into a complete frame.
+     *
+     * @param msg the <tt>ModbusMessage</tt> to be encoded; it is set headless.
+     * @param out the <tt>BytesOutputStream</tt> receiving the frame.
+     * @throws IOException if the message cannot be written.
+     */
+    public abstract void encode(ModbusMessage msg, BytesOutputStream out) throws IOException;
+
+    /**
+     * Decodes the next complete frame from the head of the buffer, consuming it.
+     *
+     * @param in the received bytes.
+     * @param frame the array receiving the unit id, function code and data
+     *            of the frame; it must hold {@link Modbus#MAX_MESSAGE_LENGTH} bytes.
+     * @return the length of the frame in <tt>frame</tt>, or {@link #INCOMPLETE}.
+     */
+    public abstract int decode(ByteRingBuffer in, byte[] frame);
+
+    /**
+     * Forgets any partially decoded frame state. Called whenever the
+     * received bytes are discarded.
+     */
+    public void reset() {
+    }// reset
+
+    /**
+     * Writes the headless message to {@link #m_Pdu}.
+     *
+     * @param msg the <tt>ModbusMessage</tt>.
+     * @return the length of the message.
+     * @throws IOException if the message cannot be written.
+     */
+    protected int writePdu(ModbusMessage msg) throws IOException {
+        m_Pdu.reset();
+        msg.setHeadless();
+        msg.writeTo(m_Pdu);
+        return m_Pdu.size();
+    }// writePdu
+
+    /**
+     * Class implementing the RTU framing: the message followed by its CRC.
+     * The end of a response is derived from its function code and byte counts.
+     */
+    static final class RTU extends SerialFrameCodec {
+
+        @Override
+        public void encode(ModbusMessage msg, BytesOutputStream out) throws IOException {
+            int len = writePdu(msg);
+            int[] crc = ModbusUtil.calculateCRC(m_Pdu.getBuffer(), 0, len);
+            out.write(m_Pdu.getBuffer(), 0, len);
+            out.writeByte(crc[0]);
+            out.writeByte(crc[1]);
+        }// encode
+
+        @Override
+        public int decode(ByteRingBuffer in, byte[] frame) {
+            while (in.size() >= 2) {
+                int len = dataLength(in);
+                if (len == INCOMPLETE) {
+                    return INCOMPLETE;
+                }
+                if (len < 0 || 2 + len > frame.length) {
+                    // not a frame start
+                    in.skip(1);
+                    continue;
+                }
+                if (in.size() < 4 + len) {
+                    return INCOMPLETE;
+                }
+                in.copy(0, frame, 0, 2 + len);
+                int[] crc = ModbusUtil.calculateCRC(frame, 0, 2 + len);
+                if (in.get(2 + len) == crc[0] && in.get(3 + len) == crc[1]) {
+                    in.skip(4 + len);
+                    return 2 + len;
+                }
+                in.skip(1);
+            }
+            return INCOMPLETE;
+        }// decode
+
+        /**
+         * Returns the number of data bytes following the function code,
+         * {@link #INCOMPLETE} if the byte count has not arrived yet, or
+         * <tt>-2</tt> for an unknown function code.
+         */
+        private static int dataLength(ByteRingBuffer in) {
+            int fc = in.get(1);
+            if ((fc & Modbus.EXCEPTION_OFFSET) != 0) {
+                return 1;
+            }
+            switch (fc) {
+                case Modbus.READ_COILS:
+                case Modbus.READ_INPUT_DISCRETES:
+                case Modbus.READ_MULTIPLE_REGISTERS:
+                case Modbus.READ_INPUT_REGISTERS:
+                case Modbus.GET_COMM_EVENT_LOG:
+                case Modbus.REPORT_SLAVE_ID:
+                case Modbus.READ_FILE_RECORD:
+                case Modbus.WRITE_FILE_RECORD:
+                case Modbus.READ_WRITE_MULTIPLE_REGISTERS:
+                    return in.size() < 3 ? INCOMPLETE : 1 + in.get(2);
+                case Modbus.WRITE_COIL:
+                case Modbus.WRITE_SINGLE_REGISTER:
+                case Modbus.DIAGNOSTICS:
+                case Modbus.GET_COMM_EVENT_COUNTER:
+                case Modbus.WRITE_MULTIPLE_COILS:
+                case Modbus.WRITE_MULTIPLE_REGISTERS:
+                    return 4;
+                case Modbus.READ_EXCEPTION_STATUS:
+                    return 1;
+                case Modbus.MASK_WRITE_REGISTER:
+                    return 6;
+                case Modbus.READ_FIFO_QUEUE:
+                    return in.size() < 4 ? INCOMPLETE : 2 + ModbusUtil.makeWord(in.get(2), in.get(3));
+                default:
+                    return -2;
+            }
+        }// dataLength
+
+    }// class RTU
+
+    /**
+     * Class implementing the ASCII framing: a colon, the message and its LRC
+     * as hexadecimal characters, and CR LF.
+     */
+    static final class ASCII extends SerialFrameCodec {
+
+        private int m_Scanned = 1;
+
+        @Override
+        public void encode(ModbusMessage msg, BytesOutputStream out) throws IOException {
+            int len = writePdu(msg);
+            byte[] pdu = m_Pdu.getBuffer();
+            out.writeByte(':');
+            for (int i = 0; i < len; i++) {
+                out.write(ModbusUtil.toHex(pdu[i] & 0xff));
+            }
+            out.write(ModbusUtil.toHex(ModbusUtil.calculateLRC(pdu, 0, len)));
+            out.writeByte('\r');
+            out.writeByte('\n');
+        }// encode
+
+        @Override
+        public int decode(ByteRingBuffer in, byte[] frame) {
+            for (;;) {
+                // skip to the frame start
+                while (in.size() > 0 && in.get(0) != ':') {
+                    in.skip(1);
+                    m_Scanned = 1;
+                }
+                // scan for CR LF, continuing where the last call stopped
+                int end = -1;
+                for (int i = m_Scanned; i < in.size() - 1; i++) {
+                    if (in.get(i) == '\r' && in.get(i + 1) == '\n') {
+                        end = i;
+                        break;
+                    }
+                }
+                if (end < 0) {
+                    m_Scanned = Math.max(1, in.size() - 1);
+                    if (m_Scanned > 2 * frame.length + 3) {
+                        // runaway frame
+                        in.skip(1);
+                        m_Scanned = 1;
+                        continue;
+                    }
+                    return INCOMPLETE;
+                }
+                int len = decodeHex(in, end, frame);
+                in.skip(end + 2);
+                m_Scanned = 1;
+                if (len >= 3 && (frame[len - 1] & 0xff) == ModbusUtil.calculateLRC(frame, 0, len - 1)) {
+                    return len - 1;
+                }
+            }
+        }// decode
+
+        @Override
+        public void reset() {
+            m_Scanned = 1;
+        }// reset
+
+        private static int decodeHex(ByteRingBuffer in, int end, byte[] frame) {
+            int chars = end - 1;
+            if (chars % 2 != 0 || chars / 2 > frame.length) {
+                return -1;
+            }
+            for (int i = 0; i < chars / 2; i++) {
+                int hi = Character.digit(in.get(1 + i * 2), 16);
+                int lo = Character.digit(in.get(2 + i * 2), 16);
+                if (hi < 0 || lo < 0) {
+                    return -1;
+                }
+                frame[i] = (byte) (hi << 4 | lo);
+            }
+            return chars / 2;
+        }// decodeHex
+
+    }// class ASCII
+
+    /**
+     * Class implementing the BIN framing: a <tt>{</tt>, the message and its CRC,
+     * and a <tt>}</tt>. As the message is not escaped, a <tt>}</tt> inside of it
+     * only ends the frame if the CRC matches.
+     */
+    static final class BIN extends SerialFrameCodec {
+
+        private int m_Scanned = 1;
+
+        @Override
+        public void encode(ModbusMessage msg, BytesOutputStream out) throws IOException {
+            int len = writePdu(msg);
+            int[] crc = ModbusUtil.calculateCRC(m_Pdu.getBuffer(), 0, len);
+            out.writeByte(ModbusBINTransport.FRAME_START_TOKEN);
+            out.write(m_Pdu.getBuffer(), 0, len);
+            out.writeByte(crc[0]);
+            out.writeByte(crc[1]);
+            out.writeByte(ModbusBINTransport.FRAME_END_TOKEN);
+        }// encode
+
+        @Override
+        public int decode(ByteRingBuffer in, byte[] frame) {
+            for (;;) {
+                while (in.size() > 0 && in.get(0) != ModbusBINTransport.FRAME_START_TOKEN) {
+                    in.skip(1);
+                    m_Scanned = 1;
+                }
+                for (int i = m_Scanned; i < in.size(); i++) {
+                    if (in.get(i) != ModbusBINTransport.FRAME_END_TOKEN) {
+                        continue;
+                    }
+                    int len = i - 3;
+                    if (len < 2) {
+                        continue;
+                    }
+                    if (len > frame.length) {
+                        break;
+                    }
+                    in.copy(1, frame, 0, len);
+                    int[] crc = ModbusUtil.calculateCRC(frame, 0, len);
+                    if (in.get(i - 2) == crc[0] && in.get(i - 1) == crc[1]) {
+                        in.skip(i + 1);
+                        m_Scanned = 1;
+                        return len;
+                    }
+                }
+                if (in.size() > frame.length + 4) {
+                    // no frame end within the maximum length, resynchronize
+                    in.skip(1);
+                    m_Scanned = 1;
+                    continue;
+                }
+                m_Scanned = Math.max(1, in.size());
+                return INCOMPLETE;
+            }
+        }// decode
+
+        @Override
+        public void reset() {
+            m_Scanned = 1;
+        }// reset
+
+    }// class BIN
+
+}// class SerialFrameCodec
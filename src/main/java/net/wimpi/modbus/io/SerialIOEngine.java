@@ -0,0 +1,375 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gnu.io.SerialPortEvent;
+import gnu.io.SerialPortEventListener;
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.msg.ModbusRequest;
+import net.wimpi.modbus.msg.ModbusResponse;
+import net.wimpi.modbus.util.ByteRingBuffer;
+import net.wimpi.modbus.util.ModbusUtil;
+
+/**
+ * Class implementing an event driven serial I/O engine for a master.
+ * <p>
+ * No thread blocks on the port: requests are submitted with {@link #submit(ModbusRequest)},
+ * which writes the frame and returns a <tt>Future</tt> of the response. Received bytes
+ * are pulled by {@link #dataAvailable()}, normally from the <tt>DATA_AVAILABLE</tt> event
+ * of the port, which drains everything the port has buffered into a ring buffer and
+ * runs the incremental {@link SerialFrameCodec} over it. A completed frame completes
+ * the future of the request in flight.
+ * <p>
+ * As serial frames carry no transaction id, one request is in flight at a time;
+ * further submitted requests are queued and sent as soon as the previous one has
+ * been answered or cancelled. Received bytes are discarded before a request is sent,
+ * so that late answers are not taken for the response. A caller giving up on a
+ * response must cancel its future, as the engine keeps no timers.
+ * <p>
+ * The engine only needs the port streams, so it can be driven by any pair of
+ * streams, e.g. a <tt>PipedInputStream</tt> fed by a simulated device, calling
+ * {@link #dataAvailable()} after each write.
+ *
+ * @version @version@ (@date@)
+ */
+public class SerialIOEngine implements SerialPortEventListener {
+    private static final Logger logger = LoggerFactory.getLogger(SerialIOEngine.class);
+
+    /**
+     * Defines the default capacity of the receive buffer in bytes.
+     */
+    public static final int DEFAULT_BUFFER_CAPACITY = 4096;
+
+    // instance attributes
+    private final InputStream m_InputStream;
+    private final OutputStream m_OutputStream;
+    private final SerialFrameCodec m_Codec;
+    private final ByteRingBuffer m_Received;
+    private final byte[] m_Frame = new byte[Modbus.MAX_MESSAGE_LENGTH];
+    private final BytesOutputStream m_ByteOut = new BytesOutputStream(2 * Modbus.MAX_MESSAGE_LENGTH + 8);
+    private final BytesInputStream m_ByteIn = new BytesInputStream(m_Frame);
+    private final ArrayDeque<Exchange> m_Queue = new ArrayDeque<>();
+    private final Object m_Lock = new Object();
+    private boolean m_Echo;
+    private int m_EchoRemaining;
+    private boolean m_Closed;
+
+    /**
+     * Constructs a new <tt>SerialIOEngine</tt> instance with the default
+     * receive buffer capacity.
+     *
+     * @param in the <tt>InputStream</tt> of the port.
+     * @param out the <tt>OutputStream</tt> of the port.
+     * @param codec the <tt>SerialFrameCodec</tt> of the serial encoding.
+     */
+    public SerialIOEngine(InputStream in, OutputStream out, SerialFrameCodec codec) {
+        this(in, out, codec, DEFAULT_BUFFER_CAPACITY);
+    }// constructor
+
+    /**
+     * Constructs a new <tt>SerialIOEngine</tt> instance.
+     *
+     * @param in the <tt>InputStream</tt> of the port.
+     * @param out the <tt>OutputStream</tt> of the port.
+     * @param codec the <tt>SerialFrameCodec</tt> of the serial encoding.
+     * @param capacity the capacity of the receive buffer in bytes.
+     */
+    public SerialIOEngine(InputStream in, OutputStream out, SerialFrameCodec codec, int capacity) {
+        m_InputStream = in;
+        m_OutputStream = out;
+        m_Codec = codec;
+        m_Received = new ByteRingBuffer(Math.max(capacity, 2 * Modbus.MAX_MESSAGE_LENGTH + 8));
+    }// constructor
+
+    /**
+     * Sets the RS485 echo mode, in which the own frames are received
+     * back and have to be skipped.
+     *
+     * @param b true to skip echoed frames, false otherwise.
+     */
+    public void setEcho(boolean b) {
+        synchronized (m_Lock) {
+            m_Echo = b;
+        }
+    }// setEcho
+
+    /**
+     * Returns the number of requests sent or waiting to be sent.
+     *
+     * @return the number of pending requests.
+     */
+    public int getPendingCount() {
+        synchronized (m_Lock) {
+            return m_Queue.size();
+        }
+    }// getPendingCount
+
+    /**
+     * Submits a request. It is sent at once if no other request is
+     * pending, and queued otherwise.
+     *
+     * @param request the <tt>ModbusRequest</tt> to be sent.
+     * @return the <tt>Future</tt> of the response.
+     */
+    public Future<ModbusResponse> submit(ModbusRequest request) {
+        Exchange exchange = new Exchange(request);
+        synchronized (m_Lock) {
+            if (m_Closed) {
+                exchange.fail(new IOException("Engine closed"));
+                return exchange;
+            }
+            m_Queue.add(exchange);
+            if (m_Queue.size() == 1) {
+                send(exchange);
+            }
+        }
+        return exchange;
+    }// submit
+
+    @Override
+    public void serialEvent(SerialPortEvent e) {
+        if (e.getEventType() == SerialPortEvent.DATA_AVAILABLE) {
+            dataAvailable();
+        }
+    }// serialEvent
+
+    /**
+     * Drains the bytes buffered by the port and completes the request in
+     * flight if its response frame is complete. Must be called whenever
+     * data has arrived; calls without data are harmless.
+     */
+    public void dataAvailable() {
+        synchronized (m_Lock) {
+            try {
+                int n;
+                while ((n = m_InputStream.available()) > 0) {
+                    if (m_Received.remaining() == 0) {
+                        // no frame could be decoded from a full buffer
+                        logger.debug("Receive buffer overflow, discarding {} bytes", m_Received.size());
+                        m_Received.clear();
+                        m_Codec.reset();
+                    }
+                    if (m_Received.read(m_InputStream, n) < 0) {
+                        break;
+                    }
+                    skipEcho();
+                    decode();
+                }
+            } catch (IOException ex) {
+                logger.debug("Reading from port failed: {}", ex.getMessage());
+                Exchange head = m_Queue.peek();
+                if (head != null) {
+                    complete(head, null, ex);
+                }
+            }
+        }
+    }// dataAvailable
+
+    /**
+     * Fails all pending requests and refuses further ones.
+     * The port streams are not closed.
+     */
+    public void close() {
+        synchronized (m_Lock) {
+            m_Closed = true;
+            IOException ex = new IOException("Engine closed");
+            while (!m_Queue.isEmpty()) {
+                m_Queue.poll().fail(ex);
+            }
+        }
+    }// close
+
+    private void skipEcho() {
+        int n = Math.min(m_EchoRemaining, m_Received.size());
+        m_Received.skip(n);
+        m_EchoRemaining -= n;
+    }// skipEcho
+
+    private void decode() {
+        int len;
+        while (m_EchoRemaining == 0 && (len = m_Codec.decode(m_Received, m_Frame)) >= 0) {
+            Exchange head = m_Queue.peek();
+            if (head == null) {
+                logger.debug("Discarding unexpected frame: {}", ModbusUtil.toHex(m_Frame, 0, len));
+                continue;
+            }
+            ModbusResponse response = ModbusResponse.createModbusResponse(m_Frame[1] & 0xff);
+            response.setHeadless();
+            try {
+                m_ByteIn.reset(m_Frame, len);
+                response.readFrom(m_ByteIn);
+            } catch (IOException ex) {
+                complete(head, null, ex);
+                continue;
+            }
+            logger.debug("Received: {}", ModbusUtil.toHex(m_Frame, 0, len));
+            complete(head, response, null);
+        }
+    }// decode
+
+    // called holding the lock, with the exchange at the head of the queue
+    private void complete(Exchange exchange, ModbusResponse response, IOException ex) {
+        m_Queue.poll();
+        if (ex != null) {
+            exchange.fail(ex);
+        } else {
+            exchange.complete(response);
+        }
+        sendNext();
+    }// complete
+
+    private void cancel(Exchange exchange) {
+        synchronized (m_Lock) {
+            if (m_Queue.peek() == exchange) {
+                m_Queue.poll();
+                sendNext();
+            } else {
+                m_Queue.remove(exchange);
+            }
+        }
+    }// cancel
+
+    private void sendNext() {
+        Exchange next = m_Queue.peek();
+        if (next != null) {
+            send(next);
+        }
+    }// sendNext
+
+    private void send(Exchange exchange) {
+        // RTU has no frame delimiters, so stale input would corrupt the response
+        m_Received.clear();
+        m_Codec.reset();
+        try {
+            int n = m_InputStream.available();
+            if (n > 0) {
+                m_InputStream.skip(n);
+            }
+            m_ByteOut.reset();
+            m_Codec.encode(exchange.m_Request, m_ByteOut);
+            m_OutputStream.write(m_ByteOut.getBuffer(), 0, m_ByteOut.size());
+            m_OutputStream.flush();
+            logger.debug("Sent: {}", ModbusUtil.toHex(m_ByteOut.getBuffer(), 0, m_ByteOut.size()));
+            m_EchoRemaining = m_Echo ? m_ByteOut.size() : 0;
+        } catch (IOException ex) {
+            m_Queue.poll();
+            exchange.fail(ex);
+            sendNext();
+        }
+    }// send
+
+    /**
+     * Class implementing the <tt>Future</tt> of a submitted request.
+     */
+    private final class Exchange implements Future<ModbusResponse> {
+
+        private final ModbusRequest m_Request;
+        private ModbusResponse m_Response;
+        private IOException m_Failure;
+        private boolean m_Done;
+        private boolean m_Cancelled;
+
+        private Exchange(ModbusRequest request) {
+            m_Request = request;
+        }
+
+        private synchronized void complete(ModbusResponse response) {
+            if (!m_Done) {
+                m_Response = response;
+                m_Done = true;
+                notifyAll();
+            }
+        }
+
+        private synchronized void fail(IOException ex) {
+            if (!m_Done) {
+                m_Failure = ex;
+                m_Done = true;
+                notifyAll();
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            synchronized (this) {
+                if (m_Done) {
+                    return false;
+                }
+                m_Cancelled = true;
+                m_Done = true;
+                notifyAll();
+            }
+            SerialIOEngine.this.cancel(this);
+            return true;
+        }
+
+        @Override
+        public synchronized boolean isCancelled() {
+            return m_Cancelled;
+        }
+
+        @Override
+        public synchronized boolean isDone() {
+            return m_Done;
+        }
+
+        @Override
+        public synchronized ModbusResponse get() throws InterruptedException, ExecutionException {
+            while (!m_Done) {
+                wait();
+            }
+            return result();
+        }
+
+        @Override
+        public synchronized ModbusResponse get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (!m_Done) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    throw new TimeoutException();
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, left);
+            }
+            return result();
+        }
+
+        private ModbusResponse result() throws ExecutionException {
+            if (m_Cancelled) {
+                throw new CancellationException();
+            }
+            if (m_Failure != null) {
+                throw new ExecutionException(m_Failure);
+            }
+            return m_Response;
+        }
+    }// class Exchange
+
+}// class SerialIOEngine
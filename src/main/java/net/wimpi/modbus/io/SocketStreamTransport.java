@@ -77,6 +77,20 @@ public class SocketStreamTransport implements StreamTransport{
         }
     }
 
+    /**
+     * Returns the timeout in milliseconds
+     * @return the timeout in milliseconds, <tt>0</tt> if infinite
+     */
+    public int getTimeout() {
+        try {
+            return socket.getSoTimeout();
+        } catch (IOException e) {
+            String errorMessage = "Getting socket timeout error: ";
+            log.error(errorMessage, e);
+            throw new StreamTransportException(errorMessage, e);
+        }
+    }
+
     @Override
     public boolean isOpen() {
         return !socket.isClosed();
@@ -0,0 +1,419 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.io;
+
+import net.wimpi.modbus.ModbusIOException;
+import net.wimpi.modbus.msg.ModbusResponse;
+import net.wimpi.modbus.msg.ReadInputRegistersRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Class implementing an asynchronous unit id discovery service
+ * for <tt>AutoSearchingModbusASCIITransport</tt> instances created
+ * without searching.
+ * <p>
+ * Each transport is scanned by a task of the executor, so that many
+ * lines (e.g. devices dialed in over TCP) are scanned concurrently.
+ * On a single line the probes are sent in windows of
+ * {@link #setPipelineDepth(int) pipeline depth} requests, spaced by
+ * {@link #setProbeSpacing(int) probe spacing}, after which the responses
+ * are collected until the probe timeout elapses. A depth of <tt>1</tt>
+ * is safe on half duplex serial lines; larger depths only suit gateways
+ * that queue requests. By default, devices connected over a socket are probed
+ * {@link #DEFAULT_SOCKET_PIPELINE_DEPTH} at a time and other lines one at a time,
+ * so that a silent line does not take the probe timeout once per unit id.
+ * Once a unit responded, the probe timeout adapts to the measured response
+ * latency. The scan stops early when
+ * {@link #setMaxUnits(int) the expected number of units} has been found.
+ * The timeout of a socket is restored after the scan.
+ * <p>
+ * Results are kept in a {@link Cache} keyed by a caller supplied device key,
+ * so that a reconnecting device skips the scan; see {@link DeviceRegistry}
+ * for a persistent cache and {@link #setVerifyCached(boolean)} for warm starts.
+ * <p>
+ * A transport is locked while it is scanned, so that probes do not
+ * interleave with the commands of <tt>AutoSearchingModbusTransport</tt>.
+ *
+ * @version @version@ (@date@)
+ */
+public class UnitDiscovery {
+    private static final Logger log = LoggerFactory.getLogger(UnitDiscovery.class);
+
+    /**
+     * Defines the lower bound of the adaptive probe timeout in milliseconds.
+     */
+    public static final int MIN_ADAPTIVE_TIMEOUT_MS = 50;
+
+    /**
+     * Defines the default pipeline depth for devices connected over a socket.
+     */
+    public static final int DEFAULT_SOCKET_PIPELINE_DEPTH = 8;
+
+    /**
+     * Interface for receiving the progress of a discovery.
+     */
+    public interface Listener {
+
+        /**
+         * Called after a unit id has been probed.
+         *
+         * @param transport the transport being scanned.
+         * @param unitId the probed unit id.
+         * @param found true if the unit responded, false otherwise.
+         * @param probed the number of unit ids probed so far.
+         * @param total the number of unit ids to be probed.
+         */
+        void unitProbed(AutoSearchingModbusASCIITransport transport, int unitId, boolean found, int probed, int total);
+
+        /**
+         * Called when the discovery of a transport has finished.
+         *
+         * @param transport the scanned transport.
+         * @param units the found unit ids.
+         */
+        void discoveryFinished(AutoSearchingModbusASCIITransport transport, Collection<Integer> units);
+    }
+
+    /**
+     * Interface for caching discovered unit ids.
+     */
+    public interface Cache {
+
+        /**
+         * Returns the cached unit ids of a device.
+         *
+         * @param key the device key.
+         * @return the unit ids, or <tt>null</tt> if the device is unknown.
+         */
+        Collection<Integer> get(String key);
+
+        /**
+         * Caches the unit ids of a device.
+         *
+         * @param key the device key.
+         * @param units the found unit ids.
+         * @param latencyMs the average probe latency in milliseconds, or <tt>-1</tt> if unknown.
+         */
+        void put(String key, Collection<Integer> units, int latencyMs);
+    }
+
+    /**
+     * Class implementing an in-memory <tt>Cache</tt>.
+     */
+    public static class MemoryCache implements Cache {
+        private final ConcurrentMap<String, Collection<Integer>> units = new ConcurrentHashMap<>();
+
+        @Override
+        public Collection<Integer> get(String key) {
+            return units.get(key);
+        }
+
+        @Override
+        public void put(String key, Collection<Integer> units, int latencyMs) {
+            this.units.put(key, Collections.unmodifiableSet(new HashSet<>(units)));
+        }
+    }
+
+    private final ExecutorService executor;
+    private volatile Cache cache;
+    private volatile int pipelineDepth;
+    private volatile int probeSpacing;
+    private volatile int maxUnits;
+    private volatile boolean adaptiveTimeout = true;
+    private volatile boolean verifyCached;
+
+    /**
+     * Constructs a new <tt>UnitDiscovery</tt> instance.
+     *
+     * @param executor the <tt>ExecutorService</tt> running the scans.
+     */
+    public UnitDiscovery(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the <tt>Cache</tt> of discovered units.
+     *
+     * @param cache a <tt>Cache</tt>, or <tt>null</tt> to disable caching.
+     */
+    public void setCache(Cache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Sets the number of probes sent before their responses are collected.
+     *
+     * @param depth the pipeline depth, or <tt>0</tt> (the default) for
+     *              {@link #DEFAULT_SOCKET_PIPELINE_DEPTH} over sockets and <tt>1</tt> otherwise.
+     */
+    public void setPipelineDepth(int depth) {
+        if (depth < 0) throw new IllegalArgumentException("Pipeline depth must not be negative: " + depth);
+        pipelineDepth = depth;
+    }
+
+    /**
+     * Sets the pause between pipelined probes in milliseconds.
+     *
+     * @param spacingMs the pause in milliseconds.
+     */
+    public void setProbeSpacing(int spacingMs) {
+        probeSpacing = spacingMs;
+    }
+
+    /**
+     * Sets the number of units after which the scan stops.
+     *
+     * @param max the number of expected units, or <tt>0</tt> to probe all unit ids.
+     */
+    public void setMaxUnits(int max) {
+        maxUnits = max;
+    }
+
+    /**
+     * Sets whether the probe timeout adapts to the response latency
+     * once a unit responded.
+     *
+     * @param b true if adaptive, false to always wait the search timeout.
+     */
+    public void setAdaptiveTimeout(boolean b) {
+        adaptiveTimeout = b;
+    }
+
+    /**
+     * Sets whether cached units are verified. If so, a transport found in
+     * the cache is warm started with the cached units, which are then probed
+     * in the background; the full scan only runs if they changed.
+     *
+     * @param b true to verify cached units, false to trust the cache.
+     */
+    public void setVerifyCached(boolean b) {
+        verifyCached = b;
+    }
+
+    /**
+     * Discovers the units of the given transport asynchronously.
+     * When done, the found units are set on the transport.
+     *
+     * @param transport the transport to be scanned.
+     * @param key the device key used for caching, or <tt>null</tt> to skip the cache.
+     * @param listener the <tt>Listener</tt> receiving the progress, may be <tt>null</tt>.
+     * @return a <tt>Future</tt> with the found unit ids.
+     */
+    public Future<Collection<Integer>> discover(final AutoSearchingModbusASCIITransport transport, final String key,
+                                                final Listener listener) {
+        return executor.submit(new Callable<Collection<Integer>>() {
+            @Override
+            public Collection<Integer> call() {
+                return discoverNow(transport, key, listener);
+            }
+        });
+    }
+
+    /**
+     * Discovers the units of the given transport in the calling thread.
+     * When done, the found units are set on the transport.
+     *
+     * @param transport the transport to be scanned.
+     * @param key the device key used for caching, or <tt>null</tt> to skip the cache.
+     * @param listener the <tt>Listener</tt> receiving the progress, may be <tt>null</tt>.
+     * @return the found unit ids.
+     */
+    public Collection<Integer> discoverNow(AutoSearchingModbusASCIITransport transport, String key,
+                                           Listener listener) {
+        Cache c = cache;
+        Collection<Integer> found = (c != null && key != null) ? c.get(key) : null;
+        if (found != null) {
+            log.debug(String.format("Units of [%s] taken from cache: %s", key, found));
+            transport.setUnits(new HashSet<>(found));
+            if (verifyCached) {
+                verify(transport, key, found, listener);
+                return found;
+            }
+        } else {
+            long[] latency = new long[2];
+            found = scan(transport, transport.getSearchUnitIds(), listener, latency);
+            transport.setUnits(found);
+            if (c != null && key != null && !found.isEmpty()) {
+                c.put(key, found, average(latency));
+            }
+        }
+        if (listener != null) {
+            listener.discoveryFinished(transport, found);
+        }
+        return found;
+    }
+
+    private void verify(final AutoSearchingModbusASCIITransport transport, final String key,
+                        final Collection<Integer> cached, final Listener listener) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long[] latency = new long[2];
+                Collection<Integer> found = scan(transport, cached, null, latency);
+                if (!found.equals(new HashSet<>(cached))) {
+                    log.debug(String.format("Cached units of [%s] changed, rescanning", key));
+                    latency = new long[2];
+                    found = scan(transport, transport.getSearchUnitIds(), listener, latency);
+                    transport.setUnits(found);
+                }
+                Cache c = cache;
+                if (c != null && !found.isEmpty()) {
+                    // refreshes the last seen time as well
+                    c.put(key, found, average(latency));
+                }
+                if (listener != null) {
+                    listener.discoveryFinished(transport, found);
+                }
+            }
+        });
+    }
+
+    /**
+     * Probes the given unit ids on the given transport.
+     * The transport is locked meanwhile.
+     *
+     * @param transport the transport to be scanned.
+     * @param searchUnitIds the unit ids to be probed.
+     * @param listener the <tt>Listener</tt> receiving the progress, may be <tt>null</tt>.
+     * @param latency receives the sum of the response latencies and the number of responses.
+     * @return the found unit ids.
+     */
+    protected Collection<Integer> scan(AutoSearchingModbusASCIITransport transport,
+                                       Collection<Integer> searchUnitIds, Listener listener, long[] latency) {
+        synchronized (transport) {
+            return scanLocked(transport, searchUnitIds, listener, latency);
+        }
+    }
+
+    private Collection<Integer> scanLocked(AutoSearchingModbusASCIITransport transport,
+                                           Collection<Integer> searchUnitIds, Listener listener, long[] latency) {
+        List<Integer> unitIds = new ArrayList<>(searchUnitIds);
+        Set<Integer> found = new HashSet<>();
+        int timeout = transport.getSearchTimeout();
+        StreamTransport streamTransport = transport.getStreamTransport();
+        boolean socket = streamTransport instanceof SocketStreamTransport;
+        int depth = pipelineDepth;
+        if (depth == 0) {
+            depth = socket ? DEFAULT_SOCKET_PIPELINE_DEPTH : 1;
+        }
+        int max = maxUnits;
+        int previousTimeout = socket && streamTransport.isOpen()
+                ? ((SocketStreamTransport) streamTransport).getTimeout() : -1;
+        try {
+            scanWindows(transport, unitIds, depth, timeout, max, found, listener, latency);
+        } finally {
+            if (previousTimeout >= 0 && streamTransport.isOpen()) {
+                try {
+                    streamTransport.setTimeout(previousTimeout);
+                } catch (RuntimeException e) {
+                    log.error(String.format("Restoring timeout of [%s] failed: ", transport), e);
+                }
+            }
+        }
+        return found;
+    }
+
+    private void scanWindows(AutoSearchingModbusASCIITransport transport, List<Integer> unitIds, int depth,
+                             int timeout, int max, Set<Integer> found, Listener listener, long[] latency) {
+        Set<Integer> searched = new HashSet<>(unitIds);
+        int total = unitIds.size();
+        int probed = 0;
+        scan:
+        for (int i = 0; i < total; i += depth) {
+            List<Integer> window = unitIds.subList(i, Math.min(i + depth, total));
+            Set<Integer> outstanding = new HashSet<>(window);
+            long sent = System.currentTimeMillis();
+            try {
+                for (int n = 0; n < window.size(); n++) {
+                    if (n > 0 && probeSpacing > 0) {
+                        Thread.sleep(probeSpacing);
+                    }
+                    transport.writeMessage(createProbe(transport, window.get(n)));
+                }
+                long deadline = System.currentTimeMillis() + timeout;
+                while (!outstanding.isEmpty()) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) break;
+                    transport.getStreamTransport().setTimeout((int) remaining);
+                    ModbusResponse response = transport.readResponse();
+                    int unitId = response.getUnitID();
+                    boolean current = outstanding.remove(unitId);
+                    // late responses of a previous window still count
+                    if (!searched.contains(unitId) || !found.add(unitId)) continue;
+                    if (current) {
+                        latency[0] += System.currentTimeMillis() - sent;
+                        latency[1]++;
+                        if (adaptiveTimeout) {
+                            timeout = Math.max(MIN_ADAPTIVE_TIMEOUT_MS,
+                                    Math.min(transport.getSearchTimeout(), (int) (4 * latency[0] / latency[1])));
+                        }
+                        probed++;
+                        if (listener != null) listener.unitProbed(transport, unitId, true, probed, total);
+                    }
+                    if (max > 0 && found.size() >= max) break scan;
+                }
+            } catch (ModbusIOException e) {
+                String message = e.getMessage() == null ? "" : e.getMessage().toLowerCase();
+                if (!message.contains("timed out")) {
+                    log.error(String.format("Unit discovery of [%s] aborted: ", transport), e);
+                    try {
+                        transport.getTransport().close();
+                    } catch (IOException ex) {
+                        log.error("Transport close error: ", ex);
+                    }
+                    break;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                log.error(String.format("Unit discovery of [%s] aborted: ", transport), e);
+                break;
+            }
+            for (Integer unitId : outstanding) {
+                probed++;
+                if (listener != null) listener.unitProbed(transport, unitId, false, probed, total);
+            }
+        }
+    }
+
+    private static int average(long[] latency) {
+        return latency[1] > 0 ? (int) (latency[0] / latency[1]) : -1;
+    }
+
+    private static ReadInputRegistersRequest createProbe(AutoSearchingModbusASCIITransport transport, int unitId) {
+        ReadInputRegistersRequest request = new ReadInputRegistersRequest();
+        request.setHeadless();
+        request.setUnitID(unitId);
+        request.setReference(transport.getSearchRegister());
+        request.setWordCount(1);
+        return request;
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.msg;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.procimg.Register;
+import net.wimpi.modbus.procimg.SimpleRegister;
+
+/**
+ * Class implementing a <tt>DiagnosticsRequest</tt>.
+ * The implementation directly correlates with the serial line
+ * function <i>diagnostics (FC 8)</i>. It
+ * encapsulates the corresponding request message.
+ * <p>
+ * A slave implements the sub-function <i>return query data</i>
+ * by echoing the request, and answers all other sub-functions
+ * with an <tt>illegal function</tt> exception.
+ * <p>
+ * Serial frames do not carry the data length, so a headless
+ * request is read with a single data word, which is what all
+ * standard sub-functions use.
+ *
+ * @version @version@ (@date@)
+ */
+public final class DiagnosticsRequest extends ModbusRequest {
+
+    // instance attributes
+    private int m_SubFunction;
+    private Register[] m_Data;
+
+    /**
+     * Constructs a new <tt>DiagnosticsRequest</tt>
+     * instance.
+     */
+    public DiagnosticsRequest() {
+        super();
+        setFunctionCode(Modbus.DIAGNOSTICS);
+        // sub-function and one data word (unit id and function code is excluded)
+        setDataLength(4);
+    }// constructor
+
+    /**
+     * Constructs a new <tt>DiagnosticsRequest</tt>
+     * instance with a given sub-function and data.
+     *
+     * @param subFunction the diagnostics sub-function.
+     * @param data the data words of the sub-function.
+     */
+    public DiagnosticsRequest(int subFunction, Register[] data) {
+        super();
+        setFunctionCode(Modbus.DIAGNOSTICS);
+        setSubFunction(subFunction);
+        setData(data);
+    }// constructor
+
+    @Override
+    public ModbusResponse createResponse() {
+        if (m_SubFunction != Modbus.DIAGNOSTICS_RETURN_QUERY_DATA) {
+            return createExceptionResponse(Modbus.ILLEGAL_FUNCTION_EXCEPTION);
+        }
+        DiagnosticsResponse response = new DiagnosticsResponse(m_SubFunction, m_Data);
+        // transfer header data
+        if (!isHeadless()) {
+            response.setTransactionID(this.getTransactionID());
+            response.setProtocolID(this.getProtocolID());
+        } else {
+            response.setHeadless();
+        }
+        response.setUnitID(this.getUnitID());
+        response.setFunctionCode(this.getFunctionCode());
+        return response;
+    }// createResponse
+
+    /**
+     * Sets the diagnostics sub-function of this request.
+     *
+     * @param subFunction the sub-function as <tt>int</tt>.
+     */
+    public void setSubFunction(int subFunction) {
+        m_SubFunction = subFunction;
+    }// setSubFunction
+
+    /**
+     * Returns the diagnostics sub-function of this request.
+     *
+     * @return the sub-function as <tt>int</tt>.
+     */
+    public int getSubFunction() {
+        return m_SubFunction;
+    }// getSubFunction
+
+    /**
+     * Sets the data words of this request.
+     *
+     * @param data the data as <tt>Register[]</tt>.
+     */
+    public void setData(Register[] data) {
+        m_Data = (data == null) ? new Register[0] : data;
+        setDataLength(2 + m_Data.length * 2);
+    }// setData
+
+    /**
+     * Returns the data words of this request.
+     *
+     * @return the data as <tt>Register[]</tt>.
+     */
+    public Register[] getData() {
+        return m_Data;
+    }// getData
+
+    @Override
+    public void writeData(DataOutput dout) throws IOException {
+        dout.writeShort(m_SubFunction);
+        for (Register r : m_Data) {
+            dout.write(r.toBytes());
+        }
+    }// writeData
+
+    @Override
+    public void readData(DataInput din) throws IOException {
+        m_SubFunction = din.readUnsignedShort();
+        // the data length includes unit id, function code and sub-function
+        Register[] data = new Register[Math.max(0, (getDataLength() - 4) / 2)];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = new SimpleRegister(din.readByte(), din.readByte());
+        }
+        m_Data = data;
+    }// readData
+
+}// class DiagnosticsRequest
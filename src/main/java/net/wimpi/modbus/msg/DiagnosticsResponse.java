@@ -0,0 +1,103 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.msg;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.procimg.Register;
+import net.wimpi.modbus.procimg.SimpleRegister;
+
+/**
+ * Class implementing a <tt>DiagnosticsResponse</tt>.
+ * The implementation directly correlates with the serial line
+ * function <i>diagnostics (FC 8)</i>. It
+ * encapsulates the corresponding response message.
+ *
+ * @version @version@ (@date@)
+ * @see DiagnosticsRequest
+ */
+public final class DiagnosticsResponse extends ModbusResponse {
+
+    // instance attributes
+    private int m_SubFunction;
+    private Register[] m_Data;
+
+    /**
+     * Constructs a new <tt>DiagnosticsResponse</tt>
+     * instance.
+     */
+    public DiagnosticsResponse() {
+        super();
+        setFunctionCode(Modbus.DIAGNOSTICS);
+        setDataLength(4);
+    }// constructor
+
+    /**
+     * Constructs a new <tt>DiagnosticsResponse</tt>
+     * instance with a given sub-function and data.
+     *
+     * @param subFunction the diagnostics sub-function.
+     * @param data the data words of the sub-function.
+     */
+    public DiagnosticsResponse(int subFunction, Register[] data) {
+        super();
+        setFunctionCode(Modbus.DIAGNOSTICS);
+        m_SubFunction = subFunction;
+        m_Data = (data == null) ? new Register[0] : data;
+        setDataLength(2 + m_Data.length * 2);
+    }// constructor
+
+    /**
+     * Returns the diagnostics sub-function of this response.
+     *
+     * @return the sub-function as <tt>int</tt>.
+     */
+    public int getSubFunction() {
+        return m_SubFunction;
+    }// getSubFunction
+
+    /**
+     * Returns the data words of this response.
+     *
+     * @return the data as <tt>Register[]</tt>.
+     */
+    public Register[] getData() {
+        return m_Data;
+    }// getData
+
+    @Override
+    public void writeData(DataOutput dout) throws IOException {
+        dout.writeShort(m_SubFunction);
+        for (Register r : m_Data) {
+            dout.write(r.toBytes());
+        }
+    }// writeData
+
+    @Override
+    public void readData(DataInput din) throws IOException {
+        m_SubFunction = din.readUnsignedShort();
+        // the data length includes unit id, function code and sub-function
+        Register[] data = new Register[Math.max(0, (getDataLength() - 4) / 2)];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = new SimpleRegister(din.readByte(), din.readByte());
+        }
+        m_Data = data;
+    }// readData
+
+}// class DiagnosticsResponse
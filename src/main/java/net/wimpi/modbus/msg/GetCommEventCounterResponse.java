@@ -0,0 +1,92 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.msg;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import net.wimpi.modbus.Modbus;
+
+/**
+ * Class implementing a <tt>GetCommEventCounterResponse</tt>.
+ * The implementation directly correlates with the serial line
+ * function <i>get comm event counter (FC 11)</i>. It
+ * encapsulates the corresponding response message.
+ *
+ * @version @version@ (@date@)
+ */
+public final class GetCommEventCounterResponse extends ModbusResponse {
+
+    // instance attributes
+    private int m_Status;
+    private int m_EventCount;
+
+    /**
+     * Constructs a new <tt>GetCommEventCounterResponse</tt>
+     * instance.
+     */
+    public GetCommEventCounterResponse() {
+        super();
+        setFunctionCode(Modbus.GET_COMM_EVENT_COUNTER);
+        setDataLength(4);
+    }// constructor
+
+    /**
+     * Constructs a new <tt>GetCommEventCounterResponse</tt>
+     * instance with the given status and event count.
+     *
+     * @param status the status word.
+     * @param eventCount the event count.
+     */
+    public GetCommEventCounterResponse(int status, int eventCount) {
+        this();
+        m_Status = status & 0xffff;
+        m_EventCount = eventCount & 0xffff;
+    }// constructor
+
+    /**
+     * Returns the status word; <tt>0xFFFF</tt> if a previously
+     * issued program command is still being processed.
+     *
+     * @return the status as <tt>int</tt>.
+     */
+    public int getStatus() {
+        return m_Status;
+    }// getStatus
+
+    /**
+     * Returns the event count.
+     *
+     * @return the event count as <tt>int</tt>.
+     */
+    public int getEventCount() {
+        return m_EventCount;
+    }// getEventCount
+
+    @Override
+    public void writeData(DataOutput dout) throws IOException {
+        dout.writeShort(m_Status);
+        dout.writeShort(m_EventCount);
+    }// writeData
+
+    @Override
+    public void readData(DataInput din) throws IOException {
+        m_Status = din.readUnsignedShort();
+        m_EventCount = din.readUnsignedShort();
+    }// readData
+
+}// class GetCommEventCounterResponse
@@ -0,0 +1,125 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.msg;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import net.wimpi.modbus.Modbus;
+
+/**
+ * Class implementing a <tt>GetCommEventLogResponse</tt>.
+ * The implementation directly correlates with the serial line
+ * function <i>get comm event log (FC 12)</i>. It
+ * encapsulates the corresponding response message.
+ *
+ * @version @version@ (@date@)
+ */
+public final class GetCommEventLogResponse extends ModbusResponse {
+
+    // instance attributes
+    private int m_Status;
+    private int m_EventCount;
+    private int m_MessageCount;
+    private byte[] m_Events = new byte[0];
+
+    /**
+     * Constructs a new <tt>GetCommEventLogResponse</tt>
+     * instance.
+     */
+    public GetCommEventLogResponse() {
+        super();
+        setFunctionCode(Modbus.GET_COMM_EVENT_LOG);
+        setDataLength(7);
+    }// constructor
+
+    /**
+     * Constructs a new <tt>GetCommEventLogResponse</tt>
+     * instance with the given log.
+     *
+     * @param status the status word.
+     * @param eventCount the event count.
+     * @param messageCount the message count.
+     * @param events the event bytes, the most recent first.
+     */
+    public GetCommEventLogResponse(int status, int eventCount, int messageCount, byte[] events) {
+        super();
+        setFunctionCode(Modbus.GET_COMM_EVENT_LOG);
+        m_Status = status & 0xffff;
+        m_EventCount = eventCount & 0xffff;
+        m_MessageCount = messageCount & 0xffff;
+        m_Events = events.clone();
+        setDataLength(7 + m_Events.length);
+    }// constructor
+
+    /**
+     * Returns the status word.
+     *
+     * @return the status as <tt>int</tt>.
+     */
+    public int getStatus() {
+        return m_Status;
+    }// getStatus
+
+    /**
+     * Returns the event count.
+     *
+     * @return the event count as <tt>int</tt>.
+     */
+    public int getEventCount() {
+        return m_EventCount;
+    }// getEventCount
+
+    /**
+     * Returns the message count.
+     *
+     * @return the message count as <tt>int</tt>.
+     */
+    public int getMessageCount() {
+        return m_MessageCount;
+    }// getMessageCount
+
+    /**
+     * Returns the event bytes, the most recent first.
+     *
+     * @return the events as <tt>byte[]</tt>.
+     */
+    public byte[] getEvents() {
+        return m_Events;
+    }// getEvents
+
+    @Override
+    public void writeData(DataOutput dout) throws IOException {
+        dout.writeByte(6 + m_Events.length);
+        dout.writeShort(m_Status);
+        dout.writeShort(m_EventCount);
+        dout.writeShort(m_MessageCount);
+        dout.write(m_Events);
+    }// writeData
+
+    @Override
+    public void readData(DataInput din) throws IOException {
+        int byteCount = din.readUnsignedByte();
+        m_Status = din.readUnsignedShort();
+        m_EventCount = din.readUnsignedShort();
+        m_MessageCount = din.readUnsignedShort();
+        m_Events = new byte[Math.max(0, byteCount - 6)];
+        din.readFully(m_Events);
+        setDataLength(1 + byteCount);
+    }// readData
+
+}// class GetCommEventLogResponse
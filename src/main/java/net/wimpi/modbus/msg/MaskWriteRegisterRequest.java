@@ -0,0 +1,195 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.msg;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusCoupler;
+import net.wimpi.modbus.procimg.IllegalAddressException;
+import net.wimpi.modbus.procimg.ProcessImage;
+import net.wimpi.modbus.procimg.Register;
+import net.wimpi.modbus.procimg.TransactionalProcessImage;
+
+/**
+ * Class implementing a <tt>MaskWriteRegisterRequest</tt>.
+ * The implementation directly correlates with the
+ * function <i>mask write register (FC 22)</i>. It
+ * encapsulates the corresponding request message.
+ * <p>
+ * The slave modifies the register as
+ * <tt>(current AND andMask) OR (orMask AND (NOT andMask))</tt>,
+ * which sets, clears or keeps single bits in one transaction.
+ *
+ * @version @version@ (@date@)
+ */
+public final class MaskWriteRegisterRequest extends ModbusRequest {
+
+    // instance attributes
+    private int m_Reference;
+    private int m_AndMask;
+    private int m_OrMask;
+
+    /**
+     * Constructs a new <tt>MaskWriteRegisterRequest</tt>
+     * instance.
+     */
+    public MaskWriteRegisterRequest() {
+        super();
+        setFunctionCode(Modbus.MASK_WRITE_REGISTER);
+        // 6 bytes (unit id and function code is excluded)
+        setDataLength(6);
+    }// constructor
+
+    /**
+     * Constructs a new <tt>MaskWriteRegisterRequest</tt>
+     * instance with the given reference and masks.
+     *
+     * @param ref the reference of the register.
+     * @param andMask the AND mask; bits set to 1 are kept.
+     * @param orMask the OR mask; bits to be set among the ones not kept.
+     */
+    public MaskWriteRegisterRequest(int ref, int andMask, int orMask) {
+        this();
+        setReference(ref);
+        setAndMask(andMask);
+        setOrMask(orMask);
+    }// constructor
+
+    @Override
+    public ModbusResponse createResponse() {
+        // 1. get process image
+        ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
+        // 2. modify the register
+        try {
+            ProcessImage image = getUnitProcessImage(procimg);
+            synchronized (procimg) {
+                // writers of a transactional image do not take the monitor
+                boolean atomic = image instanceof TransactionalProcessImage;
+                if (atomic) {
+                    ((TransactionalProcessImage) image).begin();
+                }
+                try {
+                    Register reg = image.getRegister(this.getReference());
+                    reg.setValue(applyMasks(reg.toUnsignedShort(), m_AndMask, m_OrMask));
+                    if (atomic) {
+                        ((TransactionalProcessImage) image).commit();
+                    }
+                } finally {
+                    if (atomic) {
+                        ((TransactionalProcessImage) image).rollback();
+                    }
+                }
+            }
+        } catch (IllegalAddressException iaex) {
+            return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
+        }
+        MaskWriteRegisterResponse response = new MaskWriteRegisterResponse(m_Reference, m_AndMask, m_OrMask);
+        // transfer header data
+        if (!isHeadless()) {
+            response.setTransactionID(this.getTransactionID());
+            response.setProtocolID(this.getProtocolID());
+        } else {
+            response.setHeadless();
+        }
+        response.setUnitID(this.getUnitID());
+        response.setFunctionCode(this.getFunctionCode());
+        return response;
+    }// createResponse
+
+    /**
+     * Applies the masks of a mask write to a register value.
+     *
+     * @param value the current value of the register.
+     * @param andMask the AND mask.
+     * @param orMask the OR mask.
+     * @return the resulting value as unsigned short.
+     */
+    public static int applyMasks(int value, int andMask, int orMask) {
+        return ((value & andMask) | (orMask & ~andMask)) & 0xffff;
+    }// applyMasks
+
+    /**
+     * Sets the reference of the register to be modified.
+     *
+     * @param ref the reference as <tt>int</tt>.
+     */
+    public void setReference(int ref) {
+        m_Reference = ref;
+    }// setReference
+
+    /**
+     * Returns the reference of the register to be modified.
+     *
+     * @return the reference as <tt>int</tt>.
+     */
+    public int getReference() {
+        return m_Reference;
+    }// getReference
+
+    /**
+     * Sets the AND mask.
+     *
+     * @param mask the mask as <tt>int</tt>.
+     */
+    public void setAndMask(int mask) {
+        m_AndMask = mask & 0xffff;
+    }// setAndMask
+
+    /**
+     * Returns the AND mask.
+     *
+     * @return the mask as <tt>int</tt>.
+     */
+    public int getAndMask() {
+        return m_AndMask;
+    }// getAndMask
+
+    /**
+     * Sets the OR mask.
+     *
+     * @param mask the mask as <tt>int</tt>.
+     */
+    public void setOrMask(int mask) {
+        m_OrMask = mask & 0xffff;
+    }// setOrMask
+
+    /**
+     * Returns the OR mask.
+     *
+     * @return the mask as <tt>int</tt>.
+     */
+    public int getOrMask() {
+        return m_OrMask;
+    }// getOrMask
+
+    @Override
+    public void writeData(DataOutput dout) throws IOException {
+        dout.writeShort(m_Reference);
+        dout.writeShort(m_AndMask);
+        dout.writeShort(m_OrMask);
+    }// writeData
+
+    @Override
+    public void readData(DataInput din) throws IOException {
+        m_Reference = din.readUnsignedShort();
+        m_AndMask = din.readUnsignedShort();
+        m_OrMask = din.readUnsignedShort();
+    }// readData
+
+}// class MaskWriteRegisterRequest
@@ -17,6 +17,8 @@
 package net.wimpi.modbus.msg;
 
 import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.procimg.MultipleUnitsProcessImage;
+import net.wimpi.modbus.procimg.ProcessImage;
 
 /**
  * Abstract class implementing a <tt>ModbusRequest</tt>.
@@ -70,6 +72,21 @@ public abstract class ModbusRequest extends ModbusMessageImpl {
         return response;
     }// createExceptionResponse
 
+    /**
+     * Returns the process image addressed by this request: the image
+     * of the addressed unit if the given image serves multiple units,
+     * the given image otherwise.
+     *
+     * @param procimg the process image of the slave.
+     * @return the <tt>ProcessImage</tt> to serve this request from.
+     */
+    protected ProcessImage getUnitProcessImage(ProcessImage procimg) {
+        if (procimg instanceof MultipleUnitsProcessImage) {
+            return ((MultipleUnitsProcessImage) procimg).getUnitProcessImage(getUnitID());
+        }
+        return procimg;
+    }// getUnitProcessImage
+
     /**
      * Factory method creating the required specialized <tt>ModbusRequest</tt>
      * instance.
@@ -105,6 +122,36 @@ public abstract class ModbusRequest extends ModbusMessageImpl {
             case Modbus.WRITE_MULTIPLE_COILS:
                 request = new WriteMultipleCoilsRequest();
                 break;
+            case Modbus.READ_EXCEPTION_STATUS:
+                request = new ReadExceptionStatusRequest();
+                break;
+            case Modbus.DIAGNOSTICS:
+                request = new DiagnosticsRequest();
+                break;
+            case Modbus.GET_COMM_EVENT_COUNTER:
+                request = new GetCommEventCounterRequest();
+                break;
+            case Modbus.GET_COMM_EVENT_LOG:
+                request = new GetCommEventLogRequest();
+                break;
+            case Modbus.REPORT_SLAVE_ID:
+                request = new ReportSlaveIdRequest();
+                break;
+            case Modbus.READ_FILE_RECORD:
+                request = new ReadFileRecordRequest();
+                break;
+            case Modbus.WRITE_FILE_RECORD:
+                request = new WriteFileRecordRequest();
+                break;
+            case Modbus.MASK_WRITE_REGISTER:
+                request = new MaskWriteRegisterRequest();
+                break;
+            case Modbus.READ_WRITE_MULTIPLE_REGISTERS:
+                request = new ReadWriteMultipleRegistersRequest();
+                break;
+            case Modbus.READ_FIFO_QUEUE:
+                request = new ReadFifoQueueRequest();
+                break;
             default:
                 request = new IllegalFunctionRequest(functionCode);
                 break;
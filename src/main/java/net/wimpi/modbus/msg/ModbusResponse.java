@@ -83,6 +83,36 @@ public abstract class ModbusResponse extends ModbusMessageImpl {
             case Modbus.WRITE_MULTIPLE_COILS:
                 response = new WriteMultipleCoilsResponse();
                 break;
+            case Modbus.READ_EXCEPTION_STATUS:
+                response = new ReadExceptionStatusResponse();
+                break;
+            case Modbus.DIAGNOSTICS:
+                response = new DiagnosticsResponse();
+                break;
+            case Modbus.GET_COMM_EVENT_COUNTER:
+                response = new GetCommEventCounterResponse();
+                break;
+            case Modbus.GET_COMM_EVENT_LOG:
+                response = new GetCommEventLogResponse();
+                break;
+            case Modbus.REPORT_SLAVE_ID:
+                response = new ReportSlaveIdResponse();
+                break;
+            case Modbus.READ_FILE_RECORD:
+                response = new ReadFileRecordResponse();
+                break;
+            case Modbus.WRITE_FILE_RECORD:
+                response = new WriteFileRecordResponse();
+                break;
+            case Modbus.MASK_WRITE_REGISTER:
+                response = new MaskWriteRegisterResponse();
+                break;
+            case Modbus.READ_WRITE_MULTIPLE_REGISTERS:
+                response = new ReadWriteMultipleRegistersResponse();
+                break;
+            case Modbus.READ_FIFO_QUEUE:
+                response = new ReadFifoQueueResponse();
+                break;
             default:
                 response = new ExceptionResponse();
                 break;
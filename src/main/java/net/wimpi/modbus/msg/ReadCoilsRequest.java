@@ -24,8 +24,8 @@ import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.procimg.DigitalOut;
 import net.wimpi.modbus.procimg.IllegalAddressException;
-import net.wimpi.modbus.procimg.MultipleUnitsProcessImage;
 import net.wimpi.modbus.procimg.ProcessImage;
+import net.wimpi.modbus.procimg.TransactionalProcessImage;
 
 /**
  * Class implementing a <tt>ReadCoilsRequest</tt>.
@@ -83,12 +83,15 @@ public final class ReadCoilsRequest extends ModbusRequest {
         // 1. get process image
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
         // 2. get coil range
+        ProcessImage image = getUnitProcessImage(procimg);
         try {
-            synchronized (procimg) {
-                if (procimg instanceof MultipleUnitsProcessImage) {
-                    ((MultipleUnitsProcessImage)procimg).setCurrentUnit(this.getUnitID());
+            if (image instanceof TransactionalProcessImage) {
+                // consistent without the monitor, so readers do not block writers
+                douts = image.getDigitalOutRange(this.getReference(), this.getBitCount());
+            } else {
+                synchronized (procimg) {
+                    douts = image.getDigitalOutRange(this.getReference(), this.getBitCount());
                 }
-                douts = procimg.getDigitalOutRange(this.getReference(), this.getBitCount());
             }
 
         } catch (IllegalAddressException iaex) {
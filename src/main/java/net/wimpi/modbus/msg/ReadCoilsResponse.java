@@ -22,6 +22,7 @@ import java.io.IOException;
 
 import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.util.BitVector;
+import net.wimpi.modbus.util.LongBitVector;
 
 /**
  * Class implementing a <tt>ReadCoilsResponse</tt>.
@@ -39,6 +40,7 @@ public final class ReadCoilsResponse extends ModbusResponse {
 
     // instance attributes
     private BitVector m_Coils;
+    private byte[] m_Data;
 
     /**
      * Constructs a new <tt>ReadCoilsResponse</tt>
@@ -71,10 +73,12 @@ public final class ReadCoilsResponse extends ModbusResponse {
      * @return the number of bits that have been read.
      */
     public int getBitCount() {
-        if (m_Coils == null) {
-            return 0;
-        } else {
+        if (m_Coils != null) {
             return m_Coils.size();
+        } else if (m_Data != null) {
+            return m_Data.length * 8;
+        } else {
+            return 0;
         }
     }// getBitCount
 
@@ -87,9 +91,30 @@ public final class ReadCoilsResponse extends ModbusResponse {
      *         bits that have been read.
      */
     public BitVector getCoils() {
+        if (m_Coils == null && m_Data != null) {
+            // the bit vector is only created when asked for
+            m_Coils = BitVector.createBitVector(m_Data);
+        }
         return m_Coils;
     }// getCoils
 
+    /**
+     * Decodes the coils that have been read into the given
+     * <tt>LongBitVector</tt>, without creating a <tt>BitVector</tt>.
+     * The number of bits decoded is the size of the given vector.
+     *
+     * @param bits the <tt>LongBitVector</tt> receiving the bits.
+     * @throws IndexOutOfBoundsException if the response holds
+     *             fewer bits than the given vector.
+     */
+    public void getCoils(LongBitVector bits) throws IndexOutOfBoundsException {
+        if (m_Coils != null) {
+            bits.decode(m_Coils.getBytes(), 0);
+        } else {
+            bits.decode(m_Data, 0);
+        }
+    }// getCoils
+
     /**
      * Convenience method that returns the state
      * of the bit at the given index.
@@ -105,7 +130,7 @@ public final class ReadCoilsResponse extends ModbusResponse {
      */
     public boolean getCoilStatus(int index) throws IndexOutOfBoundsException {
 
-        return m_Coils.getBit(index);
+        return getCoils().getBit(index);
     }// getCoilStatus
 
     /**
@@ -115,24 +140,23 @@ public final class ReadCoilsResponse extends ModbusResponse {
      * @param b true if to be set, false for reset.
      */
     public void setCoilStatus(int index, boolean b) {
-        m_Coils.setBit(index, b);
+        getCoils().setBit(index, b);
     }// setCoilStatus
 
     @Override
     public void writeData(DataOutput dout) throws IOException {
-        dout.writeByte(m_Coils.byteSize());
-        dout.write(m_Coils.getBytes(), 0, m_Coils.byteSize());
+        BitVector bits = getCoils();
+        dout.writeByte(bits.byteSize());
+        dout.write(bits.getBytes(), 0, bits.byteSize());
     }// writeData
 
     @Override
     public void readData(DataInput din) throws IOException {
         int count = din.readUnsignedByte();
-        byte[] data = new byte[count];
-        for (int k = 0; k < count; k++) {
-            data[k] = din.readByte();
-        }
-        // decode bytes into bitvector
-        m_Coils = BitVector.createBitVector(data);
+        // keep the packed bytes, decoding is done on demand
+        m_Data = new byte[count];
+        din.readFully(m_Data);
+        m_Coils = null;
         // update data length
         setDataLength(count + 1);
     }// readData
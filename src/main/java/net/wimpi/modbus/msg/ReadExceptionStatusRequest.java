@@ -0,0 +1,63 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.msg;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import net.wimpi.modbus.Modbus;
+
+/**
+ * Class implementing a <tt>ReadExceptionStatusRequest</tt>.
+ * The implementation directly correlates with the serial line
+ * function <i>read exception status (FC 7)</i>. It
+ * encapsulates the corresponding request message.
+ * <p>
+ * The process image does not hold exception status outputs,
+ * so a slave answers with an <tt>illegal function</tt> exception.
+ *
+ * @version @version@ (@date@)
+ */
+public final class ReadExceptionStatusRequest extends ModbusRequest {
+
+    /**
+     * Constructs a new <tt>ReadExceptionStatusRequest</tt>
+     * instance.
+     */
+    public ReadExceptionStatusRequest() {
+        super();
+        setFunctionCode(Modbus.READ_EXCEPTION_STATUS);
+        // no data (unit id and function code is excluded)
+        setDataLength(0);
+    }// constructor
+
+    @Override
+    public ModbusResponse createResponse() {
+        return createExceptionResponse(Modbus.ILLEGAL_FUNCTION_EXCEPTION);
+    }// createResponse
+
+    @Override
+    public void writeData(DataOutput dout) throws IOException {
+        // no data
+    }// writeData
+
+    @Override
+    public void readData(DataInput din) throws IOException {
+        // no data
+    }// readData
+
+}// class ReadExceptionStatusRequest
@@ -0,0 +1,78 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.msg;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import net.wimpi.modbus.Modbus;
+
+/**
+ * Class implementing a <tt>ReadExceptionStatusResponse</tt>.
+ * The implementation directly correlates with the serial line
+ * function <i>read exception status (FC 7)</i>. It
+ * encapsulates the corresponding response message.
+ *
+ * @version @version@ (@date@)
+ */
+public final class ReadExceptionStatusResponse extends ModbusResponse {
+
+    // instance attributes
+    private int m_Status;
+
+    /**
+     * Constructs a new <tt>ReadExceptionStatusResponse</tt>
+     * instance.
+     */
+    public ReadExceptionStatusResponse() {
+        super();
+        setFunctionCode(Modbus.READ_EXCEPTION_STATUS);
+        setDataLength(1);
+    }// constructor
+
+    /**
+     * Constructs a new <tt>ReadExceptionStatusResponse</tt>
+     * instance with the given status.
+     *
+     * @param status the states of the eight exception status outputs.
+     */
+    public ReadExceptionStatusResponse(int status) {
+        this();
+        m_Status = status & 0xff;
+    }// constructor
+
+    /**
+     * Returns the states of the eight exception status outputs,
+     * the first output in the least significant bit.
+     *
+     * @return the status as <tt>int</tt>.
+     */
+    public int getStatus() {
+        return m_Status;
+    }// getStatus
+
+    @Override
+    public void writeData(DataOutput dout) throws IOException {
+        dout.writeByte(m_Status);
+    }// writeData
+
+    @Override
+    public void readData(DataInput din) throws IOException {
+        m_Status = din.readUnsignedByte();
+    }// readData
+
+}// class ReadExceptionStatusResponse
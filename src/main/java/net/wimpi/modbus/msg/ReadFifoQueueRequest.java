@@ -0,0 +1,135 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.msg;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusCoupler;
+import net.wimpi.modbus.procimg.IllegalAddressException;
+import net.wimpi.modbus.procimg.ProcessImage;
+import net.wimpi.modbus.procimg.Register;
+
+/**
+ * Class implementing a <tt>ReadFifoQueueRequest</tt>.
+ * The implementation directly correlates with the
+ * function <i>read FIFO queue (FC 24)</i>. It
+ * encapsulates the corresponding request message.
+ * <p>
+ * A slave maps a queue onto its registers: the register at the
+ * FIFO pointer address holds the number of queued values, which
+ * follow in the next registers. A count above {@link Modbus#MAX_FIFO_COUNT}
+ * is answered with an <tt>illegal data value</tt> exception.
+ *
+ * @version @version@ (@date@)
+ */
+public final class ReadFifoQueueRequest extends ModbusRequest {
+
+    // instance attributes
+    private int m_Reference;
+
+    /**
+     * Constructs a new <tt>ReadFifoQueueRequest</tt>
+     * instance.
+     */
+    public ReadFifoQueueRequest() {
+        super();
+        setFunctionCode(Modbus.READ_FIFO_QUEUE);
+        // 2 bytes (unit id and function code is excluded)
+        setDataLength(2);
+    }// constructor
+
+    /**
+     * Constructs a new <tt>ReadFifoQueueRequest</tt>
+     * instance for the given FIFO pointer address.
+     *
+     * @param ref the FIFO pointer address.
+     */
+    public ReadFifoQueueRequest(int ref) {
+        this();
+        setReference(ref);
+    }// constructor
+
+    @Override
+    public ModbusResponse createResponse() {
+        byte[] data;
+        // 1. get process image
+        ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
+        // 2. get the count and the queued values
+        try {
+            ProcessImage image = getUnitProcessImage(procimg);
+            synchronized (procimg) {
+                int count = image.getRegister(m_Reference).toUnsignedShort();
+                if (count > Modbus.MAX_FIFO_COUNT) {
+                    return createExceptionResponse(Modbus.ILLEGAL_VALUE_EXCEPTION);
+                }
+                data = new byte[count * 2];
+                if (count > 0) {
+                    Register[] regs = image.getRegisterRange(m_Reference + 1, count);
+                    for (int i = 0; i < count; i++) {
+                        byte[] b = regs[i].toBytes();
+                        data[i * 2] = b[0];
+                        data[i * 2 + 1] = b[1];
+                    }
+                }
+            }
+        } catch (IllegalAddressException iaex) {
+            return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
+        }
+        ReadFifoQueueResponse response = new ReadFifoQueueResponse(data);
+        // transfer header data
+        if (!isHeadless()) {
+            response.setTransactionID(this.getTransactionID());
+            response.setProtocolID(this.getProtocolID());
+        } else {
+            response.setHeadless();
+        }
+        response.setUnitID(this.getUnitID());
+        response.setFunctionCode(this.getFunctionCode());
+        return response;
+    }// createResponse
+
+    /**
+     * Sets the FIFO pointer address.
+     *
+     * @param ref the address as <tt>int</tt>.
+     */
+    public void setReference(int ref) {
+        m_Reference = ref;
+    }// setReference
+
+    /**
+     * Returns the FIFO pointer address.
+     *
+     * @return the address as <tt>int</tt>.
+     */
+    public int getReference() {
+        return m_Reference;
+    }// getReference
+
+    @Override
+    public void writeData(DataOutput dout) throws IOException {
+        dout.writeShort(m_Reference);
+    }// writeData
+
+    @Override
+    public void readData(DataInput din) throws IOException {
+        m_Reference = din.readUnsignedShort();
+    }// readData
+
+}// class ReadFifoQueueRequest
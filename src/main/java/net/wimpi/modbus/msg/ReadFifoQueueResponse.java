@@ -0,0 +1,117 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.msg;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.procimg.Register;
+import net.wimpi.modbus.procimg.SimpleRegister;
+
+/**
+ * Class implementing a <tt>ReadFifoQueueResponse</tt>.
+ * The implementation directly correlates with the
+ * function <i>read FIFO queue (FC 24)</i>. It
+ * encapsulates the corresponding response message,
+ * which holds the queued values.
+ *
+ * @version @version@ (@date@)
+ */
+public final class ReadFifoQueueResponse extends ModbusResponse {
+
+    // instance attributes
+    private byte[] m_Data = new byte[0];
+
+    /**
+     * Constructs a new <tt>ReadFifoQueueResponse</tt>
+     * instance.
+     */
+    public ReadFifoQueueResponse() {
+        super();
+        setFunctionCode(Modbus.READ_FIFO_QUEUE);
+        setDataLength(4);
+    }// constructor
+
+    /**
+     * Constructs a new <tt>ReadFifoQueueResponse</tt>
+     * instance with the given values.
+     *
+     * @param data the queued values, two bytes each.
+     */
+    public ReadFifoQueueResponse(byte[] data) {
+        super();
+        setFunctionCode(Modbus.READ_FIFO_QUEUE);
+        m_Data = data;
+        setDataLength(4 + data.length);
+    }// constructor
+
+    /**
+     * Returns the number of queued values.
+     *
+     * @return the count as <tt>int</tt>.
+     */
+    public int getWordCount() {
+        return m_Data.length / 2;
+    }// getWordCount
+
+    /**
+     * Returns the queued value at the given index
+     * interpreted as unsigned short.
+     *
+     * @param index the index of the value.
+     * @return the value as <tt>int</tt>.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public int getRegisterValue(int index) throws IndexOutOfBoundsException {
+        if (index < 0 || index >= getWordCount()) {
+            throw new IndexOutOfBoundsException();
+        }
+        return (m_Data[index * 2] & 0xff) << 8 | (m_Data[index * 2 + 1] & 0xff);
+    }// getRegisterValue
+
+    /**
+     * Returns the queued values.
+     *
+     * @return the values as <tt>Register[]</tt>.
+     */
+    public Register[] getRegisters() {
+        Register[] registers = new Register[getWordCount()];
+        for (int i = 0; i < registers.length; i++) {
+            registers[i] = new SimpleRegister(m_Data[i * 2], m_Data[i * 2 + 1]);
+        }
+        return registers;
+    }// getRegisters
+
+    @Override
+    public void writeData(DataOutput dout) throws IOException {
+        dout.writeShort(2 + m_Data.length);
+        dout.writeShort(m_Data.length / 2);
+        dout.write(m_Data);
+    }// writeData
+
+    @Override
+    public void readData(DataInput din) throws IOException {
+        din.readUnsignedShort();
+        int count = din.readUnsignedShort();
+        byte[] data = new byte[count * 2];
+        din.readFully(data);
+        m_Data = data;
+        setDataLength(4 + data.length);
+    }// readData
+
+}// class ReadFifoQueueResponse
@@ -0,0 +1,171 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.msg;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.wimpi.modbus.Modbus;
+
+/**
+ * Class implementing a <tt>ReadFileRecordRequest</tt>.
+ * The implementation directly correlates with the
+ * function <i>read file record (FC 20)</i>. It
+ * encapsulates the corresponding request message.
+ * <p>
+ * A request carries one or more sub-requests, each reading
+ * a group of registers from one record of one file.
+ * The process image does not hold files, so a slave answers
+ * with an <tt>illegal function</tt> exception.
+ *
+ * @version @version@ (@date@)
+ */
+public final class ReadFileRecordRequest extends ModbusRequest {
+
+    /**
+     * Defines the size of a sub-request in bytes.
+     */
+    public static final int SUB_REQUEST_LENGTH = 7;
+
+    // instance attributes
+    private final List<RecordRequest> m_Records = new ArrayList<>();
+
+    /**
+     * Constructs a new <tt>ReadFileRecordRequest</tt>
+     * instance.
+     */
+    public ReadFileRecordRequest() {
+        super();
+        setFunctionCode(Modbus.READ_FILE_RECORD);
+        // byte count (unit id and function code is excluded)
+        setDataLength(1);
+    }// constructor
+
+    @Override
+    public ModbusResponse createResponse() {
+        return createExceptionResponse(Modbus.ILLEGAL_FUNCTION_EXCEPTION);
+    }// createResponse
+
+    /**
+     * Adds a sub-request to this request.
+     *
+     * @param record the <tt>RecordRequest</tt> to be added.
+     */
+    public void addRequest(RecordRequest record) {
+        m_Records.add(record);
+        setDataLength(1 + m_Records.size() * SUB_REQUEST_LENGTH);
+    }// addRequest
+
+    /**
+     * Returns the number of sub-requests.
+     *
+     * @return the number of sub-requests as <tt>int</tt>.
+     */
+    public int getRequestCount() {
+        return m_Records.size();
+    }// getRequestCount
+
+    /**
+     * Returns the sub-request at the given index.
+     *
+     * @param index the index of the sub-request.
+     * @return the <tt>RecordRequest</tt>.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public RecordRequest getRequest(int index) throws IndexOutOfBoundsException {
+        return m_Records.get(index);
+    }// getRequest
+
+    @Override
+    public void writeData(DataOutput dout) throws IOException {
+        dout.writeByte(m_Records.size() * SUB_REQUEST_LENGTH);
+        for (RecordRequest r : m_Records) {
+            dout.writeByte(Modbus.FILE_RECORD_REFERENCE_TYPE);
+            dout.writeShort(r.getFileNumber());
+            dout.writeShort(r.getRecordNumber());
+            dout.writeShort(r.getWordCount());
+        }
+    }// writeData
+
+    @Override
+    public void readData(DataInput din) throws IOException {
+        int byteCount = din.readUnsignedByte();
+        m_Records.clear();
+        for (int i = 0; i < byteCount / SUB_REQUEST_LENGTH; i++) {
+            din.readUnsignedByte();
+            int file = din.readUnsignedShort();
+            int record = din.readUnsignedShort();
+            int count = din.readUnsignedShort();
+            m_Records.add(new RecordRequest(file, record, count));
+        }
+        setDataLength(1 + m_Records.size() * SUB_REQUEST_LENGTH);
+    }// readData
+
+    /**
+     * Class holding a sub-request of a <tt>ReadFileRecordRequest</tt>.
+     */
+    public static final class RecordRequest {
+
+        private final int m_FileNumber;
+        private final int m_RecordNumber;
+        private final int m_WordCount;
+
+        /**
+         * Constructs a new <tt>RecordRequest</tt>.
+         *
+         * @param file the file number (1-65535).
+         * @param record the record number (0-9999).
+         * @param count the number of registers to be read.
+         */
+        public RecordRequest(int file, int record, int count) {
+            m_FileNumber = file;
+            m_RecordNumber = record;
+            m_WordCount = count;
+        }// constructor
+
+        /**
+         * Returns the file number.
+         *
+         * @return the file number as <tt>int</tt>.
+         */
+        public int getFileNumber() {
+            return m_FileNumber;
+        }// getFileNumber
+
+        /**
+         * Returns the record number.
+         *
+         * @return the record number as <tt>int</tt>.
+         */
+        public int getRecordNumber() {
+            return m_RecordNumber;
+        }// getRecordNumber
+
+        /**
+         * Returns the number of registers to be read.
+         *
+         * @return the register count as <tt>int</tt>.
+         */
+        public int getWordCount() {
+            return m_WordCount;
+        }// getWordCount
+
+    }// class RecordRequest
+
+}// class ReadFileRecordRequest
@@ -0,0 +1,157 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.msg;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.procimg.Register;
+import net.wimpi.modbus.procimg.SimpleRegister;
+
+/**
+ * Class implementing a <tt>ReadFileRecordResponse</tt>.
+ * The implementation directly correlates with the
+ * function <i>read file record (FC 20)</i>. It
+ * encapsulates the corresponding response message.
+ * <p>
+ * The response holds the registers of each sub-request,
+ * in the order of the request.
+ *
+ * @version @version@ (@date@)
+ * @see ReadFileRecordRequest
+ */
+public final class ReadFileRecordResponse extends ModbusResponse {
+
+    // instance attributes
+    private final List<byte[]> m_Records = new ArrayList<>();
+    private int m_ByteCount;
+
+    /**
+     * Constructs a new <tt>ReadFileRecordResponse</tt>
+     * instance.
+     */
+    public ReadFileRecordResponse() {
+        super();
+        setFunctionCode(Modbus.READ_FILE_RECORD);
+        setDataLength(1);
+    }// constructor
+
+    /**
+     * Adds the registers of a sub-request to this response.
+     *
+     * @param registers the registers read.
+     */
+    public void addRecord(Register[] registers) {
+        byte[] data = new byte[registers.length * 2];
+        for (int i = 0; i < registers.length; i++) {
+            byte[] b = registers[i].toBytes();
+            data[i * 2] = b[0];
+            data[i * 2 + 1] = b[1];
+        }
+        addRecord(data);
+    }// addRecord
+
+    private void addRecord(byte[] data) {
+        m_Records.add(data);
+        m_ByteCount += 2 + data.length;
+        setDataLength(1 + m_ByteCount);
+    }// addRecord
+
+    /**
+     * Returns the number of sub-responses.
+     *
+     * @return the number of sub-responses as <tt>int</tt>.
+     */
+    public int getRecordCount() {
+        return m_Records.size();
+    }// getRecordCount
+
+    /**
+     * Returns the registers of the sub-request at the given index.
+     *
+     * @param index the index of the sub-request.
+     * @return the registers as <tt>Register[]</tt>.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public Register[] getRecord(int index) throws IndexOutOfBoundsException {
+        byte[] data = m_Records.get(index);
+        Register[] registers = new Register[data.length / 2];
+        for (int i = 0; i < registers.length; i++) {
+            registers[i] = new SimpleRegister(data[i * 2], data[i * 2 + 1]);
+        }
+        return registers;
+    }// getRecord
+
+    /**
+     * Returns the number of registers of the sub-request at the given index.
+     *
+     * @param index the index of the sub-request.
+     * @return the number of registers as <tt>int</tt>.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public int getRecordWordCount(int index) throws IndexOutOfBoundsException {
+        return m_Records.get(index).length / 2;
+    }// getRecordWordCount
+
+    /**
+     * Copies the raw register bytes of the sub-request at the given index,
+     * two bytes per register in big endian order, without creating
+     * <tt>Register</tt> instances.
+     *
+     * @param index the index of the sub-request.
+     * @param dest the array receiving the bytes.
+     * @param off the offset in <tt>dest</tt>.
+     * @return the number of bytes copied.
+     * @throws IndexOutOfBoundsException if the index is out of bounds
+     *             or <tt>dest</tt> is too small.
+     */
+    public int getRecordData(int index, byte[] dest, int off) throws IndexOutOfBoundsException {
+        byte[] data = m_Records.get(index);
+        System.arraycopy(data, 0, dest, off, data.length);
+        return data.length;
+    }// getRecordData
+
+    @Override
+    public void writeData(DataOutput dout) throws IOException {
+        dout.writeByte(m_ByteCount);
+        for (byte[] data : m_Records) {
+            dout.writeByte(1 + data.length);
+            dout.writeByte(Modbus.FILE_RECORD_REFERENCE_TYPE);
+            dout.write(data);
+        }
+    }// writeData
+
+    @Override
+    public void readData(DataInput din) throws IOException {
+        int byteCount = din.readUnsignedByte();
+        m_Records.clear();
+        m_ByteCount = 0;
+        int remaining = byteCount;
+        while (remaining > 1) {
+            int length = din.readUnsignedByte();
+            din.readUnsignedByte();
+            byte[] data = new byte[((length - 1) / 2) * 2];
+            din.readFully(data);
+            addRecord(data);
+            remaining -= 1 + length;
+        }
+    }// readData
+
+}// class ReadFileRecordResponse
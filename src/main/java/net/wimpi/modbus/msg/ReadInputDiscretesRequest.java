@@ -24,8 +24,8 @@ import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.procimg.DigitalIn;
 import net.wimpi.modbus.procimg.IllegalAddressException;
-import net.wimpi.modbus.procimg.MultipleUnitsProcessImage;
 import net.wimpi.modbus.procimg.ProcessImage;
+import net.wimpi.modbus.procimg.TransactionalProcessImage;
 
 /**
  * Class implementing a <tt>ReadInputDiscretesRequest</tt>.
@@ -92,12 +92,15 @@ public final class ReadInputDiscretesRequest extends ModbusRequest {
         // 1. get process image
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
         // 2. get inputdiscretes range
+        ProcessImage image = getUnitProcessImage(procimg);
         try {
-            synchronized (procimg) {
-                if (procimg instanceof MultipleUnitsProcessImage) {
-                    ((MultipleUnitsProcessImage)procimg).setCurrentUnit(this.getUnitID());
+            if (image instanceof TransactionalProcessImage) {
+                // consistent without the monitor, so readers do not block writers
+                dins = image.getDigitalInRange(this.getReference(), this.getBitCount());
+            } else {
+                synchronized (procimg) {
+                    dins = image.getDigitalInRange(this.getReference(), this.getBitCount());
                 }
-                dins = procimg.getDigitalInRange(this.getReference(), this.getBitCount());
             }
 
         } catch (IllegalAddressException iaex) {
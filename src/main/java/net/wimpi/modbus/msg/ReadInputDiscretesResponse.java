@@ -22,6 +22,7 @@ import java.io.IOException;
 
 import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.util.BitVector;
+import net.wimpi.modbus.util.LongBitVector;
 
 /**
  * Class implementing a <tt>ReadInputDiscretesResponse</tt>.
@@ -40,6 +41,7 @@ public final class ReadInputDiscretesResponse extends ModbusResponse {
     // instance attributes
     private int m_BitCount;
     private BitVector m_Discretes;
+    private byte[] m_Data;
 
     /**
      * Constructs a new <tt>ReadInputDiscretesResponse</tt>
@@ -95,9 +97,30 @@ public final class ReadInputDiscretesResponse extends ModbusResponse {
      *         bits that have been read.
      */
     public BitVector getDiscretes() {
+        if (m_Discretes == null && m_Data != null) {
+            // the bit vector is only created when asked for
+            m_Discretes = BitVector.createBitVector(m_Data);
+        }
         return m_Discretes;
     }// getDiscretes
 
+    /**
+     * Decodes the input discretes that have been read into the given
+     * <tt>LongBitVector</tt>, without creating a <tt>BitVector</tt>.
+     * The number of bits decoded is the size of the given vector.
+     *
+     * @param bits the <tt>LongBitVector</tt> receiving the bits.
+     * @throws IndexOutOfBoundsException if the response holds
+     *             fewer bits than the given vector.
+     */
+    public void getDiscretes(LongBitVector bits) throws IndexOutOfBoundsException {
+        if (m_Discretes != null) {
+            bits.decode(m_Discretes.getBytes(), 0);
+        } else {
+            bits.decode(m_Data, 0);
+        }
+    }// getDiscretes
+
     /**
      * Convenience method that returns the state
      * of the bit at the given index.
@@ -113,7 +136,7 @@ public final class ReadInputDiscretesResponse extends ModbusResponse {
      */
     public boolean getDiscreteStatus(int index) throws IndexOutOfBoundsException {
 
-        return m_Discretes.getBit(index);
+        return getDiscretes().getBit(index);
     }// getDiscreteStatus
 
     /**
@@ -124,27 +147,24 @@ public final class ReadInputDiscretesResponse extends ModbusResponse {
      * @throws IndexOutOfBoundsException if the given index exceeds bounds.
      */
     public void setDiscreteStatus(int index, boolean b) throws IndexOutOfBoundsException {
-        m_Discretes.setBit(index, b);
+        getDiscretes().setBit(index, b);
     }// setDiscreteStatus
 
     @Override
     public void writeData(DataOutput dout) throws IOException {
-        dout.writeByte(m_Discretes.byteSize());
-        dout.write(m_Discretes.getBytes(), 0, m_Discretes.byteSize());
+        BitVector bits = getDiscretes();
+        dout.writeByte(bits.byteSize());
+        dout.write(bits.getBytes(), 0, bits.byteSize());
     }// writeData
 
     @Override
     public void readData(DataInput din) throws IOException {
-
         int count = din.readUnsignedByte();
-        byte[] data = new byte[count];
-        for (int k = 0; k < count; k++) {
-            data[k] = din.readByte();
-        }
-
-        // decode bytes into bitvector
-        m_Discretes = BitVector.createBitVector(data);
-
+        // keep the packed bytes, decoding is done on demand
+        m_Data = new byte[count];
+        din.readFully(m_Data);
+        m_Discretes = null;
+        m_BitCount = count * 8;
         // update data length
         setDataLength(count + 1);
     }// readData
@@ -22,10 +22,11 @@ import java.io.IOException;
 
 import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.ModbusCoupler;
+import net.wimpi.modbus.procimg.ComputedRegisters;
 import net.wimpi.modbus.procimg.IllegalAddressException;
 import net.wimpi.modbus.procimg.InputRegister;
-import net.wimpi.modbus.procimg.MultipleUnitsProcessImage;
 import net.wimpi.modbus.procimg.ProcessImage;
+import net.wimpi.modbus.procimg.TransactionalProcessImage;
 
 /**
  * Class implementing a <tt>ReadInputRegistersRequest</tt>.
@@ -80,18 +81,22 @@ public final class ReadInputRegistersRequest extends ModbusRequest {
         // 1. get process image
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
         // 2. get input registers range
+        ProcessImage image = getUnitProcessImage(procimg);
         try {
-            synchronized (procimg) {
-                if (procimg instanceof MultipleUnitsProcessImage) {
-                    ((MultipleUnitsProcessImage)procimg).setCurrentUnit(this.getUnitID());
+            if (image instanceof TransactionalProcessImage) {
+                // consistent without the monitor, so readers do not block writers
+                inpregs = image.getInputRegisterRange(this.getReference(), this.getWordCount());
+            } else {
+                synchronized (procimg) {
+                    inpregs = image.getInputRegisterRange(this.getReference(), this.getWordCount());
                 }
-                inpregs = procimg.getInputRegisterRange(this.getReference(), this.getWordCount());
             }
 
         } catch (IllegalAddressException iaex) {
             return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
         }
-        response = new ReadInputRegistersResponse(inpregs);
+        // computed registers are serialized later, take their values now
+        response = new ReadInputRegistersResponse(ComputedRegisters.snapshot(inpregs));
         // transfer header data
         if (!isHeadless()) {
             response.setTransactionID(this.getTransactionID());
@@ -24,6 +24,8 @@ import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.procimg.InputRegister;
 import net.wimpi.modbus.procimg.ProcessImageFactory;
+import net.wimpi.modbus.util.ModbusUtil;
+import net.wimpi.modbus.util.WordOrder;
 
 /**
  * Class implementing a <tt>ReadInputRegistersRequest</tt>.
@@ -40,6 +42,7 @@ public final class ReadInputRegistersResponse extends ModbusResponse {
     private int m_ByteCount;
     // private int[] m_RegisterValues;
     private InputRegister[] m_Registers;
+    private byte[] m_Data;
 
     /**
      * Constructs a new <tt>ReadInputRegistersResponse</tt>
@@ -115,7 +118,7 @@ public final class ReadInputRegistersResponse extends ModbusResponse {
         if (index >= getWordCount()) {
             throw new IndexOutOfBoundsException();
         } else {
-            return m_Registers[index];
+            return getRegisters()[index];
         }
     }// getRegister
 
@@ -137,7 +140,8 @@ public final class ReadInputRegistersResponse extends ModbusResponse {
         if (index >= getWordCount()) {
             throw new IndexOutOfBoundsException();
         } else {
-            return m_Registers[index].toUnsignedShort();
+            byte[] data = getData();
+            return ((data[index * 2] & 0xff) << 8 | (data[index * 2 + 1] & 0xff));
         }
     }// getRegisterValue
 
@@ -148,14 +152,182 @@ public final class ReadInputRegistersResponse extends ModbusResponse {
      * @return a <tt>InputRegister[]</tt> instance.
      */
     public InputRegister[] getRegisters() {
+        if (m_Registers == null && m_Data != null) {
+            // registers are only created when asked for
+            InputRegister[] registers = new InputRegister[getWordCount()];
+            ProcessImageFactory pimf = ModbusCoupler.getReference().getProcessImageFactory();
+            for (int k = 0; k < registers.length; k++) {
+                registers[k] = pimf.createInputRegister(m_Data[k * 2], m_Data[k * 2 + 1]);
+            }
+            m_Registers = registers;
+        }
         return m_Registers;
     }// getRegisters
 
+    /**
+     * Returns the two registers at the given position (relative to the
+     * reference used in the request) as signed 32-bit integer.
+     *
+     * @param index the relative index of the first register.
+     * @param order the <tt>WordOrder</tt> of the value.
+     * @return the value as <tt>int</tt>.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public int getInt(int index, WordOrder order) throws IndexOutOfBoundsException {
+        checkRange(index, 2);
+        return ModbusUtil.registersToInt(getData(), index * 2, order);
+    }// getInt
+
+    /**
+     * Returns the two registers at the given position (relative to the
+     * reference used in the request) as unsigned 32-bit integer.
+     *
+     * @param index the relative index of the first register.
+     * @param order the <tt>WordOrder</tt> of the value.
+     * @return the value as <tt>long</tt>.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public long getUnsignedInt(int index, WordOrder order) throws IndexOutOfBoundsException {
+        checkRange(index, 2);
+        return ModbusUtil.registersToUnsignedInt(getData(), index * 2, order);
+    }// getUnsignedInt
+
+    /**
+     * Returns the four registers at the given position (relative to the
+     * reference used in the request) as signed 64-bit integer.
+     *
+     * @param index the relative index of the first register.
+     * @param order the <tt>WordOrder</tt> of the value.
+     * @return the value as <tt>long</tt>.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public long getLong(int index, WordOrder order) throws IndexOutOfBoundsException {
+        checkRange(index, 4);
+        return ModbusUtil.registersToLong(getData(), index * 2, order);
+    }// getLong
+
+    /**
+     * Returns the two registers at the given position (relative to the
+     * reference used in the request) as 32-bit float.
+     *
+     * @param index the relative index of the first register.
+     * @param order the <tt>WordOrder</tt> of the value.
+     * @return the value as <tt>float</tt>.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public float getFloat(int index, WordOrder order) throws IndexOutOfBoundsException {
+        checkRange(index, 2);
+        return ModbusUtil.registersToFloat(getData(), index * 2, order);
+    }// getFloat
+
+    /**
+     * Returns the four registers at the given position (relative to the
+     * reference used in the request) as 64-bit double.
+     *
+     * @param index the relative index of the first register.
+     * @param order the <tt>WordOrder</tt> of the value.
+     * @return the value as <tt>double</tt>.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public double getDouble(int index, WordOrder order) throws IndexOutOfBoundsException {
+        checkRange(index, 4);
+        return ModbusUtil.registersToDouble(getData(), index * 2, order);
+    }// getDouble
+
+    /**
+     * Decodes consecutive 32-bit integers into the given array.
+     *
+     * @param index the relative index of the first register.
+     * @param order the <tt>WordOrder</tt> of the values.
+     * @param dest the array receiving the values.
+     * @param destOff the index of the first value in <tt>dest</tt>.
+     * @param count the number of values to decode.
+     * @throws IndexOutOfBoundsException if the range is out of bounds.
+     */
+    public void getInts(int index, WordOrder order, int[] dest, int destOff, int count)
+            throws IndexOutOfBoundsException {
+        checkRange(index, count * 2);
+        ModbusUtil.registersToInts(getData(), index * 2, order, dest, destOff, count);
+    }// getInts
+
+    /**
+     * Decodes consecutive 32-bit floats into the given array.
+     *
+     * @param index the relative index of the first register.
+     * @param order the <tt>WordOrder</tt> of the values.
+     * @param dest the array receiving the values.
+     * @param destOff the index of the first value in <tt>dest</tt>.
+     * @param count the number of values to decode.
+     * @throws IndexOutOfBoundsException if the range is out of bounds.
+     */
+    public void getFloats(int index, WordOrder order, float[] dest, int destOff, int count)
+            throws IndexOutOfBoundsException {
+        checkRange(index, count * 2);
+        ModbusUtil.registersToFloats(getData(), index * 2, order, dest, destOff, count);
+    }// getFloats
+
+    /**
+     * Decodes consecutive 64-bit doubles into the given array.
+     *
+     * @param index the relative index of the first register.
+     * @param order the <tt>WordOrder</tt> of the values.
+     * @param dest the array receiving the values.
+     * @param destOff the index of the first value in <tt>dest</tt>.
+     * @param count the number of values to decode.
+     * @throws IndexOutOfBoundsException if the range is out of bounds.
+     */
+    public void getDoubles(int index, WordOrder order, double[] dest, int destOff, int count)
+            throws IndexOutOfBoundsException {
+        checkRange(index, count * 4);
+        ModbusUtil.registersToDoubles(getData(), index * 2, order, dest, destOff, count);
+    }// getDoubles
+
+    /**
+     * Returns a fixed length ASCII string held in the given
+     * number of registers (two characters per register).
+     *
+     * @param index the relative index of the first register.
+     * @param count the number of registers holding the string.
+     * @return the string, cut at the first <tt>NUL</tt> character.
+     * @throws IndexOutOfBoundsException if the range is out of bounds.
+     */
+    public String getString(int index, int count) throws IndexOutOfBoundsException {
+        checkRange(index, count);
+        return ModbusUtil.registersToString(getData(), index * 2, count * 2);
+    }// getString
+
+    private void checkRange(int index, int count) throws IndexOutOfBoundsException {
+        if (index < 0 || count < 0 || index + count > getWordCount()) {
+            throw new IndexOutOfBoundsException();
+        }
+    }// checkRange
+
+    /**
+     * Returns the raw register data, assembling it from the registers
+     * if this response was not read from the wire.
+     */
+    private byte[] getData() {
+        if (m_Data == null) {
+            byte[] data = new byte[getWordCount() * 2];
+            for (int k = 0; k < getWordCount(); k++) {
+                byte[] reg = m_Registers[k].toBytes();
+                data[k * 2] = reg[0];
+                data[k * 2 + 1] = reg[1];
+            }
+            m_Data = data;
+        }
+        return m_Data;
+    }// getData
+
     @Override
     public void writeData(DataOutput dout) throws IOException {
         dout.writeByte(m_ByteCount);
-        for (int k = 0; k < getWordCount(); k++) {
-            dout.write(m_Registers[k].toBytes());
+        if (m_Registers == null) {
+            dout.write(m_Data, 0, m_ByteCount);
+        } else {
+            for (int k = 0; k < getWordCount(); k++) {
+                dout.write(m_Registers[k].toBytes());
+            }
         }
     }// writeData
 
@@ -163,12 +335,11 @@ public final class ReadInputRegistersResponse extends ModbusResponse {
     public void readData(DataInput din) throws IOException {
         setByteCount(din.readUnsignedByte());
 
-        InputRegister[] registers = new InputRegister[getWordCount()];
-        ProcessImageFactory pimf = ModbusCoupler.getReference().getProcessImageFactory();
-        for (int k = 0; k < getWordCount(); k++) {
-            registers[k] = pimf.createInputRegister(din.readByte(), din.readByte());
-        }
-        m_Registers = registers;
+        // keep the raw words, registers are created on demand
+        m_Data = new byte[getByteCount()];
+        din.readFully(m_Data);
+        m_Registers = null;
+
         // update data length
         setDataLength(getByteCount() + 1);
     }// readData
@@ -22,9 +22,10 @@ import java.io.IOException;
 
 import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.ModbusCoupler;
+import net.wimpi.modbus.procimg.ComputedRegisters;
 import net.wimpi.modbus.procimg.IllegalAddressException;
-import net.wimpi.modbus.procimg.MultipleUnitsProcessImage;
 import net.wimpi.modbus.procimg.ProcessImage;
+import net.wimpi.modbus.procimg.TransactionalProcessImage;
 import net.wimpi.modbus.procimg.Register;
 
 /**
@@ -80,18 +81,22 @@ public final class ReadMultipleRegistersRequest extends ModbusRequest {
         // 1. get process image
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
         // 2. get input registers range
+        ProcessImage image = getUnitProcessImage(procimg);
         try {
-            synchronized (procimg) {
-                if (procimg instanceof MultipleUnitsProcessImage) {
-                    ((MultipleUnitsProcessImage)procimg).setCurrentUnit(this.getUnitID());
+            if (image instanceof TransactionalProcessImage) {
+                // consistent without the monitor, so readers do not block writers
+                regs = image.getRegisterRange(this.getReference(), this.getWordCount());
+            } else {
+                synchronized (procimg) {
+                    regs = image.getRegisterRange(this.getReference(), this.getWordCount());
                 }
-                regs = procimg.getRegisterRange(this.getReference(), this.getWordCount());
             }
 
         } catch (IllegalAddressException iaex) {
             return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
         }
-        response = new ReadMultipleRegistersResponse(regs);
+        // computed registers are serialized later, take their values now
+        response = new ReadMultipleRegistersResponse(ComputedRegisters.snapshot(regs));
         // transfer header data
         if (!isHeadless()) {
             response.setTransactionID(this.getTransactionID());
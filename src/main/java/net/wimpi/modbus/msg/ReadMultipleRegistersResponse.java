@@ -24,6 +24,8 @@ import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.procimg.ProcessImageFactory;
 import net.wimpi.modbus.procimg.Register;
+import net.wimpi.modbus.util.ModbusUtil;
+import net.wimpi.modbus.util.WordOrder;
 
 /**
  * Class implementing a <tt>ReadMultipleRegistersResponse</tt>.
@@ -39,6 +41,7 @@ public final class ReadMultipleRegistersResponse extends ModbusResponse {
     // instance attributes
     private int m_ByteCount;
     private Register[] m_Registers;
+    private byte[] m_Data;
 
     /**
      * Constructs a new <tt>ReadMultipleRegistersResponse</tt>
@@ -114,7 +117,11 @@ public final class ReadMultipleRegistersResponse extends ModbusResponse {
      *             the index is out of bounds.
      */
     public int getRegisterValue(int index) throws IndexOutOfBoundsException {
-        return m_Registers[index].toUnsignedShort();
+        if (index >= getWordCount()) {
+            throw new IndexOutOfBoundsException();
+        }
+        byte[] data = getData();
+        return ((data[index * 2] & 0xff) << 8 | (data[index * 2 + 1] & 0xff));
     }// getRegisterValue
 
     /**
@@ -135,7 +142,7 @@ public final class ReadMultipleRegistersResponse extends ModbusResponse {
         if (index >= getWordCount()) {
             throw new IndexOutOfBoundsException();
         } else {
-            return m_Registers[index];
+            return getRegisters()[index];
         }
     }// getRegister
 
@@ -146,14 +153,182 @@ public final class ReadMultipleRegistersResponse extends ModbusResponse {
      * @return a <tt>Register[]</tt> instance.
      */
     public Register[] getRegisters() {
+        if (m_Registers == null && m_Data != null) {
+            // registers are only created when asked for
+            Register[] registers = new Register[getWordCount()];
+            ProcessImageFactory pimf = ModbusCoupler.getReference().getProcessImageFactory();
+            for (int k = 0; k < registers.length; k++) {
+                registers[k] = pimf.createRegister(m_Data[k * 2], m_Data[k * 2 + 1]);
+            }
+            m_Registers = registers;
+        }
         return m_Registers;
     }// getRegisters
 
+    /**
+     * Returns the two registers at the given position (relative to the
+     * reference used in the request) as signed 32-bit integer.
+     *
+     * @param index the relative index of the first register.
+     * @param order the <tt>WordOrder</tt> of the value.
+     * @return the value as <tt>int</tt>.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public int getInt(int index, WordOrder order) throws IndexOutOfBoundsException {
+        checkRange(index, 2);
+        return ModbusUtil.registersToInt(getData(), index * 2, order);
+    }// getInt
+
+    /**
+     * Returns the two registers at the given position (relative to the
+     * reference used in the request) as unsigned 32-bit integer.
+     *
+     * @param index the relative index of the first register.
+     * @param order the <tt>WordOrder</tt> of the value.
+     * @return the value as <tt>long</tt>.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public long getUnsignedInt(int index, WordOrder order) throws IndexOutOfBoundsException {
+        checkRange(index, 2);
+        return ModbusUtil.registersToUnsignedInt(getData(), index * 2, order);
+    }// getUnsignedInt
+
+    /**
+     * Returns the four registers at the given position (relative to the
+     * reference used in the request) as signed 64-bit integer.
+     *
+     * @param index the relative index of the first register.
+     * @param order the <tt>WordOrder</tt> of the value.
+     * @return the value as <tt>long</tt>.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public long getLong(int index, WordOrder order) throws IndexOutOfBoundsException {
+        checkRange(index, 4);
+        return ModbusUtil.registersToLong(getData(), index * 2, order);
+    }// getLong
+
+    /**
+     * Returns the two registers at the given position (relative to the
+     * reference used in the request) as 32-bit float.
+     *
+     * @param index the relative index of the first register.
+     * @param order the <tt>WordOrder</tt> of the value.
+     * @return the value as <tt>float</tt>.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public float getFloat(int index, WordOrder order) throws IndexOutOfBoundsException {
+        checkRange(index, 2);
+        return ModbusUtil.registersToFloat(getData(), index * 2, order);
+    }// getFloat
+
+    /**
+     * Returns the four registers at the given position (relative to the
+     * reference used in the request) as 64-bit double.
+     *
+     * @param index the relative index of the first register.
+     * @param order the <tt>WordOrder</tt> of the value.
+     * @return the value as <tt>double</tt>.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public double getDouble(int index, WordOrder order) throws IndexOutOfBoundsException {
+        checkRange(index, 4);
+        return ModbusUtil.registersToDouble(getData(), index * 2, order);
+    }// getDouble
+
+    /**
+     * Decodes consecutive 32-bit integers into the given array.
+     *
+     * @param index the relative index of the first register.
+     * @param order the <tt>WordOrder</tt> of the values.
+     * @param dest the array receiving the values.
+     * @param destOff the index of the first value in <tt>dest</tt>.
+     * @param count the number of values to decode.
+     * @throws IndexOutOfBoundsException if the range is out of bounds.
+     */
+    public void getInts(int index, WordOrder order, int[] dest, int destOff, int count)
+            throws IndexOutOfBoundsException {
+        checkRange(index, count * 2);
+        ModbusUtil.registersToInts(getData(), index * 2, order, dest, destOff, count);
+    }// getInts
+
+    /**
+     * Decodes consecutive 32-bit floats into the given array.
+     *
+     * @param index the relative index of the first register.
+     * @param order the <tt>WordOrder</tt> of the values.
+     * @param dest the array receiving the values.
+     * @param destOff the index of the first value in <tt>dest</tt>.
+     * @param count the number of values to decode.
+     * @throws IndexOutOfBoundsException if the range is out of bounds.
+     */
+    public void getFloats(int index, WordOrder order, float[] dest, int destOff, int count)
+            throws IndexOutOfBoundsException {
+        checkRange(index, count * 2);
+        ModbusUtil.registersToFloats(getData(), index * 2, order, dest, destOff, count);
+    }// getFloats
+
+    /**
+     * Decodes consecutive 64-bit doubles into the given array.
+     *
+     * @param index the relative index of the first register.
+     * @param order the <tt>WordOrder</tt> of the values.
+     * @param dest the array receiving the values.
+     * @param destOff the index of the first value in <tt>dest</tt>.
+     * @param count the number of values to decode.
+     * @throws IndexOutOfBoundsException if the range is out of bounds.
+     */
+    public void getDoubles(int index, WordOrder order, double[] dest, int destOff, int count)
+            throws IndexOutOfBoundsException {
+        checkRange(index, count * 4);
+        ModbusUtil.registersToDoubles(getData(), index * 2, order, dest, destOff, count);
+    }// getDoubles
+
+    /**
+     * Returns a fixed length ASCII string held in the given
+     * number of registers (two characters per register).
+     *
+     * @param index the relative index of the first register.
+     * @param count the number of registers holding the string.
+     * @return the string, cut at the first <tt>NUL</tt> character.
+     * @throws IndexOutOfBoundsException if the range is out of bounds.
+     */
+    public String getString(int index, int count) throws IndexOutOfBoundsException {
+        checkRange(index, count);
+        return ModbusUtil.registersToString(getData(), index * 2, count * 2);
+    }// getString
+
+    private void checkRange(int index, int count) throws IndexOutOfBoundsException {
+        if (index < 0 || count < 0 || index + count > getWordCount()) {
+            throw new IndexOutOfBoundsException();
+        }
+    }// checkRange
+
+    /**
+     * Returns the raw register data, assembling it from the registers
+     * if this response was not read from the wire.
+     */
+    private byte[] getData() {
+        if (m_Data == null) {
+            byte[] data = new byte[getWordCount() * 2];
+            for (int k = 0; k < getWordCount(); k++) {
+                byte[] reg = m_Registers[k].toBytes();
+                data[k * 2] = reg[0];
+                data[k * 2 + 1] = reg[1];
+            }
+            m_Data = data;
+        }
+        return m_Data;
+    }// getData
+
     @Override
     public void writeData(DataOutput dout) throws IOException {
         dout.writeByte(m_ByteCount);
-        for (int k = 0; k < getWordCount(); k++) {
-            dout.write(m_Registers[k].toBytes());
+        if (m_Registers == null) {
+            dout.write(m_Data, 0, m_ByteCount);
+        } else {
+            for (int k = 0; k < getWordCount(); k++) {
+                dout.write(m_Registers[k].toBytes());
+            }
         }
     }// writeData
 
@@ -161,12 +336,10 @@ public final class ReadMultipleRegistersResponse extends ModbusResponse {
     public void readData(DataInput din) throws IOException {
         setByteCount(din.readUnsignedByte());
 
-        m_Registers = new Register[getWordCount()];
-        ProcessImageFactory pimf = ModbusCoupler.getReference().getProcessImageFactory();
-
-        for (int k = 0; k < getWordCount(); k++) {
-            m_Registers[k] = pimf.createRegister(din.readByte(), din.readByte());
-        }
+        // keep the raw words, registers are created on demand
+        m_Data = new byte[getByteCount()];
+        din.readFully(m_Data);
+        m_Registers = null;
 
         // update data length
         setDataLength(getByteCount() + 1);
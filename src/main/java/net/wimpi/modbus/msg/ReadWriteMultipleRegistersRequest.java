@@ -0,0 +1,254 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.msg;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusCoupler;
+import net.wimpi.modbus.procimg.*;
+import net.wimpi.modbus.util.ChangeNotifier;
+
+/**
+ * Class implementing a <tt>ReadWriteMultipleRegistersRequest</tt>.
+ * The implementation directly correlates with the
+ * function <i>read/write multiple registers (FC 23)</i>. It
+ * encapsulates the corresponding request message.
+ * <p>
+ * The slave performs the write before the read, both within one
+ * lock of the process image, so the read back values include the
+ * written ones and no other request can interleave.
+ *
+ * @version @version@ (@date@)
+ */
+public final class ReadWriteMultipleRegistersRequest extends ModbusRequest {
+
+    /**
+     * Defines the maximum number of registers to be read.
+     */
+    public static final int MAX_READ_COUNT = 125;
+
+    /**
+     * Defines the maximum number of registers to be written.
+     */
+    public static final int MAX_WRITE_COUNT = 121;
+
+    // instance attributes
+    private int m_ReadReference;
+    private int m_ReadCount;
+    private int m_WriteReference;
+    private Register[] m_Registers = new Register[0];
+
+    /**
+     * Constructs a new <tt>ReadWriteMultipleRegistersRequest</tt>
+     * instance.
+     */
+    public ReadWriteMultipleRegistersRequest() {
+        super();
+        setFunctionCode(Modbus.READ_WRITE_MULTIPLE_REGISTERS);
+        setDataLength(9);
+    }// constructor
+
+    /**
+     * Constructs a new <tt>ReadWriteMultipleRegistersRequest</tt>
+     * instance with the given read and write ranges.
+     *
+     * @param readRef the reference of the first register to read.
+     * @param readCount the number of registers to read.
+     * @param writeRef the reference of the first register to write.
+     * @param registers the registers to be written.
+     */
+    public ReadWriteMultipleRegistersRequest(int readRef, int readCount, int writeRef, Register[] registers) {
+        super();
+        setFunctionCode(Modbus.READ_WRITE_MULTIPLE_REGISTERS);
+        setReadReference(readRef);
+        setReadWordCount(readCount);
+        setWriteReference(writeRef);
+        setRegisters(registers);
+    }// constructor
+
+    @Override
+    public ModbusResponse createResponse() {
+        if (m_ReadCount < 1 || m_ReadCount > MAX_READ_COUNT || m_Registers.length < 1
+                || m_Registers.length > MAX_WRITE_COUNT) {
+            return createExceptionResponse(Modbus.ILLEGAL_VALUE_EXCEPTION);
+        }
+        byte[] data = new byte[m_ReadCount * 2];
+        // 1. get process image
+        ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
+        // batch the change notifications of the request
+        ChangeNotifier.beginBatch();
+        try {
+            ProcessImage image = getUnitProcessImage(procimg);
+            synchronized (procimg) {
+                // 2. check the read range before writing anything
+                image.getRegisterRange(m_ReadReference, m_ReadCount);
+                Register[] regs = image.getRegisterRange(m_WriteReference, m_Registers.length);
+                // 3. write, publishing all values at once on a snapshot image
+                boolean atomic = image instanceof TransactionalProcessImage;
+                if (atomic) {
+                    ((TransactionalProcessImage) image).begin();
+                }
+                try {
+                    for (int i = 0; i < regs.length; i++) {
+                        regs[i].setValue(m_Registers[i].toBytes());
+                    }
+                    if (atomic) {
+                        ((TransactionalProcessImage) image).commit();
+                    }
+                } finally {
+                    if (atomic) {
+                        ((TransactionalProcessImage) image).rollback();
+                    }
+                }
+                // 4. read back
+                regs = ComputedRegisters.snapshot(image.getRegisterRange(m_ReadReference, m_ReadCount));
+                for (int i = 0; i < regs.length; i++) {
+                    byte[] b = regs[i].toBytes();
+                    data[i * 2] = b[0];
+                    data[i * 2 + 1] = b[1];
+                }
+            }
+        } catch (IllegalAddressException iaex) {
+            return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
+        } finally {
+            ChangeNotifier.endBatch();
+        }
+        ReadWriteMultipleRegistersResponse response = new ReadWriteMultipleRegistersResponse(data);
+        // transfer header data
+        if (!isHeadless()) {
+            response.setTransactionID(this.getTransactionID());
+            response.setProtocolID(this.getProtocolID());
+        } else {
+            response.setHeadless();
+        }
+        response.setUnitID(this.getUnitID());
+        response.setFunctionCode(this.getFunctionCode());
+        return response;
+    }// createResponse
+
+    /**
+     * Sets the reference of the first register to be read.
+     *
+     * @param ref the reference as <tt>int</tt>.
+     */
+    public void setReadReference(int ref) {
+        m_ReadReference = ref;
+    }// setReadReference
+
+    /**
+     * Returns the reference of the first register to be read.
+     *
+     * @return the reference as <tt>int</tt>.
+     */
+    public int getReadReference() {
+        return m_ReadReference;
+    }// getReadReference
+
+    /**
+     * Sets the number of registers to be read.
+     *
+     * @param count the number of registers as <tt>int</tt>.
+     */
+    public void setReadWordCount(int count) {
+        m_ReadCount = count;
+    }// setReadWordCount
+
+    /**
+     * Returns the number of registers to be read.
+     *
+     * @return the number of registers as <tt>int</tt>.
+     */
+    public int getReadWordCount() {
+        return m_ReadCount;
+    }// getReadWordCount
+
+    /**
+     * Sets the reference of the first register to be written.
+     *
+     * @param ref the reference as <tt>int</tt>.
+     */
+    public void setWriteReference(int ref) {
+        m_WriteReference = ref;
+    }// setWriteReference
+
+    /**
+     * Returns the reference of the first register to be written.
+     *
+     * @return the reference as <tt>int</tt>.
+     */
+    public int getWriteReference() {
+        return m_WriteReference;
+    }// getWriteReference
+
+    /**
+     * Sets the registers to be written.
+     *
+     * @param registers the registers as <tt>Register[]</tt>.
+     */
+    public void setRegisters(Register[] registers) {
+        m_Registers = registers;
+        setDataLength(9 + getWriteWordCount() * 2); // update message length in header
+    }// setRegisters
+
+    /**
+     * Returns the registers to be written.
+     *
+     * @return the registers as <tt>Register[]</tt>.
+     */
+    public Register[] getRegisters() {
+        return m_Registers;
+    }// getRegisters
+
+    /**
+     * Returns the number of registers to be written.
+     *
+     * @return the number of registers as <tt>int</tt>.
+     */
+    public int getWriteWordCount() {
+        return m_Registers.length;
+    }// getWriteWordCount
+
+    @Override
+    public void writeData(DataOutput dout) throws IOException {
+        dout.writeShort(m_ReadReference);
+        dout.writeShort(m_ReadCount);
+        dout.writeShort(m_WriteReference);
+        dout.writeShort(m_Registers.length);
+        dout.writeByte(m_Registers.length * 2);
+        for (int n = 0; n < m_Registers.length; n++) {
+            dout.write(m_Registers[n].toBytes());
+        }
+    }// writeData
+
+    @Override
+    public void readData(DataInput din) throws IOException {
+        m_ReadReference = din.readUnsignedShort();
+        m_ReadCount = din.readUnsignedShort();
+        m_WriteReference = din.readUnsignedShort();
+        int wc = din.readUnsignedShort();
+        din.readUnsignedByte();
+        Register[] registers = new Register[wc];
+        ProcessImageFactory pimf = ModbusCoupler.getReference().getProcessImageFactory();
+        for (int i = 0; i < wc; i++) {
+            registers[i] = pimf.createRegister(din.readByte(), din.readByte());
+        }
+        setRegisters(registers);
+    }// readData
+
+}// class ReadWriteMultipleRegistersRequest
@@ -0,0 +1,132 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.msg;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.ModbusCoupler;
+import net.wimpi.modbus.procimg.ProcessImageFactory;
+import net.wimpi.modbus.procimg.Register;
+
+/**
+ * Class implementing a <tt>ReadWriteMultipleRegistersResponse</tt>.
+ * The implementation directly correlates with the
+ * function <i>read/write multiple registers (FC 23)</i>. It
+ * encapsulates the corresponding response message, which holds
+ * the registers read.
+ *
+ * @version @version@ (@date@)
+ */
+public final class ReadWriteMultipleRegistersResponse extends ModbusResponse {
+
+    // instance attributes
+    private byte[] m_Data = new byte[0];
+    private Register[] m_Registers;
+
+    /**
+     * Constructs a new <tt>ReadWriteMultipleRegistersResponse</tt>
+     * instance.
+     */
+    public ReadWriteMultipleRegistersResponse() {
+        super();
+        setFunctionCode(Modbus.READ_WRITE_MULTIPLE_REGISTERS);
+        setDataLength(1);
+    }// constructor
+
+    /**
+     * Constructs a new <tt>ReadWriteMultipleRegistersResponse</tt>
+     * instance with the given register values.
+     *
+     * @param data the values of the registers read, two bytes each.
+     */
+    public ReadWriteMultipleRegistersResponse(byte[] data) {
+        super();
+        setFunctionCode(Modbus.READ_WRITE_MULTIPLE_REGISTERS);
+        m_Data = data;
+        setDataLength(1 + m_Data.length);
+    }// constructor
+
+    /**
+     * Returns the number of bytes that have been read.
+     *
+     * @return the number of bytes as <tt>int</tt>.
+     */
+    public int getByteCount() {
+        return m_Data.length;
+    }// getByteCount
+
+    /**
+     * Returns the number of registers that have been read.
+     *
+     * @return the number of registers as <tt>int</tt>.
+     */
+    public int getWordCount() {
+        return m_Data.length / 2;
+    }// getWordCount
+
+    /**
+     * Returns the value of the register at the given position
+     * (relative to the read reference of the request)
+     * interpreted as unsigned short.
+     *
+     * @param index the relative index of the register.
+     * @return the value as <tt>int</tt>.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public int getRegisterValue(int index) throws IndexOutOfBoundsException {
+        if (index < 0 || index >= getWordCount()) {
+            throw new IndexOutOfBoundsException();
+        }
+        return ((m_Data[index * 2] & 0xff) << 8 | (m_Data[index * 2 + 1] & 0xff));
+    }// getRegisterValue
+
+    /**
+     * Returns the registers that have been read.
+     *
+     * @return a <tt>Register[]</tt> instance.
+     */
+    public Register[] getRegisters() {
+        if (m_Registers == null) {
+            // registers are only created when asked for
+            Register[] registers = new Register[getWordCount()];
+            ProcessImageFactory pimf = ModbusCoupler.getReference().getProcessImageFactory();
+            for (int k = 0; k < registers.length; k++) {
+                registers[k] = pimf.createRegister(m_Data[k * 2], m_Data[k * 2 + 1]);
+            }
+            m_Registers = registers;
+        }
+        return m_Registers;
+    }// getRegisters
+
+    @Override
+    public void writeData(DataOutput dout) throws IOException {
+        dout.writeByte(m_Data.length);
+        dout.write(m_Data);
+    }// writeData
+
+    @Override
+    public void readData(DataInput din) throws IOException {
+        byte[] data = new byte[din.readUnsignedByte()];
+        din.readFully(data);
+        m_Data = data;
+        m_Registers = null;
+        setDataLength(1 + data.length);
+    }// readData
+
+}// class ReadWriteMultipleRegistersResponse
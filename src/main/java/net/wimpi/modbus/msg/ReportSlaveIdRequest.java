@@ -0,0 +1,74 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.msg;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import net.wimpi.modbus.Modbus;
+
+/**
+ * Class implementing a <tt>ReportSlaveIdRequest</tt>.
+ * The implementation directly correlates with the serial line
+ * function <i>report slave id (FC 17)</i>. It
+ * encapsulates the corresponding request message.
+ * <p>
+ * A slave reports its unit identifier as slave id,
+ * followed by the run indicator <tt>ON</tt>.
+ *
+ * @version @version@ (@date@)
+ */
+public final class ReportSlaveIdRequest extends ModbusRequest {
+
+    /**
+     * Constructs a new <tt>ReportSlaveIdRequest</tt>
+     * instance.
+     */
+    public ReportSlaveIdRequest() {
+        super();
+        setFunctionCode(Modbus.REPORT_SLAVE_ID);
+        // no data (unit id and function code is excluded)
+        setDataLength(0);
+    }// constructor
+
+    @Override
+    public ModbusResponse createResponse() {
+        ReportSlaveIdResponse response = new ReportSlaveIdResponse(
+                new byte[] { (byte) this.getUnitID(), (byte) Modbus.COIL_ON });
+        // transfer header data
+        if (!isHeadless()) {
+            response.setTransactionID(this.getTransactionID());
+            response.setProtocolID(this.getProtocolID());
+        } else {
+            response.setHeadless();
+        }
+        response.setUnitID(this.getUnitID());
+        response.setFunctionCode(this.getFunctionCode());
+        return response;
+    }// createResponse
+
+    @Override
+    public void writeData(DataOutput dout) throws IOException {
+        // no data
+    }// writeData
+
+    @Override
+    public void readData(DataInput din) throws IOException {
+        // no data
+    }// readData
+
+}// class ReportSlaveIdRequest
@@ -0,0 +1,86 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.msg;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import net.wimpi.modbus.Modbus;
+
+/**
+ * Class implementing a <tt>ReportSlaveIdResponse</tt>.
+ * The implementation directly correlates with the serial line
+ * function <i>report slave id (FC 17)</i>. It
+ * encapsulates the corresponding response message.
+ * <p>
+ * The content is device specific; it usually starts with the
+ * slave id, followed by the run indicator and additional data.
+ *
+ * @version @version@ (@date@)
+ */
+public final class ReportSlaveIdResponse extends ModbusResponse {
+
+    // instance attributes
+    private byte[] m_Data = new byte[0];
+
+    /**
+     * Constructs a new <tt>ReportSlaveIdResponse</tt>
+     * instance.
+     */
+    public ReportSlaveIdResponse() {
+        super();
+        setFunctionCode(Modbus.REPORT_SLAVE_ID);
+        setDataLength(1);
+    }// constructor
+
+    /**
+     * Constructs a new <tt>ReportSlaveIdResponse</tt>
+     * instance with the given content.
+     *
+     * @param data the device specific data.
+     */
+    public ReportSlaveIdResponse(byte[] data) {
+        super();
+        setFunctionCode(Modbus.REPORT_SLAVE_ID);
+        m_Data = data.clone();
+        setDataLength(1 + m_Data.length);
+    }// constructor
+
+    /**
+     * Returns the device specific data.
+     *
+     * @return the data as <tt>byte[]</tt>.
+     */
+    public byte[] getData() {
+        return m_Data;
+    }// getData
+
+    @Override
+    public void writeData(DataOutput dout) throws IOException {
+        dout.writeByte(m_Data.length);
+        dout.write(m_Data);
+    }// writeData
+
+    @Override
+    public void readData(DataInput din) throws IOException {
+        int byteCount = din.readUnsignedByte();
+        m_Data = new byte[byteCount];
+        din.readFully(m_Data);
+        setDataLength(1 + byteCount);
+    }// readData
+
+}// class ReportSlaveIdResponse
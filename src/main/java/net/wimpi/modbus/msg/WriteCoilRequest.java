@@ -24,7 +24,6 @@ import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.procimg.DigitalOut;
 import net.wimpi.modbus.procimg.IllegalAddressException;
-import net.wimpi.modbus.procimg.MultipleUnitsProcessImage;
 import net.wimpi.modbus.procimg.ProcessImage;
 
 /**
@@ -82,11 +81,9 @@ public final class WriteCoilRequest extends ModbusRequest {
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
         // 2. get coil
         try {
+            ProcessImage image = getUnitProcessImage(procimg);
             synchronized (procimg) {
-                if (procimg instanceof MultipleUnitsProcessImage) {
-                    ((MultipleUnitsProcessImage)procimg).setCurrentUnit(this.getUnitID());
-                }
-                dout = procimg.getDigitalOut(this.getReference());
+                dout = image.getDigitalOut(this.getReference());
                 // 3. set coil
                 dout.set(this.getCoil());
                 // if(Modbus.debug) System.out.println("set coil ref="+this.getReference()+" state=" + this.getCoil());
@@ -0,0 +1,238 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.msg;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.procimg.Register;
+
+/**
+ * Class implementing a <tt>WriteFileRecordRequest</tt>.
+ * The implementation directly correlates with the
+ * function <i>write file record (FC 21)</i>. It
+ * encapsulates the corresponding request message.
+ * <p>
+ * A request carries one or more sub-requests, each writing
+ * a group of registers to one record of one file.
+ * The process image does not hold files, so a slave answers
+ * with an <tt>illegal function</tt> exception.
+ *
+ * @version @version@ (@date@)
+ */
+public final class WriteFileRecordRequest extends ModbusRequest {
+
+    /**
+     * Defines the size of a sub-request header in bytes.
+     */
+    public static final int SUB_REQUEST_HEADER_LENGTH = 7;
+
+    // instance attributes
+    private final List<RecordData> m_Records = new ArrayList<>();
+    private int m_ByteCount;
+
+    /**
+     * Constructs a new <tt>WriteFileRecordRequest</tt>
+     * instance.
+     */
+    public WriteFileRecordRequest() {
+        super();
+        setFunctionCode(Modbus.WRITE_FILE_RECORD);
+        // byte count (unit id and function code is excluded)
+        setDataLength(1);
+    }// constructor
+
+    @Override
+    public ModbusResponse createResponse() {
+        return createExceptionResponse(Modbus.ILLEGAL_FUNCTION_EXCEPTION);
+    }// createResponse
+
+    /**
+     * Adds a sub-request to this request.
+     *
+     * @param record the <tt>RecordData</tt> to be added.
+     */
+    public void addRequest(RecordData record) {
+        m_Records.add(record);
+        m_ByteCount += SUB_REQUEST_HEADER_LENGTH + record.getWordCount() * 2;
+        setDataLength(1 + m_ByteCount);
+    }// addRequest
+
+    /**
+     * Returns the number of sub-requests.
+     *
+     * @return the number of sub-requests as <tt>int</tt>.
+     */
+    public int getRequestCount() {
+        return m_Records.size();
+    }// getRequestCount
+
+    /**
+     * Returns the sub-request at the given index.
+     *
+     * @param index the index of the sub-request.
+     * @return the <tt>RecordData</tt>.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public RecordData getRequest(int index) throws IndexOutOfBoundsException {
+        return m_Records.get(index);
+    }// getRequest
+
+    @Override
+    public void writeData(DataOutput dout) throws IOException {
+        writeRecords(dout, m_ByteCount, m_Records);
+    }// writeData
+
+    @Override
+    public void readData(DataInput din) throws IOException {
+        m_Records.clear();
+        m_ByteCount = 0;
+        for (RecordData r : readRecords(din)) {
+            addRequest(r);
+        }
+    }// readData
+
+    static void writeRecords(DataOutput dout, int byteCount, List<RecordData> records) throws IOException {
+        dout.writeByte(byteCount);
+        for (RecordData r : records) {
+            dout.writeByte(Modbus.FILE_RECORD_REFERENCE_TYPE);
+            dout.writeShort(r.getFileNumber());
+            dout.writeShort(r.getRecordNumber());
+            dout.writeShort(r.getWordCount());
+            dout.write(r.m_Data, r.m_Offset, r.getWordCount() * 2);
+        }
+    }// writeRecords
+
+    static List<RecordData> readRecords(DataInput din) throws IOException {
+        List<RecordData> records = new ArrayList<>();
+        int remaining = din.readUnsignedByte();
+        while (remaining >= SUB_REQUEST_HEADER_LENGTH) {
+            din.readUnsignedByte();
+            int file = din.readUnsignedShort();
+            int record = din.readUnsignedShort();
+            int count = din.readUnsignedShort();
+            byte[] data = new byte[count * 2];
+            din.readFully(data);
+            records.add(new RecordData(file, record, data, 0, count));
+            remaining -= SUB_REQUEST_HEADER_LENGTH + data.length;
+        }
+        return records;
+    }// readRecords
+
+    /**
+     * Class holding a sub-request of a <tt>WriteFileRecordRequest</tt>.
+     * The data is referenced, not copied, so the caller's buffer must
+     * not change until the request has been written.
+     */
+    public static final class RecordData {
+
+        private final int m_FileNumber;
+        private final int m_RecordNumber;
+        private final byte[] m_Data;
+        private final int m_Offset;
+        private final int m_WordCount;
+
+        /**
+         * Constructs a new <tt>RecordData</tt> from raw register bytes.
+         *
+         * @param file the file number (1-65535).
+         * @param record the record number (0-9999).
+         * @param data the register bytes, two per register in big endian order.
+         * @param off the offset of the first byte in <tt>data</tt>.
+         * @param count the number of registers to be written.
+         */
+        public RecordData(int file, int record, byte[] data, int off, int count) {
+            if (off < 0 || count < 0 || off + count * 2 > data.length) {
+                throw new IndexOutOfBoundsException();
+            }
+            m_FileNumber = file;
+            m_RecordNumber = record;
+            m_Data = data;
+            m_Offset = off;
+            m_WordCount = count;
+        }// constructor
+
+        /**
+         * Constructs a new <tt>RecordData</tt> from registers.
+         *
+         * @param file the file number (1-65535).
+         * @param record the record number (0-9999).
+         * @param registers the registers to be written.
+         */
+        public RecordData(int file, int record, Register[] registers) {
+            this(file, record, toBytes(registers), 0, registers.length);
+        }// constructor
+
+        /**
+         * Returns the file number.
+         *
+         * @return the file number as <tt>int</tt>.
+         */
+        public int getFileNumber() {
+            return m_FileNumber;
+        }// getFileNumber
+
+        /**
+         * Returns the record number.
+         *
+         * @return the record number as <tt>int</tt>.
+         */
+        public int getRecordNumber() {
+            return m_RecordNumber;
+        }// getRecordNumber
+
+        /**
+         * Returns the number of registers.
+         *
+         * @return the register count as <tt>int</tt>.
+         */
+        public int getWordCount() {
+            return m_WordCount;
+        }// getWordCount
+
+        /**
+         * Returns the value of the register at the given index
+         * interpreted as unsigned short.
+         *
+         * @param index the index of the register.
+         * @return the value as <tt>int</tt>.
+         * @throws IndexOutOfBoundsException if the index is out of bounds.
+         */
+        public int getRegisterValue(int index) throws IndexOutOfBoundsException {
+            if (index < 0 || index >= m_WordCount) {
+                throw new IndexOutOfBoundsException();
+            }
+            int i = m_Offset + index * 2;
+            return (m_Data[i] & 0xff) << 8 | (m_Data[i + 1] & 0xff);
+        }// getRegisterValue
+
+        private static byte[] toBytes(Register[] registers) {
+            byte[] data = new byte[registers.length * 2];
+            for (int i = 0; i < registers.length; i++) {
+                byte[] b = registers[i].toBytes();
+                data[i * 2] = b[0];
+                data[i * 2 + 1] = b[1];
+            }
+            return data;
+        }// toBytes
+
+    }// class RecordData
+
+}// class WriteFileRecordRequest
@@ -0,0 +1,97 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.msg;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.wimpi.modbus.Modbus;
+
+/**
+ * Class implementing a <tt>WriteFileRecordResponse</tt>.
+ * The implementation directly correlates with the
+ * function <i>write file record (FC 21)</i>. It
+ * encapsulates the corresponding response message,
+ * which echoes the request.
+ *
+ * @version @version@ (@date@)
+ * @see WriteFileRecordRequest
+ */
+public final class WriteFileRecordResponse extends ModbusResponse {
+
+    // instance attributes
+    private final List<WriteFileRecordRequest.RecordData> m_Records = new ArrayList<>();
+    private int m_ByteCount;
+
+    /**
+     * Constructs a new <tt>WriteFileRecordResponse</tt>
+     * instance.
+     */
+    public WriteFileRecordResponse() {
+        super();
+        setFunctionCode(Modbus.WRITE_FILE_RECORD);
+        setDataLength(1);
+    }// constructor
+
+    /**
+     * Adds an echoed sub-request to this response.
+     *
+     * @param record the <tt>RecordData</tt> to be added.
+     */
+    public void addRecord(WriteFileRecordRequest.RecordData record) {
+        m_Records.add(record);
+        m_ByteCount += WriteFileRecordRequest.SUB_REQUEST_HEADER_LENGTH + record.getWordCount() * 2;
+        setDataLength(1 + m_ByteCount);
+    }// addRecord
+
+    /**
+     * Returns the number of echoed sub-requests.
+     *
+     * @return the number of sub-requests as <tt>int</tt>.
+     */
+    public int getRecordCount() {
+        return m_Records.size();
+    }// getRecordCount
+
+    /**
+     * Returns the echoed sub-request at the given index.
+     *
+     * @param index the index of the sub-request.
+     * @return the <tt>RecordData</tt>.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public WriteFileRecordRequest.RecordData getRecord(int index) throws IndexOutOfBoundsException {
+        return m_Records.get(index);
+    }// getRecord
+
+    @Override
+    public void writeData(DataOutput dout) throws IOException {
+        WriteFileRecordRequest.writeRecords(dout, m_ByteCount, m_Records);
+    }// writeData
+
+    @Override
+    public void readData(DataInput din) throws IOException {
+        m_Records.clear();
+        m_ByteCount = 0;
+        for (WriteFileRecordRequest.RecordData r : WriteFileRecordRequest.readRecords(din)) {
+            addRecord(r);
+        }
+    }// readData
+
+}// class WriteFileRecordResponse
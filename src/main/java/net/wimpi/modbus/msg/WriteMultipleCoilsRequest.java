@@ -24,9 +24,10 @@ import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.procimg.DigitalOut;
 import net.wimpi.modbus.procimg.IllegalAddressException;
-import net.wimpi.modbus.procimg.MultipleUnitsProcessImage;
 import net.wimpi.modbus.procimg.ProcessImage;
+import net.wimpi.modbus.procimg.TransactionalProcessImage;
 import net.wimpi.modbus.util.BitVector;
+import net.wimpi.modbus.util.ChangeNotifier;
 
 /**
  * Class implementing a <tt>WriteMultipleCoilsRequest</tt>.
@@ -97,20 +98,36 @@ public final class WriteMultipleCoilsRequest extends ModbusRequest {
         // 1. get process image
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
         // 2. get coil range
+        // batch the change notifications of the request
+        ChangeNotifier.beginBatch();
         try {
+            ProcessImage image = getUnitProcessImage(procimg);
             synchronized (procimg) {
-                if (procimg instanceof MultipleUnitsProcessImage) {
-                    ((MultipleUnitsProcessImage)procimg).setCurrentUnit(this.getUnitID());
-                }
-                douts = procimg.getDigitalOutRange(m_Reference, m_Coils.size());
+                douts = image.getDigitalOutRange(m_Reference, m_Coils.size());
                 // 3. set coils
-                for (int i = 0; i < douts.length; i++) {
-                    douts[i].set(m_Coils.getBit(i));
+                // publish all values at once on a snapshot image
+                boolean atomic = image instanceof TransactionalProcessImage;
+                if (atomic) {
+                    ((TransactionalProcessImage) image).begin();
+                }
+                try {
+                    for (int i = 0; i < douts.length; i++) {
+                        douts[i].set(m_Coils.getBit(i));
+                    }
+                    if (atomic) {
+                        ((TransactionalProcessImage) image).commit();
+                    }
+                } finally {
+                    if (atomic) {
+                        ((TransactionalProcessImage) image).rollback();
+                    }
                 }
             }
 
         } catch (IllegalAddressException iaex) {
             return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
+        } finally {
+            ChangeNotifier.endBatch();
         }
         response = new WriteMultipleCoilsResponse(m_Reference, m_Coils.size());
 
@@ -217,6 +234,7 @@ public final class WriteMultipleCoilsRequest extends ModbusRequest {
      */
     public void setCoils(BitVector bv) {
         m_Coils = bv;
+        setDataLength(m_Coils.byteSize() + 5); // update message length in header
     }// setCoils
 
     @Override
@@ -24,6 +24,7 @@ import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.io.NonWordDataHandler;
 import net.wimpi.modbus.procimg.*;
+import net.wimpi.modbus.util.ChangeNotifier;
 
 /**
  * Class implementing a <tt>ReadMultipleRegistersRequest</tt>.
@@ -75,21 +76,37 @@ public final class WriteMultipleRegistersRequest extends ModbusRequest {
             // 1. get process image
             ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
             // 2. get registers
+            // batch the change notifications of the request
+            ChangeNotifier.beginBatch();
             try {
                 // TODO: realize a setRegisterRange()?
+                ProcessImage image = getUnitProcessImage(procimg);
                 synchronized (procimg) {
-                    if (procimg instanceof MultipleUnitsProcessImage) {
-                        ((MultipleUnitsProcessImage)procimg).setCurrentUnit(this.getUnitID());
-                    }
-                    regs = procimg.getRegisterRange(this.getReference(), this.getWordCount());
+                    regs = image.getRegisterRange(this.getReference(), this.getWordCount());
                     // 3. set Register values
-                    for (int i = 0; i < regs.length; i++) {
-                        regs[i].setValue(this.getRegister(i).toBytes());
+                    // publish all values at once on a snapshot image
+                    boolean atomic = image instanceof TransactionalProcessImage;
+                    if (atomic) {
+                        ((TransactionalProcessImage) image).begin();
+                    }
+                    try {
+                        for (int i = 0; i < regs.length; i++) {
+                            regs[i].setValue(this.getRegister(i).toBytes());
+                        }
+                        if (atomic) {
+                            ((TransactionalProcessImage) image).commit();
+                        }
+                    } finally {
+                        if (atomic) {
+                            ((TransactionalProcessImage) image).rollback();
+                        }
                     }
                 }
 
             } catch (IllegalAddressException iaex) {
                 return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
+            } finally {
+                ChangeNotifier.endBatch();
             }
             response = new WriteMultipleRegistersResponse(this.getReference(), regs.length);
         } else {
@@ -264,7 +281,7 @@ public final class WriteMultipleRegistersRequest extends ModbusRequest {
     @Override
     public void readData(DataInput din) throws IOException {
 
-        m_Reference = din.readShort();
+        m_Reference = din.readUnsignedShort();
         // read lengths
         int wc = din.readUnsignedShort();
         int bc = din.readUnsignedByte();
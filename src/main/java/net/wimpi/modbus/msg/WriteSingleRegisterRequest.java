@@ -23,7 +23,6 @@ import java.io.IOException;
 import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.ModbusCoupler;
 import net.wimpi.modbus.procimg.IllegalAddressException;
-import net.wimpi.modbus.procimg.MultipleUnitsProcessImage;
 import net.wimpi.modbus.procimg.ProcessImage;
 import net.wimpi.modbus.procimg.Register;
 
@@ -80,11 +79,9 @@ public final class WriteSingleRegisterRequest extends ModbusRequest {
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
         // 2. get register
         try {
+            ProcessImage image = getUnitProcessImage(procimg);
             synchronized (procimg) {
-                if (procimg instanceof MultipleUnitsProcessImage) {
-                    ((MultipleUnitsProcessImage)procimg).setCurrentUnit(this.getUnitID());
-                }
-                reg = procimg.getRegister(m_Reference);
+                reg = image.getRegister(m_Reference);
                 // 3. set Register
                 reg.setValue(m_Register.toBytes());
             }
@@ -0,0 +1,272 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.net;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.wimpi.modbus.Modbus;
+import net.wimpi.modbus.msg.ModbusRequest;
+import net.wimpi.modbus.msg.ModbusResponse;
+import net.wimpi.modbus.util.TokenBucket;
+
+/**
+ * Class implementing the admission control of slave listeners.
+ * <p>
+ * It limits the number of concurrent connections of a
+ * {@link ModbusTCPListener} and the request rate of each client, using one
+ * {@link TokenBucket} per client address. Excess connections are closed
+ * right after accepting, and excess requests are answered at once with a
+ * {@link Modbus#SLAVE_DEVICE_BUSY_EXCEPTION} exception response instead of
+ * being processed, so that a slave under a polling storm keeps answering
+ * the admitted load in time.
+ * <p>
+ * Serial listeners have a single client, their requests share one bucket.
+ * All limits are disabled by default.
+ * <p>
+ * At most {@link #MAX_TRACKED_CLIENTS} clients, or the maximum number of
+ * connections if larger, have a bucket of their own. A client is only
+ * forgotten once its bucket has refilled, as forgetting it earlier would
+ * grant it a fresh burst. While all tracked clients are active, further
+ * clients share a single bucket.
+ *
+ * @version @version@ (@date@)
+ * @see ModbusTCPListener#setAdmissionControl(AdmissionControl)
+ * @see ModbusUDPListener#setAdmissionControl(AdmissionControl)
+ * @see ModbusSerialListener#ModbusSerialListener(net.wimpi.modbus.util.SerialParameters,
+ *      SerialConnectionFactory, AdmissionControl)
+ */
+public class AdmissionControl {
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionControl.class);
+
+    /**
+     * Defines the maximum number of clients with a bucket of their own
+     * (<b>1024</b>), unless the maximum number of connections is larger.
+     */
+    public static final int MAX_TRACKED_CLIENTS = 1024;
+
+    private static final Object ANY_CLIENT = new Object();
+    private static final Object UNTRACKED_CLIENTS = new Object();
+
+    // instance attributes
+    private volatile int m_MaxConnections;
+    private volatile double m_RequestRate;
+    private volatile double m_RequestBurst;
+    private final AtomicInteger m_Connections = new AtomicInteger();
+    private final AtomicLong m_RejectedConnections = new AtomicLong();
+    private final AtomicLong m_RejectedRequests = new AtomicLong();
+    // access ordered, so the eldest entry is the least recently seen client
+    private final Map<Object, TokenBucket> m_Buckets = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Constructs a new <tt>AdmissionControl</tt> instance
+     * without any limits.
+     */
+    public AdmissionControl() {
+    }// constructor
+
+    /**
+     * Constructs a new <tt>AdmissionControl</tt> instance.
+     *
+     * @param maxConnections the maximum number of concurrent connections, <tt>0</tt> for unlimited.
+     * @param requestRate the sustained requests per second per client, <tt>0</tt> for unlimited.
+     * @param requestBurst the requests a client may send at once above the sustained rate.
+     */
+    public AdmissionControl(int maxConnections, double requestRate, double requestBurst) {
+        setMaxConnections(maxConnections);
+        setRequestRate(requestRate, requestBurst);
+    }// constructor
+
+    /**
+     * Returns the maximum number of concurrent connections.
+     *
+     * @return the maximum, or <tt>0</tt> if unlimited.
+     */
+    public int getMaxConnections() {
+        return m_MaxConnections;
+    }// getMaxConnections
+
+    /**
+     * Sets the maximum number of concurrent connections.
+     * It should not exceed the pool size of the listener,
+     * as connections beyond it wait for a free thread.
+     *
+     * @param max the maximum, or <tt>0</tt> for unlimited.
+     */
+    public void setMaxConnections(int max) {
+        if (max < 0) {
+            throw new IllegalArgumentException("Illegal maximum connections: " + max);
+        }
+        m_MaxConnections = max;
+    }// setMaxConnections
+
+    /**
+     * Returns the sustained request rate per client.
+     *
+     * @return the requests per second, or <tt>0</tt> if unlimited.
+     */
+    public double getRequestRate() {
+        return m_RequestRate;
+    }// getRequestRate
+
+    /**
+     * Sets the request rate per client. Applies to all clients at once,
+     * starting each of them with a full burst.
+     *
+     * @param rate the sustained requests per second, or <tt>0</tt> for unlimited.
+     * @param burst the requests a client may send at once, at least <tt>1</tt>.
+     */
+    public void setRequestRate(double rate, double burst) {
+        if (rate < 0 || (rate > 0 && burst < 1)) {
+            throw new IllegalArgumentException("Illegal rate " + rate + " or burst " + burst);
+        }
+        synchronized (m_Buckets) {
+            m_RequestRate = rate;
+            m_RequestBurst = burst;
+            m_Buckets.clear();
+        }
+    }// setRequestRate
+
+    /**
+     * Returns the number of currently admitted connections.
+     *
+     * @return the number of connections.
+     */
+    public int getConnectionCount() {
+        return m_Connections.get();
+    }// getConnectionCount
+
+    /**
+     * Returns the number of connections rejected so far.
+     *
+     * @return the number of rejected connections.
+     */
+    public long getRejectedConnections() {
+        return m_RejectedConnections.get();
+    }// getRejectedConnections
+
+    /**
+     * Returns the number of requests answered busy so far.
+     *
+     * @return the number of rejected requests.
+     */
+    public long getRejectedRequests() {
+        return m_RejectedRequests.get();
+    }// getRejectedRequests
+
+    /**
+     * Admits a new connection if below the maximum. An admitted
+     * connection must be released with {@link #releaseConnection()}.
+     *
+     * @return true if admitted, false if over capacity.
+     */
+    public boolean acquireConnection() {
+        for (;;) {
+            int count = m_Connections.get();
+            int max = m_MaxConnections;
+            if (max > 0 && count >= max) {
+                m_RejectedConnections.incrementAndGet();
+                return false;
+            }
+            if (m_Connections.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }// acquireConnection
+
+    /**
+     * Releases a connection admitted by {@link #acquireConnection()}.
+     */
+    public void releaseConnection() {
+        m_Connections.decrementAndGet();
+    }// releaseConnection
+
+    /**
+     * Tests if a request of the given client is within its rate.
+     *
+     * @param client the client, e.g. its <tt>InetAddress</tt>, or <tt>null</tt> if unknown.
+     * @return true if admitted, false if over the rate.
+     */
+    public boolean admitRequest(Object client) {
+        if (m_RequestRate <= 0) {
+            return true;
+        }
+        Object key = (client == null) ? ANY_CLIENT : client;
+        TokenBucket bucket;
+        synchronized (m_Buckets) {
+            bucket = m_Buckets.get(key);
+            if (bucket == null) {
+                if (m_RequestRate <= 0) {
+                    return true;
+                }
+                if (m_Buckets.size() >= Math.max(MAX_TRACKED_CLIENTS, m_MaxConnections) && !evictIdleClients()) {
+                    key = UNTRACKED_CLIENTS;
+                    bucket = m_Buckets.get(key);
+                }
+                if (bucket == null) {
+                    bucket = new TokenBucket(m_RequestRate, m_RequestBurst);
+                    m_Buckets.put(key, bucket);
+                }
+            }
+        }
+        if (bucket.tryAcquire()) {
+            return true;
+        }
+        m_RejectedRequests.incrementAndGet();
+        return false;
+    }// admitRequest
+
+    /**
+     * Forgets the least recently seen clients whose buckets have refilled.
+     * Must be called holding the lock of the buckets.
+     *
+     * @return true if a client was forgotten, false otherwise.
+     */
+    private boolean evictIdleClients() {
+        boolean evicted = false;
+        for (Iterator<TokenBucket> iter = m_Buckets.values().iterator(); iter.hasNext();) {
+            if (!iter.next().isFull()) {
+                break;
+            }
+            iter.remove();
+            evicted = true;
+        }
+        return evicted;
+    }// evictIdleClients
+
+    /**
+     * Returns the response to a request, answering busy if the request
+     * is over the rate of its client and processing it otherwise.
+     *
+     * @param request the <tt>ModbusRequest</tt>.
+     * @param client the client, or <tt>null</tt> if unknown.
+     * @return the <tt>ModbusResponse</tt>.
+     */
+    public ModbusResponse createResponse(ModbusRequest request, Object client) {
+        if (admitRequest(client)) {
+            return request.createResponse();
+        }
+        logger.debug("Request of {} over rate, answering busy", client);
+        return request.createExceptionResponse(Modbus.SLAVE_DEVICE_BUSY_EXCEPTION);
+    }// createResponse
+
+}// class AdmissionControl
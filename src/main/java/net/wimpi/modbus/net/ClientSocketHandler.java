@@ -22,25 +22,80 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Abstract base class for processing client socket.
+ * <p>
+ * Serves as a hub for devices that dial in: the server socket is
+ * served by a <tt>Selector</tt>, so connections are accepted as soon
+ * as they arrive. The transports are created on a pool of handshake
+ * threads, since identifying a device may take several requests, and
+ * are kept in a concurrent registry keyed by device identity
+ * (see {@link #getDeviceKey(InetAddress, ModbusTransport)}). A device that
+ * reconnects under the same key replaces its previous transport, which is closed. Transports that are
+ * no longer open are swept from the registry periodically.
+ * <p>
+ * At most {@link #MAX_PENDING_HANDSHAKES} accepted connections wait for a
+ * handshake thread; connections arriving beyond that are closed at once.
  *
  * @author vssavin
  * @version @version@ (@date@)
  */
 public abstract class ClientSocketHandler implements Runnable{
     private static final Logger log = LoggerFactory.getLogger(ClientSocketHandler.class);
-    protected final List<ModbusTransport> clientTransports = new ArrayList<>();
+
+    /**
+     * Defines the default number of handshake threads.
+     */
+    public static final int DEFAULT_HANDSHAKE_THREADS = 16;
+
+    /**
+     * Defines the interval of sweeping closed transports in milliseconds.
+     */
+    public static final int SWEEP_INTERVAL_MILLIS = 10000;
+
+    /**
+     * Defines the maximum number of accepted connections waiting for a handshake thread.
+     */
+    public static final int MAX_PENDING_HANDSHAKES = 256;
+
+    private static final int ACCEPT_BACKLOG = 1024;
+
+    private final ConcurrentMap<Object, ModbusTransport> registry = new ConcurrentHashMap<>();
+    private final Collection<ModbusTransport> transports = Collections.unmodifiableCollection(registry.values());
+    /**
+     * Copy of the registered transports, kept in sync with the registry;
+     * safe to iterate concurrently.
+     *
+     * @deprecated use {@link #getTransports()} or {@link #getTransport(Object)}.
+     */
+    @Deprecated
+    protected final List<ModbusTransport> clientTransports = new CopyOnWriteArrayList<>();
     private final String host;
     private final int port;
-    private boolean working;
+    private final int handshakeThreads;
+    private volatile boolean working;
+    private volatile Selector selector;
 
     /**
      * Constructs a new <tt>ClientSocketHandler</tt> instance
@@ -49,8 +104,23 @@ public abstract class ClientSocketHandler implements Runnable{
      * @param port the port to start handling connections.
      */
     public ClientSocketHandler(String host, int port) {
+        this(host, port, DEFAULT_HANDSHAKE_THREADS);
+    }
+
+    /**
+     * Constructs a new <tt>ClientSocketHandler</tt> instance
+     *
+     * @param host the host to start handling connections.
+     * @param port the port to start handling connections.
+     * @param handshakeThreads the number of threads creating transports for new connections.
+     */
+    public ClientSocketHandler(String host, int port, int handshakeThreads) {
+        if (handshakeThreads <= 0) {
+            throw new IllegalArgumentException("Handshake threads must be positive: " + handshakeThreads);
+        }
         this.host = host;
         this.port = port;
+        this.handshakeThreads = handshakeThreads;
     }
 
     /**
@@ -67,67 +137,104 @@ public abstract class ClientSocketHandler implements Runnable{
      */
     protected abstract boolean isTransportOpen(ModbusTransport transport);
 
+    /**
+     * Returns the identity of the device connected through the given transport.
+     * Transports with equal keys belong to the same device.
+     * The default implementation uses the remote host address of the connection,
+     * without the port, so that a device reconnecting from a new source port
+     * replaces its previous transport. Subclasses serving several devices behind
+     * one address, e.g. a NAT gateway, must return an explicit device id instead,
+     * e.g. one read from the device. The key must not change while the transport
+     * is registered; in particular it must not depend on units discovered later.
+     *
+     * @param remoteAddress the remote host address of the connection.
+     * @param transport a transport created by {@link #createTransport(StreamTransport)}.
+     * @return the device key, never <tt>null</tt>.
+     */
+    protected Object getDeviceKey(InetAddress remoteAddress, ModbusTransport transport) {
+        return remoteAddress;
+    }
+
+    /**
+     * Returns the transport registered for the given device key.
+     *
+     * @param key the device key.
+     * @return the transport, or <tt>null</tt> if no such device is connected.
+     */
+    public ModbusTransport getTransport(Object key) {
+        return registry.get(key);
+    }
+
+    /**
+     * Returns a live view of the registered transports.
+     *
+     * @return the registered transports.
+     */
+    public Collection<ModbusTransport> getTransports() {
+        return transports;
+    }
+
+    /**
+     * Returns the number of registered transports.
+     *
+     * @return the number of registered transports.
+     */
+    public int getTransportCount() {
+        return registry.size();
+    }
+
     @Override
     public void run() {
         working = true;
         ServerSocketChannel serverSocket = null;
+        ExecutorService handshakeExecutor = new ThreadPoolExecutor(handshakeThreads, handshakeThreads,
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(MAX_PENDING_HANDSHAKES),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "ClientSocketHandler-handshake");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
         try {
+            selector = Selector.open();
             serverSocket = ServerSocketChannel.open();
-            serverSocket.bind(new InetSocketAddress(host, port));
+            serverSocket.bind(new InetSocketAddress(host, port), ACCEPT_BACKLOG);
             serverSocket.configureBlocking(false);
+            serverSocket.register(selector, SelectionKey.OP_ACCEPT);
             log.debug("Started server socket: " + serverSocket);
+            long lastSweep = System.currentTimeMillis();
             while (working) {
                 try {
-                    SocketChannel clientSocketChannel = serverSocket.accept();
-                    if (clientSocketChannel != null) {
-                        StreamTransport streamTransport = new SocketStreamTransport(clientSocketChannel.socket());
-                        ModbusTransport transport = createTransport(streamTransport);
-                        log.debug(String.format("New client connection [%s]", transport));
-                        final Collection<ModbusTransport> transportsToRemove = new ArrayList<>();
-
-                        for(ModbusTransport currentTransport: clientTransports) {
-                            if (currentTransport.equals(transport)) {
-                                try {
-                                    log.debug("Closing socket: " + currentTransport);
-                                    currentTransport.close();
-                                } catch (IOException e) {
-                                    log.error(String.format("Socket [%s] closing error!", currentTransport), e);
-                                }
-                            }
-                            if (!isTransportOpen(currentTransport)) {
-                                transportsToRemove.add(currentTransport);
-                            }
-                        }
-
-                        for(ModbusTransport removeTransport : transportsToRemove) {
-                            clientTransports.remove(removeTransport);
+                    if (selector.select(SWEEP_INTERVAL_MILLIS) > 0) {
+                        selector.selectedKeys().clear();
+                        SocketChannel clientSocketChannel;
+                        while ((clientSocketChannel = serverSocket.accept()) != null) {
+                            accept(clientSocketChannel, handshakeExecutor);
                         }
-
-                        clientTransports.add(transport);
-                        log.debug("Sockets list: " + clientTransports);
                     }
-
                 } catch (IOException e) {
                     log.error("Server socket exception: ", e);
                 }
 
-                try {
-                    Thread.sleep(50);
-                } catch (InterruptedException e) {
-                    log.debug("Server thread interrupted!, e");
+                long now = System.currentTimeMillis();
+                if (now - lastSweep >= SWEEP_INTERVAL_MILLIS) {
+                    sweep();
+                    lastSweep = now;
                 }
             }
         } catch (IOException e) {
             log.error("Server socket starting failed!", e);
         }
 
-        for(ModbusTransport transport: clientTransports) {
-            try {
-                log.debug("Closing socket: " + transport);
-                transport.close();
-            } catch (IOException e) {
-                log.error(String.format("Socket [%s] closing error!", transport), e);
-            }
+        handshakeExecutor.shutdownNow();
+        for(ModbusTransport transport: registry.values()) {
+            closeTransport(transport);
+        }
+        synchronized (registry) {
+            registry.clear();
+            clientTransports.clear();
         }
 
         if (serverSocket != null) {
@@ -137,10 +244,108 @@ public abstract class ClientSocketHandler implements Runnable{
                 log.error("Server socket closing error!", e);
             }
         }
+        if (selector != null) {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                log.error("Selector closing error!", e);
+            }
+        }
     }
 
     /**
      * Stops handling connections.
      */
-    public void stopSocketsHandler() {working = false;}
+    public void stopSocketsHandler() {
+        working = false;
+        Selector s = selector;
+        if (s != null) {
+            s.wakeup();
+        }
+    }
+
+    private void accept(final SocketChannel clientSocketChannel, ExecutorService handshakeExecutor) {
+        try {
+            handshakeExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    register(clientSocketChannel);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Too many pending handshakes, client connection rejected: " + clientSocketChannel);
+            closeChannel(clientSocketChannel);
+        }
+    }
+
+    private void register(SocketChannel clientSocketChannel) {
+        ModbusTransport transport;
+        try {
+            StreamTransport streamTransport = new SocketStreamTransport(clientSocketChannel.socket());
+            transport = createTransport(streamTransport);
+        } catch (RuntimeException e) {
+            log.error("Creating transport failed for " + clientSocketChannel, e);
+            closeChannel(clientSocketChannel);
+            return;
+        }
+        log.debug(String.format("New client connection [%s]", transport));
+        if (!working) {
+            closeTransport(transport);
+            return;
+        }
+        Object key = getDeviceKey(clientSocketChannel.socket().getInetAddress(), transport);
+        if (key == null) {
+            log.error("No device key for " + transport);
+            closeTransport(transport);
+            return;
+        }
+        ModbusTransport previous;
+        // the deprecated list must follow the registry, also for concurrent registrations of a key
+        synchronized (registry) {
+            previous = registry.put(key, transport);
+            clientTransports.add(transport);
+            if (previous != null && previous != transport) {
+                clientTransports.remove(previous);
+            }
+        }
+        if (previous != null && previous != transport) {
+            closeTransport(previous);
+        }
+    }
+
+    private void sweep() {
+        for (Iterator<Map.Entry<Object, ModbusTransport>> iter = registry.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry<Object, ModbusTransport> entry = iter.next();
+            if (!isTransportOpen(entry.getValue()) && unregister(entry.getKey(), entry.getValue())) {
+                log.debug("Removed closed transport: " + entry.getValue());
+            }
+        }
+    }
+
+    private boolean unregister(Object key, ModbusTransport transport) {
+        synchronized (registry) {
+            if (registry.remove(key, transport)) {
+                clientTransports.remove(transport);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private void closeTransport(ModbusTransport transport) {
+        try {
+            log.debug("Closing socket: " + transport);
+            transport.close();
+        } catch (IOException e) {
+            log.error(String.format("Socket [%s] closing error!", transport), e);
+        }
+    }
+
+    private void closeChannel(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.error(String.format("Socket [%s] closing error!", channel), e);
+        }
+    }
 }
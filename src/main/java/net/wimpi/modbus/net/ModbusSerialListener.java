@@ -52,6 +52,7 @@ public class ModbusSerialListener {
     private SerialConnection m_SerialCon;
     private static int c_RequestCounter = 0; // counter for amount of requests
     private SerialConnectionFactory m_ConnectionFactory;
+    private AdmissionControl m_AdmissionControl;
 
     /**
      * Constructs a new <tt>ModbusSerialListener</tt> instance.
@@ -59,7 +60,21 @@ public class ModbusSerialListener {
      * @param params a <tt>SerialParameters</tt> instance.
      */
     public ModbusSerialListener(SerialParameters params, SerialConnectionFactory connectionFactory) {
+        this(params, connectionFactory, null);
+    }// constructor
+
+    /**
+     * Constructs a new <tt>ModbusSerialListener</tt> instance limiting
+     * the request rate of the master with the given admission control.
+     *
+     * @param params a <tt>SerialParameters</tt> instance.
+     * @param connectionFactory factory for creating the connection.
+     * @param admissionControl the <tt>AdmissionControl</tt>, or <tt>null</tt> for none.
+     */
+    public ModbusSerialListener(SerialParameters params, SerialConnectionFactory connectionFactory,
+            AdmissionControl admissionControl) {
         this.m_ConnectionFactory = connectionFactory;
+        m_AdmissionControl = admissionControl;
         m_SerialCon = m_ConnectionFactory.create(params);
         logger.trace("Created connection");
         listen();
@@ -89,6 +104,8 @@ public class ModbusSerialListener {
                         // test if Process image exists
                         if (ModbusCoupler.getReference().getProcessImage() == null) {
                             response = request.createExceptionResponse(Modbus.ILLEGAL_FUNCTION_EXCEPTION);
+                        } else if (m_AdmissionControl != null) {
+                            response = m_AdmissionControl.createResponse(request, null);
                         } else {
                             response = request.createResponse();
                         }
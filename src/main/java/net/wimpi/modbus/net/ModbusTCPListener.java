@@ -22,6 +22,9 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +36,14 @@ import net.wimpi.modbus.util.ThreadPool;
  * Class that implements a ModbusTCPListener.<br>
  * If listening, it accepts incoming requests
  * passing them on to be handled.
+ * <p>
+ * Connections can be closed after an idle timeout and probed with TCP
+ * keepalive, so that masters vanishing without closing their connection
+ * do not hold pool threads forever. When the connection limit is reached,
+ * i.e. the pool size or the maximum of the {@link AdmissionControl}, the
+ * running connection idle for the longest time is evicted to admit the
+ * new one, provided it has been idle for the minimum evictable idle time.
+ * Eviction does not wait for the evicted handler to finish.
  *
  * @author Dieter Wimberger
  * @version @version@ (@date@)
@@ -59,6 +70,13 @@ public class ModbusTCPListener implements Runnable {
     private boolean m_Listening;
     private InetAddress m_Address;
     private TCPSlaveConnectionFactory m_ConnectionFactory;
+    private volatile AdmissionControl m_AdmissionControl;
+    private int m_PoolSize;
+    private int m_IdleTimeout = 0;
+    private boolean m_KeepAlive = false;
+    private int m_MinEvictableIdleTime = -1;
+    private final Set<TCPConnectionHandler> m_Handlers = Collections
+            .newSetFromMap(new ConcurrentHashMap<TCPConnectionHandler, Boolean>());
 
     private static InetAddress getLocalHost() {
         try {
@@ -93,6 +111,7 @@ public class ModbusTCPListener implements Runnable {
      */
     public ModbusTCPListener(int poolsize, InetAddress addr, TCPSlaveConnectionFactory connectionFactory) {
         m_ThreadPool = new ThreadPool(poolsize);
+        m_PoolSize = poolsize;
         m_Address = addr;
         m_ConnectionFactory = connectionFactory;
     }// constructor
@@ -131,6 +150,96 @@ public class ModbusTCPListener implements Runnable {
         m_Address = addr;
     }// setAddress
 
+    /**
+     * Returns the admission control of this listener.
+     *
+     * @return the <tt>AdmissionControl</tt>, or <tt>null</tt> if none.
+     */
+    public AdmissionControl getAdmissionControl() {
+        return m_AdmissionControl;
+    }// getAdmissionControl
+
+    /**
+     * Sets the admission control limiting the connections and
+     * request rates of this listener. Applies to new connections.
+     *
+     * @param admissionControl the <tt>AdmissionControl</tt>, or <tt>null</tt> for none.
+     */
+    public void setAdmissionControl(AdmissionControl admissionControl) {
+        m_AdmissionControl = admissionControl;
+    }// setAdmissionControl
+
+    /**
+     * Returns the time after which idle connections are closed.
+     *
+     * @return the idle timeout in milliseconds, <tt>0</tt> for none.
+     */
+    public int getIdleTimeout() {
+        return m_IdleTimeout;
+    }// getIdleTimeout
+
+    /**
+     * Sets the time after which idle connections are closed.
+     * Applies to new connections.
+     *
+     * @param timeout the idle timeout in milliseconds, <tt>0</tt> for none.
+     */
+    public void setIdleTimeout(int timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Illegal idle timeout: " + timeout);
+        }
+        m_IdleTimeout = timeout;
+    }// setIdleTimeout
+
+    /**
+     * Tests if TCP keepalive is enabled on accepted connections.
+     *
+     * @return true if enabled, false otherwise.
+     */
+    public boolean isKeepAlive() {
+        return m_KeepAlive;
+    }// isKeepAlive
+
+    /**
+     * Sets if TCP keepalive is enabled on accepted connections, detecting
+     * dead peers of connections without an idle timeout. The probe interval
+     * is a setting of the operating system.
+     *
+     * @param b true to enable keepalive, false otherwise.
+     */
+    public void setKeepAlive(boolean b) {
+        m_KeepAlive = b;
+    }// setKeepAlive
+
+    /**
+     * Returns the minimum time a connection must have been idle
+     * to be evicted when the connection limit is reached.
+     *
+     * @return the time in milliseconds, or <tt>-1</tt> if eviction is disabled.
+     */
+    public int getMinEvictableIdleTime() {
+        return m_MinEvictableIdleTime;
+    }// getMinEvictableIdleTime
+
+    /**
+     * Sets the minimum time a connection must have been idle
+     * to be evicted when the connection limit is reached.
+     *
+     * @param time the time in milliseconds, or <tt>-1</tt> to disable eviction.
+     */
+    public void setMinEvictableIdleTime(int time) {
+        m_MinEvictableIdleTime = time;
+    }// setMinEvictableIdleTime
+
+    /**
+     * Returns the number of open connections.
+     *
+     * @return the number of connections being handled or waiting for a pool thread.
+     */
+    public int getConnectionCount() {
+        return m_Handlers.size();
+    }// getConnectionCount
+
     /**
      * Starts this <tt>ModbusTCPListener</tt>.
      */
@@ -174,8 +283,45 @@ public class ModbusTCPListener implements Runnable {
                 Socket incoming = m_ServerSocket.accept();
                 logger.debug("Making new connection {}", incoming.toString());
                 if (m_Listening) {
+                    AdmissionControl admission = m_AdmissionControl;
+                    if (isAtLimit(admission)) {
+                        evictIdlest();
+                    }
+                    if (admission != null && !admission.acquireConnection()) {
+                        logger.debug("Rejecting connection {}, over capacity", incoming.toString());
+                        incoming.close();
+                        continue;
+                    }
                     // FIXME: Replace with object pool due to resource issues
-                    m_ThreadPool.execute(new TCPConnectionHandler(m_ConnectionFactory.create(incoming)));
+                    try {
+                        incoming.setKeepAlive(m_KeepAlive);
+                    } catch (SocketException ex) {
+                        logger.warn("Failed to set keepalive: {}", ex.getMessage());
+                    }
+                    TCPConnectionHandler handler;
+                    try {
+                        handler = new TCPConnectionHandler(m_ConnectionFactory.create(incoming), admission);
+                        handler.setIdleTimeout(m_IdleTimeout);
+                    } catch (RuntimeException ex) {
+                        logger.warn("Failed to set up connection {}: {}", incoming.toString(), ex.getMessage());
+                        if (admission != null) {
+                            admission.releaseConnection();
+                        }
+                        incoming.close();
+                        continue;
+                    }
+                    handler.setListener(this);
+                    m_Handlers.add(handler);
+                    if (!m_ThreadPool.tryExecute(handler)) {
+                        // rather shed the connection than block accepting
+                        logger.debug("Rejecting connection {}, handler queue full", incoming.toString());
+                        m_Handlers.remove(handler);
+                        if (admission != null) {
+                            admission.releaseConnection();
+                        }
+                        incoming.close();
+                        continue;
+                    }
                     count();
                 } else {
                     // just close the socket
@@ -204,6 +350,44 @@ public class ModbusTCPListener implements Runnable {
         return m_Listening;
     }// isListening
 
+    /**
+     * Removes a finished handler from the open connections.
+     *
+     * @param handler the finished <tt>TCPConnectionHandler</tt>.
+     */
+    void handlerFinished(TCPConnectionHandler handler) {
+        m_Handlers.remove(handler);
+    }// handlerFinished
+
+    private boolean isAtLimit(AdmissionControl admission) {
+        if (m_Handlers.size() >= m_PoolSize) {
+            return true;
+        }
+        return admission != null && admission.getMaxConnections() > 0
+                && admission.getConnectionCount() >= admission.getMaxConnections();
+    }// isAtLimit
+
+    private void evictIdlest() {
+        if (m_MinEvictableIdleTime < 0) {
+            return;
+        }
+        TCPConnectionHandler idlest = null;
+        long maxIdle = m_MinEvictableIdleTime - 1;
+        for (TCPConnectionHandler handler : m_Handlers) {
+            long idle = handler.getIdleTime();
+            if (idle > maxIdle) {
+                idlest = handler;
+                maxIdle = idle;
+            }
+        }
+        if (idlest == null) {
+            return;
+        }
+        logger.debug("Connection limit reached, evicting connection idle for {} ms", maxIdle);
+        // releases its admission at once, the new handler queues until its pool thread is free
+        idlest.evict();
+    }// evictIdlest
+
     private void count() {
         c_RequestCounter++;
         if (c_RequestCounter == REQUESTS_TOGC) {
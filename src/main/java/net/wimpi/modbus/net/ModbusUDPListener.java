@@ -43,6 +43,7 @@ public class ModbusUDPListener {
     private int m_Port = Modbus.DEFAULT_PORT;
     private boolean m_Listening;
     private InetAddress m_Interface;
+    private volatile AdmissionControl m_AdmissionControl;
 
     private UDPSlaveTerminalFactory m_TerminalFactory;
 
@@ -96,6 +97,24 @@ public class ModbusUDPListener {
         m_Port = ((port > 0) ? port : Modbus.DEFAULT_PORT);
     }// setPort
 
+    /**
+     * Returns the admission control of this listener.
+     *
+     * @return the <tt>AdmissionControl</tt>, or <tt>null</tt> if none.
+     */
+    public AdmissionControl getAdmissionControl() {
+        return m_AdmissionControl;
+    }// getAdmissionControl
+
+    /**
+     * Sets the admission control limiting the request rates of this listener.
+     *
+     * @param admissionControl the <tt>AdmissionControl</tt>, or <tt>null</tt> for none.
+     */
+    public void setAdmissionControl(AdmissionControl admissionControl) {
+        m_AdmissionControl = admissionControl;
+    }// setAdmissionControl
+
     /**
      * Starts this <tt>ModbusUDPListener</tt>.
      */
@@ -155,10 +174,13 @@ public class ModbusUDPListener {
                     ModbusRequest request = m_Transport.readRequest();
                     logger.trace("Request: {}", request.getHexMessage());
                     ModbusResponse response = null;
+                    AdmissionControl admission = m_AdmissionControl;
 
                     // test if Process image exists
                     if (ModbusCoupler.getReference().getProcessImage() == null) {
                         response = request.createExceptionResponse(Modbus.ILLEGAL_FUNCTION_EXCEPTION);
+                    } else if (admission != null) {
+                        response = admission.createResponse(request, m_Terminal.getRequestAddress(request));
                     } else {
                         response = request.createResponse();
                     }
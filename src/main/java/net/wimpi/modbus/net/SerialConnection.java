@@ -33,6 +33,7 @@ import gnu.io.SerialPortEventListener;
 import gnu.io.UnsupportedCommOperationException;
 import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.io.ModbusASCIITransport;
+import net.wimpi.modbus.io.ModbusAsyncSerialTransport;
 import net.wimpi.modbus.io.ModbusBINTransport;
 import net.wimpi.modbus.io.ModbusRTUTransport;
 import net.wimpi.modbus.io.ModbusSerialTransport;
@@ -142,7 +143,10 @@ public class SerialConnection implements SerialPortEventListener, ModbusSlaveCon
 
         setReceiveTimeout(m_Parameters.getReceiveTimeoutMillis());
 
-        if (Modbus.SERIAL_ENCODING_ASCII.equals(m_Parameters.getEncoding())) {
+        if (m_Parameters.isAsync()) {
+            m_Transport = new ModbusAsyncSerialTransport(m_Parameters.getEncoding());
+            m_Transport.setReceiveTimeout(m_Parameters.getReceiveTimeoutMillis());
+        } else if (Modbus.SERIAL_ENCODING_ASCII.equals(m_Parameters.getEncoding())) {
             m_Transport = new ModbusASCIITransport();
         } else if (Modbus.SERIAL_ENCODING_RTU.equals(m_Parameters.getEncoding())) {
             m_Transport = new ModbusRTUTransport();
@@ -178,6 +182,8 @@ public class SerialConnection implements SerialPortEventListener, ModbusSlaveCon
 
         // Set notifyOnBreakInterrup to allow event driven break handling.
         m_SerialPort.notifyOnBreakInterrupt(true);
+        // The asynchronous transport reads on data events only.
+        m_SerialPort.notifyOnDataAvailable(m_Parameters.isAsync());
 
         m_Open = true;
     }// open
@@ -279,9 +285,12 @@ public class SerialConnection implements SerialPortEventListener, ModbusSlaveCon
     public void serialEvent(SerialPortEvent e) {
         // Determine type of event.
         switch (e.getEventType()) {
-            // This event is ignored, the application reads directly from
-            // the serial input stream
+            // This event is ignored by the blocking transports, which read
+            // directly from the serial input stream
             case SerialPortEvent.DATA_AVAILABLE:
+                if (m_Transport instanceof ModbusAsyncSerialTransport) {
+                    ((ModbusAsyncSerialTransport) m_Transport).dataAvailable();
+                }
                 /*
                  * try {
                  * int amount = m_SerialIn.available();
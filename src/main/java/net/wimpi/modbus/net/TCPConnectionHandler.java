@@ -16,6 +16,8 @@
 
 package net.wimpi.modbus.net;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,6 +30,10 @@ import net.wimpi.modbus.msg.ModbusResponse;
 
 /**
  * Class implementing a handler for incoming Modbus/TCP requests.
+ * <p>
+ * A handler tracks how long its connection has been idle, i.e. waiting
+ * for the next request, so that idle connections can be timed out or
+ * evicted in favour of new ones.
  *
  * @author Dieter Wimberger
  * @version @version@ (@date@)
@@ -37,6 +43,14 @@ public class TCPConnectionHandler implements Runnable {
 
     private TCPSlaveConnection m_Connection;
     private ModbusTransport m_Transport;
+    private AdmissionControl m_AdmissionControl;
+    private ModbusTCPListener m_Listener;
+    private int m_IdleTimeout;
+    private volatile long m_IdleSince;
+    private volatile boolean m_Started;
+    private volatile boolean m_Busy;
+    private volatile boolean m_Evicted;
+    private final AtomicBoolean m_Released = new AtomicBoolean();
 
     /**
      * Constructs a new <tt>TCPConnectionHandler</tt> instance.
@@ -47,6 +61,19 @@ public class TCPConnectionHandler implements Runnable {
         setConnection(con);
     }// constructor
 
+    /**
+     * Constructs a new <tt>TCPConnectionHandler</tt> instance
+     * for a connection admitted by the given admission control.
+     * The connection is released when the handler finishes.
+     *
+     * @param con an incoming connection.
+     * @param admissionControl the <tt>AdmissionControl</tt>, or <tt>null</tt> if none.
+     */
+    public TCPConnectionHandler(TCPSlaveConnection con, AdmissionControl admissionControl) {
+        setConnection(con);
+        m_AdmissionControl = admissionControl;
+    }// constructor
+
     /**
      * Sets a connection to be handled by this <tt>
      * TCPConnectionHandler</tt>.
@@ -58,17 +85,79 @@ public class TCPConnectionHandler implements Runnable {
         m_Transport = m_Connection.getModbusTransport();
     }// setConnection
 
+    /**
+     * Sets the time after which an idle connection is closed.
+     *
+     * @param timeout the idle timeout in milliseconds, <tt>0</tt> for none.
+     */
+    public void setIdleTimeout(int timeout) {
+        m_IdleTimeout = timeout;
+        m_Connection.setTimeout(timeout);
+    }// setIdleTimeout
+
+    /**
+     * Returns the time after which an idle connection is closed.
+     *
+     * @return the idle timeout in milliseconds, <tt>0</tt> for none.
+     */
+    public int getIdleTimeout() {
+        return m_IdleTimeout;
+    }// getIdleTimeout
+
+    /**
+     * Returns how long the connection has been waiting for a request.
+     *
+     * @return the idle time in milliseconds, or <tt>-1</tt> while the handler
+     *         waits for a pool thread, processes a request or after it finished.
+     */
+    public long getIdleTime() {
+        if (!m_Started || m_Busy || m_Released.get()) {
+            return -1;
+        }
+        return System.currentTimeMillis() - m_IdleSince;
+    }// getIdleTime
+
+    /**
+     * Closes the connection of this handler to make room for another one.
+     * Its admission and its place in the listener are released at once,
+     * without waiting for the handler to finish; a running handler finishes
+     * as soon as its pending read fails, one that never started ends
+     * right away when it is run.
+     */
+    public void evict() {
+        m_Evicted = true;
+        m_Connection.close();
+        release();
+    }// evict
+
+    /**
+     * Sets the listener to notify when this handler finishes.
+     *
+     * @param listener the <tt>ModbusTCPListener</tt>.
+     */
+    void setListener(ModbusTCPListener listener) {
+        m_Listener = listener;
+    }// setListener
+
     @Override
     public void run() {
+        m_IdleSince = System.currentTimeMillis();
+        m_Started = true;
         try {
+            if (m_Evicted) {
+                return;
+            }
             do {
                 // 1. read the request
                 ModbusRequest request = m_Transport.readRequest();
+                m_Busy = true;
                 ModbusResponse response = null;
 
                 // test if Process image exists
                 if (ModbusCoupler.getReference().getProcessImage() == null) {
                     response = request.createExceptionResponse(Modbus.ILLEGAL_FUNCTION_EXCEPTION);
+                } else if (m_AdmissionControl != null) {
+                    response = m_AdmissionControl.createResponse(request, m_Connection.getRemoteAddress());
                 } else {
                     response = request.createResponse();
                 }
@@ -76,9 +165,17 @@ public class TCPConnectionHandler implements Runnable {
                 logger.debug("Response (transaction id {}): {}", response.getTransactionID(), response.getHexMessage());
 
                 m_Transport.writeMessage(response);
+                m_IdleSince = System.currentTimeMillis();
+                m_Busy = false;
             } while (true);
         } catch (ModbusIOException ex) {
-            if (!ex.isEOF()) {
+            if (m_Evicted) {
+                logger.debug("Evicted idle connection {}", m_Connection.getRemoteAddress());
+            } else if (m_IdleTimeout > 0 && !m_Busy
+                    && System.currentTimeMillis() - m_IdleSince >= m_IdleTimeout) {
+                logger.debug("Closing connection {}, idle for {} ms", m_Connection.getRemoteAddress(),
+                        System.currentTimeMillis() - m_IdleSince);
+            } else if (!ex.isEOF()) {
                 // other troubles, output for debug
                 ex.printStackTrace();
             }
@@ -88,8 +185,21 @@ public class TCPConnectionHandler implements Runnable {
             } catch (Exception ex) {
                 // ignore
             }
-
+            release();
         }
     }// run
 
+    private void release() {
+        // once, either on eviction or when finished
+        if (!m_Released.compareAndSet(false, true)) {
+            return;
+        }
+        if (m_AdmissionControl != null) {
+            m_AdmissionControl.releaseConnection();
+        }
+        if (m_Listener != null) {
+            m_Listener.handlerFinished(this);
+        }
+    }// release
+
 }// TCPConnectionHandler
@@ -108,6 +108,34 @@ public class TCPMasterConnection implements ModbusSlaveConnection {
         return m_Connected;
     }// connect
 
+    /**
+     * Opens this <tt>TCPMasterConnection</tt> on a socket that is
+     * already connected to its destination, e.g. by a non-blocking connect.
+     * The socket must be in blocking mode.
+     *
+     * @param socket the connected <tt>Socket</tt>.
+     * @return true if connected.
+     * @throws IllegalStateException if connected over another socket already.
+     * @throws IOException if the socket cannot be set up.
+     */
+    public synchronized boolean connect(Socket socket) throws IOException {
+        if (isConnected() && socket != m_Socket) {
+            throw new IllegalStateException("Already connected");
+        }
+        if (!isConnected()) {
+            if (!socket.isConnected()) {
+                throw new IOException("Socket not connected");
+            }
+            m_Socket = socket;
+            setTimeout(m_Timeout);
+            m_Socket.setSoLinger(true, 1);
+            m_Socket.setKeepAlive(true);
+            prepareTransport();
+            m_Connected = true;
+        }
+        return m_Connected;
+    }// connect
+
     /**
      * Closes this <tt>TCPMasterConnection</tt>.
      */
@@ -165,6 +165,15 @@ public class TCPSlaveConnection {
         return m_Socket.getLocalAddress();
     }// getAddress
 
+    /**
+     * Returns the address of the client of this <tt>TCPSlaveConnection</tt>.
+     *
+     * @return the remote address as <tt>InetAddress</tt>.
+     */
+    public InetAddress getRemoteAddress() {
+        return m_Socket.getInetAddress();
+    }// getRemoteAddress
+
     /**
      * Tests if this <tt>TCPMasterConnection</tt> is connected.
      *
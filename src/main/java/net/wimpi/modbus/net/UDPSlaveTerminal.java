@@ -28,8 +28,12 @@ import net.wimpi.modbus.Modbus;
 import net.wimpi.modbus.io.ModbusTransport;
 import net.wimpi.modbus.io.ModbusUDPTransport;
 import net.wimpi.modbus.io.ModbusUDPTransportFactory;
-import net.wimpi.modbus.util.LinkedQueue;
+import net.wimpi.modbus.msg.ModbusRequest;
+import net.wimpi.modbus.util.MPMCRingBuffer;
 import net.wimpi.modbus.util.ModbusUtil;
+import net.wimpi.modbus.util.RingBuffer;
+import net.wimpi.modbus.util.SPSCRingBuffer;
+import net.wimpi.modbus.util.WaitStrategy;
 
 /**
  * Class implementing a <tt>UDPSlaveTerminal</tt>.
@@ -50,6 +54,11 @@ public class UDPSlaveTerminal implements UDPTerminal {
     private static final Logger logger = LoggerFactory.getLogger(UDPSlaveTerminal.class);
     public static final int DEFAULT_DEACTIVATION_WAIT_MILLIS = 100;
 
+    /**
+     * Defines the default capacity of the send and receive queues (<b>1024</b> packets).
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
     // instance attributes
     private DatagramSocket m_Socket;
     private int m_Timeout = Modbus.DEFAULT_TIMEOUT;
@@ -59,8 +68,9 @@ public class UDPSlaveTerminal implements UDPTerminal {
     protected ModbusTransport m_ModbusTransport;
     private int m_Retries = Modbus.DEFAULT_RETRIES;
 
-    private LinkedQueue m_SendQueue;
-    private LinkedQueue m_ReceiveQueue;
+    // many handlers may send, the receiver thread is the only producer of requests
+    private RingBuffer<byte[]> m_SendQueue;
+    private RingBuffer<byte[]> m_ReceiveQueue;
     private PacketSender m_PacketSender;
     private PacketReceiver m_PacketReceiver;
     private Thread m_Receiver;
@@ -85,11 +95,29 @@ public class UDPSlaveTerminal implements UDPTerminal {
 
     public UDPSlaveTerminal(InetAddress localaddress, ModbusUDPTransportFactory transportFactory,
             int deactivationWaitMillis) {
+        this(localaddress, transportFactory, deactivationWaitMillis, WaitStrategy.BLOCKING);
+    }
+
+    /**
+     * Constructs a new <tt>UDPSlaveTerminal</tt> with the given strategy
+     * for threads waiting on the send and receive queues.
+     * <p>
+     * The receive queue has a single consumer, i.e. {@link #receiveMessage()}
+     * must not be called by more than one thread at a time. Requests arriving
+     * while it is full are dropped, like packets lost on the network.
+     *
+     * @param localaddress the local address to bind to.
+     * @param transportFactory the factory of the <tt>ModbusTransport</tt>.
+     * @param deactivationWaitMillis the time to wait for the threads on deactivation.
+     * @param waitStrategy the <tt>WaitStrategy</tt> of the queues.
+     */
+    public UDPSlaveTerminal(InetAddress localaddress, ModbusUDPTransportFactory transportFactory,
+            int deactivationWaitMillis, WaitStrategy waitStrategy) {
         m_LocalAddress = localaddress;
         m_TransportFactory = transportFactory;
         m_DeactivationWaitMillis = deactivationWaitMillis;
-        m_SendQueue = new LinkedQueue();
-        m_ReceiveQueue = new LinkedQueue();
+        m_SendQueue = new MPMCRingBuffer<>(DEFAULT_QUEUE_CAPACITY, waitStrategy);
+        m_ReceiveQueue = new SPSCRingBuffer<>(DEFAULT_QUEUE_CAPACITY, waitStrategy);
         // m_Requests = new Hashtable(342, 0.75F);
         m_Requests = new Hashtable(342);
     }// constructor
@@ -245,9 +273,21 @@ public class UDPSlaveTerminal implements UDPTerminal {
         m_SendQueue.put(msg);
     }// sendPackage
 
+    /**
+     * Returns the address a received request was sent from.
+     *
+     * @param request a <tt>ModbusRequest</tt> received but not yet answered.
+     * @return the source address, or <tt>null</tt> if unknown.
+     */
+    InetAddress getRequestAddress(ModbusRequest request) {
+        // requests are remembered by the first two words of the header
+        Object packet = m_Requests.get(Integer.valueOf((request.getTransactionID() << 16) | request.getProtocolID()));
+        return (packet != null) ? ((DatagramPacket) packet).getAddress() : null;
+    }// getRequestAddress
+
     @Override
     public byte[] receiveMessage() throws Exception {
-        return (byte[]) m_ReceiveQueue.take();
+        return m_ReceiveQueue.take();
     }// receiveMessage
 
     class PacketSender implements Runnable {
@@ -263,9 +303,9 @@ public class UDPSlaveTerminal implements UDPTerminal {
             do {
                 try {
                     // 1. pickup the message and corresponding request
-                    byte[] message = (byte[]) m_SendQueue.take();
+                    byte[] message = m_SendQueue.take();
                     DatagramPacket req = (DatagramPacket) m_Requests
-                            .remove(new Integer(ModbusUtil.registersToInt(message)));
+                            .remove(Integer.valueOf(ModbusUtil.registersToInt(message)));
                     // 2. create new Package with corresponding address and port
                     DatagramPacket res = new DatagramPacket(message, message.length, req.getAddress(), req.getPort());
                     m_Socket.send(res);
@@ -299,11 +339,15 @@ public class UDPSlaveTerminal implements UDPTerminal {
                     DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
                     m_Socket.receive(packet);
                     // 2. Extract TID and remember request
-                    Integer tid = new Integer(ModbusUtil.registersToInt(buffer));
+                    Integer tid = Integer.valueOf(ModbusUtil.registersToInt(buffer));
                     m_Requests.put(tid, packet);
-                    // 3. place the data buffer in the queue
-                    m_ReceiveQueue.put(buffer);
-                    logger.trace("Received package placed in queue");
+                    // 3. place the data buffer in the queue, dropping it if the handler lags behind
+                    if (m_ReceiveQueue.offer(buffer)) {
+                        logger.trace("Received package placed in queue");
+                    } else {
+                        m_Requests.remove(tid);
+                        logger.warn("Receive queue full, dropped package from {}", packet.getSocketAddress());
+                    }
                 } catch (Exception ex) {
                     DEBUG: ex.printStackTrace();
                 }
@@ -0,0 +1,322 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.procimg;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class implementing a block of registers computed on demand.
+ * <p>
+ * The values of the block are produced by an {@link Evaluator}, which
+ * fills all of them in one call, e.g. the two words of a scaled sensor
+ * reading or a status bitmap built from several sources. The evaluator is
+ * only called when a register of the block is read and the last values are
+ * older than the scan time, so derived data nobody reads costs nothing.
+ * Concurrent readers share one evaluation.
+ * <p>
+ * The registers of the block are added to a process image like any
+ * other registers:
+ * <pre>
+ * ComputedRegisters temp = new ComputedRegisters(2, 500, evaluator);
+ * for (int i = 0; i &lt; temp.getCount(); i++) {
+ *     image.setInputRegister(100 + i, temp.getInputRegister(i));
+ * }
+ * </pre>
+ * Values read within one scan time come from the same evaluation.
+ * The read requests pass the registers of a range through
+ * {@link #snapshot(InputRegister[])}, so the registers of a block read in
+ * one request always come from one evaluation, also with a scan time of
+ * <tt>0</tt>. If the evaluator fails, the previous values are served and
+ * the failure is logged.
+ *
+ * @version @version@ (@date@)
+ */
+public class ComputedRegisters {
+    private static final Logger logger = LoggerFactory.getLogger(ComputedRegisters.class);
+
+    /**
+     * Interface defining the computation of the values of a block.
+     */
+    public interface Evaluator {
+
+        /**
+         * Computes the values of the block.
+         *
+         * @param values the array to fill with the 16-bit values, as
+         *            long as the block; it holds the previous values.
+         * @throws Exception if the values cannot be computed.
+         */
+        public void evaluate(int[] values) throws Exception;
+
+    }// interface Evaluator
+
+    /**
+     * Interface defining the handling of values written
+     * to the registers of a block.
+     */
+    public interface Writer {
+
+        /**
+         * Handles a value written by a master.
+         *
+         * @param index the index of the register within the block.
+         * @param value the written value as unsigned 16-bit value.
+         */
+        public void write(int index, int value);
+
+    }// interface Writer
+
+    // instance attributes
+    private final Evaluator m_Evaluator;
+    private final long m_ScanTime;
+    private final ComputedRegister[] m_Registers;
+    private volatile int[] m_Values;
+    private volatile long m_Evaluated;
+    private volatile boolean m_Valid;
+    private volatile Writer m_Writer;
+    private volatile long m_Evaluations;
+    // counts writes and invalidations, so that an evaluation running
+    // meanwhile does not mark its possibly stale values valid
+    private final AtomicLong m_Changes = new AtomicLong();
+
+    /**
+     * Constructs a new <tt>ComputedRegisters</tt> instance.
+     *
+     * @param count the number of registers of the block.
+     * @param scanTime the time in milliseconds computed values are served
+     *            from cache, <tt>0</tt> to evaluate on every read.
+     * @param evaluator the <tt>Evaluator</tt> computing the values.
+     */
+    public ComputedRegisters(int count, long scanTime, Evaluator evaluator) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count must be positive");
+        }
+        if (scanTime < 0) {
+            throw new IllegalArgumentException("scanTime must not be negative");
+        }
+        m_Evaluator = evaluator;
+        m_ScanTime = scanTime * 1000000L;
+        m_Values = new int[count];
+        m_Registers = new ComputedRegister[count];
+        for (int i = 0; i < count; i++) {
+            m_Registers[i] = new ComputedRegister(i);
+        }
+    }// constructor
+
+    /**
+     * Returns the number of registers of this block.
+     *
+     * @return the number of registers.
+     */
+    public int getCount() {
+        return m_Registers.length;
+    }// getCount
+
+    /**
+     * Returns a register of this block for use as input register.
+     *
+     * @param index the index of the register within the block.
+     * @return the <tt>InputRegister</tt>.
+     */
+    public InputRegister getInputRegister(int index) {
+        return m_Registers[index];
+    }// getInputRegister
+
+    /**
+     * Returns a register of this block for use as holding register.
+     * Written values are passed to the {@link Writer}, if any, and
+     * discarded otherwise.
+     *
+     * @param index the index of the register within the block.
+     * @return the <tt>Register</tt>.
+     */
+    public Register getRegister(int index) {
+        return m_Registers[index];
+    }// getRegister
+
+    /**
+     * Sets the <tt>Writer</tt> handling values written to the
+     * registers of this block. A write invalidates the cached values.
+     *
+     * @param writer the <tt>Writer</tt>, or <tt>null</tt> to discard writes.
+     */
+    public void setWriter(Writer writer) {
+        m_Writer = writer;
+    }// setWriter
+
+    /**
+     * Invalidates the cached values, so that the next read
+     * evaluates the block.
+     */
+    public void invalidate() {
+        m_Changes.incrementAndGet();
+        m_Valid = false;
+    }// invalidate
+
+    /**
+     * Returns the number of evaluations of this block so far.
+     *
+     * @return the number of evaluations.
+     */
+    public long getEvaluationCount() {
+        return m_Evaluations;
+    }// getEvaluationCount
+
+    /**
+     * Returns the current values, evaluating the block if
+     * the cached values are invalid or older than the scan time.
+     */
+    private int[] values() {
+        if (m_Valid && System.nanoTime() - m_Evaluated < m_ScanTime) {
+            return m_Values;
+        }
+        synchronized (this) {
+            // a concurrent reader may have evaluated meanwhile
+            long now = System.nanoTime();
+            if (m_Valid && now - m_Evaluated < m_ScanTime) {
+                return m_Values;
+            }
+            long changes = m_Changes.get();
+            int[] values = m_Values.clone();
+            try {
+                m_Evaluator.evaluate(values);
+                m_Values = values;
+            } catch (Exception ex) {
+                logger.warn("Evaluation of computed registers failed, serving previous values: {}", ex.getMessage());
+            }
+            m_Evaluations++;
+            m_Evaluated = now;
+            m_Valid = m_Changes.get() == changes;
+            return m_Values;
+        }
+    }// values
+
+    /**
+     * Returns the given registers with the registers of computed blocks
+     * replaced by their current values. Each block is evaluated at most
+     * once, so that the values of a block are consistent.
+     *
+     * @param registers the registers of a range, e.g. of a read request.
+     * @return the registers, or a copy if any of them was computed.
+     */
+    public static InputRegister[] snapshot(InputRegister[] registers) {
+        InputRegister[] copy = registers;
+        Map<ComputedRegisters, int[]> evaluated = null;
+        for (int i = 0; i < registers.length; i++) {
+            if (registers[i] instanceof ComputedRegister) {
+                if (evaluated == null) {
+                    evaluated = new IdentityHashMap<>();
+                    copy = registers.clone();
+                }
+                ComputedRegister register = (ComputedRegister) registers[i];
+                ComputedRegisters block = register.getBlock();
+                int[] values = evaluated.get(block);
+                if (values == null) {
+                    values = block.values();
+                    evaluated.put(block, values);
+                }
+                copy[i] = new SimpleRegister(values[register.m_Index] & 0xFFFF);
+            }
+        }
+        return copy;
+    }// snapshot
+
+    /**
+     * Returns the given registers with the registers of computed blocks
+     * replaced by their current values.
+     *
+     * @param registers the registers of a range, e.g. of a read request.
+     * @return the registers, or a copy if any of them was computed.
+     * @see #snapshot(InputRegister[])
+     */
+    public static Register[] snapshot(Register[] registers) {
+        // the copy is a Register[] as well
+        return (Register[]) snapshot((InputRegister[]) registers);
+    }// snapshot
+
+    private void write(int index, int value) {
+        Writer writer = m_Writer;
+        if (writer != null) {
+            writer.write(index, value & 0xFFFF);
+            m_Changes.incrementAndGet();
+            m_Valid = false;
+        } else {
+            logger.debug("Discarding write to computed register {}", index);
+        }
+    }// write
+
+    /**
+     * Class implementing a register of the block.
+     */
+    private final class ComputedRegister implements Register {
+
+        private final int m_Index;
+
+        private ComputedRegister(int index) {
+            m_Index = index;
+        }// constructor
+
+        private ComputedRegisters getBlock() {
+            return ComputedRegisters.this;
+        }// getBlock
+
+        @Override
+        public int getValue() {
+            return values()[m_Index] & 0xFFFF;
+        }// getValue
+
+        @Override
+        public int toUnsignedShort() {
+            return getValue();
+        }// toUnsignedShort
+
+        @Override
+        public short toShort() {
+            return (short) getValue();
+        }// toShort
+
+        @Override
+        public byte[] toBytes() {
+            int value = getValue();
+            return new byte[] { (byte) (value >> 8), (byte) value };
+        }// toBytes
+
+        @Override
+        public void setValue(int v) {
+            write(m_Index, v);
+        }// setValue
+
+        @Override
+        public void setValue(short s) {
+            write(m_Index, s);
+        }// setValue
+
+        @Override
+        public void setValue(byte[] bytes) {
+            if (bytes.length < 2) {
+                throw new IllegalArgumentException();
+            }
+            write(m_Index, (bytes[0] & 0xff) << 8 | (bytes[1] & 0xff));
+        }// setValue
+
+    }// class ComputedRegister
+
+}// class ComputedRegisters
@@ -0,0 +1,172 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+package net.wimpi.modbus.procimg;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Class implementing atomic, ordered accesses to <tt>long</tt> values in
+ * mapped memory, as needed by the sequence counters of a
+ * {@link MappedProcessImage} shared between processes.
+ * <p>
+ * The accesses are implemented with <tt>sun.misc.Unsafe</tt>, which has no
+ * public replacement on Java 7. It is looked up reflectively, so that the
+ * build does not depend on the internal API; if it is missing or restricted,
+ * {@link #isAvailable()} returns false and the accessors throw an
+ * <tt>UnsupportedOperationException</tt> with the cause.
+ *
+ * @version @version@ (@date@)
+ */
+final class MappedMemory {
+
+    private static final MethodHandle GET_LONG;
+    private static final MethodHandle GET_LONG_VOLATILE;
+    private static final MethodHandle PUT_ORDERED_LONG;
+    private static final MethodHandle COMPARE_AND_SWAP_LONG;
+    private static final long BUFFER_ADDRESS;
+    private static final Throwable UNAVAILABLE;
+
+    static {
+        MethodHandle getLong = null;
+        MethodHandle getLongVolatile = null;
+        MethodHandle putOrderedLong = null;
+        MethodHandle compareAndSwapLong = null;
+        long bufferAddress = -1;
+        Throwable unavailable = null;
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            getLong = lookup.findVirtual(type, "getLong",
+                    MethodType.methodType(long.class, Object.class, long.class)).bindTo(unsafe);
+            getLongVolatile = lookup.findVirtual(type, "getLongVolatile",
+                    MethodType.methodType(long.class, Object.class, long.class)).bindTo(unsafe);
+            putOrderedLong = lookup.findVirtual(type, "putOrderedLong",
+                    MethodType.methodType(void.class, Object.class, long.class, long.class)).bindTo(unsafe);
+            compareAndSwapLong = lookup.findVirtual(type, "compareAndSwapLong",
+                    MethodType.methodType(boolean.class, Object.class, long.class, long.class, long.class))
+                    .bindTo(unsafe);
+            MethodHandle fieldOffset = lookup.findVirtual(type, "objectFieldOffset",
+                    MethodType.methodType(long.class, Field.class)).bindTo(unsafe);
+            bufferAddress = (long) fieldOffset.invokeExact(Buffer.class.getDeclaredField("address"));
+        } catch (Throwable t) {
+            unavailable = t;
+        }
+        GET_LONG = getLong;
+        GET_LONG_VOLATILE = getLongVolatile;
+        PUT_ORDERED_LONG = putOrderedLong;
+        COMPARE_AND_SWAP_LONG = compareAndSwapLong;
+        BUFFER_ADDRESS = bufferAddress;
+        UNAVAILABLE = unavailable;
+    }
+
+    private MappedMemory() {
+    }// constructor
+
+    /**
+     * Tests if ordered accesses to mapped memory are available.
+     *
+     * @return true if available, false otherwise.
+     */
+    static boolean isAvailable() {
+        return UNAVAILABLE == null;
+    }// isAvailable
+
+    /**
+     * Returns the address of the first byte of a mapped buffer.
+     * The buffer must be kept reachable while the address is used.
+     *
+     * @param buffer the <tt>MappedByteBuffer</tt>.
+     * @return the address.
+     */
+    static long address(MappedByteBuffer buffer) {
+        checkAvailable();
+        try {
+            return (long) GET_LONG.invokeExact((Object) buffer, BUFFER_ADDRESS);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }// address
+
+    /**
+     * Reads a <tt>long</tt> with volatile semantics, i.e. later accesses
+     * are not ordered before it.
+     *
+     * @param address the 8 byte aligned address.
+     * @return the value.
+     */
+    static long getLongVolatile(long address) {
+        try {
+            return (long) GET_LONG_VOLATILE.invokeExact((Object) null, address);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }// getLongVolatile
+
+    /**
+     * Writes a <tt>long</tt> ordered after all earlier writes.
+     *
+     * @param address the 8 byte aligned address.
+     * @param value the value.
+     */
+    static void putOrderedLong(long address, long value) {
+        try {
+            PUT_ORDERED_LONG.invokeExact((Object) null, address, value);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }// putOrderedLong
+
+    /**
+     * Atomically replaces a <tt>long</tt> if it holds the expected value.
+     * Acts as a full fence.
+     *
+     * @param address the 8 byte aligned address.
+     * @param expected the expected value.
+     * @param value the new value.
+     * @return true if replaced, false otherwise.
+     */
+    static boolean compareAndSwapLong(long address, long expected, long value) {
+        try {
+            return (boolean) COMPARE_AND_SWAP_LONG.invokeExact((Object) null, address, expected, value);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }// compareAndSwapLong
+
+    private static void checkAvailable() {
+        if (UNAVAILABLE != null) {
+            throw new UnsupportedOperationException("Ordered access to mapped memory unavailable", UNAVAILABLE);
+        }
+    }// checkAvailable
+
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        throw new IllegalStateException(t);
+    }// rethrow
+
+}// class MappedMemory
@@ -0,0 +1,682 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.procimg;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Class implementing a process image with a fixed number of coils,
+ * discrete inputs, input registers and registers, held in a
+ * memory-mapped file.
+ * <p>
+ * Opening an existing image maps the file, so that no element has to be
+ * created at start up, and values written before, e.g. by masters, are
+ * restored. The values are written to the mapped region directly; they
+ * survive a crash of the process, but may be lost with the operating system
+ * unless {@link #force()} was called.
+ * <p>
+ * The image has a fixed size: elements cannot be added or removed, and
+ * the <tt>set...(int, element)</tt> methods copy the value of the given
+ * element. The elements returned by the getters are views on the mapped
+ * region. <tt>removeAll...()</tt> clears the respective table.
+ * <p>
+ * The file may be mapped by another process on the same host at the same
+ * time, e.g. an acquisition process publishing the input registers, which
+ * the slave then serves without any call per point. Every table has a
+ * sequence counter, used as a sequence lock: a writer increments the counter
+ * to an odd value, writes the values, and increments it to the next even
+ * value. Readers of a range retry while the counter is odd or has changed,
+ * so that a range is always read consistently; the elements returned by the
+ * <tt>get...Range()</tt> methods are bound to the values read, until they
+ * are written. Each table must have a single writing process, e.g. the
+ * producer owns the input tables, and the slave the coils and registers
+ * written by masters.
+ * <p>
+ * The counters are accessed with atomic instructions on the mapped memory
+ * itself (see <tt>MappedMemory</tt>), so the ordering holds between processes:
+ * a writer makes the counter odd with a compare-and-swap, a full fence, and
+ * makes it even with an ordered store after the values; a reader loads the
+ * counter volatile before the values and validates it with a compare-and-swap
+ * of the same value after them. Other processes must access the counters
+ * with equivalent instructions.
+ * <p>
+ * File layout: a header of {@link #HEADER_SIZE} bytes holding the
+ * <tt>int</tt> {@link #MAGIC}, the <tt>int</tt> {@link #VERSION} and the
+ * <tt>int</tt> numbers of coils, discrete inputs, input registers and
+ * registers (big endian), 8 reserved bytes, and the <tt>long</tt> sequence
+ * counters of the four tables in the same order (native byte order, so that
+ * producers may use atomic instructions), followed by the tables in this
+ * order. Coils and discrete inputs are bitmaps with the lowest reference in
+ * the least significant bit of the first byte, registers take two bytes each
+ * (big endian, as on the wire). Every table starts at an offset aligned to
+ * 8 bytes.
+ *
+ * @version @version@ (@date@)
+ */
+public class MappedProcessImage implements ProcessImageImplementation, Closeable {
+
+    /**
+     * Defines the magic number at the start of an image file.
+     */
+    public static final int MAGIC = 0x4A4D5049;
+
+    /**
+     * Defines the version of the file layout.
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * Defines the size of the header in bytes.
+     */
+    public static final int HEADER_SIZE = 64;
+
+    /**
+     * Defines the offset of the first sequence counter in the header.
+     */
+    public static final int SEQUENCE_OFFSET = 32;
+
+    /**
+     * Defines the table index of the coils.
+     */
+    public static final int COILS = 0;
+
+    /**
+     * Defines the table index of the discrete inputs.
+     */
+    public static final int DISCRETE_INPUTS = 1;
+
+    /**
+     * Defines the table index of the input registers.
+     */
+    public static final int INPUT_REGISTERS = 2;
+
+    /**
+     * Defines the table index of the registers.
+     */
+    public static final int REGISTERS = 3;
+
+    // reads retried before reading a table whose writer seems to have died
+    private static final int MAX_READ_RETRIES = 100000;
+
+    // instance attributes
+    private final File m_File;
+    private final RandomAccessFile m_RandomAccessFile;
+    private final MappedByteBuffer m_Buffer;
+    // address of the first sequence counter in the mapped region
+    private final long m_CounterAddress;
+    private final int m_CoilCount;
+    private final int m_DiscreteCount;
+    private final int m_InputRegisterCount;
+    private final int m_RegisterCount;
+    private final int m_CoilOffset;
+    private final int m_DiscreteOffset;
+    private final int m_InputRegisterOffset;
+    private final int m_RegisterOffset;
+
+    /**
+     * Constructs a new <tt>MappedProcessImage</tt> instance on an
+     * existing image file, taking the table sizes from its header.
+     *
+     * @param file the image file.
+     * @throws IOException if the file cannot be mapped or is no image file.
+     */
+    public MappedProcessImage(File file) throws IOException {
+        this(file, -1, -1, -1, -1);
+    }// constructor
+
+    /**
+     * Constructs a new <tt>MappedProcessImage</tt> instance. An existing
+     * image file is mapped with its values, a new one is created with all
+     * elements cleared.
+     *
+     * @param file the image file.
+     * @param coils the number of coils (digital outputs).
+     * @param discretes the number of discrete inputs (digital inputs).
+     * @param inputRegisters the number of input registers.
+     * @param registers the number of holding registers.
+     * @throws IOException if the file cannot be mapped, or an existing file
+     *             is no image file or has other table sizes.
+     * @throws UnsupportedOperationException if the platform lacks ordered
+     *             access to mapped memory, see {@link #isSupported()}.
+     */
+    public MappedProcessImage(File file, int coils, int discretes, int inputRegisters, int registers)
+            throws IOException {
+        boolean exists = file.exists() && file.length() > 0;
+        if (!exists && coils < 0) {
+            throw new IOException("No process image " + file);
+        }
+        m_File = file;
+        m_RandomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            if (exists) {
+                if (m_RandomAccessFile.length() < HEADER_SIZE || m_RandomAccessFile.readInt() != MAGIC) {
+                    throw new IOException("No process image " + file);
+                }
+                int version = m_RandomAccessFile.readInt();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported version " + version + " of process image " + file);
+                }
+                int[] counts = new int[4];
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] = m_RandomAccessFile.readInt();
+                }
+                if (coils >= 0 && (counts[0] != coils || counts[1] != discretes || counts[2] != inputRegisters
+                        || counts[3] != registers)) {
+                    throw new IOException("Process image " + file + " has other table sizes");
+                }
+                coils = counts[0];
+                discretes = counts[1];
+                inputRegisters = counts[2];
+                registers = counts[3];
+            } else if (coils < 0 || discretes < 0 || inputRegisters < 0 || registers < 0) {
+                throw new IllegalArgumentException("Illegal table size");
+            }
+            m_CoilCount = coils;
+            m_DiscreteCount = discretes;
+            m_InputRegisterCount = inputRegisters;
+            m_RegisterCount = registers;
+            m_CoilOffset = HEADER_SIZE;
+            m_DiscreteOffset = align(m_CoilOffset + (coils + 7) / 8);
+            m_InputRegisterOffset = align(m_DiscreteOffset + (discretes + 7) / 8);
+            m_RegisterOffset = align(m_InputRegisterOffset + 2 * inputRegisters);
+            int size = align(m_RegisterOffset + 2 * registers);
+
+            if (m_RandomAccessFile.length() < size) {
+                // new files are sparse, i.e. cleared
+                m_RandomAccessFile.setLength(size);
+            }
+            m_Buffer = m_RandomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            // page aligned, so that the counters are aligned to 8 bytes
+            m_CounterAddress = MappedMemory.address(m_Buffer) + SEQUENCE_OFFSET;
+            if (!exists) {
+                m_Buffer.putInt(4, VERSION);
+                m_Buffer.putInt(8, coils);
+                m_Buffer.putInt(12, discretes);
+                m_Buffer.putInt(16, inputRegisters);
+                m_Buffer.putInt(20, registers);
+                // the magic number last, marking the header complete
+                m_Buffer.putInt(0, MAGIC);
+            }
+        } catch (IOException | RuntimeException ex) {
+            m_RandomAccessFile.close();
+            throw ex;
+        }
+    }// constructor
+
+    /**
+     * Tests if mapped process images are supported on this platform, i.e.
+     * if the sequence counters can be accessed atomically and ordered.
+     *
+     * @return true if supported, false otherwise.
+     */
+    public static boolean isSupported() {
+        return MappedMemory.isAvailable();
+    }// isSupported
+
+    /**
+     * Returns the file of this <tt>MappedProcessImage</tt>.
+     *
+     * @return the image file.
+     */
+    public File getFile() {
+        return m_File;
+    }// getFile
+
+    /**
+     * Returns the sequence counter of a table, which is even while
+     * the table is not written, and incremented by two with every write.
+     *
+     * @param table one of {@link #COILS}, {@link #DISCRETE_INPUTS},
+     *            {@link #INPUT_REGISTERS} or {@link #REGISTERS}.
+     * @return the sequence counter.
+     */
+    public long getSequence(int table) {
+        if (table < COILS || table > REGISTERS) {
+            throw new IllegalArgumentException("Illegal table: " + table);
+        }
+        return MappedMemory.getLongVolatile(m_CounterAddress + 8 * table);
+    }// getSequence
+
+    /**
+     * Writes the values to the storage device.
+     */
+    public void force() {
+        m_Buffer.force();
+    }// force
+
+    /**
+     * Writes the values to the storage device and closes the file. The
+     * mapping is released when this image is garbage collected, the image
+     * must not be used anymore.
+     *
+     * @throws IOException if the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        m_Buffer.force();
+        m_RandomAccessFile.close();
+    }// close
+
+    /**
+     * Sets the state of a coil.
+     *
+     * @param ref the reference of the coil.
+     * @param b the state.
+     * @throws IllegalAddressException if the reference is invalid.
+     */
+    public void setCoil(int ref, boolean b) throws IllegalAddressException {
+        checkAddress(ref, 1, m_CoilCount);
+        setBit(COILS, m_CoilOffset, ref, b);
+    }// setCoil
+
+    /**
+     * Sets the state of a discrete input.
+     *
+     * @param ref the reference of the discrete input.
+     * @param b the state.
+     * @throws IllegalAddressException if the reference is invalid.
+     */
+    public void setDiscreteInput(int ref, boolean b) throws IllegalAddressException {
+        checkAddress(ref, 1, m_DiscreteCount);
+        setBit(DISCRETE_INPUTS, m_DiscreteOffset, ref, b);
+    }// setDiscreteInput
+
+    /**
+     * Sets the value of an input register.
+     *
+     * @param ref the reference of the input register.
+     * @param v the value, the lower 16 bits are used.
+     * @throws IllegalAddressException if the reference is invalid.
+     */
+    public void setInputRegister(int ref, int v) throws IllegalAddressException {
+        checkAddress(ref, 1, m_InputRegisterCount);
+        putRegister(INPUT_REGISTERS, m_InputRegisterOffset + 2 * ref, v);
+    }// setInputRegister
+
+    /**
+     * Sets the value of a register.
+     *
+     * @param ref the reference of the register.
+     * @param v the value, the lower 16 bits are used.
+     * @throws IllegalAddressException if the reference is invalid.
+     */
+    public void setRegister(int ref, int v) throws IllegalAddressException {
+        checkAddress(ref, 1, m_RegisterCount);
+        putRegister(REGISTERS, m_RegisterOffset + 2 * ref, v);
+    }// setRegister
+
+    @Override
+    public void setDigitalOut(int ref, DigitalOut _do) throws IllegalAddressException {
+        setCoil(ref, _do.isSet());
+    }// setDigitalOut
+
+    @Override
+    public void addDigitalOut(DigitalOut _do) {
+        throw new UnsupportedOperationException("Fixed size image");
+    }// addDigitalOut
+
+    @Override
+    public void removeDigitalOut(DigitalOut _do) {
+        throw new UnsupportedOperationException("Fixed size image");
+    }// removeDigitalOut
+
+    @Override
+    public void removeAllDigitalOuts() {
+        clear(COILS, m_CoilOffset, (m_CoilCount + 7) / 8);
+    }// removeAllDigitalOuts
+
+    @Override
+    public void setDigitalIn(int ref, DigitalIn di) throws IllegalAddressException {
+        setDiscreteInput(ref, di.isSet());
+    }// setDigitalIn
+
+    @Override
+    public void addDigitalIn(DigitalIn di) {
+        throw new UnsupportedOperationException("Fixed size image");
+    }// addDigitalIn
+
+    @Override
+    public void removeDigitalIn(DigitalIn di) {
+        throw new UnsupportedOperationException("Fixed size image");
+    }// removeDigitalIn
+
+    @Override
+    public void removeAllDigitalIn() {
+        clear(DISCRETE_INPUTS, m_DiscreteOffset, (m_DiscreteCount + 7) / 8);
+    }// removeAllDigitalIn
+
+    @Override
+    public void setInputRegister(int ref, InputRegister reg) throws IllegalAddressException {
+        setInputRegister(ref, reg.getValue());
+    }// setInputRegister
+
+    @Override
+    public void addInputRegister(InputRegister reg) {
+        throw new UnsupportedOperationException("Fixed size image");
+    }// addInputRegister
+
+    @Override
+    public void removeInputRegister(InputRegister reg) {
+        throw new UnsupportedOperationException("Fixed size image");
+    }// removeInputRegister
+
+    @Override
+    public void removeAllInputRegisters() {
+        clear(INPUT_REGISTERS, m_InputRegisterOffset, 2 * m_InputRegisterCount);
+    }// removeAllInputRegisters
+
+    @Override
+    public void setRegister(int ref, Register reg) throws IllegalAddressException {
+        setRegister(ref, reg.getValue());
+    }// setRegister
+
+    @Override
+    public void addRegister(Register reg) {
+        throw new UnsupportedOperationException("Fixed size image");
+    }// addRegister
+
+    @Override
+    public void removeRegister(Register reg) {
+        throw new UnsupportedOperationException("Fixed size image");
+    }// removeRegister
+
+    @Override
+    public void removeAllRegisters() {
+        clear(REGISTERS, m_RegisterOffset, 2 * m_RegisterCount);
+    }// removeAllRegisters
+
+    @Override
+    public DigitalOut[] getDigitalOutRange(int ref, int count) throws IllegalAddressException {
+        checkAddress(ref, count, m_CoilCount);
+        DigitalOut[] douts = new DigitalOut[count];
+        long seq;
+        do {
+            seq = beginRead(COILS);
+            for (int i = 0; i < count; i++) {
+                douts[i] = new BitView(COILS, m_CoilOffset, ref + i, true);
+            }
+        } while (!endRead(COILS, seq));
+        return douts;
+    }// getDigitalOutRange
+
+    @Override
+    public DigitalOut getDigitalOut(int ref) throws IllegalAddressException {
+        checkAddress(ref, 1, m_CoilCount);
+        return new BitView(COILS, m_CoilOffset, ref, false);
+    }// getDigitalOut
+
+    @Override
+    public int getDigitalOutCount() {
+        return m_CoilCount;
+    }// getDigitalOutCount
+
+    @Override
+    public DigitalIn[] getDigitalInRange(int ref, int count) throws IllegalAddressException {
+        checkAddress(ref, count, m_DiscreteCount);
+        DigitalIn[] dins = new DigitalIn[count];
+        long seq;
+        do {
+            seq = beginRead(DISCRETE_INPUTS);
+            for (int i = 0; i < count; i++) {
+                dins[i] = new BitView(DISCRETE_INPUTS, m_DiscreteOffset, ref + i, true);
+            }
+        } while (!endRead(DISCRETE_INPUTS, seq));
+        return dins;
+    }// getDigitalInRange
+
+    @Override
+    public DigitalIn getDigitalIn(int ref) throws IllegalAddressException {
+        checkAddress(ref, 1, m_DiscreteCount);
+        return new BitView(DISCRETE_INPUTS, m_DiscreteOffset, ref, false);
+    }// getDigitalIn
+
+    @Override
+    public int getDigitalInCount() {
+        return m_DiscreteCount;
+    }// getDigitalInCount
+
+    @Override
+    public InputRegister[] getInputRegisterRange(int ref, int count) throws IllegalAddressException {
+        checkAddress(ref, count, m_InputRegisterCount);
+        InputRegister[] iregs = new InputRegister[count];
+        long seq;
+        do {
+            seq = beginRead(INPUT_REGISTERS);
+            for (int i = 0; i < count; i++) {
+                iregs[i] = new RegisterView(INPUT_REGISTERS, m_InputRegisterOffset, ref + i, true);
+            }
+        } while (!endRead(INPUT_REGISTERS, seq));
+        return iregs;
+    }// getInputRegisterRange
+
+    @Override
+    public InputRegister getInputRegister(int ref) throws IllegalAddressException {
+        checkAddress(ref, 1, m_InputRegisterCount);
+        return new RegisterView(INPUT_REGISTERS, m_InputRegisterOffset, ref, false);
+    }// getInputRegister
+
+    @Override
+    public int getInputRegisterCount() {
+        return m_InputRegisterCount;
+    }// getInputRegisterCount
+
+    @Override
+    public Register[] getRegisterRange(int ref, int count) throws IllegalAddressException {
+        checkAddress(ref, count, m_RegisterCount);
+        Register[] regs = new Register[count];
+        long seq;
+        do {
+            seq = beginRead(REGISTERS);
+            for (int i = 0; i < count; i++) {
+                regs[i] = new RegisterView(REGISTERS, m_RegisterOffset, ref + i, true);
+            }
+        } while (!endRead(REGISTERS, seq));
+        return regs;
+    }// getRegisterRange
+
+    @Override
+    public Register getRegister(int ref) throws IllegalAddressException {
+        checkAddress(ref, 1, m_RegisterCount);
+        return new RegisterView(REGISTERS, m_RegisterOffset, ref, false);
+    }// getRegister
+
+    @Override
+    public int getRegisterCount() {
+        return m_RegisterCount;
+    }// getRegisterCount
+
+    private boolean getBit(int offset, int ref) {
+        return (m_Buffer.get(offset + (ref >>> 3)) & (1 << (ref & 7))) != 0;
+    }// getBit
+
+    private void setBit(int table, int offset, int ref, boolean b) {
+        int index = offset + (ref >>> 3);
+        int mask = 1 << (ref & 7);
+        synchronized (m_Buffer) {
+            long seq = beginWrite(table);
+            int v = m_Buffer.get(index);
+            m_Buffer.put(index, (byte) (b ? v | mask : v & ~mask));
+            endWrite(table, seq);
+        }
+    }// setBit
+
+    private void putRegister(int table, int index, int v) {
+        synchronized (m_Buffer) {
+            long seq = beginWrite(table);
+            m_Buffer.putShort(index, (short) v);
+            endWrite(table, seq);
+        }
+    }// putRegister
+
+    private void clear(int table, int offset, int length) {
+        synchronized (m_Buffer) {
+            long seq = beginWrite(table);
+            for (int i = 0; i < length; i++) {
+                m_Buffer.put(offset + i, (byte) 0);
+            }
+            endWrite(table, seq);
+        }
+    }// clear
+
+    private long beginWrite(int table) {
+        long address = m_CounterAddress + 8 * table;
+        long current;
+        long seq;
+        do {
+            current = MappedMemory.getLongVolatile(address);
+            // an odd counter left by a writer that died is taken as even
+            seq = current & ~1L;
+            // a full fence, the values are not written before the counter is odd
+        } while (!MappedMemory.compareAndSwapLong(address, current, seq + 1));
+        return seq;
+    }// beginWrite
+
+    private void endWrite(int table, long seq) {
+        // ordered after the values written
+        MappedMemory.putOrderedLong(m_CounterAddress + 8 * table, seq + 2);
+    }// endWrite
+
+    private long beginRead(int table) {
+        long address = m_CounterAddress + 8 * table;
+        for (int i = 0; i < MAX_READ_RETRIES; i++) {
+            // the values are not read before the counter
+            long seq = MappedMemory.getLongVolatile(address);
+            if ((seq & 1) == 0) {
+                return seq;
+            }
+            Thread.yield();
+        }
+        // the writer died during a write, read what is there
+        return MappedMemory.getLongVolatile(address);
+    }// beginRead
+
+    private boolean endRead(int table, long seq) {
+        // a compare-and-swap of the same value is a full fence, the values are read
+        // before the counter is compared (a volatile read would not ensure that)
+        return MappedMemory.compareAndSwapLong(m_CounterAddress + 8 * table, seq, seq) || (seq & 1) != 0;
+    }// endRead
+
+    private static int align(int offset) {
+        return (offset + 7) & ~7;
+    }// align
+
+    private static void checkAddress(int ref, int count, int size) throws IllegalAddressException {
+        if (ref < 0 || count < 0 || ref + count > size) {
+            throw new IllegalAddressException();
+        }
+    }// checkAddress
+
+    /**
+     * Class implementing a view on a register or an input register.
+     * A bound view holds the value read with its range until it is written.
+     */
+    private final class RegisterView implements Register {
+
+        private final int m_Table;
+        private final int m_Index;
+        private volatile boolean m_Bound;
+        private final short m_Value;
+
+        private RegisterView(int table, int offset, int ref, boolean bound) {
+            m_Table = table;
+            m_Index = offset + 2 * ref;
+            m_Bound = bound;
+            m_Value = bound ? m_Buffer.getShort(m_Index) : 0;
+        }// constructor
+
+        @Override
+        public int getValue() {
+            return toShort() & 0xffff;
+        }// getValue
+
+        @Override
+        public int toUnsignedShort() {
+            return getValue();
+        }// toUnsignedShort
+
+        @Override
+        public short toShort() {
+            return m_Bound ? m_Value : m_Buffer.getShort(m_Index);
+        }// toShort
+
+        @Override
+        public byte[] toBytes() {
+            int v = getValue();
+            return new byte[] { (byte) (v >> 8), (byte) v };
+        }// toBytes
+
+        @Override
+        public void setValue(int v) {
+            putRegister(m_Table, m_Index, v);
+            // read the mapped region from now on
+            m_Bound = false;
+        }// setValue
+
+        @Override
+        public void setValue(short s) {
+            setValue((int) s);
+        }// setValue
+
+        @Override
+        public void setValue(byte[] bytes) {
+            if (bytes.length < 2) {
+                throw new IllegalArgumentException();
+            }
+            setValue((bytes[0] & 0xff) << 8 | (bytes[1] & 0xff));
+        }// setValue
+
+    }// class RegisterView
+
+    /**
+     * Class implementing a view on a coil or a discrete input.
+     * A bound view holds the state read with its range until it is written.
+     */
+    private final class BitView implements DigitalOut, DigitalIn {
+
+        private final int m_Table;
+        private final int m_Offset;
+        private final int m_Ref;
+        private volatile boolean m_Bound;
+        private final boolean m_Value;
+
+        private BitView(int table, int offset, int ref, boolean bound) {
+            m_Table = table;
+            m_Offset = offset;
+            m_Ref = ref;
+            m_Bound = bound;
+            m_Value = bound && getBit(offset, ref);
+        }// constructor
+
+        @Override
+        public boolean isSet() {
+            return m_Bound ? m_Value : getBit(m_Offset, m_Ref);
+        }// isSet
+
+        @Override
+        public void set(boolean b) {
+            setBit(m_Table, m_Offset, m_Ref, b);
+            // read the mapped region from now on
+            m_Bound = false;
+        }// set
+
+    }// class BitView
+
+}// class MappedProcessImage
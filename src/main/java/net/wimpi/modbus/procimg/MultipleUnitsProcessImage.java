@@ -11,6 +11,7 @@ import java.util.Set;
  */
 public class MultipleUnitsProcessImage implements ProcessImageImplementation {
     protected Map<Integer, ProcessImageImplementation> units = new HashMap<>();
+    private final Map<Integer, ProcessImage> readOnlyUnits = new HashMap<>();
     private int unit = 0;
 
     public MultipleUnitsProcessImage(Set<Integer> units) {
@@ -20,73 +21,105 @@ public class MultipleUnitsProcessImage implements ProcessImageImplementation {
         }
     }
 
+    /**
+     * Creates a process image serving the given per-unit images, e.g.
+     * {@link SparseProcessImage}s for units with fragmented address spaces or
+     * {@link SnapshotProcessImage}s. Units whose image is no {@link ProcessImageImplementation}
+     * are only read through this image, their elements can not be set or added here.
+     * @param units the process images by unit id
+     */
+    public MultipleUnitsProcessImage(Map<Integer, ? extends ProcessImage> units) {
+        if (units.size() == 0) throw new IllegalStateException("The constructor parameter can not be empty!");
+        for (Map.Entry<Integer, ? extends ProcessImage> entry : units.entrySet()) {
+            if (entry.getValue() instanceof ProcessImageImplementation) {
+                this.units.put(entry.getKey(), (ProcessImageImplementation) entry.getValue());
+            } else {
+                readOnlyUnits.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
     public void setCurrentUnit(int unit) {
-        if (units.containsKey(unit)) this.unit = unit;
+        if (units.containsKey(unit) || readOnlyUnits.containsKey(unit)) this.unit = unit;
         else throw new UnitNotFoundException(String.format("Unit [%s] not found!", unit));
     }
 
+    /**
+     * Returns the process image of a unit, e.g. to access it without
+     * selecting the current unit.
+     * @param unit the unit id
+     * @return the process image of the unit
+     */
+    public ProcessImage getUnitProcessImage(int unit) {
+        ProcessImage image = units.get(unit);
+        if (image == null) image = readOnlyUnits.get(unit);
+        if (image == null) throw new UnitNotFoundException(String.format("Unit [%s] not found!", unit));
+        return image;
+    }
+
     public void setLocked(boolean locked) {
-        ((SimpleProcessImage)getCurrentProcessImage()).setLocked(locked);
+        ProcessImage image = getUnitProcessImage(unit);
+        if (image instanceof SimpleProcessImage) ((SimpleProcessImage) image).setLocked(locked);
     }
 
     @Override
     public DigitalOut[] getDigitalOutRange(int offset, int count) throws IllegalAddressException {
-        return getCurrentProcessImage().getDigitalOutRange(offset, count);
+        return getUnitProcessImage(unit).getDigitalOutRange(offset, count);
     }
 
     @Override
     public DigitalOut getDigitalOut(int ref) throws IllegalAddressException {
-        return getCurrentProcessImage().getDigitalOut(ref);
+        return getUnitProcessImage(unit).getDigitalOut(ref);
     }
 
     @Override
     public int getDigitalOutCount() {
-        return getCurrentProcessImage().getDigitalOutCount();
+        return getUnitProcessImage(unit).getDigitalOutCount();
     }
 
     @Override
     public DigitalIn[] getDigitalInRange(int offset, int count) throws IllegalAddressException {
-        return getCurrentProcessImage().getDigitalInRange(offset, count);
+        return getUnitProcessImage(unit).getDigitalInRange(offset, count);
     }
 
     @Override
     public DigitalIn getDigitalIn(int ref) throws IllegalAddressException {
-        return getCurrentProcessImage().getDigitalIn(ref);
+        return getUnitProcessImage(unit).getDigitalIn(ref);
     }
 
     @Override
     public int getDigitalInCount() {
-        return getCurrentProcessImage().getDigitalInCount();
+        return getUnitProcessImage(unit).getDigitalInCount();
     }
 
     @Override
     public InputRegister[] getInputRegisterRange(int offset, int count) throws IllegalAddressException {
-        return getCurrentProcessImage().getInputRegisterRange(offset, count);
+        return getUnitProcessImage(unit).getInputRegisterRange(offset, count);
     }
 
     @Override
     public InputRegister getInputRegister(int ref) throws IllegalAddressException {
-        return getCurrentProcessImage().getInputRegister(ref);
+        return getUnitProcessImage(unit).getInputRegister(ref);
     }
 
     @Override
     public int getInputRegisterCount() {
-        return getCurrentProcessImage().getInputRegisterCount();
+        return getUnitProcessImage(unit).getInputRegisterCount();
     }
 
     @Override
     public Register[] getRegisterRange(int offset, int count) throws IllegalAddressException {
-        return getCurrentProcessImage().getRegisterRange(offset, count);
+        return getUnitProcessImage(unit).getRegisterRange(offset, count);
     }
 
     @Override
     public Register getRegister(int ref) throws IllegalAddressException {
-        return getCurrentProcessImage().getRegister(ref);
+        return getUnitProcessImage(unit).getRegister(ref);
     }
 
     @Override
     public int getRegisterCount() {
-        return getCurrentProcessImage().getRegisterCount();
+        return getUnitProcessImage(unit).getRegisterCount();
     }
 
     @Override
@@ -170,6 +203,9 @@ public class MultipleUnitsProcessImage implements ProcessImageImplementation {
     }
 
     private ProcessImageImplementation getCurrentProcessImage() {
+        if (!units.containsKey(unit) && readOnlyUnits.containsKey(unit)) {
+            throw new UnsupportedOperationException(String.format("Unit [%s] can not be modified here!", unit));
+        }
         return units.get(unit);
     }
 
@@ -42,9 +42,11 @@ public class ObservableRegister extends Observable implements Register {
     }// toUnsignedShort
 
     @Override
-    public final synchronized void setValue(int v) {
-        m_Register[0] = (byte) (0xff & (v >> 8));
-        m_Register[1] = (byte) (0xff & v);
+    public final void setValue(int v) {
+        synchronized (this) {
+            m_Register[0] = (byte) (0xff & (v >> 8));
+            m_Register[1] = (byte) (0xff & v);
+        }
         notifyObservers("value");
     }// setValue
 
@@ -54,19 +56,23 @@ public class ObservableRegister extends Observable implements Register {
     }// toShort
 
     @Override
-    public final synchronized void setValue(short s) {
-        m_Register[0] = (byte) (0xff & (s >> 8));
-        m_Register[1] = (byte) (0xff & s);
+    public final void setValue(short s) {
+        synchronized (this) {
+            m_Register[0] = (byte) (0xff & (s >> 8));
+            m_Register[1] = (byte) (0xff & s);
+        }
         notifyObservers("value");
     }// setValue
 
     @Override
-    public final synchronized void setValue(byte[] bytes) {
+    public final void setValue(byte[] bytes) {
         if (bytes.length < 2) {
             throw new IllegalArgumentException();
         } else {
-            m_Register[0] = bytes[0];
-            m_Register[1] = bytes[1];
+            synchronized (this) {
+                m_Register[0] = bytes[0];
+                m_Register[1] = bytes[1];
+            }
             notifyObservers("value");
         }
     }// setValue
@@ -0,0 +1,508 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.procimg;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.wimpi.modbus.util.LongBitVector;
+
+/**
+ * Class implementing a copy-on-write process image with a fixed
+ * number of coils, discrete inputs, input registers and registers.
+ * <p>
+ * The content of the image is held in immutable snapshots. Writers
+ * copy the tables they modify and publish a new snapshot atomically,
+ * readers never take a lock. The elements returned by the
+ * <tt>get...Range()</tt> methods are bound to the snapshot current at
+ * the time of the call, so that a range (e.g. a 32-bit value spread
+ * over two registers) is always read consistently; elements returned
+ * by the single element getters always read the latest snapshot.
+ * <p>
+ * Writes enclosed in {@link #begin()} and {@link #commit()}, or
+ * executed by {@link #transaction(Runnable)}, are published together.
+ * Writes outside a transaction are published one by one, which copies
+ * the written table each time; bursts should therefore be written in
+ * a transaction. Writers are serialized, and the writes of an open
+ * transaction become visible on commit only, also to the writing thread.
+ *
+ * @version @version@ (@date@)
+ */
+public class SnapshotProcessImage implements TransactionalProcessImage {
+
+    // instance attributes
+    private final ReentrantLock m_WriteLock = new ReentrantLock();
+    private final ThreadLocal<Snapshot> m_Working = new ThreadLocal<>();
+    private volatile Snapshot m_Current;
+
+    /**
+     * Constructs a new <tt>SnapshotProcessImage</tt> instance
+     * with all elements cleared.
+     *
+     * @param coils the number of coils (digital outputs).
+     * @param discretes the number of discrete inputs (digital inputs).
+     * @param inputRegisters the number of input registers.
+     * @param registers the number of holding registers.
+     */
+    public SnapshotProcessImage(int coils, int discretes, int inputRegisters, int registers) {
+        m_Current = new Snapshot(new LongBitVector(coils), new LongBitVector(discretes),
+                new short[inputRegisters], new short[registers]);
+    }// constructor
+
+    /**
+     * Returns the epoch of the current snapshot, which is
+     * incremented with every publication.
+     *
+     * @return the epoch as <tt>long</tt>.
+     */
+    public long getEpoch() {
+        return m_Current.m_Epoch;
+    }// getEpoch
+
+    /**
+     * Begins a transaction in the calling thread. The writes of the
+     * calling thread are collected until {@link #commit()} publishes them,
+     * other writers wait meanwhile.
+     *
+     * @throws IllegalStateException if a transaction is already open.
+     */
+    @Override
+    public void begin() throws IllegalStateException {
+        if (m_Working.get() != null) {
+            throw new IllegalStateException("Transaction already open");
+        }
+        m_WriteLock.lock();
+        m_Working.set(new Snapshot(m_Current));
+    }// begin
+
+    /**
+     * Publishes the writes of the transaction of the calling thread.
+     *
+     * @throws IllegalStateException if no transaction is open.
+     */
+    @Override
+    public void commit() throws IllegalStateException {
+        Snapshot working = m_Working.get();
+        if (working == null) {
+            throw new IllegalStateException("No transaction open");
+        }
+        try {
+            publish(working);
+        } finally {
+            m_Working.remove();
+            m_WriteLock.unlock();
+        }
+    }// commit
+
+    /**
+     * Discards the writes of the transaction of the calling thread.
+     * Does nothing if no transaction is open, so that it can be called
+     * in a <tt>finally</tt> block after {@link #commit()}.
+     */
+    @Override
+    public void rollback() {
+        if (m_Working.get() != null) {
+            m_Working.remove();
+            m_WriteLock.unlock();
+        }
+    }// rollback
+
+    /**
+     * Executes the given writes as one transaction. The writes are
+     * discarded if the <tt>Runnable</tt> throws.
+     *
+     * @param writes a <tt>Runnable</tt> performing the writes.
+     */
+    @Override
+    public void transaction(Runnable writes) {
+        begin();
+        try {
+            writes.run();
+            commit();
+        } finally {
+            rollback();
+        }
+    }// transaction
+
+    /**
+     * Sets the state of a coil.
+     *
+     * @param ref the reference of the coil.
+     * @param b the state to be set.
+     * @throws IllegalAddressException if the reference is invalid.
+     */
+    public void setCoil(int ref, boolean b) throws IllegalAddressException {
+        Snapshot s = beginWrite();
+        try {
+            checkAddress(ref, 1, s.m_Coils.size());
+            s.coils().setBit(ref, b);
+        } finally {
+            endWrite(s);
+        }
+    }// setCoil
+
+    /**
+     * Sets the state of a discrete input.
+     *
+     * @param ref the reference of the discrete input.
+     * @param b the state to be set.
+     * @throws IllegalAddressException if the reference is invalid.
+     */
+    public void setDiscreteInput(int ref, boolean b) throws IllegalAddressException {
+        Snapshot s = beginWrite();
+        try {
+            checkAddress(ref, 1, s.m_Discretes.size());
+            s.discretes().setBit(ref, b);
+        } finally {
+            endWrite(s);
+        }
+    }// setDiscreteInput
+
+    /**
+     * Sets the value of an input register.
+     *
+     * @param ref the reference of the input register.
+     * @param v the value to be set, as unsigned short.
+     * @throws IllegalAddressException if the reference is invalid.
+     */
+    public void setInputRegister(int ref, int v) throws IllegalAddressException {
+        Snapshot s = beginWrite();
+        try {
+            checkAddress(ref, 1, s.m_InputRegisters.length);
+            s.inputRegisters()[ref] = (short) v;
+        } finally {
+            endWrite(s);
+        }
+    }// setInputRegister
+
+    /**
+     * Sets the value of a holding register.
+     *
+     * @param ref the reference of the register.
+     * @param v the value to be set, as unsigned short.
+     * @throws IllegalAddressException if the reference is invalid.
+     */
+    public void setRegister(int ref, int v) throws IllegalAddressException {
+        Snapshot s = beginWrite();
+        try {
+            checkAddress(ref, 1, s.m_Registers.length);
+            s.registers()[ref] = (short) v;
+        } finally {
+            endWrite(s);
+        }
+    }// setRegister
+
+    @Override
+    public DigitalOut[] getDigitalOutRange(int ref, int count) throws IllegalAddressException {
+        Snapshot s = m_Current;
+        checkAddress(ref, count, s.m_Coils.size());
+        DigitalOut[] douts = new DigitalOut[count];
+        for (int i = 0; i < count; i++) {
+            douts[i] = new BitView(ref + i, false, s);
+        }
+        return douts;
+    }// getDigitalOutRange
+
+    @Override
+    public DigitalOut getDigitalOut(int ref) throws IllegalAddressException {
+        checkAddress(ref, 1, m_Current.m_Coils.size());
+        return new BitView(ref, false, null);
+    }// getDigitalOut
+
+    @Override
+    public int getDigitalOutCount() {
+        return m_Current.m_Coils.size();
+    }// getDigitalOutCount
+
+    @Override
+    public DigitalIn[] getDigitalInRange(int ref, int count) throws IllegalAddressException {
+        Snapshot s = m_Current;
+        checkAddress(ref, count, s.m_Discretes.size());
+        DigitalIn[] dins = new DigitalIn[count];
+        for (int i = 0; i < count; i++) {
+            dins[i] = new BitView(ref + i, true, s);
+        }
+        return dins;
+    }// getDigitalInRange
+
+    @Override
+    public DigitalIn getDigitalIn(int ref) throws IllegalAddressException {
+        checkAddress(ref, 1, m_Current.m_Discretes.size());
+        return new BitView(ref, true, null);
+    }// getDigitalIn
+
+    @Override
+    public int getDigitalInCount() {
+        return m_Current.m_Discretes.size();
+    }// getDigitalInCount
+
+    @Override
+    public InputRegister[] getInputRegisterRange(int ref, int count) throws IllegalAddressException {
+        Snapshot s = m_Current;
+        checkAddress(ref, count, s.m_InputRegisters.length);
+        InputRegister[] iregs = new InputRegister[count];
+        for (int i = 0; i < count; i++) {
+            iregs[i] = new RegisterView(ref + i, true, s);
+        }
+        return iregs;
+    }// getInputRegisterRange
+
+    @Override
+    public InputRegister getInputRegister(int ref) throws IllegalAddressException {
+        checkAddress(ref, 1, m_Current.m_InputRegisters.length);
+        return new RegisterView(ref, true, null);
+    }// getInputRegister
+
+    @Override
+    public int getInputRegisterCount() {
+        return m_Current.m_InputRegisters.length;
+    }// getInputRegisterCount
+
+    @Override
+    public Register[] getRegisterRange(int ref, int count) throws IllegalAddressException {
+        Snapshot s = m_Current;
+        checkAddress(ref, count, s.m_Registers.length);
+        Register[] regs = new Register[count];
+        for (int i = 0; i < count; i++) {
+            regs[i] = new RegisterView(ref + i, false, s);
+        }
+        return regs;
+    }// getRegisterRange
+
+    @Override
+    public Register getRegister(int ref) throws IllegalAddressException {
+        checkAddress(ref, 1, m_Current.m_Registers.length);
+        return new RegisterView(ref, false, null);
+    }// getRegister
+
+    @Override
+    public int getRegisterCount() {
+        return m_Current.m_Registers.length;
+    }// getRegisterCount
+
+    private Snapshot beginWrite() {
+        Snapshot working = m_Working.get();
+        if (working != null) {
+            return working;
+        }
+        m_WriteLock.lock();
+        return new Snapshot(m_Current);
+    }// beginWrite
+
+    private void endWrite(Snapshot s) {
+        if (m_Working.get() == s) {
+            // published on commit
+            return;
+        }
+        try {
+            publish(s);
+        } finally {
+            m_WriteLock.unlock();
+        }
+    }// endWrite
+
+    private void publish(Snapshot s) {
+        if (s.isModified()) {
+            s.m_Epoch = m_Current.m_Epoch + 1;
+            m_Current = s;
+        }
+    }// publish
+
+    private static void checkAddress(int ref, int count, int size) throws IllegalAddressException {
+        if (ref < 0 || count < 0 || ref + count > size) {
+            throw new IllegalAddressException();
+        }
+    }// checkAddress
+
+    /**
+     * Class holding the tables of the image. A working copy shares
+     * the tables of its base until they are first written.
+     */
+    private static final class Snapshot {
+
+        private LongBitVector m_Coils;
+        private LongBitVector m_Discretes;
+        private short[] m_InputRegisters;
+        private short[] m_Registers;
+        private long m_Epoch;
+        private int m_Copied;
+
+        private static final int COILS = 1;
+        private static final int DISCRETES = 2;
+        private static final int INPUT_REGISTERS = 4;
+        private static final int REGISTERS = 8;
+
+        private Snapshot(LongBitVector coils, LongBitVector discretes, short[] iregs, short[] regs) {
+            m_Coils = coils;
+            m_Discretes = discretes;
+            m_InputRegisters = iregs;
+            m_Registers = regs;
+        }// constructor
+
+        private Snapshot(Snapshot base) {
+            this(base.m_Coils, base.m_Discretes, base.m_InputRegisters, base.m_Registers);
+            m_Epoch = base.m_Epoch;
+        }// constructor
+
+        private boolean isModified() {
+            return m_Copied != 0;
+        }// isModified
+
+        private LongBitVector coils() {
+            if ((m_Copied & COILS) == 0) {
+                m_Coils = copy(m_Coils);
+                m_Copied |= COILS;
+            }
+            return m_Coils;
+        }// coils
+
+        private LongBitVector discretes() {
+            if ((m_Copied & DISCRETES) == 0) {
+                m_Discretes = copy(m_Discretes);
+                m_Copied |= DISCRETES;
+            }
+            return m_Discretes;
+        }// discretes
+
+        private short[] inputRegisters() {
+            if ((m_Copied & INPUT_REGISTERS) == 0) {
+                m_InputRegisters = m_InputRegisters.clone();
+                m_Copied |= INPUT_REGISTERS;
+            }
+            return m_InputRegisters;
+        }// inputRegisters
+
+        private short[] registers() {
+            if ((m_Copied & REGISTERS) == 0) {
+                m_Registers = m_Registers.clone();
+                m_Copied |= REGISTERS;
+            }
+            return m_Registers;
+        }// registers
+
+        private static LongBitVector copy(LongBitVector bits) {
+            LongBitVector copy = new LongBitVector(bits.size());
+            copy.copyFrom(bits);
+            return copy;
+        }// copy
+
+    }// class Snapshot
+
+    /**
+     * Class implementing a view on a register or an input register.
+     * A view without snapshot reads the latest one.
+     */
+    private final class RegisterView implements Register {
+
+        private final int m_Ref;
+        private final boolean m_Input;
+        private volatile Snapshot m_Snapshot;
+
+        private RegisterView(int ref, boolean input, Snapshot s) {
+            m_Ref = ref;
+            m_Input = input;
+            m_Snapshot = s;
+        }// constructor
+
+        @Override
+        public int getValue() {
+            Snapshot s = m_Snapshot;
+            if (s == null) {
+                s = m_Current;
+            }
+            return (m_Input ? s.m_InputRegisters[m_Ref] : s.m_Registers[m_Ref]) & 0xffff;
+        }// getValue
+
+        @Override
+        public int toUnsignedShort() {
+            return getValue();
+        }// toUnsignedShort
+
+        @Override
+        public short toShort() {
+            return (short) getValue();
+        }// toShort
+
+        @Override
+        public byte[] toBytes() {
+            int v = getValue();
+            return new byte[] { (byte) (v >> 8), (byte) v };
+        }// toBytes
+
+        @Override
+        public void setValue(int v) {
+            if (m_Input) {
+                setInputRegister(m_Ref, v);
+            } else {
+                setRegister(m_Ref, v);
+            }
+            // read the latest snapshot from now on
+            m_Snapshot = null;
+        }// setValue
+
+        @Override
+        public void setValue(short s) {
+            setValue((int) s);
+        }// setValue
+
+        @Override
+        public void setValue(byte[] bytes) {
+            if (bytes.length < 2) {
+                throw new IllegalArgumentException();
+            }
+            setValue((bytes[0] & 0xff) << 8 | (bytes[1] & 0xff));
+        }// setValue
+
+    }// class RegisterView
+
+    /**
+     * Class implementing a view on a coil or a discrete input.
+     * A view without snapshot reads the latest one.
+     */
+    private final class BitView implements DigitalOut, DigitalIn {
+
+        private final int m_Ref;
+        private final boolean m_Input;
+        private volatile Snapshot m_Snapshot;
+
+        private BitView(int ref, boolean input, Snapshot s) {
+            m_Ref = ref;
+            m_Input = input;
+            m_Snapshot = s;
+        }// constructor
+
+        @Override
+        public boolean isSet() {
+            Snapshot s = m_Snapshot;
+            if (s == null) {
+                s = m_Current;
+            }
+            return m_Input ? s.m_Discretes.getBit(m_Ref) : s.m_Coils.getBit(m_Ref);
+        }// isSet
+
+        @Override
+        public void set(boolean b) {
+            if (m_Input) {
+                setDiscreteInput(m_Ref, b);
+            } else {
+                setCoil(m_Ref, b);
+            }
+            // read the latest snapshot from now on
+            m_Snapshot = null;
+        }// set
+
+    }// class BitView
+
+}// class SnapshotProcessImage
@@ -0,0 +1,359 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.procimg;
+
+import java.util.Arrays;
+
+/**
+ * Class implementing a process image for sparse address spaces.
+ * <p>
+ * Only populated references are stored: each table holds runs of
+ * adjacent elements, indexed by their start reference in a sorted array,
+ * so that an element or a range is found in <tt>O(log n)</tt> of the number
+ * of runs. A range must lie within populated references; a request touching
+ * a hole is answered with an <tt>illegal address</tt> exception. Memory
+ * scales with the number of populated references, not with the highest one.
+ * <p>
+ * Elements are placed with the <tt>set...(int, element)</tt> methods at any
+ * reference; the <tt>add...(element)</tt> methods place them after the
+ * highest populated reference of their table. The <tt>get...Count()</tt>
+ * methods return the number of populated references.
+ *
+ * @version @version@ (@date@)
+ */
+public class SparseProcessImage implements ProcessImageImplementation {
+
+    // instance attributes
+    private final Table m_DigitalInputs = new Table();
+    private final Table m_DigitalOutputs = new Table();
+    private final Table m_InputRegisters = new Table();
+    private final Table m_Registers = new Table();
+
+    /**
+     * Returns the number of runs of adjacent registers, e.g. to
+     * check the fragmentation of the register table.
+     *
+     * @return the number of runs.
+     */
+    public synchronized int getRegisterRunCount() {
+        return m_Registers.m_Count;
+    }// getRegisterRunCount
+
+    @Override
+    public synchronized void setDigitalOut(int ref, DigitalOut _do) throws IllegalAddressException {
+        m_DigitalOutputs.set(ref, _do);
+    }// setDigitalOut
+
+    @Override
+    public synchronized void addDigitalOut(DigitalOut _do) {
+        m_DigitalOutputs.set(m_DigitalOutputs.end(), _do);
+    }// addDigitalOut
+
+    @Override
+    public synchronized void removeDigitalOut(DigitalOut _do) {
+        m_DigitalOutputs.remove(_do);
+    }// removeDigitalOut
+
+    @Override
+    public synchronized void removeAllDigitalOuts() {
+        m_DigitalOutputs.clear();
+    }// removeAllDigitalOuts
+
+    @Override
+    public synchronized DigitalOut[] getDigitalOutRange(int ref, int count) throws IllegalAddressException {
+        DigitalOut[] douts = new DigitalOut[count];
+        m_DigitalOutputs.getRange(ref, douts);
+        return douts;
+    }// getDigitalOutRange
+
+    @Override
+    public synchronized DigitalOut getDigitalOut(int ref) throws IllegalAddressException {
+        return (DigitalOut) m_DigitalOutputs.get(ref);
+    }// getDigitalOut
+
+    @Override
+    public synchronized int getDigitalOutCount() {
+        return m_DigitalOutputs.m_Size;
+    }// getDigitalOutCount
+
+    @Override
+    public synchronized void setDigitalIn(int ref, DigitalIn di) throws IllegalAddressException {
+        m_DigitalInputs.set(ref, di);
+    }// setDigitalIn
+
+    @Override
+    public synchronized void addDigitalIn(DigitalIn di) {
+        m_DigitalInputs.set(m_DigitalInputs.end(), di);
+    }// addDigitalIn
+
+    @Override
+    public synchronized void removeDigitalIn(DigitalIn di) {
+        m_DigitalInputs.remove(di);
+    }// removeDigitalIn
+
+    @Override
+    public synchronized void removeAllDigitalIn() {
+        m_DigitalInputs.clear();
+    }// removeAllDigitalIn
+
+    @Override
+    public synchronized DigitalIn[] getDigitalInRange(int ref, int count) throws IllegalAddressException {
+        DigitalIn[] dins = new DigitalIn[count];
+        m_DigitalInputs.getRange(ref, dins);
+        return dins;
+    }// getDigitalInRange
+
+    @Override
+    public synchronized DigitalIn getDigitalIn(int ref) throws IllegalAddressException {
+        return (DigitalIn) m_DigitalInputs.get(ref);
+    }// getDigitalIn
+
+    @Override
+    public synchronized int getDigitalInCount() {
+        return m_DigitalInputs.m_Size;
+    }// getDigitalInCount
+
+    @Override
+    public synchronized void setInputRegister(int ref, InputRegister reg) throws IllegalAddressException {
+        m_InputRegisters.set(ref, reg);
+    }// setInputRegister
+
+    @Override
+    public synchronized void addInputRegister(InputRegister reg) {
+        m_InputRegisters.set(m_InputRegisters.end(), reg);
+    }// addInputRegister
+
+    @Override
+    public synchronized void removeInputRegister(InputRegister reg) {
+        m_InputRegisters.remove(reg);
+    }// removeInputRegister
+
+    @Override
+    public synchronized void removeAllInputRegisters() {
+        m_InputRegisters.clear();
+    }// removeAllInputRegisters
+
+    @Override
+    public synchronized InputRegister[] getInputRegisterRange(int ref, int count) throws IllegalAddressException {
+        InputRegister[] iregs = new InputRegister[count];
+        m_InputRegisters.getRange(ref, iregs);
+        return iregs;
+    }// getInputRegisterRange
+
+    @Override
+    public synchronized InputRegister getInputRegister(int ref) throws IllegalAddressException {
+        return (InputRegister) m_InputRegisters.get(ref);
+    }// getInputRegister
+
+    @Override
+    public synchronized int getInputRegisterCount() {
+        return m_InputRegisters.m_Size;
+    }// getInputRegisterCount
+
+    @Override
+    public synchronized void setRegister(int ref, Register reg) throws IllegalAddressException {
+        m_Registers.set(ref, reg);
+    }// setRegister
+
+    @Override
+    public synchronized void addRegister(Register reg) {
+        m_Registers.set(m_Registers.end(), reg);
+    }// addRegister
+
+    @Override
+    public synchronized void removeRegister(Register reg) {
+        m_Registers.remove(reg);
+    }// removeRegister
+
+    @Override
+    public synchronized void removeAllRegisters() {
+        m_Registers.clear();
+    }// removeAllRegisters
+
+    @Override
+    public synchronized Register[] getRegisterRange(int ref, int count) throws IllegalAddressException {
+        Register[] regs = new Register[count];
+        m_Registers.getRange(ref, regs);
+        return regs;
+    }// getRegisterRange
+
+    @Override
+    public synchronized Register getRegister(int ref) throws IllegalAddressException {
+        return (Register) m_Registers.get(ref);
+    }// getRegister
+
+    @Override
+    public synchronized int getRegisterCount() {
+        return m_Registers.m_Size;
+    }// getRegisterCount
+
+    /**
+     * Class implementing a table of runs of adjacent elements, sorted by
+     * their start references. Runs never touch: adjacent elements are
+     * always held in the same run.
+     */
+    private static final class Table {
+
+        private int[] m_Starts = new int[4];
+        private Object[][] m_Runs = new Object[4][];
+        private int[] m_Lengths = new int[4];
+        private int m_Count; // number of runs
+        private int m_Size; // number of elements
+
+        /**
+         * Returns the index of the run starting at or below the
+         * reference, or <tt>-1</tt>.
+         */
+        private int floor(int ref) {
+            int i = Arrays.binarySearch(m_Starts, 0, m_Count, ref);
+            return i >= 0 ? i : -i - 2;
+        }// floor
+
+        private Object get(int ref) throws IllegalAddressException {
+            int i = floor(ref);
+            if (i < 0 || ref >= m_Starts[i] + m_Lengths[i]) {
+                throw new IllegalAddressException();
+            }
+            return m_Runs[i][ref - m_Starts[i]];
+        }// get
+
+        private void getRange(int ref, Object[] dest) throws IllegalAddressException {
+            int i = floor(ref);
+            if (ref < 0 || i < 0 || ref + dest.length > m_Starts[i] + m_Lengths[i]) {
+                throw new IllegalAddressException();
+            }
+            System.arraycopy(m_Runs[i], ref - m_Starts[i], dest, 0, dest.length);
+        }// getRange
+
+        private int end() {
+            return m_Count == 0 ? 0 : m_Starts[m_Count - 1] + m_Lengths[m_Count - 1];
+        }// end
+
+        private void set(int ref, Object element) throws IllegalAddressException {
+            if (ref < 0 || ref > 0xFFFF) {
+                throw new IllegalAddressException();
+            }
+            int i = floor(ref);
+            if (i >= 0 && ref < m_Starts[i] + m_Lengths[i]) {
+                m_Runs[i][ref - m_Starts[i]] = element;
+                return;
+            }
+            m_Size++;
+            if (i >= 0 && ref == m_Starts[i] + m_Lengths[i]) {
+                append(i, element);
+                if (i + 1 < m_Count && m_Starts[i + 1] == ref + 1) {
+                    // the gap is closed
+                    for (int k = 0; k < m_Lengths[i + 1]; k++) {
+                        append(i, m_Runs[i + 1][k]);
+                    }
+                    removeRun(i + 1);
+                }
+                return;
+            }
+            if (i + 1 < m_Count && m_Starts[i + 1] == ref + 1) {
+                // prepend to the following run
+                Object[] run = m_Runs[i + 1];
+                int length = m_Lengths[i + 1];
+                Object[] grown = new Object[Math.max(run.length, length + 1)];
+                System.arraycopy(run, 0, grown, 1, length);
+                grown[0] = element;
+                m_Runs[i + 1] = grown;
+                m_Lengths[i + 1] = length + 1;
+                m_Starts[i + 1] = ref;
+                return;
+            }
+            insertRun(i + 1, ref, element);
+        }// set
+
+        private void remove(Object element) {
+            for (int i = 0; i < m_Count; i++) {
+                Object[] run = m_Runs[i];
+                for (int k = 0; k < m_Lengths[i]; k++) {
+                    if (run[k] == element) {
+                        m_Size--;
+                        split(i, k);
+                        return;
+                    }
+                }
+            }
+        }// remove
+
+        private void clear() {
+            Arrays.fill(m_Runs, 0, m_Count, null);
+            m_Count = 0;
+            m_Size = 0;
+        }// clear
+
+        private void append(int i, Object element) {
+            if (m_Lengths[i] == m_Runs[i].length) {
+                m_Runs[i] = Arrays.copyOf(m_Runs[i], m_Runs[i].length * 2);
+            }
+            m_Runs[i][m_Lengths[i]++] = element;
+        }// append
+
+        /**
+         * Removes the element at the given index of a run, splitting
+         * the run in two if the element is inside.
+         */
+        private void split(int i, int k) {
+            int start = m_Starts[i];
+            int length = m_Lengths[i];
+            Object[] run = m_Runs[i];
+            if (length == 1) {
+                removeRun(i);
+            } else if (k == 0) {
+                m_Runs[i] = Arrays.copyOfRange(run, 1, length);
+                m_Starts[i] = start + 1;
+                m_Lengths[i] = length - 1;
+            } else if (k == length - 1) {
+                run[k] = null;
+                m_Lengths[i] = length - 1;
+            } else {
+                m_Runs[i] = Arrays.copyOf(run, k);
+                m_Lengths[i] = k;
+                insertRun(i + 1, start + k + 1, null);
+                m_Runs[i + 1] = Arrays.copyOfRange(run, k + 1, length);
+                m_Lengths[i + 1] = length - k - 1;
+            }
+        }// split
+
+        private void insertRun(int i, int start, Object element) {
+            if (m_Count == m_Starts.length) {
+                int capacity = m_Count * 2;
+                m_Starts = Arrays.copyOf(m_Starts, capacity);
+                m_Runs = Arrays.copyOf(m_Runs, capacity);
+                m_Lengths = Arrays.copyOf(m_Lengths, capacity);
+            }
+            System.arraycopy(m_Starts, i, m_Starts, i + 1, m_Count - i);
+            System.arraycopy(m_Runs, i, m_Runs, i + 1, m_Count - i);
+            System.arraycopy(m_Lengths, i, m_Lengths, i + 1, m_Count - i);
+            m_Starts[i] = start;
+            m_Runs[i] = new Object[] { element };
+            m_Lengths[i] = 1;
+            m_Count++;
+        }// insertRun
+
+        private void removeRun(int i) {
+            System.arraycopy(m_Starts, i + 1, m_Starts, i, m_Count - i - 1);
+            System.arraycopy(m_Runs, i + 1, m_Runs, i, m_Count - i - 1);
+            System.arraycopy(m_Lengths, i + 1, m_Lengths, i, m_Count - i - 1);
+            m_Count--;
+            m_Runs[m_Count] = null;
+        }// removeRun
+
+    }// class Table
+
+}// class SparseProcessImage
@@ -0,0 +1,62 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.procimg;
+
+/**
+ * Interface defining a process image that is safe for concurrent
+ * access without the image monitor.
+ * <p>
+ * Ranges returned by the <tt>get...Range()</tt> methods are read
+ * consistently without locking, so request handlers do not take the
+ * monitor of such an image and readers never block writers. Writes
+ * enclosed in {@link #begin()} and {@link #commit()}, or executed by
+ * {@link #transaction(Runnable)}, become visible to readers together.
+ *
+ * @version @version@ (@date@)
+ * @see SnapshotProcessImage
+ */
+public interface TransactionalProcessImage extends ProcessImage {
+
+    /**
+     * Begins a transaction in the calling thread.
+     *
+     * @throws IllegalStateException if a transaction is already open.
+     */
+    public void begin() throws IllegalStateException;
+
+    /**
+     * Publishes the writes of the transaction of the calling thread.
+     *
+     * @throws IllegalStateException if no transaction is open.
+     */
+    public void commit() throws IllegalStateException;
+
+    /**
+     * Discards the writes of the transaction of the calling thread.
+     * Does nothing if no transaction is open, so that it can be called
+     * in a <tt>finally</tt> block after {@link #commit()}.
+     */
+    public void rollback();
+
+    /**
+     * Executes the given writes as one transaction. The writes are
+     * discarded if the <tt>Runnable</tt> throws.
+     *
+     * @param writes a <tt>Runnable</tt> performing the writes.
+     */
+    public void transaction(Runnable writes);
+
+}// interface TransactionalProcessImage
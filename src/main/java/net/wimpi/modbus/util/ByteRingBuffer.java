@@ -0,0 +1,184 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Class implementing a fixed size ring buffer of bytes.
+ * <p>
+ * Bytes are appended at the tail, either copied from an array or read
+ * directly from an <tt>InputStream</tt>, and are inspected in place with
+ * {@link #get(int)} before being consumed from the head. This lets
+ * incremental decoders look ahead into partially received data without
+ * copying it.
+ * <p>
+ * Instances are not thread safe.
+ *
+ * @version @version@ (@date@)
+ */
+public final class ByteRingBuffer {
+
+    // instance attributes
+    private final byte[] m_Buffer;
+    private final int m_Mask;
+    private int m_Head;
+    private int m_Size;
+
+    /**
+     * Constructs a new <tt>ByteRingBuffer</tt> instance.
+     *
+     * @param capacity the minimum capacity, rounded up to a power of two.
+     */
+    public ByteRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        m_Buffer = new byte[size];
+        m_Mask = size - 1;
+    }// constructor
+
+    /**
+     * Returns the capacity of this buffer.
+     *
+     * @return the capacity in bytes.
+     */
+    public int capacity() {
+        return m_Buffer.length;
+    }// capacity
+
+    /**
+     * Returns the number of buffered bytes.
+     *
+     * @return the number of bytes.
+     */
+    public int size() {
+        return m_Size;
+    }// size
+
+    /**
+     * Returns the number of bytes that can still be appended.
+     *
+     * @return the free space in bytes.
+     */
+    public int remaining() {
+        return m_Buffer.length - m_Size;
+    }// remaining
+
+    /**
+     * Returns the buffered byte at the given index, counted from the head.
+     *
+     * @param index the index of the byte.
+     * @return the byte as unsigned <tt>int</tt>.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public int get(int index) throws IndexOutOfBoundsException {
+        if (index < 0 || index >= m_Size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + m_Size);
+        }
+        return m_Buffer[(m_Head + index) & m_Mask] & 0xff;
+    }// get
+
+    /**
+     * Appends bytes to this buffer.
+     *
+     * @param data the array holding the bytes.
+     * @param off the offset of the first byte.
+     * @param len the number of bytes.
+     * @throws IllegalStateException if the bytes do not fit.
+     */
+    public void put(byte[] data, int off, int len) {
+        if (len > remaining()) {
+            throw new IllegalStateException("Buffer overflow: " + len + " bytes, " + remaining() + " free");
+        }
+        int tail = (m_Head + m_Size) & m_Mask;
+        int n = Math.min(len, m_Buffer.length - tail);
+        System.arraycopy(data, off, m_Buffer, tail, n);
+        System.arraycopy(data, off + n, m_Buffer, 0, len - n);
+        m_Size += len;
+    }// put
+
+    /**
+     * Appends bytes read from the given stream, without blocking longer
+     * than the stream does for the bytes it reports available.
+     *
+     * @param in the <tt>InputStream</tt> to read from.
+     * @param max the maximum number of bytes to read.
+     * @return the number of bytes read, or <tt>-1</tt> at the end of the stream.
+     * @throws IOException if an I/O error occurs.
+     */
+    public int read(InputStream in, int max) throws IOException {
+        int total = 0;
+        max = Math.min(max, remaining());
+        while (total < max) {
+            int tail = (m_Head + m_Size) & m_Mask;
+            int n = in.read(m_Buffer, tail, Math.min(max - total, m_Buffer.length - tail));
+            if (n < 0) {
+                return total > 0 ? total : -1;
+            }
+            if (n == 0) {
+                break;
+            }
+            m_Size += n;
+            total += n;
+        }
+        return total;
+    }// read
+
+    /**
+     * Copies buffered bytes without consuming them.
+     *
+     * @param index the index of the first byte, counted from the head.
+     * @param dest the array receiving the bytes.
+     * @param off the offset in <tt>dest</tt>.
+     * @param len the number of bytes.
+     * @throws IndexOutOfBoundsException if fewer bytes are buffered.
+     */
+    public void copy(int index, byte[] dest, int off, int len) throws IndexOutOfBoundsException {
+        if (index < 0 || len < 0 || index + len > m_Size) {
+            throw new IndexOutOfBoundsException("Range: " + index + "+" + len + ", size: " + m_Size);
+        }
+        int start = (m_Head + index) & m_Mask;
+        int n = Math.min(len, m_Buffer.length - start);
+        System.arraycopy(m_Buffer, start, dest, off, n);
+        System.arraycopy(m_Buffer, 0, dest, off + n, len - n);
+    }// copy
+
+    /**
+     * Consumes bytes from the head of this buffer.
+     *
+     * @param len the number of bytes, at most {@link #size()}.
+     */
+    public void skip(int len) {
+        len = Math.min(len, m_Size);
+        m_Head = (m_Head + len) & m_Mask;
+        m_Size -= len;
+    }// skip
+
+    /**
+     * Discards all buffered bytes.
+     */
+    public void clear() {
+        m_Head = 0;
+        m_Size = 0;
+    }// clear
+
+}// class ByteRingBuffer
@@ -0,0 +1,314 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class implementing asynchronous, batched and coalesced delivery
+ * of {@link Observable} notifications.
+ * <p>
+ * An <tt>Observable</tt> attached to a <tt>ChangeNotifier</tt> does not
+ * call its observers in the writing thread. Its change is queued
+ * instead and delivered later on the notifier's executor, so that
+ * slow observers do not throttle Modbus writes. Changes are keyed by
+ * their source: an <tt>Observable</tt> that changes several times
+ * before delivery is notified once, with the latest argument.
+ * <p>
+ * Writes enclosed in {@link #beginBatch()} and {@link #endBatch()}
+ * are collected per thread and queued together when the outermost
+ * batch ends; the slave side write requests batch all changes of a
+ * request this way.
+ * <p>
+ * The number of distinct pending changes is bounded by the capacity.
+ * When it is reached, writers wait until the delivery thread takes
+ * over the pending changes (back-pressure). Observers must therefore
+ * not block on locks held by writers while waiting for delivery.
+ *
+ * @version @version@ (@date@)
+ */
+public class ChangeNotifier {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeNotifier.class);
+
+    /**
+     * Defines the default capacity of pending changes.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final ThreadLocal<Batch> c_Batch = new ThreadLocal<Batch>() {
+        @Override
+        protected Batch initialValue() {
+            return new Batch();
+        }
+    };
+
+    // instance attributes
+    private final Executor m_Executor;
+    private final boolean m_OwnsExecutor;
+    private final int m_Capacity;
+    private final Object m_Lock = new Object();
+    private final Runnable m_Drain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+    private LinkedHashMap<Observable, Object> m_Pending = new LinkedHashMap<>();
+    private LinkedHashMap<Observable, Object> m_Spare = new LinkedHashMap<>();
+    private boolean m_Scheduled;
+    private volatile Thread m_DrainThread;
+
+    /**
+     * Constructs a new <tt>ChangeNotifier</tt> with the default capacity,
+     * delivering on a dedicated daemon thread.
+     */
+    public ChangeNotifier() {
+        this(DEFAULT_CAPACITY);
+    }// constructor
+
+    /**
+     * Constructs a new <tt>ChangeNotifier</tt> with the given capacity,
+     * delivering on a dedicated daemon thread.
+     *
+     * @param capacity the maximum number of distinct pending changes.
+     */
+    public ChangeNotifier(int capacity) {
+        this(capacity, Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "ChangeNotifier");
+                t.setDaemon(true);
+                return t;
+            }
+        }), true);
+    }// constructor
+
+    /**
+     * Constructs a new <tt>ChangeNotifier</tt> with the given capacity,
+     * delivering on the given executor. At most one delivery task is
+     * submitted at a time, so notifications stay ordered even on a
+     * multi-threaded executor.
+     *
+     * @param capacity the maximum number of distinct pending changes.
+     * @param executor the <tt>Executor</tt> running the deliveries.
+     */
+    public ChangeNotifier(int capacity, Executor executor) {
+        this(capacity, executor, false);
+    }// constructor
+
+    private ChangeNotifier(int capacity, Executor executor, boolean owns) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        m_Capacity = capacity;
+        m_Executor = executor;
+        m_OwnsExecutor = owns;
+    }// constructor
+
+    /**
+     * Attaches the given <tt>Observable</tt> to this notifier.
+     *
+     * @param o the <tt>Observable</tt> to be attached.
+     */
+    public void attach(Observable o) {
+        o.setChangeNotifier(this);
+    }// attach
+
+    /**
+     * Detaches the given <tt>Observable</tt> from this notifier, so that
+     * it notifies its observers synchronously again.
+     *
+     * @param o the <tt>Observable</tt> to be detached.
+     */
+    public void detach(Observable o) {
+        if (o.getChangeNotifier() == this) {
+            o.setChangeNotifier(null);
+        }
+    }// detach
+
+    /**
+     * Returns the number of changes waiting for delivery.
+     *
+     * @return the number of pending changes.
+     */
+    public int getPendingCount() {
+        synchronized (m_Lock) {
+            return m_Pending.size();
+        }
+    }// getPendingCount
+
+    /**
+     * Shuts down the dedicated delivery thread, if this notifier
+     * created one. Changes still pending are dropped.
+     */
+    public void shutdown() {
+        if (m_OwnsExecutor) {
+            ((ExecutorService) m_Executor).shutdown();
+        }
+    }// shutdown
+
+    /**
+     * Begins a batch of changes in the calling thread.
+     * Batches may be nested; each call has to be matched by
+     * a call to {@link #endBatch()}, preferably in a <tt>finally</tt> block.
+     */
+    public static void beginBatch() {
+        c_Batch.get().m_Depth++;
+    }// beginBatch
+
+    /**
+     * Ends a batch of changes in the calling thread, queueing the
+     * collected changes when the outermost batch ends.
+     */
+    public static void endBatch() {
+        Batch b = c_Batch.get();
+        if (b.m_Depth > 0 && --b.m_Depth == 0) {
+            b.flush();
+        }
+    }// endBatch
+
+    /**
+     * Records a change of the given <tt>Observable</tt>.
+     *
+     * @param o the changed <tt>Observable</tt>.
+     * @param arg the argument to be passed to the observers.
+     */
+    void changed(Observable o, Object arg) {
+        Batch b = c_Batch.get();
+        if (b.m_Depth > 0) {
+            if (b.m_Notifier != this) {
+                b.flush();
+                b.m_Notifier = this;
+            }
+            b.m_Changes.put(o, arg);
+        } else {
+            synchronized (m_Lock) {
+                offer(o, arg);
+            }
+        }
+    }// changed
+
+    private void publish(Map<Observable, Object> changes) {
+        synchronized (m_Lock) {
+            for (Map.Entry<Observable, Object> e : changes.entrySet()) {
+                offer(e.getKey(), e.getValue());
+            }
+        }
+    }// publish
+
+    private void offer(Observable o, Object arg) {
+        // the delivery thread must not wait for itself
+        boolean interrupted = false;
+        while (m_Pending.size() >= m_Capacity && !m_Pending.containsKey(o)
+                && Thread.currentThread() != m_DrainThread) {
+            try {
+                m_Lock.wait();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+                break;
+            }
+        }
+        m_Pending.put(o, arg);
+        if (!m_Scheduled) {
+            try {
+                m_Executor.execute(m_Drain);
+                m_Scheduled = true;
+            } catch (RejectedExecutionException ex) {
+                logger.warn("Change notification rejected: {}", ex.getMessage());
+                m_Pending.clear();
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }// offer
+
+    private void drain() {
+        m_DrainThread = Thread.currentThread();
+        boolean completed = false;
+        try {
+            for (;;) {
+                LinkedHashMap<Observable, Object> changes;
+                synchronized (m_Lock) {
+                    if (m_Pending.isEmpty()) {
+                        m_Scheduled = false;
+                        completed = true;
+                        return;
+                    }
+                    changes = m_Pending;
+                    m_Pending = m_Spare;
+                    m_Spare = null;
+                    m_Lock.notifyAll();
+                }
+                for (Iterator<Map.Entry<Observable, Object>> iter = changes.entrySet().iterator(); iter.hasNext();) {
+                    Map.Entry<Observable, Object> e = iter.next();
+                    try {
+                        e.getKey().fireUpdate(e.getValue());
+                    } catch (RuntimeException ex) {
+                        logger.error("Observer failed: {}", ex.getMessage(), ex);
+                    }
+                    iter.remove();
+                }
+                synchronized (m_Lock) {
+                    m_Spare = changes;
+                }
+            }
+        } finally {
+            m_DrainThread = null;
+            if (!completed) {
+                synchronized (m_Lock) {
+                    if (m_Spare == null) {
+                        m_Spare = new LinkedHashMap<>();
+                    }
+                    m_Scheduled = false;
+                }
+            }
+        }
+    }// drain
+
+    /**
+     * Class holding the changes of a batch in the writing thread.
+     */
+    private static final class Batch {
+
+        private final LinkedHashMap<Observable, Object> m_Changes = new LinkedHashMap<>();
+        private ChangeNotifier m_Notifier;
+        private int m_Depth;
+
+        private void flush() {
+            if (!m_Changes.isEmpty()) {
+                try {
+                    m_Notifier.publish(m_Changes);
+                } finally {
+                    m_Changes.clear();
+                }
+            }
+        }// flush
+
+    }// class Batch
+
+}// class ChangeNotifier
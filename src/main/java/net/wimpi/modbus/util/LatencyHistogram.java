@@ -0,0 +1,155 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.util;
+
+import java.util.Arrays;
+
+/**
+ * Class implementing a histogram of latencies in nanoseconds.
+ * <p>
+ * Values are counted in buckets of 16 linear steps per power of two,
+ * so that each value is recorded with a precision better than 7 %.
+ * All buckets are allocated up front: recording a value does not
+ * allocate, which keeps it usable in cyclic loops that must not
+ * trigger garbage collection.
+ *
+ * @version @version@ (@date@)
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    // instance attributes
+    private final long[] m_Counts = new long[(64 - SUB_BITS) * SUB_BUCKETS];
+    private long m_Count;
+    private long m_Sum;
+    private long m_Min = Long.MAX_VALUE;
+    private long m_Max;
+
+    /**
+     * Records a value.
+     *
+     * @param nanos the value in nanoseconds, negative values count as <tt>0</tt>.
+     */
+    public synchronized void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        m_Counts[index(nanos)]++;
+        m_Count++;
+        m_Sum += nanos;
+        if (nanos < m_Min) {
+            m_Min = nanos;
+        }
+        if (nanos > m_Max) {
+            m_Max = nanos;
+        }
+    }// record
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return the number of values.
+     */
+    public synchronized long getCount() {
+        return m_Count;
+    }// getCount
+
+    /**
+     * Returns the smallest recorded value.
+     *
+     * @return the value in nanoseconds, or <tt>0</tt> if none was recorded.
+     */
+    public synchronized long getMin() {
+        return m_Count == 0 ? 0 : m_Min;
+    }// getMin
+
+    /**
+     * Returns the largest recorded value.
+     *
+     * @return the value in nanoseconds.
+     */
+    public synchronized long getMax() {
+        return m_Max;
+    }// getMax
+
+    /**
+     * Returns the mean of the recorded values.
+     *
+     * @return the mean in nanoseconds, or <tt>0</tt> if none was recorded.
+     */
+    public synchronized long getMean() {
+        return m_Count == 0 ? 0 : m_Sum / m_Count;
+    }// getMean
+
+    /**
+     * Returns the value below which the given percentage of
+     * the recorded values lies, as upper bound of its bucket.
+     *
+     * @param percentile the percentage, from <tt>0</tt> to <tt>100</tt>.
+     * @return the value in nanoseconds, or <tt>0</tt> if none was recorded.
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (m_Count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * m_Count);
+        long seen = 0;
+        for (int i = 0; i < m_Counts.length; i++) {
+            seen += m_Counts[i];
+            if (seen >= Math.max(rank, 1)) {
+                return Math.min(upperBound(i), m_Max);
+            }
+        }
+        return m_Max;
+    }// getPercentile
+
+    /**
+     * Clears all recorded values.
+     */
+    public synchronized void reset() {
+        Arrays.fill(m_Counts, 0);
+        m_Count = 0;
+        m_Sum = 0;
+        m_Min = Long.MAX_VALUE;
+        m_Max = 0;
+    }// reset
+
+    @Override
+    public synchronized String toString() {
+        return String.format("count=%d, min=%.1fus, mean=%.1fus, p50=%.1fus, p99=%.1fus, p99.9=%.1fus, max=%.1fus",
+                m_Count, getMin() / 1e3, getMean() / 1e3, getPercentile(50) / 1e3, getPercentile(99) / 1e3,
+                getPercentile(99.9) / 1e3, m_Max / 1e3);
+    }// toString
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }// index
+
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        return ((long) (SUB_BUCKETS + index % SUB_BUCKETS + 1) << shift) - 1;
+    }// upperBound
+
+}// class LatencyHistogram
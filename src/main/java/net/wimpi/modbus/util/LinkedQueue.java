@@ -27,8 +27,9 @@ package net.wimpi.modbus.util;
 /**
  *
  * @author Jamod developers
- *
+ * @deprecated superseded by the bounded {@link SPSCRingBuffer} and {@link MPMCRingBuffer}.
  */
+@Deprecated
 public class LinkedQueue {
 
     /**
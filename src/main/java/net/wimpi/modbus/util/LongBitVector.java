@@ -0,0 +1,430 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Class that implements a fixed size collection of bits
+ * (coils or input discretes), storing them packed into
+ * <tt>long</tt> words.
+ * <p>
+ * Bit <tt>i</tt> is bit <tt>i % 64</tt> of word <tt>i / 64</tt>,
+ * which matches the Modbus wire format (LSB of the first byte is
+ * the first bit) read as little endian words. This allows the
+ * bulk operations (copy, popcount, xor) to work on whole words.
+ * Unlike {@link BitVector} an instance never changes its size,
+ * so it can be reused from poll to poll without allocation.
+ *
+ * @version @version@ (@date@)
+ */
+public final class LongBitVector {
+
+    private static final int ADDRESS_BITS = 6;
+    private static final int WORD_SIZE = 1 << ADDRESS_BITS;
+    private static final long WORD_MASK = 0xffffffffffffffffL;
+
+    // instance attributes
+    private final int m_Size;
+    private final long[] m_Words;
+
+    /**
+     * Constructs a new <tt>LongBitVector</tt> instance
+     * with a given size, all bits cleared.
+     *
+     * @param size the number of bits the <tt>LongBitVector</tt>
+     *            holds.
+     */
+    public LongBitVector(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative size: " + size);
+        }
+        m_Size = size;
+        m_Words = new long[(size + WORD_SIZE - 1) >>> ADDRESS_BITS];
+    }// constructor
+
+    /**
+     * Returns the number of bits in this <tt>LongBitVector</tt>.
+     *
+     * @return the number of bits.
+     */
+    public int size() {
+        return m_Size;
+    }// size
+
+    /**
+     * Returns the number of bytes needed to transmit
+     * this <tt>LongBitVector</tt>.
+     *
+     * @return the number of bytes in wire format.
+     */
+    public int byteSize() {
+        return (m_Size + 7) >>> 3;
+    }// byteSize
+
+    /**
+     * Returns the state of the bit at the given index.
+     *
+     * @param index the index of the bit.
+     * @return true if set, false otherwise.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public boolean getBit(int index) throws IndexOutOfBoundsException {
+        checkIndex(index);
+        return (m_Words[index >>> ADDRESS_BITS] & (1L << index)) != 0;
+    }// getBit
+
+    /**
+     * Sets the state of the bit at the given index.
+     *
+     * @param index the index of the bit.
+     * @param b true if the bit should be set, false if it should be reset.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public void setBit(int index, boolean b) throws IndexOutOfBoundsException {
+        checkIndex(index);
+        if (b) {
+            m_Words[index >>> ADDRESS_BITS] |= (1L << index);
+        } else {
+            m_Words[index >>> ADDRESS_BITS] &= ~(1L << index);
+        }
+    }// setBit
+
+    /**
+     * Resets all bits.
+     */
+    public void clear() {
+        Arrays.fill(m_Words, 0L);
+    }// clear
+
+    /**
+     * Returns the number of set bits (population count).
+     *
+     * @return the number of bits set.
+     */
+    public int cardinality() {
+        int count = 0;
+        for (int i = 0; i < m_Words.length; i++) {
+            count += Long.bitCount(m_Words[i]);
+        }
+        return count;
+    }// cardinality
+
+    /**
+     * Returns the index of the first set bit at or after the given index,
+     * or <tt>-1</tt> if there is none. Iterate over all set bits with:
+     *
+     * <pre>
+     * for (int i = bits.nextSetBit(0); i &gt;= 0; i = bits.nextSetBit(i + 1)) {
+     *     ...
+     * }
+     * </pre>
+     *
+     * @param from the index to start searching from.
+     * @return the index of the next set bit, or <tt>-1</tt>.
+     */
+    public int nextSetBit(int from) {
+        if (from < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (from >= m_Size) {
+            return -1;
+        }
+        int w = from >>> ADDRESS_BITS;
+        long word = m_Words[w] & (WORD_MASK << from);
+        while (true) {
+            if (word != 0) {
+                int idx = (w << ADDRESS_BITS) + Long.numberOfTrailingZeros(word);
+                return idx < m_Size ? idx : -1;
+            }
+            if (++w == m_Words.length) {
+                return -1;
+            }
+            word = m_Words[w];
+        }
+    }// nextSetBit
+
+    /**
+     * Copies a range of bits from another <tt>LongBitVector</tt>
+     * into this one, a word at a time.
+     *
+     * @param src the source <tt>LongBitVector</tt>.
+     * @param srcPos the index of the first bit in the source.
+     * @param destPos the index of the first bit in this vector.
+     * @param length the number of bits to be copied.
+     * @throws IndexOutOfBoundsException if a range is out of bounds.
+     */
+    public void copyFrom(LongBitVector src, int srcPos, int destPos, int length) throws IndexOutOfBoundsException {
+        if (length < 0 || srcPos < 0 || destPos < 0 || srcPos + length > src.m_Size || destPos + length > m_Size) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (src == this && srcPos < destPos) {
+            // overlapping, copy backwards
+            int done = length;
+            while (done > 0) {
+                int n = Math.min(WORD_SIZE, done);
+                done -= n;
+                putBits(destPos + done, n, src.getBits(srcPos + done, n));
+            }
+        } else {
+            for (int done = 0; done < length; done += WORD_SIZE) {
+                int n = Math.min(WORD_SIZE, length - done);
+                putBits(destPos + done, n, src.getBits(srcPos + done, n));
+            }
+        }
+    }// copyFrom
+
+    /**
+     * Copies all bits of a <tt>LongBitVector</tt> of the same size
+     * into this one.
+     *
+     * @param src the source <tt>LongBitVector</tt>.
+     * @throws IllegalArgumentException if the sizes differ.
+     */
+    public void copyFrom(LongBitVector src) {
+        checkSameSize(src);
+        System.arraycopy(src.m_Words, 0, m_Words, 0, m_Words.length);
+    }// copyFrom
+
+    /**
+     * Performs a logical <b>XOR</b> with the given <tt>LongBitVector</tt>,
+     * leaving set only the bits that differ.
+     *
+     * @param other a <tt>LongBitVector</tt> of the same size.
+     * @throws IllegalArgumentException if the sizes differ.
+     */
+    public void xor(LongBitVector other) {
+        checkSameSize(other);
+        for (int i = 0; i < m_Words.length; i++) {
+            m_Words[i] ^= other.m_Words[i];
+        }
+    }// xor
+
+    /**
+     * Performs a logical <b>AND</b> with the given <tt>LongBitVector</tt>.
+     *
+     * @param other a <tt>LongBitVector</tt> of the same size.
+     * @throws IllegalArgumentException if the sizes differ.
+     */
+    public void and(LongBitVector other) {
+        checkSameSize(other);
+        for (int i = 0; i < m_Words.length; i++) {
+            m_Words[i] &= other.m_Words[i];
+        }
+    }// and
+
+    /**
+     * Performs a logical <b>OR</b> with the given <tt>LongBitVector</tt>.
+     *
+     * @param other a <tt>LongBitVector</tt> of the same size.
+     * @throws IllegalArgumentException if the sizes differ.
+     */
+    public void or(LongBitVector other) {
+        checkSameSize(other);
+        for (int i = 0; i < m_Words.length; i++) {
+            m_Words[i] |= other.m_Words[i];
+        }
+    }// or
+
+    /**
+     * Computes the bits that differ between this and a previous
+     * <tt>LongBitVector</tt> of the same size, without modifying either.
+     *
+     * @param previous the <tt>LongBitVector</tt> to compare with.
+     * @param changes a <tt>LongBitVector</tt> receiving the changed bits,
+     *            may be <tt>null</tt> if only the count is of interest.
+     * @return the number of changed bits.
+     * @throws IllegalArgumentException if the sizes differ.
+     */
+    public int diff(LongBitVector previous, LongBitVector changes) {
+        checkSameSize(previous);
+        if (changes != null) {
+            checkSameSize(changes);
+        }
+        int count = 0;
+        for (int i = 0; i < m_Words.length; i++) {
+            long d = m_Words[i] ^ previous.m_Words[i];
+            if (changes != null) {
+                changes.m_Words[i] = d;
+            }
+            count += Long.bitCount(d);
+        }
+        return count;
+    }// diff
+
+    /**
+     * Decodes this <tt>LongBitVector</tt> from packed bits in Modbus
+     * wire format, reading {@link #byteSize()} bytes.
+     *
+     * @param data the packed bits.
+     * @param off the offset of the first byte.
+     * @throws IndexOutOfBoundsException if there are not enough bytes.
+     */
+    public void decode(byte[] data, int off) throws IndexOutOfBoundsException {
+        int bytes = byteSize();
+        if (off < 0 || off + bytes > data.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        Arrays.fill(m_Words, 0L);
+        for (int k = 0; k < bytes; k++) {
+            m_Words[k >>> 3] |= (data[off + k] & 0xffL) << ((k & 7) << 3);
+        }
+        maskLastWord();
+    }// decode
+
+    /**
+     * Decodes this <tt>LongBitVector</tt> from packed bits in Modbus
+     * wire format, consuming {@link #byteSize()} bytes from the
+     * given buffer.
+     *
+     * @param buf the <tt>ByteBuffer</tt> to read from.
+     */
+    public void decode(ByteBuffer buf) {
+        int bytes = byteSize();
+        Arrays.fill(m_Words, 0L);
+        for (int k = 0; k < bytes; k++) {
+            m_Words[k >>> 3] |= (buf.get() & 0xffL) << ((k & 7) << 3);
+        }
+        maskLastWord();
+    }// decode
+
+    /**
+     * Encodes this <tt>LongBitVector</tt> in Modbus wire format,
+     * putting {@link #byteSize()} bytes into the given buffer.
+     *
+     * @param buf the <tt>ByteBuffer</tt> to write to.
+     */
+    public void encode(ByteBuffer buf) {
+        int bytes = byteSize();
+        for (int k = 0; k < bytes; k++) {
+            buf.put((byte) (m_Words[k >>> 3] >>> ((k & 7) << 3)));
+        }
+    }// encode
+
+    /**
+     * Returns a new <tt>BitVector</tt> with the contents of
+     * this <tt>LongBitVector</tt>.
+     *
+     * @return a <tt>BitVector</tt> holding the same bits.
+     */
+    public BitVector toBitVector() {
+        byte[] data = new byte[byteSize()];
+        encode(ByteBuffer.wrap(data));
+        return BitVector.createBitVector(data, m_Size);
+    }// toBitVector
+
+    /**
+     * Factory method creating a <tt>LongBitVector</tt> with the
+     * contents of the given <tt>BitVector</tt>.
+     *
+     * @param bv a <tt>BitVector</tt>.
+     * @return the newly created <tt>LongBitVector</tt> instance.
+     */
+    public static LongBitVector createLongBitVector(BitVector bv) {
+        LongBitVector lbv = new LongBitVector(bv.size());
+        for (int i = 0; i < bv.size(); i++) {
+            if (bv.getBit(i)) {
+                lbv.m_Words[i >>> ADDRESS_BITS] |= (1L << i);
+            }
+        }
+        return lbv;
+    }// createLongBitVector
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LongBitVector)) {
+            return false;
+        }
+        LongBitVector that = (LongBitVector) o;
+        return m_Size == that.m_Size && Arrays.equals(m_Words, that.m_Words);
+    }// equals
+
+    @Override
+    public int hashCode() {
+        return 31 * m_Size + Arrays.hashCode(m_Words);
+    }// hashCode
+
+    /**
+     * Returns a <tt>String</tt> representing the bits,
+     * the first bit to the left, grouped by eight.
+     *
+     * @return a <tt>String</tt> representing this <tt>LongBitVector</tt>.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sbuf = new StringBuilder(m_Size + m_Size / 8);
+        for (int i = 0; i < m_Size; i++) {
+            sbuf.append((m_Words[i >>> ADDRESS_BITS] & (1L << i)) != 0 ? '1' : '0');
+            if (((i + 1) % 8) == 0) {
+                sbuf.append(' ');
+            }
+        }
+        return sbuf.toString();
+    }// toString
+
+    /**
+     * Returns <tt>n</tt> (at most 64) bits starting at <tt>pos</tt>,
+     * right aligned.
+     */
+    private long getBits(int pos, int n) {
+        int w = pos >>> ADDRESS_BITS;
+        int shift = pos & (WORD_SIZE - 1);
+        long bits = m_Words[w] >>> shift;
+        if (shift != 0 && shift + n > WORD_SIZE) {
+            bits |= m_Words[w + 1] << (WORD_SIZE - shift);
+        }
+        return n == WORD_SIZE ? bits : bits & ~(WORD_MASK << n);
+    }// getBits
+
+    /**
+     * Stores the <tt>n</tt> (at most 64) lowest bits of
+     * <tt>bits</tt> starting at <tt>pos</tt>.
+     */
+    private void putBits(int pos, int n, long bits) {
+        int w = pos >>> ADDRESS_BITS;
+        int shift = pos & (WORD_SIZE - 1);
+        long mask = n == WORD_SIZE ? WORD_MASK : ~(WORD_MASK << n);
+        m_Words[w] = (m_Words[w] & ~(mask << shift)) | ((bits & mask) << shift);
+        if (shift != 0 && shift + n > WORD_SIZE) {
+            int rest = WORD_SIZE - shift;
+            m_Words[w + 1] = (m_Words[w + 1] & ~(mask >>> rest)) | ((bits & mask) >>> rest);
+        }
+    }// putBits
+
+    private void maskLastWord() {
+        int rest = m_Size & (WORD_SIZE - 1);
+        if (rest != 0) {
+            m_Words[m_Words.length - 1] &= ~(WORD_MASK << rest);
+        }
+    }// maskLastWord
+
+    private void checkIndex(int index) throws IndexOutOfBoundsException {
+        if (index < 0 || index >= m_Size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + m_Size);
+        }
+    }// checkIndex
+
+    private void checkSameSize(LongBitVector other) {
+        if (other.m_Size != m_Size) {
+            throw new IllegalArgumentException("Size mismatch: " + other.m_Size + " != " + m_Size);
+        }
+    }// checkSameSize
+
+}// class LongBitVector
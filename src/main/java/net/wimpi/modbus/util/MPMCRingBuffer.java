@@ -0,0 +1,122 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Class implementing a multiple producer, multiple consumer {@link RingBuffer},
+ * also serving the single producer, multiple consumer and the multiple
+ * producer, single consumer cases.
+ * <p>
+ * Each slot carries a sequence number telling whether it is free for the
+ * producer of a given turn or filled for the consumer of a given turn.
+ * Producers and consumers claim turns with a compare-and-set on their
+ * padded index and then publish through the slot sequence, so that no
+ * thread ever holds a lock or waits for another thread's progress on a
+ * different slot.
+ *
+ * @param <E> the type of the elements.
+ * @version @version@ (@date@)
+ */
+public final class MPMCRingBuffer<E> extends RingBuffer<E> {
+
+    private static final int HEAD = PAD;
+    private static final int TAIL = 2 * PAD;
+
+    // instance attributes
+    private final AtomicReferenceArray<E> m_Slots;
+    private final AtomicLongArray m_Sequences;
+    private final AtomicLongArray m_Indices = new AtomicLongArray(3 * PAD);
+
+    /**
+     * Constructs a new <tt>MPMCRingBuffer</tt> with the
+     * {@link WaitStrategy#BLOCKING} strategy.
+     *
+     * @param capacity the minimum capacity.
+     */
+    public MPMCRingBuffer(int capacity) {
+        this(capacity, WaitStrategy.BLOCKING);
+    }// constructor
+
+    /**
+     * Constructs a new <tt>MPMCRingBuffer</tt>.
+     *
+     * @param capacity the minimum capacity.
+     * @param waitStrategy the <tt>WaitStrategy</tt> of waiting producers and consumers.
+     */
+    public MPMCRingBuffer(int capacity, WaitStrategy waitStrategy) {
+        super(capacity, waitStrategy);
+        m_Slots = new AtomicReferenceArray<>(m_Capacity);
+        m_Sequences = new AtomicLongArray(m_Capacity);
+        for (int i = 0; i < m_Capacity; i++) {
+            m_Sequences.set(i, i);
+        }
+    }// constructor
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        for (;;) {
+            long tail = m_Indices.get(TAIL);
+            int index = (int) tail & m_Mask;
+            long diff = m_Sequences.get(index) - tail;
+            if (diff == 0) {
+                if (m_Indices.compareAndSet(TAIL, tail, tail + 1)) {
+                    m_Slots.lazySet(index, e);
+                    m_Sequences.set(index, tail + 1);
+                    signalNotEmpty();
+                    return true;
+                }
+            } else if (diff < 0) {
+                // the slot still holds the element of the previous round
+                return false;
+            }
+        }
+    }// offer
+
+    @Override
+    public E poll() {
+        for (;;) {
+            long head = m_Indices.get(HEAD);
+            int index = (int) head & m_Mask;
+            long diff = m_Sequences.get(index) - (head + 1);
+            if (diff == 0) {
+                if (m_Indices.compareAndSet(HEAD, head, head + 1)) {
+                    E e = m_Slots.get(index);
+                    m_Slots.lazySet(index, null);
+                    m_Sequences.set(index, head + m_Capacity);
+                    signalNotFull();
+                    return e;
+                }
+            } else if (diff < 0) {
+                // the slot has not been filled yet
+                return null;
+            }
+        }
+    }// poll
+
+    @Override
+    public int size() {
+        long head = m_Indices.get(HEAD);
+        long tail = m_Indices.get(TAIL);
+        return (int) Math.max(0, Math.min(tail - head, m_Capacity));
+    }// size
+
+}// class MPMCRingBuffer
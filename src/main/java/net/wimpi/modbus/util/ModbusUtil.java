@@ -338,6 +338,166 @@ public final class ModbusUtil {
         return longToRegisters(Double.doubleToLongBits(d));
     }// doubleToRegisters
 
+    /**
+     * Converts two registers starting at the given byte offset
+     * into an <tt>int</tt>, honoring the given word order.
+     *
+     * @param bytes the raw register data.
+     * @param off the offset of the first register byte.
+     * @param order the <tt>WordOrder</tt> used by the device.
+     * @return the signed 32-bit value.
+     */
+    public static final int registersToInt(byte[] bytes, int off, WordOrder order) {
+        return (int) orderedBits(bytes, off, 2, order);
+    }// registersToInt
+
+    /**
+     * Converts two registers starting at the given byte offset
+     * into an unsigned 32-bit value, honoring the given word order.
+     *
+     * @param bytes the raw register data.
+     * @param off the offset of the first register byte.
+     * @param order the <tt>WordOrder</tt> used by the device.
+     * @return the unsigned 32-bit value as <tt>long</tt>.
+     */
+    public static final long registersToUnsignedInt(byte[] bytes, int off, WordOrder order) {
+        return orderedBits(bytes, off, 2, order);
+    }// registersToUnsignedInt
+
+    /**
+     * Converts four registers starting at the given byte offset
+     * into a <tt>long</tt>, honoring the given word order.
+     *
+     * @param bytes the raw register data.
+     * @param off the offset of the first register byte.
+     * @param order the <tt>WordOrder</tt> used by the device.
+     * @return the signed 64-bit value.
+     */
+    public static final long registersToLong(byte[] bytes, int off, WordOrder order) {
+        return orderedBits(bytes, off, 4, order);
+    }// registersToLong
+
+    /**
+     * Converts two registers starting at the given byte offset
+     * into a <tt>float</tt>, honoring the given word order.
+     *
+     * @param bytes the raw register data.
+     * @param off the offset of the first register byte.
+     * @param order the <tt>WordOrder</tt> used by the device.
+     * @return the IEEE 754 single precision value.
+     */
+    public static final float registersToFloat(byte[] bytes, int off, WordOrder order) {
+        return Float.intBitsToFloat((int) orderedBits(bytes, off, 2, order));
+    }// registersToFloat
+
+    /**
+     * Converts four registers starting at the given byte offset
+     * into a <tt>double</tt>, honoring the given word order.
+     *
+     * @param bytes the raw register data.
+     * @param off the offset of the first register byte.
+     * @param order the <tt>WordOrder</tt> used by the device.
+     * @return the IEEE 754 double precision value.
+     */
+    public static final double registersToDouble(byte[] bytes, int off, WordOrder order) {
+        return Double.longBitsToDouble(orderedBits(bytes, off, 4, order));
+    }// registersToDouble
+
+    /**
+     * Converts consecutive register pairs into <tt>int</tt> values,
+     * writing them into the given array.
+     *
+     * @param bytes the raw register data.
+     * @param off the offset of the first register byte.
+     * @param order the <tt>WordOrder</tt> used by the device.
+     * @param dest the array receiving the values.
+     * @param destOff the index of the first value in <tt>dest</tt>.
+     * @param count the number of values to be converted.
+     */
+    public static final void registersToInts(byte[] bytes, int off, WordOrder order, int[] dest, int destOff,
+            int count) {
+        for (int i = 0; i < count; i++) {
+            dest[destOff + i] = (int) orderedBits(bytes, off + i * 4, 2, order);
+        }
+    }// registersToInts
+
+    /**
+     * Converts consecutive register pairs into <tt>float</tt> values,
+     * writing them into the given array.
+     *
+     * @param bytes the raw register data.
+     * @param off the offset of the first register byte.
+     * @param order the <tt>WordOrder</tt> used by the device.
+     * @param dest the array receiving the values.
+     * @param destOff the index of the first value in <tt>dest</tt>.
+     * @param count the number of values to be converted.
+     */
+    public static final void registersToFloats(byte[] bytes, int off, WordOrder order, float[] dest, int destOff,
+            int count) {
+        for (int i = 0; i < count; i++) {
+            dest[destOff + i] = Float.intBitsToFloat((int) orderedBits(bytes, off + i * 4, 2, order));
+        }
+    }// registersToFloats
+
+    /**
+     * Converts consecutive groups of four registers into <tt>double</tt>
+     * values, writing them into the given array.
+     *
+     * @param bytes the raw register data.
+     * @param off the offset of the first register byte.
+     * @param order the <tt>WordOrder</tt> used by the device.
+     * @param dest the array receiving the values.
+     * @param destOff the index of the first value in <tt>dest</tt>.
+     * @param count the number of values to be converted.
+     */
+    public static final void registersToDoubles(byte[] bytes, int off, WordOrder order, double[] dest, int destOff,
+            int count) {
+        for (int i = 0; i < count; i++) {
+            dest[destOff + i] = Double.longBitsToDouble(orderedBits(bytes, off + i * 8, 4, order));
+        }
+    }// registersToDoubles
+
+    /**
+     * Converts a fixed length ASCII string held in registers
+     * (two characters per register, high byte first) into a
+     * <tt>String</tt>. The string ends at the first <tt>NUL</tt>
+     * character, trailing blanks are removed.
+     *
+     * @param bytes the raw register data.
+     * @param off the offset of the first register byte.
+     * @param length the maximum number of characters (bytes).
+     * @return the decoded <tt>String</tt>.
+     */
+    public static final String registersToString(byte[] bytes, int off, int length) {
+        int end = off;
+        while (end < off + length && bytes[end] != 0) {
+            end++;
+        }
+        while (end > off && bytes[end - 1] == ' ') {
+            end--;
+        }
+        char[] chars = new char[end - off];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (bytes[off + i] & 0x7f);
+        }
+        return new String(chars);
+    }// registersToString
+
+    /**
+     * Assembles the given number of words into a <tt>long</tt>,
+     * reordering words and bytes according to the given order.
+     */
+    private static final long orderedBits(byte[] bytes, int off, int words, WordOrder order) {
+        long bits = 0;
+        for (int w = 0; w < words; w++) {
+            int idx = off + 2 * (order.isWordSwapped() ? words - 1 - w : w);
+            int hi = bytes[idx] & 0xff;
+            int lo = bytes[idx + 1] & 0xff;
+            bits = (bits << 16) | (order.isByteSwapped() ? (lo << 8 | hi) : (hi << 8 | lo));
+        }
+        return bits;
+    }// orderedBits
+
     /**
      * Converts an unsigned byte to an integer.
      *
@@ -28,6 +28,7 @@ import java.util.Vector;
 public class Observable {
 
     private Vector m_Observers;
+    private volatile ChangeNotifier m_Notifier;
 
     /**
      * Constructs a new Observable instance.
@@ -79,18 +80,60 @@ public class Observable {
         }
     }// removeObservers
 
+    /**
+     * Sets the <tt>ChangeNotifier</tt> delivering the notifications
+     * of this <tt>Observable</tt>.
+     *
+     * @param notifier a <tt>ChangeNotifier</tt>, or <tt>null</tt> to notify
+     *            the observers synchronously.
+     */
+    public void setChangeNotifier(ChangeNotifier notifier) {
+        m_Notifier = notifier;
+    }// setChangeNotifier
+
+    /**
+     * Returns the <tt>ChangeNotifier</tt> delivering the notifications
+     * of this <tt>Observable</tt>.
+     *
+     * @return the <tt>ChangeNotifier</tt>, or <tt>null</tt> if the observers
+     *         are notified synchronously.
+     */
+    public ChangeNotifier getChangeNotifier() {
+        return m_Notifier;
+    }// getChangeNotifier
+
     /**
      * Notifies all observer instances in the set of observers
      * of this <tt>Observable</tt>.
+     * <p>
+     * If a <tt>ChangeNotifier</tt> is set, the notification is
+     * queued there and delivered asynchronously.
      *
      * @param arg an arbitrary argument to be passed.
      */
     public void notifyObservers(Object arg) {
+        ChangeNotifier notifier = m_Notifier;
+        if (notifier != null) {
+            if (!m_Observers.isEmpty()) {
+                notifier.changed(this, arg);
+            }
+        } else {
+            fireUpdate(arg);
+        }
+    }// notifyObservers
+
+    /**
+     * Calls all observer instances in the set of observers
+     * of this <tt>Observable</tt> in the calling thread.
+     *
+     * @param arg an arbitrary argument to be passed.
+     */
+    void fireUpdate(Object arg) {
         synchronized (m_Observers) {
             for (int i = 0; i < m_Observers.size(); i++) {
                 ((Observer) m_Observers.elementAt(i)).update(this, arg);
             }
         }
-    }// notifyObservers
+    }// fireUpdate
 
 }// class Observable
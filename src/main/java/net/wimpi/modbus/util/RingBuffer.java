@@ -0,0 +1,226 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Abstract base class of the bounded, lock-free and garbage-free
+ * array ring buffers used for handing over elements between threads.
+ * <p>
+ * The non-blocking {@link #offer(Object)} and {@link #poll()} are implemented
+ * by the subclasses, which differ in the number of producers and consumers they
+ * support. The waiting variants build on them, waiting as defined by the
+ * {@link WaitStrategy} of the buffer.
+ * <p>
+ * The capacity is rounded up to a power of two. <tt>null</tt> elements are
+ * not permitted.
+ *
+ * @param <E> the type of the elements.
+ * @version @version@ (@date@)
+ * @see SPSCRingBuffer
+ * @see MPMCRingBuffer
+ */
+public abstract class RingBuffer<E> {
+
+    /**
+     * Defines the padding between the indices, in <tt>long</tt> slots,
+     * so that producer and consumer do not share a cache line.
+     */
+    protected static final int PAD = 16;
+
+    // instance attributes
+    protected final int m_Capacity;
+    protected final int m_Mask;
+    private final WaitStrategy m_WaitStrategy;
+    private final WaitStrategy.Signal m_NotEmpty = new WaitStrategy.Signal() {
+        @Override
+        protected boolean isReady() {
+            return !isEmpty();
+        }
+    };
+    private final WaitStrategy.Signal m_NotFull = new WaitStrategy.Signal() {
+        @Override
+        protected boolean isReady() {
+            return size() < m_Capacity;
+        }
+    };
+
+    /**
+     * Constructs a new <tt>RingBuffer</tt> instance.
+     *
+     * @param capacity the minimum capacity.
+     * @param waitStrategy the <tt>WaitStrategy</tt> of waiting producers and consumers.
+     */
+    protected RingBuffer(int capacity, WaitStrategy waitStrategy) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        }
+        if (waitStrategy == null) {
+            throw new IllegalArgumentException("Wait strategy can't be null");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        m_Capacity = size;
+        m_Mask = size - 1;
+        m_WaitStrategy = waitStrategy;
+    }// constructor
+
+    /**
+     * Returns the capacity of this buffer.
+     *
+     * @return the capacity.
+     */
+    public int capacity() {
+        return m_Capacity;
+    }// capacity
+
+    /**
+     * Returns the <tt>WaitStrategy</tt> of this buffer.
+     *
+     * @return the <tt>WaitStrategy</tt>.
+     */
+    public WaitStrategy getWaitStrategy() {
+        return m_WaitStrategy;
+    }// getWaitStrategy
+
+    /**
+     * Inserts an element if there is space.
+     *
+     * @param e the element.
+     * @return true if the element was inserted, false if the buffer is full.
+     */
+    public abstract boolean offer(E e);
+
+    /**
+     * Removes the oldest element, if any.
+     *
+     * @return the element, or <tt>null</tt> if the buffer is empty.
+     */
+    public abstract E poll();
+
+    /**
+     * Returns the number of elements. The value is a snapshot
+     * while other threads insert or remove elements.
+     *
+     * @return the number of elements.
+     */
+    public abstract int size();
+
+    /**
+     * Tests if this buffer is empty.
+     *
+     * @return true if there are no elements, false otherwise.
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }// isEmpty
+
+    /**
+     * Inserts an element, waiting for space if necessary.
+     *
+     * @param e the element.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void put(E e) throws InterruptedException {
+        int counter = 0;
+        while (!offer(e)) {
+            counter = m_WaitStrategy.idle(counter, m_NotFull, 0);
+        }
+    }// put
+
+    /**
+     * Inserts an element, waiting up to the given time for space.
+     *
+     * @param e the element.
+     * @param timeout the time to wait.
+     * @param unit the unit of <tt>timeout</tt>.
+     * @return true if the element was inserted, false if the time elapsed.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = deadline(timeout, unit);
+        int counter = 0;
+        while (!offer(e)) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            counter = m_WaitStrategy.idle(counter, m_NotFull, deadline);
+        }
+        return true;
+    }// offer
+
+    /**
+     * Removes the oldest element, waiting for one if necessary.
+     *
+     * @return the element.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public E take() throws InterruptedException {
+        int counter = 0;
+        E e;
+        while ((e = poll()) == null) {
+            counter = m_WaitStrategy.idle(counter, m_NotEmpty, 0);
+        }
+        return e;
+    }// take
+
+    /**
+     * Removes the oldest element, waiting up to the given time for one.
+     *
+     * @param timeout the time to wait.
+     * @param unit the unit of <tt>timeout</tt>.
+     * @return the element, or <tt>null</tt> if the time elapsed.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = deadline(timeout, unit);
+        int counter = 0;
+        E e;
+        while ((e = poll()) == null) {
+            if (System.nanoTime() - deadline >= 0) {
+                return null;
+            }
+            counter = m_WaitStrategy.idle(counter, m_NotEmpty, deadline);
+        }
+        return e;
+    }// poll
+
+    /**
+     * Signals consumers blocked on an empty buffer.
+     * Subclasses call it after each inserted element.
+     */
+    protected final void signalNotEmpty() {
+        m_NotEmpty.signal();
+    }// signalNotEmpty
+
+    /**
+     * Signals producers blocked on a full buffer.
+     * Subclasses call it after each removed element.
+     */
+    protected final void signalNotFull() {
+        m_NotFull.signal();
+    }// signalNotFull
+
+    private static long deadline(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(Math.max(timeout, 0));
+        // 0 means no deadline to the wait strategies
+        return deadline == 0 ? 1 : deadline;
+    }// deadline
+
+}// class RingBuffer
@@ -0,0 +1,109 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Class implementing a single producer, single consumer {@link RingBuffer}.
+ * <p>
+ * Producer and consumer each own one index and never contend on a
+ * compare-and-set; each keeps a private copy of the other's index and
+ * only re-reads it when the buffer looks full or empty. The indices and
+ * the copies are padded onto separate cache lines.
+ * <p>
+ * At most one thread may insert and at most one thread may remove
+ * elements at a time.
+ *
+ * @param <E> the type of the elements.
+ * @version @version@ (@date@)
+ */
+public final class SPSCRingBuffer<E> extends RingBuffer<E> {
+
+    private static final int HEAD = PAD;
+    private static final int TAIL = 2 * PAD;
+
+    // instance attributes
+    private final AtomicReferenceArray<E> m_Slots;
+    private final AtomicLongArray m_Indices = new AtomicLongArray(3 * PAD);
+    // producer's copy of the head and consumer's copy of the tail
+    private final long[] m_Cached = new long[3 * PAD];
+
+    /**
+     * Constructs a new <tt>SPSCRingBuffer</tt> with the
+     * {@link WaitStrategy#BLOCKING} strategy.
+     *
+     * @param capacity the minimum capacity.
+     */
+    public SPSCRingBuffer(int capacity) {
+        this(capacity, WaitStrategy.BLOCKING);
+    }// constructor
+
+    /**
+     * Constructs a new <tt>SPSCRingBuffer</tt>.
+     *
+     * @param capacity the minimum capacity.
+     * @param waitStrategy the <tt>WaitStrategy</tt> of the waiting producer and consumer.
+     */
+    public SPSCRingBuffer(int capacity, WaitStrategy waitStrategy) {
+        super(capacity, waitStrategy);
+        m_Slots = new AtomicReferenceArray<>(m_Capacity);
+    }// constructor
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        long tail = m_Indices.get(TAIL);
+        if (tail - m_Cached[HEAD] >= m_Capacity) {
+            m_Cached[HEAD] = m_Indices.get(HEAD);
+            if (tail - m_Cached[HEAD] >= m_Capacity) {
+                return false;
+            }
+        }
+        m_Slots.lazySet((int) tail & m_Mask, e);
+        m_Indices.set(TAIL, tail + 1);
+        signalNotEmpty();
+        return true;
+    }// offer
+
+    @Override
+    public E poll() {
+        long head = m_Indices.get(HEAD);
+        if (head >= m_Cached[TAIL]) {
+            m_Cached[TAIL] = m_Indices.get(TAIL);
+            if (head >= m_Cached[TAIL]) {
+                return null;
+            }
+        }
+        int index = (int) head & m_Mask;
+        E e = m_Slots.get(index);
+        m_Slots.lazySet(index, null);
+        m_Indices.set(HEAD, head + 1);
+        signalNotFull();
+        return e;
+    }// poll
+
+    @Override
+    public int size() {
+        long head = m_Indices.get(HEAD);
+        long tail = m_Indices.get(TAIL);
+        return (int) Math.max(0, Math.min(tail - head, m_Capacity));
+    }// size
+
+}// class SPSCRingBuffer
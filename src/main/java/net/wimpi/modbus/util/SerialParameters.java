@@ -44,6 +44,7 @@ public class SerialParameters {
     private int m_Parity;
     private String m_Encoding;
     private boolean m_Echo;
+    private boolean m_Async;
     private int m_ReceiveTimeoutMillis;
 
     /**
@@ -90,13 +91,13 @@ public class SerialParameters {
         return "SerialParameters [m_PortName=" + m_PortName + ", m_BaudRate=" + m_BaudRate + ", m_FlowControlIn="
                 + m_FlowControlIn + ", m_FlowControlOut=" + m_FlowControlOut + ", m_Databits=" + m_Databits
                 + ", m_Stopbits=" + m_Stopbits + ", m_Parity=" + m_Parity + ", m_Encoding=" + m_Encoding + ", m_Echo="
-                + m_Echo + ", m_ReceiveTimeoutMillis=" + m_ReceiveTimeoutMillis + "]";
+                + m_Echo + ", m_Async=" + m_Async + ", m_ReceiveTimeoutMillis=" + m_ReceiveTimeoutMillis + "]";
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(m_BaudRate, m_Databits, m_Echo, m_Encoding, m_FlowControlIn, m_FlowControlOut, m_Parity,
-                m_PortName, m_ReceiveTimeoutMillis, m_Stopbits);
+        return Objects.hash(m_BaudRate, m_Databits, m_Echo, m_Async, m_Encoding, m_FlowControlIn, m_FlowControlOut,
+                m_Parity, m_PortName, m_ReceiveTimeoutMillis, m_Stopbits);
     }
 
     @Override
@@ -112,8 +113,8 @@ public class SerialParameters {
         }
         SerialParameters rhs = (SerialParameters) obj;
         return m_BaudRate == rhs.m_BaudRate && m_Databits == rhs.m_Databits && m_Echo == rhs.m_Echo
-                && Objects.equals(m_Encoding, rhs.m_Encoding) && m_FlowControlIn == rhs.m_FlowControlIn
-                && m_FlowControlOut == rhs.m_FlowControlOut && m_Parity == rhs.m_Parity
+                && m_Async == rhs.m_Async && Objects.equals(m_Encoding, rhs.m_Encoding)
+                && m_FlowControlIn == rhs.m_FlowControlIn && m_FlowControlOut == rhs.m_FlowControlOut && m_Parity == rhs.m_Parity
                 && Objects.equals(m_PortName, rhs.m_PortName) && m_ReceiveTimeoutMillis == rhs.m_ReceiveTimeoutMillis
                 && m_Stopbits == rhs.m_Stopbits;
     }
@@ -139,6 +140,7 @@ public class SerialParameters {
         setStopbits(props.getProperty(prefix + "stopbits", "" + SerialPort.STOPBITS_1));
         setEncoding(props.getProperty(prefix + "encoding", Modbus.DEFAULT_SERIAL_ENCODING));
         setEcho("true".equals(props.getProperty(prefix + "echo")));
+        setAsync("true".equals(props.getProperty(prefix + "async")));
         setReceiveTimeoutMillis(props.getProperty(prefix + "timeout", "" + 500));
     }// constructor
 
@@ -547,6 +549,28 @@ public class SerialParameters {
         m_Echo = newEcho;
     }// setEcho
 
+    /**
+     * Tests if the port is driven by the event driven
+     * {@link net.wimpi.modbus.io.ModbusAsyncSerialTransport}
+     * instead of the blocking transport of the encoding.
+     *
+     * @return true if the asynchronous transport is used, false otherwise.
+     */
+    public boolean isAsync() {
+        return m_Async;
+    }// isAsync
+
+    /**
+     * Sets if the port is driven by the event driven
+     * {@link net.wimpi.modbus.io.ModbusAsyncSerialTransport}.
+     * It only supports the master side.
+     *
+     * @param async true to use the asynchronous transport, false otherwise.
+     */
+    public void setAsync(boolean async) {
+        m_Async = async;
+    }// setAsync
+
     /**
      * Returns the receive timeout for serial communication.
      *
@@ -18,6 +18,9 @@ package net.wimpi.modbus.util;
 
 /**
  * Class implementing a simple thread pool.
+ * <p>
+ * Tasks are handed to the pool threads through a bounded {@link MPMCRingBuffer};
+ * {@link #execute(Runnable)} waits while the queue is full.
  *
  * @author Dieter Wimberger
  * @version @version@ (@date@)
@@ -25,17 +28,33 @@ package net.wimpi.modbus.util;
 public class ThreadPool {
 
     // instance attributes and associations
-    private LinkedQueue m_TaskPool;
+    private RingBuffer<Runnable> m_TaskPool;
     private int m_Size = 1;
 
+    /**
+     * Defines the default capacity of the task queue (<b>1024</b>).
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
     /**
      * Constructs a new <tt>ThreadPool</tt> instance.
      *
      * @param size the size of the thread pool.
      */
     public ThreadPool(int size) {
+        this(size, DEFAULT_QUEUE_CAPACITY, WaitStrategy.BLOCKING);
+    }// constructor
+
+    /**
+     * Constructs a new <tt>ThreadPool</tt> instance.
+     *
+     * @param size the size of the thread pool.
+     * @param capacity the capacity of the task queue.
+     * @param waitStrategy the <tt>WaitStrategy</tt> of idle pool threads.
+     */
+    public ThreadPool(int size, int capacity, WaitStrategy waitStrategy) {
         m_Size = size;
-        m_TaskPool = new LinkedQueue();
+        m_TaskPool = new MPMCRingBuffer<>(capacity, waitStrategy);
         initPool();
     }// constructor
 
@@ -49,10 +68,22 @@ public class ThreadPool {
         try {
             m_TaskPool.put(task);
         } catch (InterruptedException ex) {
-            // FIXME: Handle!?
+            // keep the interrupt for the caller
+            Thread.currentThread().interrupt();
         }
     }// execute
 
+    /**
+     * Executes the <tt>Runnable</tt> instance through a thread in this
+     * <tt>ThreadPool</tt> if the task queue is not full.
+     *
+     * @param task the <tt>Runnable</tt> to be executed.
+     * @return true if the task was queued, false if the queue is full.
+     */
+    public boolean tryExecute(Runnable task) {
+        return m_TaskPool.offer(task);
+    }// tryExecute
+
     /**
      * Initializes the pool, populating it with
      * n started threads.
@@ -76,14 +107,14 @@ public class ThreadPool {
          * Runs the <tt>PoolThread</tt>.
          * <p>
          * This method will infinitely loop, picking
-         * up available tasks from the <tt>LinkedQueue</tt>.
+         * up available tasks from the task queue.
          */
         @Override
         public void run() {
             // Running PoolThread
             do {
                 try {
-                    ((Runnable) m_TaskPool.take()).run();
+                    m_TaskPool.take().run();
                 } catch (Exception ex) {
                     // FIXME: Handle somehow!?
                     ex.printStackTrace();
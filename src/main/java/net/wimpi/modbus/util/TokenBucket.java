@@ -0,0 +1,84 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.util;
+
+/**
+ * Class implementing a token bucket rate limiter.
+ * <p>
+ * The bucket holds up to <tt>burst</tt> tokens and is refilled
+ * continuously at <tt>rate</tt> tokens per second; each admitted
+ * event takes one token.
+ *
+ * @version @version@ (@date@)
+ */
+public class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    // instance attributes
+    private final double m_Rate;
+    private final double m_Burst;
+    private double m_Tokens;
+    private long m_LastRefill;
+
+    /**
+     * Constructs a new, full <tt>TokenBucket</tt> instance.
+     *
+     * @param rate the refill rate in tokens per second.
+     * @param burst the capacity of the bucket in tokens.
+     */
+    public TokenBucket(double rate, double burst) {
+        if (rate <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Illegal rate " + rate + " or burst " + burst);
+        }
+        m_Rate = rate;
+        m_Burst = burst;
+        m_Tokens = burst;
+        m_LastRefill = System.nanoTime();
+    }// constructor
+
+    /**
+     * Takes a token if one is available.
+     *
+     * @return true if a token was taken, false if the bucket is empty.
+     */
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (m_Tokens >= 1) {
+            m_Tokens -= 1;
+            return true;
+        }
+        return false;
+    }// tryAcquire
+
+    /**
+     * Tests if this bucket is full, i.e. has not been used
+     * for at least the time needed to refill it.
+     *
+     * @return true if full, false otherwise.
+     */
+    public synchronized boolean isFull() {
+        refill();
+        return m_Tokens >= m_Burst;
+    }// isFull
+
+    private void refill() {
+        long now = System.nanoTime();
+        m_Tokens = Math.min(m_Burst, m_Tokens + (now - m_LastRefill) * m_Rate / NANOS_PER_SECOND);
+        m_LastRefill = now;
+    }// refill
+
+}// class TokenBucket
@@ -0,0 +1,219 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Abstract class defining how a thread waits for a {@link RingBuffer}
+ * to become ready, i.e. not empty for a consumer or not full for a producer.
+ * <p>
+ * The strategies trade latency for CPU time:
+ * <ul>
+ * <li>{@link #SPIN} busy spins and reacts fastest, burning a core while waiting;</li>
+ * <li>{@link #YIELD} spins briefly and then yields the processor;</li>
+ * <li>{@link #PARK} spins, yields and then parks for growing periods up to a bound,
+ * see {@link #parking(long)};</li>
+ * <li>{@link #BLOCKING} spins briefly and then blocks until signalled, costing
+ * no CPU while idle.</li>
+ * </ul>
+ * All strategies are stateless and may be shared by any number of buffers.
+ *
+ * @version @version@ (@date@)
+ */
+public abstract class WaitStrategy {
+
+    /**
+     * Defines the number of busy spins before a strategy backs off.
+     */
+    public static final int SPIN_TRIES = 100;
+
+    /**
+     * Defines the default maximum park period of {@link #PARK} (<b>1 ms</b>).
+     */
+    public static final long DEFAULT_MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Busy spinning strategy.
+     */
+    public static final WaitStrategy SPIN = new WaitStrategy() {
+        @Override
+        public int idle(int counter, Signal signal, long deadline) throws InterruptedException {
+            checkInterrupted();
+            return counter + 1;
+        }
+    };
+
+    /**
+     * Spinning, then yielding strategy.
+     */
+    public static final WaitStrategy YIELD = new WaitStrategy() {
+        @Override
+        public int idle(int counter, Signal signal, long deadline) throws InterruptedException {
+            checkInterrupted();
+            if (counter >= SPIN_TRIES) {
+                Thread.yield();
+            }
+            return counter + 1;
+        }
+    };
+
+    /**
+     * Spinning, yielding, then parking strategy with the default maximum park period.
+     */
+    public static final WaitStrategy PARK = parking(DEFAULT_MAX_PARK_NANOS);
+
+    /**
+     * Spinning, then blocking strategy.
+     */
+    public static final WaitStrategy BLOCKING = new WaitStrategy() {
+        @Override
+        public int idle(int counter, Signal signal, long deadline) throws InterruptedException {
+            checkInterrupted();
+            if (counter >= SPIN_TRIES) {
+                signal.await(deadline);
+            }
+            return counter + 1;
+        }
+    };
+
+    /**
+     * Returns a strategy that spins, then yields, then parks for periods
+     * doubling from one microsecond up to the given maximum. The maximum bounds
+     * the reaction time of an idle thread.
+     *
+     * @param maxNanos the maximum park period in nanoseconds.
+     * @return the <tt>WaitStrategy</tt>.
+     */
+    public static WaitStrategy parking(final long maxNanos) {
+        if (maxNanos <= 0) {
+            throw new IllegalArgumentException("Park period must be positive: " + maxNanos);
+        }
+        return new WaitStrategy() {
+            @Override
+            public int idle(int counter, Signal signal, long deadline) throws InterruptedException {
+                checkInterrupted();
+                if (counter >= 2 * SPIN_TRIES) {
+                    int shift = Math.min(counter - 2 * SPIN_TRIES, 30);
+                    long nanos = Math.min(maxNanos, 1000L << shift);
+                    if (deadline != 0) {
+                        nanos = Math.min(nanos, deadline - System.nanoTime());
+                    }
+                    if (nanos > 0) {
+                        LockSupport.parkNanos(this, nanos);
+                    }
+                } else if (counter >= SPIN_TRIES) {
+                    Thread.yield();
+                }
+                return counter + 1;
+            }
+        };
+    }// parking
+
+    /**
+     * Waits once for the condition of the given signal. Callers re-check
+     * their condition after each call, passing the returned counter to the next.
+     *
+     * @param counter the number of calls so far while waiting, <tt>0</tt> at first.
+     * @param signal the <tt>Signal</tt> of the awaited condition.
+     * @param deadline the <tt>System.nanoTime()</tt> to give up at, or <tt>0</tt> for none.
+     * @return the counter for the next call.
+     * @throws InterruptedException if the thread was interrupted.
+     */
+    public abstract int idle(int counter, Signal signal, long deadline) throws InterruptedException;
+
+    /**
+     * Waits until the given time, parking until shortly before it and
+     * spinning for the rest. Unlike <tt>Thread.sleep</tt>, the wake-up does
+     * not depend on the timer resolution of the scheduler, at the cost of
+     * busy waiting for up to the given spin period.
+     *
+     * @param deadline the <tt>System.nanoTime()</tt> to wait for.
+     * @param spinNanos the period before the deadline to spin for, in nanoseconds.
+     * @throws InterruptedException if the thread was interrupted.
+     */
+    public static void parkUntil(long deadline, long spinNanos) throws InterruptedException {
+        long left;
+        while ((left = deadline - System.nanoTime()) > spinNanos) {
+            LockSupport.parkNanos(left - spinNanos);
+            checkInterrupted();
+        }
+        while (deadline - System.nanoTime() > 0) {
+            checkInterrupted();
+        }
+    }// parkUntil
+
+    private static void checkInterrupted() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }// checkInterrupted
+
+    /**
+     * Abstract class of a condition that blocked waiters are signalled for.
+     * Signalling costs a single volatile read unless a thread is blocked.
+     */
+    public abstract static class Signal {
+
+        private final Object m_Lock = new Object();
+        private volatile int m_Waiters;
+
+        /**
+         * Tests if the condition holds.
+         *
+         * @return true if waiting threads may proceed, false otherwise.
+         */
+        protected abstract boolean isReady();
+
+        /**
+         * Wakes up the threads blocked on this signal. Must be called
+         * after each change that may make the condition hold.
+         */
+        public void signal() {
+            if (m_Waiters > 0) {
+                synchronized (m_Lock) {
+                    m_Lock.notifyAll();
+                }
+            }
+        }// signal
+
+        private void await(long deadline) throws InterruptedException {
+            synchronized (m_Lock) {
+                m_Waiters++;
+                try {
+                    // the condition is re-checked after registering as waiter,
+                    // so that a change made meanwhile is not missed
+                    while (!isReady()) {
+                        if (deadline == 0) {
+                            m_Lock.wait();
+                        } else {
+                            long left = deadline - System.nanoTime();
+                            if (left <= 0) {
+                                return;
+                            }
+                            TimeUnit.NANOSECONDS.timedWait(m_Lock, left);
+                        }
+                    }
+                } finally {
+                    m_Waiters--;
+                }
+            }
+        }// await
+
+    }// class Signal
+
+}// class WaitStrategy
@@ -0,0 +1,78 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***/
+
+package net.wimpi.modbus.util;
+
+/**
+ * Enumeration of the byte and word orders used by devices
+ * to spread values wider than 16 bits over consecutive registers.
+ * <p>
+ * The letters name the bytes of the value from the most significant
+ * (<tt>A</tt>) to the least significant one, in the order they appear
+ * on the wire. For 64-bit values the same rule is applied to all four
+ * words, i.e. <tt>CDAB</tt> reverses the order of the words and
+ * <tt>BADC</tt> swaps the bytes within each word.
+ *
+ * @version @version@ (@date@)
+ */
+public enum WordOrder {
+
+    /**
+     * Big endian, most significant word and byte first (Modbus default).
+     */
+    ABCD(false, false),
+
+    /**
+     * Least significant word first, bytes within a word big endian.
+     */
+    CDAB(true, false),
+
+    /**
+     * Most significant word first, bytes within a word swapped.
+     */
+    BADC(false, true),
+
+    /**
+     * Little endian, least significant word and byte first.
+     */
+    DCBA(true, true);
+
+    private final boolean m_WordSwapped;
+    private final boolean m_ByteSwapped;
+
+    private WordOrder(boolean wordSwapped, boolean byteSwapped) {
+        m_WordSwapped = wordSwapped;
+        m_ByteSwapped = byteSwapped;
+    }// constructor
+
+    /**
+     * Tests if the least significant word is transmitted first.
+     *
+     * @return true if the words are swapped, false otherwise.
+     */
+    public boolean isWordSwapped() {
+        return m_WordSwapped;
+    }// isWordSwapped
+
+    /**
+     * Tests if the bytes within each word are swapped.
+     *
+     * @return true if the bytes are swapped, false otherwise.
+     */
+    public boolean isByteSwapped() {
+        return m_ByteSwapped;
+    }// isByteSwapped
+
+}// enum WordOrder